@@ -1,52 +1,435 @@
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.scene.Node;
 import javafx.scene.Scene;
-import javafx.scene.control.Tab;
 import javafx.scene.control.TabPane;
 import javafx.stage.Stage;
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
 
 public class SHMS extends Application {
-    // Shared data stores
-    private static final ObservableList<Patient> patients = FXCollections.observableArrayList();
-    private static final ObservableList<Doctor> doctors = FXCollections.observableArrayList();
-    private static final ObservableList<Appointment> appointments = FXCollections.observableArrayList();
-    private static final ObservableList<BillingRecord> billingRecords = FXCollections.observableArrayList();
+    private static final int DEFAULT_PORT = 8080;
+    /** Seconds between metric dumps to the log; 0 turns them off. */
+    private static final long METRICS_LOG_INTERVAL = Long.getLong("shms.metrics.logIntervalSeconds", 60);
+    /** Milliseconds the FX thread may stay busy before a stall is reported; 0 turns the watchdog off. */
+    private static final long STALL_THRESHOLD = Long.getLong("shms.stall.thresholdMillis", 100);
+    /** Directory of the cold archive for old appointments and bills; unset keeps everything in memory. */
+    private static final String ARCHIVE_DIR = System.getProperty("shms.archive.dir");
+    /** Age in days after which records are archived; at least {@link ColdArchive#MIN_AGE_DAYS}. */
+    private static final int ARCHIVE_AGE_DAYS = Integer.getInteger("shms.archive.ageDays", 730);
+    /** Seconds a standby waits after losing its primary before taking over on its own; 0 only on request. */
+    private static final long FAILOVER_SECONDS = Long.getLong("shms.standby.failoverSeconds", 0);
+    /** Command that fences off the old primary before a standby takes over; required for automatic takeover. */
+    private static final String FENCE_COMMAND = System.getProperty("shms.standby.fenceCommand");
+    private static final long FENCE_TIMEOUT_SECONDS = 60;
+    /** File whose creation asks a standby to take over. */
+    private static final String PROMOTE_FILE = System.getProperty("shms.standby.promoteFile", "standby.promote");
+
+    // Shared data; views read FX mirrors of its store and write through the service
+    private static ClinicService clinicService;
+    private static final StartupTimer startupTimer = new StartupTimer();
 
     @Override
     public void start(Stage primaryStage) {
+        startupTimer.mark("toolkit start");
+        if (STALL_THRESHOLD > 0) {
+            new FxStallWatchdog(STALL_THRESHOLD, TimeUnit.MILLISECONDS).start();
+        }
+        ClinicStore store = clinicService.store();
         TabPane tabPane = new TabPane();
-        
-        // Initialize views with shared data stores
-        Tab patientTab = new Tab("Patient Management");
-        patientTab.setContent(new PatientManagementView(patients));
-        patientTab.setClosable(false);
-
-        Tab appointmentTab = new Tab("Appointment Scheduling");
-        appointmentTab.setContent(new AppointmentSchedulingView(patients, doctors, appointments));
-        appointmentTab.setClosable(false);
-
-        Tab doctorTab = new Tab("Doctor Management");
-        doctorTab.setContent(new DoctorManagementView(doctors));
-        doctorTab.setClosable(false);
-
-        Tab billingTab = new Tab("Billing");
-        billingTab.setContent(new BillingView(patients, billingRecords));
-        billingTab.setClosable(false);
 
-        Tab analyticsTab = new Tab("Analytics");
-        analyticsTab.setContent(new AnalyticsView(patients, doctors, appointments, billingRecords));
-        analyticsTab.setClosable(false);
+        // Each view is built the first time its tab is selected
+        LazyTab patientTab = lazyTab("Patient Management", () -> new PatientManagementView(clinicService));
+        LazyTab appointmentTab = lazyTab("Appointment Scheduling", () -> new AppointmentSchedulingView(clinicService));
+        LazyTab doctorTab = lazyTab("Doctor Management", () -> new DoctorManagementView(clinicService));
+        LazyTab billingTab = lazyTab("Billing", () -> new BillingView(clinicService));
+        LazyTab analyticsTab = lazyTab("Analytics", () -> new AnalyticsView(store.patients().fxView(),
+            store.doctors().fxView(), store.appointments().fxView(), store.recurringSeries().fxView(),
+            store.billingRecords().fxView(), clinicService.patientSearchIndex(), clinicService.occupancy(), store));
+        LazyTab trendsTab = lazyTab("Trends", () -> new TrendsView(clinicService));
 
-        tabPane.getTabs().addAll(patientTab, appointmentTab, doctorTab, billingTab, analyticsTab);
+        tabPane.getTabs().addAll(patientTab, appointmentTab, doctorTab, billingTab, analyticsTab, trendsTab);
+        patientTab.build();
+        startupTimer.mark("view construction");
 
         Scene scene = new Scene(tabPane, 1024, 768);
+        scene.addPostLayoutPulseListener(new Runnable() {
+            @Override
+            public void run() {
+                scene.removePostLayoutPulseListener(this);
+                startupTimer.mark("first paint");
+                startupTimer.finish();
+                // Analytics aggregates the whole data set; start it in the background once the window is up
+                Platform.runLater(analyticsTab::build);
+            }
+        });
         primaryStage.setScene(scene);
         primaryStage.setTitle("Smart Healthcare Management System");
         primaryStage.show();
     }
 
-    public static void main(String[] args) {
+    private static LazyTab lazyTab(String title, Supplier<Node> view) {
+        return new LazyTab(title, () -> startupTimer.time("view construction (" + title + ")", view));
+    }
+
+    /**
+     * {@code --server[=port]} runs the REST/JSON API without a UI;
+     * {@code --connect=http://host:port} runs the UI as a thin client of such a
+     * server. Without either, the UI works on its own in-memory data.
+     * {@code --reports=dir} writes the batch reports of the (remote) clinic to
+     * a directory instead of starting the UI; see {@link #runBatchReports}.
+     * {@code --statements=dir [--month=yyyy-MM]} likewise writes the monthly
+     * patient statements, by default for the previous month.
+     * {@code --clinics=name=http://host:port,...} with {@code --reports}
+     * reports on several clinic servers together instead; see
+     * {@link ClinicFederation}.
+     * {@code --ship=port} streams the server's or standalone UI's changes to
+     * warm standbys, started with {@code --standby=host:port}; see
+     * {@link #runStandby}.
+     * {@code --import=patients:file,appointments:file,billing:file} loads
+     * NDJSON feeds into the server's or standalone UI's data first; see
+     * {@link #runImports}.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        FlightRecording.startIfConfigured();
+        String reportsDir = null;
+        String statementsDir = null;
+        String clinics = null;
+        int shipPort = -1;
+        for (String arg : args) {
+            if (arg.startsWith("--ship=")) {
+                shipPort = Integer.parseInt(arg.substring("--ship=".length()));
+            }
+        }
+        for (String arg : args) {
+            if (arg.startsWith("--standby=")) {
+                runStandby(arg.substring("--standby=".length()), serverPort(args), shipPort);
+                return;
+            }
+        }
+        for (String arg : args) {
+            if (arg.startsWith("--clinics=")) {
+                clinics = arg.substring("--clinics=".length());
+            }
+            if (arg.startsWith("--reports=")) {
+                reportsDir = arg.substring("--reports=".length());
+            }
+            if (arg.startsWith("--statements=")) {
+                statementsDir = arg.substring("--statements=".length());
+            }
+            if (arg.equals("--server") || arg.startsWith("--server=")) {
+                ClinicService service = new ClinicService(new ClinicStore());
+                openArchive(service, true);
+                runImports(service, args);
+                installMetrics(service);
+                startApi(service, serverPort(args));
+                startShipping(service, shipPort);
+                return;
+            }
+            if (arg.startsWith("--connect=")) {
+                RemoteClinicService remote = new RemoteClinicService(URI.create(arg.substring("--connect=".length())));
+                remote.connect();
+                clinicService = remote;
+            }
+        }
+        if (clinics != null) {
+            if (reportsDir == null) {
+                throw new IllegalArgumentException("--clinics is only supported with --reports");
+            }
+            runFederatedReports(clinics, Path.of(reportsDir), args);
+            return;
+        }
+        boolean batch = reportsDir != null || statementsDir != null;
+        if (clinicService == null) {
+            clinicService = new ClinicService(new ClinicStore());
+            openArchive(clinicService, !batch);
+            runImports(clinicService, args);
+        }
+        if (batch) {
+            if (reportsDir != null) {
+                runBatchReports(clinicService, Path.of(reportsDir), args);
+            }
+            if (statementsDir != null) {
+                runStatements(clinicService, Path.of(statementsDir), args);
+            }
+            if (clinicService instanceof RemoteClinicService) {
+                ((RemoteClinicService) clinicService).disconnect();
+            }
+            return;
+        }
+        installMetrics(clinicService);
+        if (!(clinicService instanceof RemoteClinicService)) {
+            startShipping(clinicService, shipPort);
+        }
+        startupTimer.mark("data load");
         launch(args);
     }
+
+    /** The port of {@code --server[=port]}, by default {@value #DEFAULT_PORT}. */
+    private static int serverPort(String[] args) {
+        for (String arg : args) {
+            if (arg.startsWith("--server=")) {
+                return Integer.parseInt(arg.substring("--server=".length()));
+            }
+        }
+        return DEFAULT_PORT;
+    }
+
+    /**
+     * Imports the feeds of {@code --import}, in the order given, with a
+     * {@link BulkImporter}. Rejected lines of {@code file} are written to
+     * {@code file.errors.ndjson}.
+     */
+    private static void runImports(ClinicService service, String[] args) throws IOException {
+        for (String arg : args) {
+            if (!arg.startsWith("--import=")) {
+                continue;
+            }
+            BulkImporter importer = new BulkImporter(service, Runtime.getRuntime().availableProcessors());
+            for (String feed : arg.substring("--import=".length()).split(",")) {
+                int colon = feed.indexOf(':');
+                if (colon < 0) {
+                    throw new IllegalArgumentException("Expected feed:file in --import, got " + feed);
+                }
+                BulkImporter.Feed type =
+                    BulkImporter.Feed.valueOf(feed.substring(0, colon).trim().toUpperCase(Locale.ROOT));
+                Path input = Path.of(feed.substring(colon + 1).trim());
+                Path errors = input.resolveSibling(input.getFileName() + ".errors.ndjson");
+                System.out.println(importer.importFile(type, input, errors));
+            }
+        }
+    }
+
+    private static void startApi(ClinicService service, int port) throws IOException {
+        ClinicApiServer server = new ClinicApiServer(service, port);
+        server.start();
+        System.out.println("SHMS API listening on " + server.getAddress());
+        if (server.isTokenGenerated()) {
+            System.out.println("API token (set -D" + ClinicApiServer.TOKEN_PROPERTY + " to choose one): "
+                + server.getToken());
+        }
+    }
+
+    private static void startShipping(ClinicService service, int port) throws IOException {
+        if (port < 0) {
+            return;
+        }
+        LogShipper shipper = new LogShipper(service.store(), port);
+        shipper.start();
+        System.out.println("SHMS shipping changes to standbys on " + shipper.getAddress());
+        if (shipper.isSecretGenerated()) {
+            System.out.println("Replication secret (set -D" + LogShipper.SECRET_PROPERTY
+                + " on the standby, or on both to choose one): " + shipper.getSecret());
+        }
+    }
+
+    /**
+     * Runs a warm standby of the primary at {@code host:port} without a UI.
+     * It takes over when the file of {@code shms.standby.promoteFile} is
+     * created, or on its own once the primary has been unreachable for
+     * {@code shms.standby.failoverSeconds} if that is set. Either way it first
+     * runs {@code shms.standby.fenceCommand}, if given, and stays a standby
+     * unless that succeeds; without a fence the operator must make sure the
+     * old primary is down, so automatic takeover requires one. Once promoted
+     * it serves the API on the {@code --server} port and, with {@code --ship},
+     * ships its own changes to the next standby. A standby of a primary with a
+     * cold archive needs {@code shms.archive.dir} too, naming a directory of
+     * its own; it archives on its own schedule only once promoted.
+     */
+    private static void runStandby(String primary, int serverPort, int shipPort)
+            throws IOException, InterruptedException {
+        if (FAILOVER_SECONDS > 0 && (FENCE_COMMAND == null || FENCE_COMMAND.isBlank())) {
+            throw new IllegalArgumentException("shms.standby.failoverSeconds requires shms.standby.fenceCommand,"
+                + " so that two primaries never take writes at once");
+        }
+        int colon = primary.lastIndexOf(':');
+        ClinicService service = new ClinicService(new ClinicStore());
+        installMetrics(service);
+        openArchive(service, false);
+        StandbyReplica standby = new StandbyReplica(service, primary.substring(0, colon),
+            Integer.parseInt(primary.substring(colon + 1)));
+        standby.start();
+        Path promoteFile = Path.of(PROMOTE_FILE).toAbsolutePath();
+        System.out.println("SHMS standby following " + primary + "; create " + promoteFile + " to promote it");
+        long failoverMillis = TimeUnit.SECONDS.toMillis(FAILOVER_SECONDS);
+        long nextAttempt = 0;
+        while (true) {
+            Thread.sleep(1000);
+            if (!standby.isSynced()) {
+                continue;
+            }
+            if (Files.deleteIfExists(promoteFile)) {
+                if (fence(primary)) {
+                    break;
+                }
+                System.out.println("SHMS standby not promoted; fence the primary and create " + promoteFile + " again");
+            } else if (failoverMillis > 0 && !standby.isConnected() && standby.millisSinceContact() >= failoverMillis
+                    && System.currentTimeMillis() >= nextAttempt) {
+                if (fence(primary)) {
+                    break;
+                }
+                nextAttempt = System.currentTimeMillis() + failoverMillis;
+            }
+        }
+        standby.promote(TimeUnit.SECONDS.toMillis(10));
+        System.out.println("SHMS standby promoted at sequence " + standby.appliedSequence());
+        ColdArchive archive = service.store().archive();
+        if (archive != null) {
+            archive.start(Math.max(ARCHIVE_AGE_DAYS, ColdArchive.MIN_AGE_DAYS));
+        }
+        startApi(service, serverPort);
+        startShipping(service, shipPort);
+    }
+
+    /**
+     * Runs {@code shms.standby.fenceCommand} with {@code SHMS_PRIMARY} set to
+     * the primary's {@code host:port}. True if it exited with 0 within
+     * {@value #FENCE_TIMEOUT_SECONDS} seconds, or if there is none.
+     */
+    private static boolean fence(String primary) throws InterruptedException {
+        if (FENCE_COMMAND == null || FENCE_COMMAND.isBlank()) {
+            return true;
+        }
+        ProcessBuilder builder = new ProcessBuilder(FENCE_COMMAND.trim().split("\\s+")).inheritIO();
+        builder.environment().put("SHMS_PRIMARY", primary);
+        try {
+            Process process = builder.start();
+            if (!process.waitFor(FENCE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+                System.out.println("Fencing " + primary + " timed out");
+                return false;
+            }
+            if (process.exitValue() != 0) {
+                System.out.println("Fencing " + primary + " failed with exit code " + process.exitValue());
+                return false;
+            }
+            return true;
+        } catch (IOException e) {
+            System.out.println("Fencing " + primary + " failed: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Writes the batch reports without starting the FX toolkit. Options:
+     * {@code --from=} and {@code --to=} (ISO dates, default the last six
+     * months, as in the Analytics tab) and {@code --patients=ID,ID,...} for
+     * individual patient histories.
+     */
+    private static void runBatchReports(ClinicService service, Path dir, String[] args)
+            throws IOException, InterruptedException {
+        System.setProperty("java.awt.headless", "true");
+        LocalDate[] range = reportRange(args);
+        BatchReportRunner runner = new BatchReportRunner(ReportData.of(service.store(), range[0], range[1]), dir,
+            range[0], range[1], Runtime.getRuntime().availableProcessors());
+        System.out.println(runner.run(reportPatients(args)));
+    }
+
+    /**
+     * Writes the batch reports of several clinics, each served by its own
+     * {@code --server}, as one: each clinic's replica is aggregated on its own
+     * core and the results merged. Takes the options of {@link #runBatchReports},
+     * except that patient IDs are qualified by clinic, as in
+     * {@code --patients=north:P1001}, since each clinic numbers its own.
+     */
+    private static void runFederatedReports(String clinics, Path dir, String[] args)
+            throws IOException, InterruptedException {
+        System.setProperty("java.awt.headless", "true");
+        LocalDate[] range = reportRange(args);
+        List<RemoteClinicService> remotes = new ArrayList<>();
+        try (ClinicFederation federation = new ClinicFederation()) {
+            for (String clinic : clinics.split(",")) {
+                int eq = clinic.indexOf('=');
+                if (eq <= 0) {
+                    throw new IllegalArgumentException("Expected name=http://host:port, got " + clinic);
+                }
+                RemoteClinicService remote = new RemoteClinicService(URI.create(clinic.substring(eq + 1)));
+                remotes.add(remote);
+                remote.connect();
+                federation.addClinic(clinic.substring(0, eq), remote);
+            }
+            BatchReportRunner runner = new BatchReportRunner(federation.reportData(range[0], range[1]), dir,
+                range[0], range[1], Runtime.getRuntime().availableProcessors());
+            System.out.println(runner.run(reportPatients(args)));
+        } finally {
+            remotes.forEach(RemoteClinicService::disconnect);
+        }
+    }
+
+    /** {@code --from=} and {@code --to=}, by default the last six months. */
+    private static LocalDate[] reportRange(String[] args) {
+        LocalDate to = LocalDate.now();
+        LocalDate from = to.minusMonths(6);
+        for (String arg : args) {
+            if (arg.startsWith("--from=")) {
+                from = LocalDate.parse(arg.substring("--from=".length()));
+            } else if (arg.startsWith("--to=")) {
+                to = LocalDate.parse(arg.substring("--to=".length()));
+            }
+        }
+        return new LocalDate[] {from, to};
+    }
+
+    private static List<String> reportPatients(String[] args) {
+        for (String arg : args) {
+            if (arg.startsWith("--patients=")) {
+                return List.of(arg.substring("--patients=".length()).split(","));
+            }
+        }
+        return List.of();
+    }
+
+    private static void runStatements(ClinicService service, Path dir, String[] args)
+            throws IOException, InterruptedException {
+        YearMonth month = YearMonth.now().minusMonths(1);
+        for (String arg : args) {
+            if (arg.startsWith("--month=")) {
+                month = YearMonth.parse(arg.substring("--month=".length()));
+            }
+        }
+        StatementGenerator generator = new StatementGenerator(dir, Runtime.getRuntime().availableProcessors());
+        try (ClinicSnapshot snapshot = service.store().openSnapshot()) {
+            System.out.println(generator.generate(Stream.concat(snapshot.billingRecords().stream(),
+                snapshot.archivedBillingRecords(month.atDay(1), month.atEndOfMonth()).stream()), month));
+        }
+    }
+
+    /**
+     * Opens the cold archive if {@code shms.archive.dir} is set, so reports read
+     * the archived records too, and unless {@code archiveOldRecords} is false
+     * starts moving old records into it daily. Thin clients leave this to the
+     * server.
+     */
+    private static void openArchive(ClinicService service, boolean archiveOldRecords) throws IOException {
+        if (ARCHIVE_DIR == null) {
+            return;
+        }
+        ColdArchive archive = ColdArchive.open(Path.of(ARCHIVE_DIR), service.store());
+        if (archiveOldRecords) {
+            archive.start(Math.max(ARCHIVE_AGE_DAYS, ColdArchive.MIN_AGE_DAYS));
+        }
+    }
+
+    /**
+     * Publishes the metrics registry over JMX (jconsole, VisualVM) and, unless
+     * disabled, writes it to the log periodically.
+     */
+    private static void installMetrics(ClinicService service) {
+        MetricsRegistry metrics = MetricsRegistry.global();
+        StoreMetrics.register(metrics, service.store());
+        JmxExporter.export(metrics);
+        if (METRICS_LOG_INTERVAL > 0) {
+            new MetricsLogReporter(metrics).start(METRICS_LOG_INTERVAL, TimeUnit.SECONDS);
+        }
+    }
 }
@@ -0,0 +1,49 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Records how long each startup phase takes and logs one line per phase plus
+ * the total time to the first painted frame.
+ */
+final class StartupTimer {
+    private static final Logger LOG = Logger.getLogger("SHMS.startup");
+
+    private final long origin = System.nanoTime();
+    private final Map<String, Long> phases = new LinkedHashMap<>();
+    private long lastMark = origin;
+
+    /** Ends the current phase under the given name and starts the next one. */
+    synchronized void mark(String phase) {
+        long now = System.nanoTime();
+        record(phase, now - lastMark);
+        lastMark = now;
+    }
+
+    /** Times work done outside the startup sequence, such as building a tab later on. */
+    <T> T time(String phase, Supplier<T> work) {
+        long start = System.nanoTime();
+        T result = work.get();
+        long elapsed = System.nanoTime() - start;
+        synchronized (this) {
+            record(phase, elapsed);
+        }
+        return result;
+    }
+
+    void finish() {
+        long total = System.nanoTime() - origin;
+        LOG.info(() -> String.format("time to first frame: %.1f ms", total / 1e6));
+    }
+
+    /** Phase durations in nanoseconds, in the order they were recorded. */
+    synchronized Map<String, Long> phases() {
+        return new LinkedHashMap<>(phases);
+    }
+
+    private void record(String phase, long nanos) {
+        phases.merge(phase, nanos, Long::sum);
+        LOG.info(() -> String.format("startup phase %-28s %8.1f ms", phase + ":", nanos / 1e6));
+    }
+}
@@ -0,0 +1,558 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * REST/JSON front end for a {@link ClinicService}, served by the JDK's
+ * embedded {@link HttpServer} so several terminals can share one data set.
+ *
+ * <pre>
+ * GET    /api/patients              POST /api/patients      PUT /api/patients/{id}
+ * GET    /api/doctors               POST /api/doctors       DELETE /api/doctors/{id}
+ * GET    /api/appointments?doctor=&amp;date=
+ *                                   POST /api/appointments  DELETE /api/appointments/{id}
+ *                                   DELETE /api/appointments?doctor=&amp;from=&amp;to=
+ * GET    /api/series                POST /api/series        DELETE /api/series/{id}
+ * GET    /api/billing               POST /api/billing       DELETE /api/billing/{id}
+ * GET    /api/snapshot              GET  /api/changes?after=&amp;limit=&amp;wait=
+ * </pre>
+ *
+ * {@code {id}} is the store id returned in every entity's {@code id} field.
+ * The patient list leaves out {@code medicalHistory}, which only the single
+ * patient, the snapshot and the change feed carry. A booking names either
+ * {@code doctorName} or {@code specialization} (auto assignment). Rule violations answer 422 and clashes such as a taken slot
+ * 409, each with an {@code error} message. Every write response carries the
+ * change sequence it produced in the {@code X-Clinic-Sequence} header, which
+ * thin clients use to wait for their own write in the change feed.
+ *
+ * The server listens on the loopback interface unless {@code shms.api.bind}
+ * names another address, and every request must carry
+ * {@code Authorization: Bearer <token>} with the token of
+ * {@code shms.api.token}; without that property a random token is generated
+ * at startup (see {@link #getToken}). Thin clients send the token from the
+ * same property.
+ *
+ * Requests run on virtual threads when the runtime provides them and on a
+ * bounded pool of platform threads otherwise. Long polls of the change feed
+ * have an executor of their own, so waiting clients never hold up other
+ * requests. Slot bookings are atomic in
+ * {@link ClinicService}, so concurrent requests for one slot get exactly one
+ * 201 and 409 for the rest.
+ */
+public class ClinicApiServer {
+    public static final String SEQUENCE_HEADER = "X-Clinic-Sequence";
+    public static final String TOKEN_PROPERTY = "shms.api.token";
+    private static final Logger LOG = Logger.getLogger("SHMS.api");
+    private static final int BACKLOG = 1024;
+    private static final int MAX_LONG_POLLS = 256;
+    private static final int MAX_CHANGES_PER_RESPONSE = 1000;
+    private static final long MAX_WAIT_MILLIS = 30_000;
+
+    private final ClinicService service;
+    private final ClinicStore store;
+    private final ChangeLog changeLog;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ExecutorService longPolls;
+    private final String token;
+    private final boolean generatedToken;
+
+    static {
+        // The server writes headers and body separately; without TCP_NODELAY
+        // every small response waits out the client's delayed ACK (~40 ms).
+        setDefault("sun.net.httpserver.nodelay", "true");
+        // The default of 200 idle keep-alive connections makes the server close
+        // connections that busy terminals are about to reuse.
+        setDefault("sun.net.httpserver.maxIdleConnections", Integer.toString(BACKLOG * 4));
+    }
+
+    private static void setDefault(String property, String value) {
+        if (System.getProperty(property) == null) {
+            System.setProperty(property, value);
+        }
+    }
+
+    public ClinicApiServer(ClinicService service, int port) throws IOException {
+        this.service = service;
+        this.store = service.store();
+        this.changeLog = store.changeLog();
+        String bind = System.getProperty("shms.api.bind");
+        InetAddress address = bind == null ? InetAddress.getLoopbackAddress() : InetAddress.getByName(bind);
+        String configured = System.getProperty(TOKEN_PROPERTY);
+        this.generatedToken = configured == null || configured.isEmpty();
+        this.token = generatedToken ? newToken() : configured;
+        this.server = HttpServer.create(new InetSocketAddress(address, port), BACKLOG);
+        this.executor = newRequestExecutor("api-worker",
+            Math.max(32, Runtime.getRuntime().availableProcessors() * 8));
+        this.longPolls = newRequestExecutor("api-long-poll", MAX_LONG_POLLS);
+        server.setExecutor(executor);
+        server.createContext("/api/", this::handle);
+    }
+
+    private static String newToken() {
+        byte[] bytes = new byte[24];
+        new SecureRandom().nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    /**
+     * One virtual thread per request where available (Java 21+). This build
+     * targets Java 17, so the factory is looked up reflectively; the fallback
+     * is a fixed pool of {@code threads} platform threads.
+     */
+    static ExecutorService newRequestExecutor(String name, int threads) {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            AtomicInteger count = new AtomicInteger();
+            return Executors.newFixedThreadPool(threads, r -> {
+                Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    /** The token clients must present; see {@link #isTokenGenerated}. */
+    public String getToken() {
+        return token;
+    }
+
+    /** Whether {@link #getToken} was generated because {@code shms.api.token} is not set. */
+    public boolean isTokenGenerated() {
+        return generatedToken;
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        longPolls.shutdownNow();
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** The bound port, useful when the server was created with port 0. */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /** The bound address and port. */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        if (exchange.getRequestURI().getPath().equals("/api/changes")
+                && parseLong(parseQuery(exchange.getRequestURI().getRawQuery()).get("wait"), 0) > 0) {
+            longPolls.execute(() -> {
+                try {
+                    serve(exchange);
+                } catch (IOException e) {
+                    LOG.log(Level.FINE, "Answering a long poll failed", e);
+                }
+            });
+            return;
+        }
+        serve(exchange);
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        if (!authorized(exchange)) {
+            exchange.getResponseHeaders().set("WWW-Authenticate", "Bearer");
+            send(exchange, Response.error(401, "Missing or wrong API token"));
+            return;
+        }
+        Response response;
+        try {
+            String[] path = exchange.getRequestURI().getPath().substring("/api/".length()).split("/");
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            long before = store.lastSequenceOfCurrentThread();
+            response = route(exchange.getRequestMethod(), path, query, body);
+            if (response.sequence >= 0 && response.sequence == before) {
+                // The write changed nothing, so there is nothing of its own to wait for
+                response = new Response(response.status, response.body, -1);
+            }
+        } catch (ConflictException e) {
+            response = Response.error(409, e.getMessage());
+        } catch (ValidationException e) {
+            response = Response.error(422, e.getMessage());
+        } catch (IllegalArgumentException e) {
+            response = Response.error(400, e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            response = Response.error(503, "Server is shutting down");
+        } catch (RuntimeException e) {
+            response = Response.error(500, String.valueOf(e));
+        }
+        send(exchange, response);
+    }
+
+    private boolean authorized(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        if (header == null || !header.startsWith("Bearer ")) {
+            return false;
+        }
+        byte[] presented = header.substring("Bearer ".length()).trim().getBytes(StandardCharsets.UTF_8);
+        return MessageDigest.isEqual(presented, token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Response route(String method, String[] path, Map<String, String> query, String body)
+            throws InterruptedException {
+        String resource = path[0];
+        long id = -1;
+        if (path.length == 2) {
+            try {
+                id = Long.parseLong(path[1]);
+            } catch (NumberFormatException e) {
+                return Response.error(404, "Not found");
+            }
+        } else if (path.length > 2) {
+            return Response.error(404, "Not found");
+        }
+        switch (resource) {
+            case "patients":
+                if (id < 0) {
+                    return collection(method, store.patients(), ClinicApiServer::encodePatientSummary, body,
+                        this::createPatient);
+                }
+                if (method.equals("PUT")) {
+                    return updatePatient(id, Json.readObject(body));
+                }
+                return member(method, store.patients(), id, EntityCodec::encodePatient, null);
+            case "doctors":
+                return id < 0
+                    ? collection(method, store.doctors(), EntityCodec::encodeDoctor, body, this::createDoctor)
+                    : member(method, store.doctors(), id, EntityCodec::encodeDoctor, service::removeDoctor);
+            case "appointments":
+                if (id < 0 && method.equals("GET")) {
+                    return listAppointments(query);
+                }
+                if (id < 0 && method.equals("DELETE")) {
+                    return cancelAppointments(query);
+                }
+                return id < 0
+                    ? collection(method, store.appointments(), EntityCodec::encodeAppointment, body, this::createAppointment)
+                    : member(method, store.appointments(), id, EntityCodec::encodeAppointment, service::cancelAppointment);
+            case "series":
+                return id < 0
+                    ? collection(method, store.recurringSeries(), EntityCodec::encodeSeries, body, this::createSeries)
+                    : member(method, store.recurringSeries(), id, EntityCodec::encodeSeries, service::cancelSeries);
+            case "billing":
+                return id < 0
+                    ? collection(method, store.billingRecords(), EntityCodec::encodeBillingRecord, body, this::createBillingRecord)
+                    : member(method, store.billingRecords(), id, EntityCodec::encodeBillingRecord, service::deleteBillingRecord);
+            case "snapshot":
+                return method.equals("GET") ? snapshot() : Response.error(405, "Method not allowed");
+            case "changes":
+                return method.equals("GET") ? changes(query) : Response.error(405, "Method not allowed");
+            default:
+                return Response.error(404, "Not found");
+        }
+    }
+
+    private interface Encoder<T> {
+        Map<String, Object> encode(long id, T entity);
+    }
+
+    private <T> Response collection(String method, EntityStore<T> entities, Encoder<T> encoder, String body,
+                                    Function<Map<String, Object>, T> creator) {
+        switch (method) {
+            case "GET":
+                return Response.ok(encodeAll(entities, encoder));
+            case "POST":
+                T created = creator.apply(Json.readObject(body));
+                return Response.created(encoder.encode(entities.idOf(created), created),
+                    store.lastSequenceOfCurrentThread());
+            default:
+                return Response.error(405, "Method not allowed");
+        }
+    }
+
+    private <T> Response member(String method, EntityStore<T> entities, long id, Encoder<T> encoder,
+                                Function<T, Boolean> remover) {
+        T entity = entities.get(id);
+        if (entity == null) {
+            return Response.error(404, "Not found");
+        }
+        switch (method) {
+            case "GET":
+                return Response.ok(encoder.encode(id, entity));
+            case "DELETE":
+                if (remover == null) {
+                    return Response.error(405, "Method not allowed");
+                }
+                return remover.apply(entity)
+                    ? Response.noContent(store.lastSequenceOfCurrentThread())
+                    : Response.error(404, "Not found");
+            default:
+                return Response.error(405, "Method not allowed");
+        }
+    }
+
+    /** A patient for the list, without the medical history. */
+    private static Map<String, Object> encodePatientSummary(long id, Patient patient) {
+        Map<String, Object> json = EntityCodec.encodePatient(id, patient);
+        json.remove("medicalHistory");
+        return json;
+    }
+
+    private static <T> List<Map<String, Object>> encodeAll(EntityStore<T> entities, Encoder<T> encoder) {
+        List<Map<String, Object>> list = new ArrayList<>();
+        entities.forEachEntry((id, entity) -> list.add(encoder.encode(id, entity)));
+        return list;
+    }
+
+    private static <T> List<Map<String, Object>> encodeAll(ClinicSnapshot.Table<T> entities, Encoder<T> encoder) {
+        List<Map<String, Object>> list = new ArrayList<>();
+        entities.forEachEntry((id, entity) -> list.add(encoder.encode(id, entity)));
+        return list;
+    }
+
+    private Patient createPatient(Map<String, Object> json) {
+        return service.registerPatient(EntityCodec.string(json, "patientId"), EntityCodec.string(json, "name"),
+            EntityCodec.date(json, "dateOfBirth"), EntityCodec.string(json, "contactInfo"),
+            EntityCodec.string(json, "medicalHistory"));
+    }
+
+    private Response updatePatient(long id, Map<String, Object> json) {
+        Patient patient = store.patients().get(id);
+        if (patient == null) {
+            return Response.error(404, "Not found");
+        }
+        Patient edited = service.updatePatient(patient, EntityCodec.string(json, "name"),
+            EntityCodec.date(json, "dateOfBirth"), EntityCodec.string(json, "contactInfo"),
+            EntityCodec.string(json, "medicalHistory"));
+        return new Response(200, EntityCodec.encodePatient(id, edited), store.lastSequenceOfCurrentThread());
+    }
+
+    private Doctor createDoctor(Map<String, Object> json) {
+        return service.addDoctor(EntityCodec.string(json, "name"), EntityCodec.string(json, "specialization"),
+            EntityCodec.string(json, "contactInfo"));
+    }
+
+    private Appointment createAppointment(Map<String, Object> json) {
+        Patient patient = patientOf(json);
+        String specialization = EntityCodec.string(json, "specialization");
+        LocalDate date = EntityCodec.date(json, "date");
+        if (specialization != null) {
+            return service.autoAssignAppointment(patient, specialization, date, EntityCodec.time(json, "time"));
+        }
+        return service.bookAppointment(patient, doctorOf(json), date, EntityCodec.time(json, "time"));
+    }
+
+    private RecurringAppointment createSeries(Map<String, Object> json) {
+        Patient patient = patientOf(json);
+        String specialization = EntityCodec.string(json, "specialization");
+        LocalDate start = EntityCodec.date(json, "startDate");
+        RecurrenceRule rule = EntityCodec.rule(json, "rule");
+        if (specialization != null) {
+            return service.autoAssignSeries(patient, specialization, start, EntityCodec.time(json, "time"), rule);
+        }
+        return service.bookSeries(patient, doctorOf(json), start, EntityCodec.time(json, "time"), rule);
+    }
+
+    private BillingRecord createBillingRecord(Map<String, Object> json) {
+        return service.addBillingRecord(patientOf(json), EntityCodec.string(json, "service"),
+            EntityCodec.number(json, "amount"), EntityCodec.date(json, "date"));
+    }
+
+    private Patient patientOf(Map<String, Object> json) {
+        String patientId = EntityCodec.string(json, "patientId");
+        Patient patient = patientId == null ? null : store.patients().findByKey(patientId);
+        if (patientId != null && patient == null) {
+            throw new ValidationException("Unknown patient: " + patientId);
+        }
+        return patient;
+    }
+
+    private Doctor doctorOf(Map<String, Object> json) {
+        String name = EntityCodec.string(json, "doctorName");
+        Doctor doctor = name == null ? null : store.doctors().findByKey(name);
+        if (name != null && doctor == null) {
+            throw new ValidationException("Unknown doctor: " + name);
+        }
+        return doctor;
+    }
+
+    private Response listAppointments(Map<String, String> query) {
+        String doctor = query.get("doctor");
+        LocalDate date = query.containsKey("date") ? EntityCodec.date(new HashMap<>(query), "date") : null;
+        List<Map<String, Object>> list = new ArrayList<>();
+        store.appointments().forEachEntry((id, a) -> {
+            if ((doctor == null || doctor.equals(a.getDoctorName())) && (date == null || date.equals(a.getDate()))) {
+                list.add(EntityCodec.encodeAppointment(id, a));
+            }
+        });
+        return Response.ok(list);
+    }
+
+    private Response cancelAppointments(Map<String, String> query) {
+        Map<String, Object> params = new HashMap<>(query);
+        int cancelled = service.cancelAppointments(query.get("doctor"), EntityCodec.date(params, "from"),
+            EntityCodec.date(params, "to"));
+        return new Response(200, Map.of("cancelled", cancelled), store.lastSequenceOfCurrentThread());
+    }
+
+    /**
+     * Every entity as of one change sequence, read from a {@link ClinicSnapshot},
+     * plus that sequence, from which a reader resumes the feed. Nothing is
+     * missed or applied twice in between.
+     */
+    private Response snapshot() {
+        Map<String, Object> json = new LinkedHashMap<>();
+        try (ClinicSnapshot snapshot = store.openSnapshot()) {
+            json.put("sequence", snapshot.sequence());
+            json.put("patients", encodeAll(snapshot.patients(), EntityCodec::encodePatient));
+            json.put("doctors", encodeAll(snapshot.doctors(), EntityCodec::encodeDoctor));
+            json.put("appointments", encodeAll(snapshot.appointments(), EntityCodec::encodeAppointment));
+            json.put("recurringSeries", encodeAll(snapshot.recurringSeries(), EntityCodec::encodeSeries));
+            json.put("billingRecords", encodeAll(snapshot.billingRecords(), EntityCodec::encodeBillingRecord));
+        }
+        return Response.ok(json);
+    }
+
+    /**
+     * Changes after {@code after}, waiting up to {@code wait} ms for one to
+     * arrive (long polling). Answers 410 if the log no longer reaches back that
+     * far, in which case the client reloads the snapshot.
+     */
+    private Response changes(Map<String, String> query) throws InterruptedException {
+        long after = parseLong(query.get("after"), 0);
+        long requested = parseLong(query.get("limit"), MAX_CHANGES_PER_RESPONSE);
+        if (requested < 1) {
+            throw new IllegalArgumentException("limit must be at least 1");
+        }
+        int limit = (int) Math.min(requested, MAX_CHANGES_PER_RESPONSE);
+        long wait = Math.min(parseLong(query.get("wait"), 0), MAX_WAIT_MILLIS);
+        if (!changeLog.covers(after)) {
+            return Response.error(410, "Changes after " + after + " are no longer available");
+        }
+        if (wait > 0) {
+            changeLog.awaitAfter(after, wait);
+        }
+        List<StoreChange<?>> changes;
+        try {
+            changes = changeLog.changesAfter(after, limit);
+        } catch (IllegalStateException e) {
+            return Response.error(410, e.getMessage());
+        }
+        long sequence = changes.isEmpty() ? Math.max(after, changeLog.watermark()) : after;
+        List<Map<String, Object>> list = new ArrayList<>(changes.size());
+        for (StoreChange<?> change : changes) {
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("sequence", change.getSequence());
+            json.put("type", change.getType().name());
+            json.put("store", change.getStoreName());
+            json.put("id", change.getId());
+            json.put("entity", EntityCodec.encode(change.getStoreName(), change.getId(), change.getEntity()));
+            list.add(json);
+            sequence = change.getSequence();
+        }
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("sequence", sequence);
+        json.put("changes", list);
+        return Response.ok(json);
+    }
+
+    private static long parseLong(String value, long fallback) {
+        if (value == null || value.isEmpty()) {
+            return fallback;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number: " + value);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return Map.of();
+        }
+        return Stream.of(rawQuery.split("&"))
+            .map(pair -> pair.split("=", 2))
+            .collect(Collectors.toMap(
+                kv -> URLDecoder.decode(kv[0], StandardCharsets.UTF_8),
+                kv -> kv.length == 2 ? URLDecoder.decode(kv[1], StandardCharsets.UTF_8) : "",
+                (a, b) -> b));
+    }
+
+    private static void send(HttpExchange exchange, Response response) throws IOException {
+        try (exchange) {
+            if (response.sequence >= 0) {
+                exchange.getResponseHeaders().set(SEQUENCE_HEADER, Long.toString(response.sequence));
+            }
+            if (response.body == null) {
+                exchange.sendResponseHeaders(response.status, -1);
+                return;
+            }
+            byte[] bytes = Json.write(response.body).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(response.status, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+    }
+
+    private static final class Response {
+        final int status;
+        final Object body;
+        final long sequence;
+
+        Response(int status, Object body, long sequence) {
+            this.status = status;
+            this.body = body;
+            this.sequence = sequence;
+        }
+
+        static Response ok(Object body) {
+            return new Response(200, body, -1);
+        }
+
+        static Response created(Object body, long sequence) {
+            return new Response(201, body, sequence);
+        }
+
+        static Response noContent(long sequence) {
+            return new Response(204, null, sequence);
+        }
+
+        static Response error(int status, String message) {
+            return new Response(status, Map.of("error", message == null ? "" : message), -1);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Converts entities to and from the JSON objects used by the API. Every
+ * encoded entity carries the store id it was assigned on the server.
+ */
+public final class EntityCodec {
+    private EntityCodec() {
+    }
+
+    public static Map<String, Object> encode(String storeName, long id, Object entity) {
+        switch (storeName) {
+            case "patients": return encodePatient(id, (Patient) entity);
+            case "doctors": return encodeDoctor(id, (Doctor) entity);
+            case "appointments": return encodeAppointment(id, (Appointment) entity);
+            case "recurringSeries": return encodeSeries(id, (RecurringAppointment) entity);
+            case "billingRecords": return encodeBillingRecord(id, (BillingRecord) entity);
+            default: throw new IllegalArgumentException("Unknown store: " + storeName);
+        }
+    }
+
+    public static Object decode(String storeName, Map<String, Object> json) {
+        switch (storeName) {
+            case "patients": return decodePatient(json);
+            case "doctors": return decodeDoctor(json);
+            case "appointments": return decodeAppointment(json);
+            case "recurringSeries": return decodeSeries(json);
+            case "billingRecords": return decodeBillingRecord(json);
+            default: throw new IllegalArgumentException("Unknown store: " + storeName);
+        }
+    }
+
+    public static Map<String, Object> encodePatient(long id, Patient p) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("id", id);
+        json.put("patientId", p.getPatientId());
+        json.put("name", p.getName());
+        json.put("dateOfBirth", p.getDateOfBirth());
+        json.put("contactInfo", p.getContactInfo());
+        json.put("medicalHistory", p.getMedicalHistory());
+        return json;
+    }
+
+    public static Patient decodePatient(Map<String, Object> json) {
+        return new Patient(string(json, "patientId"), string(json, "name"), date(json, "dateOfBirth"),
+            string(json, "contactInfo"), string(json, "medicalHistory"));
+    }
+
+    public static Map<String, Object> encodeDoctor(long id, Doctor d) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("id", id);
+        json.put("name", d.getName());
+        json.put("specialization", d.specializationProperty().get());
+        json.put("contactInfo", d.contactInfoProperty().get());
+        return json;
+    }
+
+    public static Doctor decodeDoctor(Map<String, Object> json) {
+        return new Doctor(string(json, "name"), string(json, "specialization"), string(json, "contactInfo"));
+    }
+
+    public static Map<String, Object> encodeAppointment(long id, Appointment a) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("id", id);
+        json.put("patientId", a.patientIdProperty().get());
+        json.put("patientName", a.getPatientName());
+        json.put("doctorName", a.getDoctorName());
+        json.put("date", a.getDate());
+        json.put("time", a.getTime());
+        return json;
+    }
+
+    public static Appointment decodeAppointment(Map<String, Object> json) {
+        return new Appointment(string(json, "patientId"), string(json, "patientName"), string(json, "doctorName"),
+            date(json, "date"), time(json, "time"));
+    }
+
+    public static Map<String, Object> encodeSeries(long id, RecurringAppointment s) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("id", id);
+        json.put("patientId", s.getPatientId());
+        json.put("patientName", s.getPatientName());
+        json.put("doctorName", s.getDoctorName());
+        json.put("startDate", s.getStartDate());
+        json.put("time", s.getTime());
+        json.put("rule", s.getRule().toRRule());
+        return json;
+    }
+
+    public static RecurringAppointment decodeSeries(Map<String, Object> json) {
+        return new RecurringAppointment(string(json, "patientId"), string(json, "patientName"),
+            string(json, "doctorName"), date(json, "startDate"), time(json, "time"), rule(json, "rule"));
+    }
+
+    public static Map<String, Object> encodeBillingRecord(long id, BillingRecord r) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("id", id);
+        json.put("patientId", r.getPatientId());
+        json.put("patient", r.getPatient());
+        json.put("service", r.serviceProperty().get());
+        json.put("amount", Money.toDollars(r.getAmountCents()));
+        json.put("date", r.getDate());
+        return json;
+    }
+
+    public static BillingRecord decodeBillingRecord(Map<String, Object> json) {
+        return new BillingRecord(string(json, "patientId"), string(json, "patient"), string(json, "service"),
+            Money.toCents(number(json, "amount")), date(json, "date"));
+    }
+
+    // Field accessors; malformed values surface as IllegalArgumentException
+
+    public static String string(Map<String, Object> json, String field) {
+        Object value = json.get(field);
+        return value == null ? null : value.toString();
+    }
+
+    public static long id(Map<String, Object> json) {
+        Object value = json.get("id");
+        if (!(value instanceof Number)) {
+            throw new IllegalArgumentException("Missing id");
+        }
+        return ((Number) value).longValue();
+    }
+
+    public static double number(Map<String, Object> json, String field) {
+        Object value = json.get(field);
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        try {
+            return value == null ? 0 : Double.parseDouble(value.toString());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + field + ": " + value);
+        }
+    }
+
+    public static LocalDate date(Map<String, Object> json, String field) {
+        String value = string(json, field);
+        try {
+            return value == null || value.isEmpty() ? null : LocalDate.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid " + field + ": " + value);
+        }
+    }
+
+    public static LocalTime time(Map<String, Object> json, String field) {
+        String value = string(json, field);
+        try {
+            return value == null || value.isEmpty() ? null : LocalTime.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid " + field + ": " + value);
+        }
+    }
+
+    public static RecurrenceRule rule(Map<String, Object> json, String field) {
+        String value = string(json, field);
+        try {
+            return value == null || value.isEmpty() ? null : RecurrenceRule.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid " + field + ": " + value);
+        }
+    }
+}
@@ -0,0 +1,360 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.YearMonth;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Streams the {@link ChangeLog} of a primary's {@link ClinicStore} over TCP to
+ * warm standbys, each a {@link StandbyReplica} in another JVM.
+ *
+ * Every standby gets its own thread and cursor into the log: a standby that
+ * reconnects resumes after the last change it applied, and one that is new,
+ * was following another primary or fell further behind than the log retains
+ * is first sent a snapshot. Writers never wait for a standby; a slow one only
+ * falls behind, which {@link #lag()} reports.
+ *
+ * The shipper listens on the loopback interface unless
+ * {@code shms.replication.bind} names another address. A standby must open
+ * with the shared secret of {@code shms.replication.secret}; until it has,
+ * nothing is sent, and a wrong secret closes the connection. Without that
+ * property a random secret is generated at startup (see {@link #getSecret}).
+ *
+ * The protocol is one JSON object per line:
+ * <pre>
+ * standby  {"secret":"&lt;shared secret&gt;"}
+ * primary  {"kind":"hello","primary":"&lt;id&gt;","sequence":42}
+ * standby  {"after":40}                      (-1 asks for a snapshot)
+ * primary  {"kind":"snapshot","sequence":S}, one {"kind":"row","store":..,"entity":{..}} per record,
+ *          then one {"kind":"row","store":..,"archived":true,"entity":{..}} per archived record, month by month,
+ *          {"kind":"snapshotEnd","sequence":S}
+ * primary  {"kind":"change","sequence":43,"type":"ADDED","store":..,"id":..,"entity":{..}}
+ *          ("archived":true on a removal that moved the record to the archive)
+ * primary  {"kind":"heartbeat","sequence":43}  every second while idle
+ * standby  {"ack":43}
+ * </pre>
+ */
+public class LogShipper {
+    public static final String SECRET_PROPERTY = "shms.replication.secret";
+    private static final Logger LOG = Logger.getLogger("SHMS.replication");
+    private static final int MAX_CHANGES_PER_BATCH = 1000;
+    static final long HEARTBEAT_MILLIS = 1000;
+    /** How long a new connection has to present the secret, and the most characters it may send for it. */
+    private static final int HANDSHAKE_MILLIS = 5000;
+    private static final int MAX_HANDSHAKE_CHARS = 1024;
+
+    private final ClinicStore store;
+    private final ChangeLog log;
+    private final ServerSocket serverSocket;
+    private final String secret;
+    private final boolean generatedSecret;
+    private final String primaryId = UUID.randomUUID().toString();
+    private final Set<Standby> standbys = ConcurrentHashMap.newKeySet();
+    private final Counter shipped = MetricsRegistry.global().counter("replication.shipped");
+    private volatile boolean running;
+
+    public LogShipper(ClinicStore store, int port) throws IOException {
+        this.store = store;
+        this.log = store.changeLog();
+        String bind = System.getProperty("shms.replication.bind");
+        InetAddress address = bind == null ? InetAddress.getLoopbackAddress() : InetAddress.getByName(bind);
+        String configured = System.getProperty(SECRET_PROPERTY);
+        this.generatedSecret = configured == null || configured.isEmpty();
+        this.secret = generatedSecret ? newSecret() : configured;
+        this.serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(address, port));
+    }
+
+    private static String newSecret() {
+        byte[] bytes = new byte[24];
+        new SecureRandom().nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    public void start() {
+        running = true;
+        MetricsRegistry.global().gauge("replication.standbys", standbys::size);
+        MetricsRegistry.global().gauge("replication.standbyLag.changes", this::lag);
+        Thread acceptor = new Thread(this::accept, "log-shipper");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public void stop() {
+        running = false;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            LOG.log(Level.FINE, "Closing the replication socket", e);
+        }
+        standbys.forEach(Standby::close);
+    }
+
+    /** The bound port, useful when the shipper was created with port 0. */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public InetSocketAddress getAddress() {
+        return (InetSocketAddress) serverSocket.getLocalSocketAddress();
+    }
+
+    /** The secret standbys must present; see {@link #isSecretGenerated}. */
+    public String getSecret() {
+        return secret;
+    }
+
+    /** Whether {@link #getSecret} was generated because {@code shms.replication.secret} is not set. */
+    public boolean isSecretGenerated() {
+        return generatedSecret;
+    }
+
+    public int standbyCount() {
+        return standbys.size();
+    }
+
+    /** Changes the furthest-behind standby has not yet acknowledged; 0 without standbys. */
+    public long lag() {
+        long watermark = log.watermark();
+        return standbys.stream().mapToLong(s -> Math.max(0, watermark - s.acked)).max().orElse(0);
+    }
+
+    private void accept() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                Standby standby = new Standby(socket);
+                standbys.add(standby);
+                Thread t = new Thread(standby, "log-shipper-" + socket.getRemoteSocketAddress());
+                t.setDaemon(true);
+                t.start();
+            } catch (IOException e) {
+                if (running) {
+                    LOG.log(Level.WARNING, "Accepting a standby failed", e);
+                }
+            }
+        }
+    }
+
+    private final class Standby implements Runnable {
+        private final Socket socket;
+        private volatile long acked;
+
+        Standby(Socket socket) {
+            this.socket = socket;
+        }
+
+        @Override
+        public void run() {
+            try (Socket s = socket) {
+                BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(),
+                    StandardCharsets.UTF_8));
+                Writer out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8));
+                if (!authenticated(s, in)) {
+                    LOG.warning(() -> "Rejected standby " + s.getRemoteSocketAddress()
+                        + ": missing or wrong replication secret");
+                    return;
+                }
+                Map<String, Object> hello = frame("hello");
+                hello.put("primary", primaryId);
+                hello.put("sequence", log.watermark());
+                write(out, hello);
+                out.flush();
+                String request = in.readLine();
+                if (request == null) {
+                    return;
+                }
+                long after = sequenceField(request, "after");
+                s.setSoTimeout(0);
+                acked = Math.max(after, 0);
+                LOG.info(() -> "Standby " + s.getRemoteSocketAddress() + " connected after sequence " + after);
+                long cursor = after < 0 || after > log.watermark() || !log.covers(after) ? sendSnapshot(out) : after;
+                while (running) {
+                    readAcks(in);
+                    List<StoreChange<?>> changes;
+                    try {
+                        changes = log.changesAfter(cursor, MAX_CHANGES_PER_BATCH);
+                    } catch (IllegalStateException e) {
+                        cursor = sendSnapshot(out);
+                        continue;
+                    }
+                    if (changes.isEmpty()) {
+                        if (log.awaitAfter(cursor, HEARTBEAT_MILLIS) <= cursor) {
+                            Map<String, Object> heartbeat = frame("heartbeat");
+                            heartbeat.put("sequence", cursor);
+                            write(out, heartbeat);
+                            out.flush();
+                        }
+                        continue;
+                    }
+                    for (StoreChange<?> change : changes) {
+                        Map<String, Object> json = frame("change");
+                        json.put("sequence", change.getSequence());
+                        json.put("type", change.getType().name());
+                        json.put("store", change.getStoreName());
+                        json.put("id", change.getId());
+                        if (change.isArchived()) {
+                            json.put("archived", true);
+                        }
+                        json.put("entity", EntityCodec.encode(change.getStoreName(), change.getId(),
+                            change.getEntity()));
+                        write(out, json);
+                        cursor = change.getSequence();
+                    }
+                    out.flush();
+                    shipped.add(changes.size());
+                }
+            } catch (IOException | UncheckedIOException e) {
+                LOG.info(() -> "Standby " + socket.getRemoteSocketAddress() + " disconnected: " + e.getMessage());
+            } catch (RuntimeException e) {
+                LOG.log(Level.WARNING, "Dropped standby " + socket.getRemoteSocketAddress() + " after an error", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                standbys.remove(this);
+            }
+        }
+
+        /**
+         * Reads the standby's opening line, of bounded length and within
+         * {@link #HANDSHAKE_MILLIS}, and checks its secret in constant time.
+         * The timeout stays set until the standby has said where to resume.
+         */
+        private boolean authenticated(Socket s, Reader in) throws IOException {
+            s.setSoTimeout(HANDSHAKE_MILLIS);
+            StringBuilder line = new StringBuilder();
+            int c;
+            while ((c = in.read()) >= 0 && c != '\n') {
+                if (line.length() == MAX_HANDSHAKE_CHARS) {
+                    return false;
+                }
+                line.append((char) c);
+            }
+            String presented;
+            try {
+                presented = EntityCodec.string(Json.readObject(line.toString()), "secret");
+            } catch (IllegalArgumentException e) {
+                return false;
+            }
+            return presented != null && MessageDigest.isEqual(presented.getBytes(StandardCharsets.UTF_8),
+                secret.getBytes(StandardCharsets.UTF_8));
+        }
+
+        /** Sends every record as of a new snapshot and returns the snapshot's sequence. */
+        private long sendSnapshot(Writer out) throws IOException {
+            try (ClinicSnapshot snapshot = store.openSnapshot()) {
+                Map<String, Object> begin = frame("snapshot");
+                begin.put("sequence", snapshot.sequence());
+                write(out, begin);
+                sendRows(out, "patients", snapshot.patients());
+                sendRows(out, "doctors", snapshot.doctors());
+                sendRows(out, "appointments", snapshot.appointments());
+                sendRows(out, "recurringSeries", snapshot.recurringSeries());
+                sendRows(out, "billingRecords", snapshot.billingRecords());
+                ColdArchive archive = store.archive();
+                if (archive != null) {
+                    for (YearMonth month : archive.months()) {
+                        sendArchived(out, "appointments",
+                            snapshot.archivedAppointments(month.atDay(1), month.atEndOfMonth()));
+                        sendArchived(out, "billingRecords",
+                            snapshot.archivedBillingRecords(month.atDay(1), month.atEndOfMonth()));
+                    }
+                }
+                Map<String, Object> end = frame("snapshotEnd");
+                end.put("sequence", snapshot.sequence());
+                write(out, end);
+                out.flush();
+                LOG.info(() -> "Sent snapshot at sequence " + snapshot.sequence() + " to standby "
+                    + socket.getRemoteSocketAddress());
+                return snapshot.sequence();
+            }
+        }
+
+        private <T> void sendRows(Writer out, String storeName, ClinicSnapshot.Table<T> table) {
+            table.forEachEntry((id, entity) -> {
+                Map<String, Object> row = frame("row");
+                row.put("store", storeName);
+                row.put("entity", EntityCodec.encode(storeName, id, entity));
+                try {
+                    write(out, row);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+
+        private void sendArchived(Writer out, String storeName, List<?> records) throws IOException {
+            for (Object entity : records) {
+                Map<String, Object> row = frame("row");
+                row.put("store", storeName);
+                row.put("archived", true);
+                row.put("entity", EntityCodec.encode(storeName, 0, entity));
+                write(out, row);
+            }
+        }
+
+        /** Takes whatever acknowledgements have arrived, without waiting for more. */
+        private void readAcks(BufferedReader in) throws IOException {
+            while (in.ready()) {
+                String line = in.readLine();
+                if (line == null) {
+                    throw new IOException("Standby closed the connection");
+                }
+                acked = sequenceField(line, "ack");
+            }
+        }
+
+        /** Reads a sequence number from a standby's line; a malformed line ends the connection. */
+        private long sequenceField(String line, String field) throws IOException {
+            Object value;
+            try {
+                value = Json.readObject(line).get(field);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Malformed frame from standby: " + e.getMessage());
+            }
+            if (!(value instanceof Number)) {
+                throw new IOException("Malformed frame from standby: no " + field);
+            }
+            return ((Number) value).longValue();
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                LOG.log(Level.FINE, "Closing a standby connection", e);
+            }
+        }
+    }
+
+    private static Map<String, Object> frame(String kind) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("kind", kind);
+        return json;
+    }
+
+    private static void write(Writer out, Map<String, Object> json) throws IOException {
+        out.write(Json.write(json));
+        out.write('\n');
+    }
+}
@@ -0,0 +1,449 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+import javafx.application.Platform;
+
+/**
+ * Thin-client {@link ClinicService} that sends every write to a
+ * {@link ClinicApiServer} and keeps a local replica of the server's data in
+ * its own {@link ClinicStore}.
+ *
+ * The replica is filled from {@code /api/snapshot} and then follows the
+ * server's change feed from a background thread, so the views, indexes and
+ * slot searches work on local data exactly as in standalone mode. A write
+ * returns once the replica has caught up with it, which keeps the forms'
+ * read-your-own-writes behaviour. The request and the catch-up run on a
+ * worker thread; a write made on the JavaFX thread waits for them in a nested
+ * event loop, as a modal dialog does, so the window keeps repainting while the
+ * server answers. Errors reported by the server are rethrown
+ * as the same {@link ValidationException}s the local service would throw.
+ * Every request carries the server's API token, by default the one in
+ * {@code shms.api.token}.
+ */
+public class RemoteClinicService extends ClinicService {
+    private static final long POLL_WAIT_MILLIS = 20_000;
+
+    private final URI baseUri;
+    private final String token;
+    private final HttpClient http = HttpClient.newBuilder()
+        .version(HttpClient.Version.HTTP_1_1)
+        .connectTimeout(Duration.ofSeconds(5))
+        .build();
+    private final ExecutorService requests = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "remote-request");
+        t.setDaemon(true);
+        return t;
+    });
+    /** Requests the JavaFX thread is waiting for, innermost first. Touched on that thread only. */
+    private final Deque<CompletableFuture<?>> fxWaits = new ArrayDeque<>();
+    private final ReplicaApplier replica;
+    private long appliedSequence;
+    private volatile boolean running;
+
+    public RemoteClinicService(URI baseUri) {
+        this(baseUri, System.getProperty(ClinicApiServer.TOKEN_PROPERTY, ""));
+    }
+
+    public RemoteClinicService(URI baseUri, String token) {
+        super(new ClinicStore());
+        this.baseUri = baseUri;
+        this.token = token;
+        this.replica = new ReplicaApplier(store());
+    }
+
+    /**
+     * Loads the server's data and starts following its change feed.
+     *
+     * @throws IOException if the server cannot be reached
+     */
+    public void connect() throws IOException {
+        resync();
+        running = true;
+        Thread follower = new Thread(this::follow, "replica-sync");
+        follower.setDaemon(true);
+        follower.start();
+    }
+
+    public void disconnect() {
+        running = false;
+    }
+
+    // Writes
+
+    @Override
+    public Patient registerPatient(String customId, String name, LocalDate dob, String contactInfo,
+                                   String medicalHistory) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("patientId", customId == null || customId.isEmpty() ? null : customId);
+        body.put("name", name);
+        body.put("dateOfBirth", dob);
+        body.put("contactInfo", contactInfo);
+        body.put("medicalHistory", medicalHistory);
+        return created("patients", send("POST", "/api/patients", body));
+    }
+
+    @Override
+    public Patient updatePatient(Patient patient, String name, LocalDate dob, String contactInfo,
+                                 String medicalHistory) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("name", name);
+        body.put("dateOfBirth", dob);
+        body.put("contactInfo", contactInfo);
+        body.put("medicalHistory", medicalHistory);
+        // The caller may hold an object that an earlier edit replaced
+        Patient current = replica.remoteId(patient) != null
+            ? patient : store().patients().findByKey(patient.getPatientId());
+        return created("patients", send("PUT", "/api/patients/" + remoteId(current != null ? current : patient), body));
+    }
+
+    @Override
+    public Doctor addDoctor(String name, String specialization, String contactInfo) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("name", name);
+        body.put("specialization", specialization);
+        body.put("contactInfo", contactInfo);
+        return created("doctors", send("POST", "/api/doctors", body));
+    }
+
+    @Override
+    public boolean removeDoctor(Doctor doctor) {
+        return delete("/api/doctors/", doctor);
+    }
+
+    @Override
+    public Appointment bookAppointment(Patient patient, Doctor doctor, LocalDate date, LocalTime time) {
+        Map<String, Object> body = booking(patient, date, time);
+        body.put("doctorName", doctor == null ? null : doctor.getName());
+        return created("appointments", send("POST", "/api/appointments", body));
+    }
+
+    @Override
+    public Appointment autoAssignAppointment(Patient patient, String specialization, LocalDate date, LocalTime time) {
+        Map<String, Object> body = booking(patient, date, time);
+        body.put("specialization", specialization);
+        return created("appointments", send("POST", "/api/appointments", body));
+    }
+
+    @Override
+    public boolean cancelAppointment(Appointment appointment) {
+        return delete("/api/appointments/", appointment);
+    }
+
+    @Override
+    public int cancelAppointments(String doctorName, LocalDate from, LocalDate to) {
+        String query = "doctor=" + URLEncoder.encode(doctorName == null ? "" : doctorName, StandardCharsets.UTF_8)
+            + "&from=" + (from == null ? "" : from) + "&to=" + (to == null ? "" : to);
+        String reply = send("DELETE", "/api/appointments?" + query, null);
+        return (int) EntityCodec.number(Json.readObject(reply), "cancelled");
+    }
+
+    @Override
+    public RecurringAppointment bookSeries(Patient patient, Doctor doctor, LocalDate startDate, LocalTime time,
+                                           RecurrenceRule rule) {
+        Map<String, Object> body = seriesBooking(patient, startDate, time, rule);
+        body.put("doctorName", doctor == null ? null : doctor.getName());
+        return created("recurringSeries", send("POST", "/api/series", body));
+    }
+
+    @Override
+    public RecurringAppointment autoAssignSeries(Patient patient, String specialization, LocalDate startDate,
+                                                 LocalTime time, RecurrenceRule rule) {
+        Map<String, Object> body = seriesBooking(patient, startDate, time, rule);
+        body.put("specialization", specialization);
+        return created("recurringSeries", send("POST", "/api/series", body));
+    }
+
+    @Override
+    public boolean cancelSeries(RecurringAppointment series) {
+        return delete("/api/series/", series);
+    }
+
+    @Override
+    public BillingRecord addBillingRecord(Patient patient, String service, double amount, LocalDate date) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("patientId", patient == null ? null : patient.getPatientId());
+        body.put("service", service);
+        body.put("amount", amount);
+        body.put("date", date);
+        return created("billingRecords", send("POST", "/api/billing", body));
+    }
+
+    @Override
+    public boolean deleteBillingRecord(BillingRecord record) {
+        return delete("/api/billing/", record);
+    }
+
+    // Bulk import writes straight into a store, so it has to run on the server
+
+    @Override
+    public List<String> registerPatients(List<Patient> patients) {
+        throw new ValidationException("Bulk imports run on the clinic server.");
+    }
+
+    @Override
+    public List<String> bookAppointments(String doctorName, List<Appointment> appointments) {
+        throw new ValidationException("Bulk imports run on the clinic server.");
+    }
+
+    @Override
+    public void addBillingRecords(List<BillingRecord> records) {
+        throw new ValidationException("Bulk imports run on the clinic server.");
+    }
+
+    private static Map<String, Object> booking(Patient patient, LocalDate date, LocalTime time) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("patientId", patient == null ? null : patient.getPatientId());
+        body.put("date", date);
+        body.put("time", time);
+        return body;
+    }
+
+    private static Map<String, Object> seriesBooking(Patient patient, LocalDate startDate, LocalTime time,
+                                                     RecurrenceRule rule) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("patientId", patient == null ? null : patient.getPatientId());
+        body.put("startDate", startDate);
+        body.put("time", time);
+        body.put("rule", rule == null ? null : rule.toRRule());
+        return body;
+    }
+
+    private long remoteId(Object entity) {
+        Long id = replica.remoteId(entity);
+        if (id == null) {
+            throw new ValidationException("This record is no longer on the server.");
+        }
+        return id;
+    }
+
+    private boolean delete(String path, Object entity) {
+        Long id = replica.remoteId(entity);
+        if (id == null) {
+            return false;
+        }
+        try {
+            send("DELETE", path + id, null);
+            return true;
+        } catch (NotFound e) {
+            return false;
+        }
+    }
+
+    /** Returns the replica's copy of an entity the server just created or edited. */
+    @SuppressWarnings("unchecked")
+    private <T> T created(String storeName, String reply) {
+        long id = EntityCodec.id(Json.readObject(reply));
+        synchronized (this) {
+            return (T) replica.get(storeName, id);
+        }
+    }
+
+    // Transport
+
+    private static final class NotFound extends ValidationException {
+        private static final long serialVersionUID = 1L;
+
+        NotFound(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Performs a write and waits until the replica includes it. Returns the
+     * response body.
+     */
+    private String send(String method, String path, Object body) {
+        return offFxThread(() -> exchangeAndCatchUp(method, path, body));
+    }
+
+    private String exchangeAndCatchUp(String method, String path, Object body) {
+        HttpRequest.Builder request = request(path).timeout(Duration.ofSeconds(30));
+        if (body == null) {
+            request.method(method, HttpRequest.BodyPublishers.noBody());
+        } else {
+            request.header("Content-Type", "application/json")
+                .method(method, HttpRequest.BodyPublishers.ofString(Json.write(body), StandardCharsets.UTF_8));
+        }
+        HttpResponse<String> response = exchange(request.build());
+        int status = response.statusCode();
+        if (status >= 400) {
+            String message = errorMessage(response.body());
+            if (status == 404) {
+                throw new NotFound(message);
+            }
+            throw status == 409 ? new ConflictException(message) : new ValidationException(message);
+        }
+        long sequence = response.headers().firstValueAsLong(ClinicApiServer.SEQUENCE_HEADER).orElse(0);
+        catchUp(sequence);
+        return response.body();
+    }
+
+    /**
+     * Runs a request on a worker thread. On the JavaFX thread the wait happens
+     * in a nested event loop, which is left from a {@code runLater} once the
+     * request is done; any other thread simply blocks.
+     */
+    private <R> R offFxThread(Supplier<R> request) {
+        CompletableFuture<R> result = CompletableFuture.supplyAsync(request, requests);
+        if (Platform.isFxApplicationThread()) {
+            fxWaits.push(result);
+            result.whenComplete((value, failure) -> Platform.runLater(this::leaveFinishedWait));
+            Platform.enterNestedEventLoop(result);
+        }
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Leaves the innermost nested loop if its request is done. A request that
+     * finishes under a newer one waits until that one is left, so this runs
+     * again after every exit.
+     */
+    private void leaveFinishedWait() {
+        CompletableFuture<?> innermost = fxWaits.peek();
+        if (innermost != null && innermost.isDone()) {
+            fxWaits.pop();
+            Platform.exitNestedEventLoop(innermost, null);
+            Platform.runLater(this::leaveFinishedWait);
+        }
+    }
+
+    private HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder(baseUri.resolve(path)).header("Authorization", "Bearer " + token);
+    }
+
+    private HttpResponse<String> exchange(HttpRequest request) {
+        try {
+            return http.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new ValidationException("Cannot reach the clinic server: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ValidationException("Interrupted while contacting the clinic server.");
+        }
+    }
+
+    private static String errorMessage(String body) {
+        try {
+            String error = EntityCodec.string(Json.readObject(body), "error");
+            return error == null ? body : error;
+        } catch (IllegalArgumentException e) {
+            return body;
+        }
+    }
+
+    // Replication
+
+    private void follow() {
+        while (running) {
+            try {
+                long after;
+                synchronized (this) {
+                    after = appliedSequence;
+                }
+                pull(after, POLL_WAIT_MILLIS);
+            } catch (RuntimeException | IOException e) {
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /** Pulls changes until the replica has applied {@code sequence}. */
+    private void catchUp(long sequence) {
+        while (true) {
+            long after;
+            synchronized (this) {
+                after = appliedSequence;
+            }
+            if (after >= sequence) {
+                return;
+            }
+            try {
+                pull(after, 1000);
+            } catch (IOException e) {
+                throw new ValidationException("Cannot reach the clinic server: " + e.getMessage());
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void pull(long after, long waitMillis) throws IOException {
+        HttpResponse<String> response = exchange(request("/api/changes?after=" + after + "&wait=" + waitMillis)
+            .timeout(Duration.ofMillis(waitMillis + 10_000)).GET().build());
+        if (response.statusCode() == 410) {
+            resync();
+            return;
+        }
+        if (response.statusCode() != 200) {
+            throw new IOException("Change feed answered " + response.statusCode());
+        }
+        Map<String, Object> feed = Json.readObject(response.body());
+        synchronized (this) {
+            for (Object item : (List<Object>) feed.get("changes")) {
+                Map<String, Object> change = (Map<String, Object>) item;
+                long sequence = ((Number) change.get("sequence")).longValue();
+                if (sequence <= appliedSequence) {
+                    continue;
+                }
+                replica.apply(EntityCodec.string(change, "store"), EntityCodec.string(change, "type"),
+                    EntityCodec.id(change), (Map<String, Object>) change.get("entity"));
+                appliedSequence = sequence;
+            }
+            appliedSequence = Math.max(appliedSequence, ((Number) feed.get("sequence")).longValue());
+        }
+    }
+
+    /**
+     * Replaces the replica's contents with a server snapshot, keeping the
+     * local objects of records that still exist.
+     */
+    @SuppressWarnings("unchecked")
+    private void resync() throws IOException {
+        HttpResponse<String> response = exchange(request("/api/snapshot")
+            .timeout(Duration.ofSeconds(60)).GET().build());
+        if (response.statusCode() == 401) {
+            throw new IOException("The clinic server rejected the API token; set " + ClinicApiServer.TOKEN_PROPERTY);
+        }
+        if (response.statusCode() != 200) {
+            throw new IOException("Snapshot answered " + response.statusCode());
+        }
+        Map<String, Object> snapshot = Json.readObject(response.body());
+        synchronized (this) {
+            replica.beginSnapshot();
+            for (String name : ReplicaApplier.STORES) {
+                for (Object item : (List<Object>) snapshot.get(name)) {
+                    replica.snapshotRow(name, (Map<String, Object>) item);
+                }
+            }
+            replica.endSnapshot();
+            appliedSequence = ((Number) snapshot.get("sequence")).longValue();
+        }
+    }
+}
@@ -0,0 +1,235 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Applies another instance's changes and snapshots, in the JSON form of
+ * {@link EntityCodec}, to a local {@link ClinicStore}, and maps the other
+ * instance's store ids to the local objects and back.
+ *
+ * Records the other instance has archived go into the local store's
+ * {@link ColdArchive}: archived snapshot rows are written as segments, and
+ * archived removals are collected and moved together by {@link #flushMoves},
+ * so that the local archive is cut into segments much like the other's.
+ * Applying either without a local archive is an error rather than a silent
+ * loss of history.
+ *
+ * Used by the thin client's replica and by a warm standby. Not thread-safe:
+ * callers apply under their own lock; only {@link #remoteId} may be called
+ * from any thread.
+ */
+final class ReplicaApplier {
+    static final List<String> STORES =
+        List.of("patients", "doctors", "appointments", "recurringSeries", "billingRecords");
+
+    private final ClinicStore store;
+    private final Map<String, Map<Long, Object>> replicaById = new HashMap<>();
+    private final Map<Object, Long> remoteIds = new ConcurrentHashMap<>();
+    private Map<String, Set<Long>> resyncing;
+    /** The local archive's segments from before the current snapshot, dropped when it ends. */
+    private List<Path> replacedSegments;
+    /** Archived rows of the current snapshot not yet written, all from {@link #archivedMonth}. */
+    private final List<Appointment> archivedAppointments = new ArrayList<>();
+    private final List<BillingRecord> archivedBillingRecords = new ArrayList<>();
+    private YearMonth archivedMonth;
+    /** Records the other instance has moved to its archive, per store: its id and the local one. */
+    private final Map<String, Map<Long, Long>> pendingMoves = new HashMap<>();
+
+    ReplicaApplier(ClinicStore store) {
+        this.store = store;
+        for (String name : STORES) {
+            replicaById.put(name, new HashMap<>());
+        }
+    }
+
+    /** The other instance's id of a local object, or null if it has none. */
+    Long remoteId(Object entity) {
+        return remoteIds.get(entity);
+    }
+
+    /** The local object of the other instance's record, or null. */
+    Object get(String storeName, long id) {
+        return replicaById.get(storeName).get(id);
+    }
+
+    /**
+     * Starts replacing the contents with a snapshot sent row by row through
+     * {@link #snapshotRow}, keeping the local objects of records that still
+     * exist.
+     */
+    void beginSnapshot() {
+        resyncing = new HashMap<>();
+        for (String name : STORES) {
+            resyncing.put(name, new HashSet<>());
+        }
+        pendingMoves.clear();
+        archivedAppointments.clear();
+        archivedBillingRecords.clear();
+        archivedMonth = null;
+        ColdArchive archive = store.archive();
+        replacedSegments = archive == null ? List.of() : archive.segmentFiles();
+    }
+
+    void snapshotRow(String storeName, Map<String, Object> json) {
+        long id = EntityCodec.id(json);
+        resyncing.get(storeName).add(id);
+        apply(storeName, replicaById.get(storeName).containsKey(id) ? "UPDATED" : "ADDED", id, json);
+    }
+
+    /** Buffers an archived row of the snapshot, writing the buffer out whenever the month changes. */
+    void archivedRow(String storeName, Map<String, Object> json) {
+        requireArchive();
+        Object entity = EntityCodec.decode(storeName, json);
+        YearMonth month = YearMonth.from(entity instanceof Appointment
+            ? ((Appointment) entity).getDate() : ((BillingRecord) entity).getDate());
+        if (!month.equals(archivedMonth)) {
+            writeArchivedRows();
+            archivedMonth = month;
+        }
+        if (entity instanceof Appointment) {
+            archivedAppointments.add((Appointment) entity);
+        } else {
+            archivedBillingRecords.add((BillingRecord) entity);
+        }
+    }
+
+    private void writeArchivedRows() {
+        if (archivedAppointments.isEmpty() && archivedBillingRecords.isEmpty()) {
+            return;
+        }
+        try {
+            requireArchive().add(archivedAppointments, archivedBillingRecords);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        archivedAppointments.clear();
+        archivedBillingRecords.clear();
+    }
+
+    /** Removes every record the snapshot did not include, and the archive segments it replaced. */
+    void endSnapshot() {
+        for (String name : STORES) {
+            Set<Long> present = resyncing.get(name);
+            for (Long id : new HashSet<>(replicaById.get(name).keySet())) {
+                if (!present.contains(id)) {
+                    apply(name, "REMOVED", id, null);
+                }
+            }
+        }
+        resyncing = null;
+        writeArchivedRows();
+        archivedMonth = null;
+        if (!replacedSegments.isEmpty()) {
+            try {
+                store.archive().drop(replacedSegments);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        replacedSegments = null;
+    }
+
+    /**
+     * Notes that the other instance moved a record to its archive; it stays
+     * in the local hot store until {@link #flushMoves}.
+     */
+    void archived(String storeName, long id) {
+        requireArchive();
+        Object entity = replicaById.get(storeName).get(id);
+        if (entity != null) {
+            pendingMoves.computeIfAbsent(storeName, k -> new HashMap<>()).put(id, localStore(storeName).idOf(entity));
+        }
+    }
+
+    /** Moves the records noted by {@link #archived} into the local archive. */
+    void flushMoves() {
+        if (pendingMoves.isEmpty()) {
+            return;
+        }
+        try {
+            requireArchive().archive(localIds("appointments"), localIds("billingRecords"));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        pendingMoves.forEach((name, moves) -> {
+            for (Long id : moves.keySet()) {
+                Object moved = replicaById.get(name).remove(id);
+                if (moved != null) {
+                    remoteIds.remove(moved);
+                }
+            }
+        });
+        pendingMoves.clear();
+    }
+
+    private Set<Long> localIds(String storeName) {
+        Map<Long, Long> moves = pendingMoves.get(storeName);
+        return moves == null ? Set.of() : new HashSet<>(moves.values());
+    }
+
+    private ColdArchive requireArchive() {
+        ColdArchive archive = store.archive();
+        if (archive == null) {
+            throw new IllegalStateException("The other instance archives old records; give this one an archive"
+                + " directory of its own with -Dshms.archive.dir");
+        }
+        return archive;
+    }
+
+    /** Applies one change; changes already reflected locally are ignored. */
+    void apply(String storeName, String type, long id, Map<String, Object> json) {
+        Map<Long, Object> replica = replicaById.get(storeName);
+        EntityStore<Object> local = localStore(storeName);
+        switch (type) {
+            case "ADDED":
+                if (!replica.containsKey(id)) {
+                    Object entity = EntityCodec.decode(storeName, json);
+                    local.insert(entity);
+                    replica.put(id, entity);
+                    remoteIds.put(entity, id);
+                }
+                break;
+            case "UPDATED":
+                Object existing = replica.get(id);
+                if (existing instanceof Patient) {
+                    // A new object, as the FX thread may be showing the existing one
+                    Patient edited = EntityCodec.decodePatient(json);
+                    if (local.replace(existing, edited)) {
+                        replica.put(id, edited);
+                        remoteIds.remove(existing);
+                        remoteIds.put(edited, id);
+                    }
+                }
+                break;
+            case "REMOVED":
+                Object removed = replica.remove(id);
+                if (removed != null) {
+                    remoteIds.remove(removed);
+                    local.remove(removed);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private EntityStore<Object> localStore(String storeName) {
+        switch (storeName) {
+            case "patients": return (EntityStore<Object>) (EntityStore<?>) store.patients();
+            case "doctors": return (EntityStore<Object>) (EntityStore<?>) store.doctors();
+            case "appointments": return (EntityStore<Object>) (EntityStore<?>) store.appointments();
+            case "recurringSeries": return (EntityStore<Object>) (EntityStore<?>) store.recurringSeries();
+            case "billingRecords": return (EntityStore<Object>) (EntityStore<?>) store.billingRecords();
+            default: throw new IllegalArgumentException("Unknown store: " + storeName);
+        }
+    }
+}
@@ -0,0 +1,303 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Warm standby of a primary running a {@link LogShipper}: follows the
+ * primary's change log over TCP and applies it to the store of a local
+ * {@link ClinicService}, so the standby's indexes, slot searches and reports
+ * are kept current and ready to take over.
+ *
+ * If the primary has a cold archive the standby needs one of its own, in
+ * another directory: archived records are copied into it with the snapshot,
+ * and the primary's archive runs are repeated in it once a burst of moves
+ * has arrived, so no history is lost on promotion.
+ *
+ * Until {@link #promote} the local service must not be written to; the
+ * primary is the only writer. The standby opens each connection with the
+ * primary's replication secret, {@code shms.replication.secret} unless given
+ * explicitly. A lost connection is retried every second and
+ * resumes after the last applied change. Lag is published as the
+ * {@code replication.lag.changes} and {@code replication.lag.millis} gauges
+ * and logged with the apply rate every ten seconds.
+ */
+public class StandbyReplica {
+    private static final Logger LOG = Logger.getLogger("SHMS.replication");
+    private static final long RECONNECT_MILLIS = 1000;
+    private static final long STATUS_MILLIS = 10_000;
+    /** A primary silent for this long, despite heartbeats, is treated as gone. */
+    private static final int READ_TIMEOUT_MILLIS = (int) (LogShipper.HEARTBEAT_MILLIS * 5);
+    private static final int ACK_EVERY = 1000;
+
+    private final ClinicService service;
+    private final InetSocketAddress primary;
+    private final String secret;
+    private final ReplicaApplier replica;
+    private final Counter applied = MetricsRegistry.global().counter("replication.applied");
+    /** The primary whose sequences {@link #appliedSequence} counts; null forces a snapshot. */
+    private String primaryId;
+    /** The primary of the current connection, which becomes {@link #primaryId} once its snapshot is applied. */
+    private String connectedPrimaryId;
+    private long appliedSequence;
+    private volatile long primarySequence;
+    private volatile long lastContact;
+    private volatile long caughtUpAt;
+    private volatile boolean connected;
+    private volatile boolean running;
+    private volatile Socket socket;
+    private Thread follower;
+
+    /** @param service a new local service with an empty store, which the standby fills */
+    public StandbyReplica(ClinicService service, String host, int port) {
+        this(service, host, port, System.getProperty(LogShipper.SECRET_PROPERTY));
+    }
+
+    public StandbyReplica(ClinicService service, String host, int port, String secret) {
+        if (secret == null || secret.isEmpty()) {
+            throw new IllegalArgumentException("Set -D" + LogShipper.SECRET_PROPERTY
+                + " to the primary's replication secret");
+        }
+        this.service = service;
+        this.primary = new InetSocketAddress(host, port);
+        this.secret = secret;
+        this.replica = new ReplicaApplier(service.store());
+    }
+
+    public void start() {
+        running = true;
+        MetricsRegistry.global().gauge("replication.lag.changes", this::lagChanges);
+        MetricsRegistry.global().gauge("replication.lag.millis", this::lagMillis);
+        follower = new Thread(this::follow, "standby-replica");
+        follower.setDaemon(true);
+        follower.start();
+    }
+
+    public ClinicService service() {
+        return service;
+    }
+
+    public synchronized long appliedSequence() {
+        return appliedSequence;
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /** Whether a full copy of the primary has been applied, after which the standby can take over. */
+    public synchronized boolean isSynced() {
+        return primaryId != null;
+    }
+
+    /** Changes the primary has announced that are not applied yet. */
+    public long lagChanges() {
+        return Math.max(0, primarySequence - appliedSequence());
+    }
+
+    /** Milliseconds since the standby last had everything the primary announced; 0 while caught up. */
+    public long lagMillis() {
+        return lagChanges() == 0 ? 0 : System.currentTimeMillis() - caughtUpAt;
+    }
+
+    /** Milliseconds since anything was heard from the primary, or -1 if it never was. */
+    public long millisSinceContact() {
+        return lastContact == 0 ? -1 : System.currentTimeMillis() - lastContact;
+    }
+
+    /**
+     * Stops following the primary so the local service can take writes. Waits
+     * up to {@code timeoutMillis} for changes already announced by a primary
+     * that is still connected, and returns how many were left unapplied.
+     */
+    public long promote(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (this) {
+            while (connected && primarySequence > appliedSequence) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    break;
+                }
+                wait(remaining);
+            }
+        }
+        running = false;
+        Socket s = socket;
+        if (s != null) {
+            try {
+                s.close();
+            } catch (IOException e) {
+                LOG.fine(() -> "Closing the replication socket: " + e.getMessage());
+            }
+        }
+        if (follower != null) {
+            follower.join();
+        }
+        synchronized (this) {
+            try {
+                replica.flushMoves();
+            } catch (RuntimeException e) {
+                LOG.warning(() -> "Archived records stay in memory until the next archive run: " + e.getMessage());
+            }
+        }
+        long lag = lagChanges();
+        LOG.info(() -> "Promoted at sequence " + appliedSequence() + " with " + lag + " announced changes unapplied");
+        return lag;
+    }
+
+    private void follow() {
+        long statusAt = System.currentTimeMillis();
+        long appliedAtStatus = 0;
+        int failures = 0;
+        while (running) {
+            try (Socket s = new Socket()) {
+                socket = s;
+                s.connect(primary, READ_TIMEOUT_MILLIS);
+                s.setSoTimeout(READ_TIMEOUT_MILLIS);
+                BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(),
+                    StandardCharsets.UTF_8));
+                Writer out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8));
+                long after = handshake(in, out);
+                connected = true;
+                failures = 0;
+                LOG.info(() -> "Following primary " + primary
+                    + (after < 0 ? " from a snapshot" : " after sequence " + after));
+                int unacked = 0;
+                String line;
+                while (running && (line = in.readLine()) != null) {
+                    lastContact = System.currentTimeMillis();
+                    unacked += apply(Json.readObject(line));
+                    if (unacked >= ACK_EVERY || (unacked > 0 && !in.ready())) {
+                        out.write("{\"ack\":" + appliedSequence() + "}\n");
+                        out.flush();
+                        unacked = 0;
+                    }
+                    long now = System.currentTimeMillis();
+                    if (now - statusAt >= STATUS_MILLIS) {
+                        long total = applied.getCount();
+                        double rate = (total - appliedAtStatus) * 1000.0 / (now - statusAt);
+                        LOG.info(String.format("Applied %,d changes (%,.0f/s), at sequence %d, lag %d changes / %d ms",
+                            total, rate, appliedSequence(), lagChanges(), lagMillis()));
+                        statusAt = now;
+                        appliedAtStatus = total;
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                // Warn once per outage; retries every second would flood the log
+                if (running && ++failures == 1) {
+                    LOG.warning(() -> "Replication from " + primary + " interrupted: " + e.getMessage());
+                }
+            } finally {
+                connected = false;
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+            if (running) {
+                try {
+                    Thread.sleep(RECONNECT_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Presents the secret, reads the primary's hello and asks for the changes
+     * after ours, or for a snapshot (-1) if ours are not its. Returns what was
+     * asked for.
+     */
+    private long handshake(BufferedReader in, Writer out) throws IOException {
+        Map<String, Object> auth = new LinkedHashMap<>();
+        auth.put("secret", secret);
+        out.write(Json.write(auth) + "\n");
+        out.flush();
+        String line = in.readLine();
+        if (line == null) {
+            throw new IOException("Primary closed the connection; is " + LogShipper.SECRET_PROPERTY + " right?");
+        }
+        Map<String, Object> hello = Json.readObject(line);
+        String id = EntityCodec.string(hello, "primary");
+        primarySequence = ((Number) hello.get("sequence")).longValue();
+        long after;
+        synchronized (this) {
+            after = id.equals(primaryId) ? appliedSequence : -1;
+        }
+        out.write("{\"after\":" + after + "}\n");
+        out.flush();
+        lastContact = System.currentTimeMillis();
+        if (after >= 0 && primarySequence <= after) {
+            caughtUpAt = lastContact;
+        }
+        synchronized (this) {
+            connectedPrimaryId = id;
+        }
+        return after;
+    }
+
+    /** Applies one frame and returns the number of changes it carried. */
+    @SuppressWarnings("unchecked")
+    private int apply(Map<String, Object> frame) {
+        String kind = EntityCodec.string(frame, "kind");
+        long sequence = frame.containsKey("sequence") ? ((Number) frame.get("sequence")).longValue() : 0;
+        int changes = 0;
+        synchronized (this) {
+            switch (kind) {
+                case "snapshot":
+                    primaryId = null;
+                    replica.beginSnapshot();
+                    break;
+                case "row":
+                    String store = EntityCodec.string(frame, "store");
+                    Map<String, Object> entity = (Map<String, Object>) frame.get("entity");
+                    if (Boolean.TRUE.equals(frame.get("archived"))) {
+                        replica.archivedRow(store, entity);
+                    } else {
+                        replica.snapshotRow(store, entity);
+                    }
+                    break;
+                case "snapshotEnd":
+                    replica.endSnapshot();
+                    primaryId = connectedPrimaryId;
+                    appliedSequence = sequence;
+                    changes = 1;
+                    break;
+                case "change":
+                    if (sequence > appliedSequence && Boolean.TRUE.equals(frame.get("archived"))) {
+                        replica.archived(EntityCodec.string(frame, "store"), EntityCodec.id(frame));
+                        appliedSequence = sequence;
+                        applied.increment();
+                        changes = 1;
+                    } else if (sequence > appliedSequence) {
+                        replica.flushMoves();
+                        replica.apply(EntityCodec.string(frame, "store"), EntityCodec.string(frame, "type"),
+                            EntityCodec.id(frame), (Map<String, Object>) frame.get("entity"));
+                        appliedSequence = sequence;
+                        applied.increment();
+                        changes = 1;
+                    }
+                    break;
+                case "heartbeat":
+                    replica.flushMoves();
+                    break;
+                default:
+                    break;
+            }
+            primarySequence = Math.max(primarySequence, sequence);
+            if (primaryId != null && appliedSequence >= primarySequence) {
+                caughtUpAt = System.currentTimeMillis();
+            }
+            notifyAll();
+        }
+        return changes;
+    }
+}
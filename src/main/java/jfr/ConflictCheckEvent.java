@@ -0,0 +1,29 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** A check of a doctor's slot, or of every occurrence of a series, against existing bookings. */
+@Name("shms.ConflictCheck")
+@Label("Booking Conflict Check")
+@Category({"SHMS", "Scheduling"})
+@StackTrace(false)
+public class ConflictCheckEvent extends Event {
+    @Label("Doctor")
+    public String doctor;
+
+    @Label("Date")
+    public String date;
+
+    @Label("Time")
+    public String time;
+
+    @Label("Series")
+    @Description("Whether every occurrence of a recurring series was checked")
+    public boolean series;
+
+    @Label("Conflict")
+    public boolean conflict;
+}
@@ -0,0 +1,63 @@
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+/**
+ * Continuous flight recording with the JDK's "default" settings plus the
+ * shipped {@code shms.jfc} profile for the application's own events.
+ *
+ * Started with {@code -Dshms.jfr=<file>}: the last
+ * {@code shms.jfr.maxAgeMinutes} (default 60) minutes are kept on disk and
+ * written to the file when the application exits, or at any time with
+ * {@code jcmd <pid> JFR.dump name=SHMS filename=...}.
+ */
+public final class FlightRecording {
+    private static final Logger LOG = Logger.getLogger("SHMS.jfr");
+    public static final String PROFILE = "/shms.jfc";
+    public static final String RECORDING_NAME = "SHMS";
+
+    private FlightRecording() {
+    }
+
+    /** Starts the recording if {@code shms.jfr} is set; returns it, or null. */
+    public static Recording startIfConfigured() {
+        String file = System.getProperty("shms.jfr");
+        if (file == null || file.isBlank()) {
+            return null;
+        }
+        try {
+            Recording recording = new Recording(settings());
+            recording.setName(RECORDING_NAME);
+            recording.setToDisk(true);
+            recording.setMaxAge(Duration.ofMinutes(Long.getLong("shms.jfr.maxAgeMinutes", 60)));
+            recording.setDestination(Path.of(file));
+            recording.setDumpOnExit(true);
+            recording.start();
+            LOG.info("Flight recording started; it is written to " + file + " on exit");
+            return recording;
+        } catch (IOException | ParseException | RuntimeException e) {
+            LOG.log(Level.WARNING, "Could not start the flight recording", e);
+            return null;
+        }
+    }
+
+    /** The JDK default settings overlaid with the SHMS event settings. */
+    public static Map<String, String> settings() throws IOException, ParseException {
+        Map<String, String> settings = new HashMap<>(Configuration.getConfiguration("default").getSettings());
+        try (Reader profile = new InputStreamReader(FlightRecording.class.getResourceAsStream(PROFILE),
+                StandardCharsets.UTF_8)) {
+            settings.putAll(Configuration.create(profile).getSettings());
+        }
+        return settings;
+    }
+}
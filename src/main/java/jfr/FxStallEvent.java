@@ -0,0 +1,26 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/** Committed when the FX Application Thread recovers from a stall. */
+@Name("shms.FxStall")
+@Label("FX Thread Stall")
+@Category({"SHMS", "UI"})
+@Description("The FX Application Thread did not run queued work within the watchdog threshold")
+@StackTrace(false)
+public class FxStallEvent extends Event {
+    @Label("Stall Duration")
+    @Timespan(Timespan.NANOSECONDS)
+    public long stallDuration;
+
+    @Label("Samples")
+    public int samples;
+
+    @Label("Top Frame")
+    @Description("Application frame closest to the top of the stack in most samples")
+    public String topFrame;
+}
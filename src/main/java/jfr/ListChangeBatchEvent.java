@@ -0,0 +1,29 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One batch of store changes applied to an FX list, including the list
+ * listeners it fired. Many large batches in a short time are a change storm.
+ */
+@Name("shms.ListChangeBatch")
+@Label("List Change Batch")
+@Category({"SHMS", "UI"})
+@Description("Store changes applied to an FX list mirror on the FX Application Thread")
+@StackTrace(false)
+public class ListChangeBatchEvent extends Event {
+    @Label("Store")
+    public String store;
+
+    @Label("Added")
+    public int added;
+
+    @Label("Removed")
+    public int removed;
+
+    @Label("List Size")
+    public int listSize;
+}
@@ -0,0 +1,54 @@
+import javafx.scene.control.Dialog;
+import javafx.stage.Stage;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import java.util.Optional;
+
+/**
+ * Time a modal dialog kept its caller waiting. The FX thread keeps pulsing
+ * in a nested event loop meanwhile, so this is not a stall, but it explains
+ * gaps in the handler that opened the dialog.
+ */
+@Name("shms.ModalDialog")
+@Label("Modal Dialog")
+@Category({"SHMS", "UI"})
+@Description("A modal dialog shown with showAndWait")
+public class ModalDialogEvent extends Event {
+    @Label("Dialog Type")
+    public String dialogType;
+
+    @Label("Title")
+    public String title;
+
+    public static <R> Optional<R> showAndWait(Dialog<R> dialog) {
+        ModalDialogEvent event = new ModalDialogEvent();
+        event.begin();
+        try {
+            return dialog.showAndWait();
+        } finally {
+            event.commit(dialog.getClass().getSimpleName(), dialog.getTitle());
+        }
+    }
+
+    public static void showAndWait(Stage stage) {
+        ModalDialogEvent event = new ModalDialogEvent();
+        event.begin();
+        try {
+            stage.showAndWait();
+        } finally {
+            event.commit(stage.getClass().getSimpleName(), stage.getTitle());
+        }
+    }
+
+    private void commit(String dialogType, String title) {
+        end();
+        if (shouldCommit()) {
+            this.dialogType = dialogType;
+            this.title = title;
+            commit();
+        }
+    }
+}
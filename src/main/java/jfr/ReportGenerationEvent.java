@@ -0,0 +1,25 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/** One analytics report built from a store snapshot, on the analytics thread. */
+@Name("shms.ReportGeneration")
+@Label("Report Generation")
+@Category({"SHMS", "Analytics"})
+@Description("Aggregation and chart construction of one analytics report")
+public class ReportGenerationEvent extends Event {
+    @Label("Report Type")
+    public String reportType;
+
+    @Label("Rows")
+    @Description("Appointments, series and billing records in the report's input")
+    public long rows;
+
+    @Label("Snapshot Time")
+    @Description("Time the analytics thread spent opening the store snapshot the report reads")
+    @Timespan(Timespan.NANOSECONDS)
+    public long snapshotTime;
+}
@@ -0,0 +1,29 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One patient search. Only the shape of the query is recorded, never its
+ * text, since it is usually a patient's name and recordings leave the clinic.
+ */
+@Name("shms.SearchQuery")
+@Label("Search Query")
+@Category({"SHMS", "Search"})
+@Description("A patient search from the patient table filter or the type-ahead index")
+@StackTrace(false)
+public class SearchQueryEvent extends Event {
+    @Label("Source")
+    public String source;
+
+    @Label("Criteria")
+    public String criteria;
+
+    @Label("Query Length")
+    public int queryLength;
+
+    @Label("Results")
+    public int results;
+}
@@ -0,0 +1,37 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monotonic event counter. Increments from many threads touch separate cells
+ * ({@link LongAdder}) so they do not contend.
+ */
+public class Counter implements Metric, CounterMBean {
+    private final String name;
+    private final LongAdder count = new LongAdder();
+
+    Counter(String name) {
+        this.name = name;
+    }
+
+    public void increment() {
+        count.increment();
+    }
+
+    public void add(long n) {
+        count.add(n);
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String summary() {
+        return "count=" + getCount();
+    }
+}
@@ -0,0 +1,4 @@
+/** JMX view of a {@link Counter}. */
+public interface CounterMBean {
+    long getCount();
+}
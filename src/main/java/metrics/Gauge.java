@@ -0,0 +1,31 @@
+import java.util.function.DoubleSupplier;
+
+/**
+ * A value sampled on demand, such as a store size. Nothing is recorded on the
+ * hot path; the supplier runs only when the gauge is read.
+ */
+public class Gauge implements Metric, GaugeMBean {
+    private final String name;
+    private final DoubleSupplier supplier;
+
+    Gauge(String name, DoubleSupplier supplier) {
+        this.name = name;
+        this.supplier = supplier;
+    }
+
+    @Override
+    public double getValue() {
+        return supplier.getAsDouble();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String summary() {
+        double value = getValue();
+        return value == Math.rint(value) ? "value=" + (long) value : String.format("value=%.3f", value);
+    }
+}
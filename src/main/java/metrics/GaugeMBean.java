@@ -0,0 +1,4 @@
+/** JMX view of a {@link Gauge}. */
+public interface GaugeMBean {
+    double getValue();
+}
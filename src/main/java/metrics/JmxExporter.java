@@ -0,0 +1,35 @@
+import java.lang.management.ManagementFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Publishes every metric of a registry as a standard MBean named
+ * {@code SHMS:type=<Counter|Gauge|LatencyHistogram>,name=<metric name>}, so
+ * they can be read with JConsole or any JMX client.
+ */
+public final class JmxExporter {
+    private static final Logger LOG = Logger.getLogger("SHMS.metrics");
+    private static final String DOMAIN = "SHMS";
+
+    private JmxExporter() {
+    }
+
+    public static void export(MetricsRegistry registry) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        registry.onRegistration(metric -> {
+            try {
+                ObjectName name = new ObjectName(DOMAIN + ":type=" + metric.getClass().getSimpleName()
+                    + ",name=" + ObjectName.quote(metric.getName()));
+                if (server.isRegistered(name)) {
+                    server.unregisterMBean(name);
+                }
+                server.registerMBean(metric, name);
+            } catch (JMException e) {
+                LOG.log(Level.WARNING, "Could not export metric " + metric.getName() + " over JMX", e);
+            }
+        });
+    }
+}
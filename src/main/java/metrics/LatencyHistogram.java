@@ -0,0 +1,159 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Latency histogram with HDR-style log-linear buckets over nanoseconds.
+ *
+ * Values below 64 ns get one bucket each; above that, every power of two is
+ * split into 32 equal buckets, so any recorded value is known to within about
+ * 3% across the whole range of a long, in a fixed 15 KB array. Recording is a
+ * couple of bit operations and one atomic increment, cheap enough to leave on
+ * permanently; percentiles are computed only when read.
+ */
+public class LatencyHistogram implements Metric, LatencyHistogramMBean {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = bucketOf(Long.MAX_VALUE) + 1;
+
+    private final String name;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    static int bucketOf(long nanos) {
+        if (nanos <= 0) {
+            return 0;
+        }
+        int shift = Math.max(0, 63 - Long.numberOfLeadingZeros(nanos) - SUB_BUCKET_BITS);
+        return (shift << SUB_BUCKET_BITS) + (int) (nanos >>> shift);
+    }
+
+    /** Largest value that falls into the bucket. */
+    static long upperBoundOf(int bucket) {
+        int shift = Math.max(0, (bucket >>> SUB_BUCKET_BITS) - 1);
+        long base = bucket - ((long) shift << SUB_BUCKET_BITS);
+        return ((base + 1) << shift) - 1;
+    }
+
+    public void recordNanos(long nanos) {
+        buckets.incrementAndGet(bucketOf(nanos));
+        count.increment();
+        sum.add(nanos);
+        if (nanos > max.get()) {
+            max.accumulateAndGet(nanos, Math::max);
+        }
+    }
+
+    /** Records the time elapsed since {@code startNanos}, a {@link System#nanoTime()} reading. */
+    public void recordSince(long startNanos) {
+        recordNanos(System.nanoTime() - startNanos);
+    }
+
+    public <T> T time(Supplier<T> work) {
+        long start = System.nanoTime();
+        try {
+            return work.get();
+        } finally {
+            recordSince(start);
+        }
+    }
+
+    public void time(Runnable work) {
+        long start = System.nanoTime();
+        try {
+            work.run();
+        } finally {
+            recordSince(start);
+        }
+    }
+
+    /**
+     * The value below which the given fraction of recordings fall, in
+     * nanoseconds (bucket upper bound, capped at the maximum seen).
+     */
+    public long percentileNanos(double fraction) {
+        long total = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(fraction * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank && snapshot[i] > 0) {
+                return Math.min(upperBoundOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public double getMeanMillis() {
+        long n = count.sum();
+        return n == 0 ? 0 : sum.sum() / (double) n / 1e6;
+    }
+
+    @Override
+    public double getP50Millis() {
+        return percentileNanos(0.50) / 1e6;
+    }
+
+    @Override
+    public double getP90Millis() {
+        return percentileNanos(0.90) / 1e6;
+    }
+
+    @Override
+    public double getP99Millis() {
+        return percentileNanos(0.99) / 1e6;
+    }
+
+    @Override
+    public double getP999Millis() {
+        return percentileNanos(0.999) / 1e6;
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return max.get() / 1e6;
+    }
+
+    @Override
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.set(0);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String summary() {
+        return String.format("count=%d mean=%.3fms p50=%.3fms p90=%.3fms p99=%.3fms p999=%.3fms max=%.3fms",
+            getCount(), getMeanMillis(), getP50Millis(), getP90Millis(), getP99Millis(), getP999Millis(),
+            getMaxMillis());
+    }
+}
@@ -0,0 +1,18 @@
+/** JMX view of a {@link LatencyHistogram}; all times are in milliseconds. */
+public interface LatencyHistogramMBean {
+    long getCount();
+
+    double getMeanMillis();
+
+    double getP50Millis();
+
+    double getP90Millis();
+
+    double getP99Millis();
+
+    double getP999Millis();
+
+    double getMaxMillis();
+
+    void reset();
+}
@@ -0,0 +1,9 @@
+/**
+ * A named measurement held by a {@link MetricsRegistry}.
+ */
+public interface Metric {
+    String getName();
+
+    /** One-line human-readable state, used by the periodic log dump. */
+    String summary();
+}
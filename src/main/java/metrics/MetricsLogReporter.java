@@ -0,0 +1,39 @@
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Writes every metric of a registry to the {@code SHMS.metrics} logger at a
+ * fixed interval, one line per metric.
+ */
+public final class MetricsLogReporter {
+    private static final Logger LOG = Logger.getLogger("SHMS.metrics");
+
+    private final MetricsRegistry registry;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "metrics-log");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public MetricsLogReporter(MetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    public void start(long interval, TimeUnit unit) {
+        scheduler.scheduleAtFixedRate(this::report, interval, interval, unit);
+    }
+
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    public void report() {
+        StringBuilder sb = new StringBuilder("metrics:");
+        for (Metric metric : registry.metrics()) {
+            sb.append(System.lineSeparator()).append("  ").append(metric.getName()).append(' ').append(metric.summary());
+        }
+        LOG.info(sb.toString());
+    }
+}
@@ -0,0 +1,79 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+/**
+ * In-process registry of counters, gauges and latency histograms, looked up
+ * by dotted name. Instrumented code keeps the metric it gets back in a field,
+ * so the registry map is only touched when a metric is created.
+ */
+public class MetricsRegistry {
+    private static final MetricsRegistry GLOBAL = new MetricsRegistry();
+
+    private final ConcurrentSkipListMap<String, Metric> metrics = new ConcurrentSkipListMap<>();
+    private final List<Consumer<Metric>> registrationListeners = new CopyOnWriteArrayList<>();
+
+    /** The registry the application's built-in instrumentation reports to. */
+    public static MetricsRegistry global() {
+        return GLOBAL;
+    }
+
+    public Counter counter(String name) {
+        return register(name, Counter.class, () -> new Counter(name));
+    }
+
+    public LatencyHistogram histogram(String name) {
+        return register(name, LatencyHistogram.class, () -> new LatencyHistogram(name));
+    }
+
+    /** Registers a gauge, replacing any earlier gauge of the same name. */
+    public Gauge gauge(String name, DoubleSupplier supplier) {
+        Gauge gauge = new Gauge(name, supplier);
+        Metric previous = metrics.put(name, gauge);
+        if (previous != null && !(previous instanceof Gauge)) {
+            metrics.put(name, previous);
+            throw new IllegalArgumentException(name + " is already registered as a " + previous.getClass().getSimpleName());
+        }
+        registrationListeners.forEach(l -> l.accept(gauge));
+        return gauge;
+    }
+
+    private <M extends Metric> M register(String name, Class<M> type, Supplier<M> factory) {
+        Metric existing = metrics.get(name);
+        if (existing == null) {
+            M created = factory.get();
+            existing = metrics.putIfAbsent(name, created);
+            if (existing == null) {
+                registrationListeners.forEach(l -> l.accept(created));
+                return created;
+            }
+        }
+        if (!type.isInstance(existing)) {
+            throw new IllegalArgumentException(name + " is already registered as a " + existing.getClass().getSimpleName());
+        }
+        return type.cast(existing);
+    }
+
+    public Metric get(String name) {
+        return metrics.get(name);
+    }
+
+    /** All metrics, ordered by name. */
+    public Collection<Metric> metrics() {
+        return new ArrayList<>(metrics.values());
+    }
+
+    /**
+     * Calls {@code listener} for every metric registered from now on, and once
+     * for each metric that already exists.
+     */
+    public void onRegistration(Consumer<Metric> listener) {
+        registrationListeners.add(listener);
+        metrics.values().forEach(listener);
+    }
+}
@@ -0,0 +1,115 @@
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Gauges for the size and estimated heap footprint of each entity store, the
+ * open snapshots and the old versions kept for them, the cold archive if there
+ * is one, plus JVM heap usage.
+ *
+ * The footprint of an entity type is its record count times the average
+ * estimated size of up to {@value #SAMPLE_SIZE} of its records, based on the
+ * object layout of a 64-bit JVM with compressed references: each JavaFX
+ * property, boxed value and string is counted, plus the store's own per-record
+ * bookkeeping. Indexes built on top of the stores are not included.
+ */
+public final class StoreMetrics {
+    private static final int SAMPLE_SIZE = 32;
+    private static final int OBJECT_HEADER = 16;
+    private static final int PROPERTY = 40;
+    private static final int DATE_OR_TIME = 24;
+    private static final int BOXED_NUMBER = 16;
+    /** Skip-list node and index, version entry, id map entries and boxed ids. */
+    private static final int STORE_RECORD_OVERHEAD = 160;
+
+    private StoreMetrics() {
+    }
+
+    public static void register(MetricsRegistry registry, ClinicStore store) {
+        register(registry, store.patients());
+        register(registry, store.doctors());
+        register(registry, store.appointments());
+        register(registry, store.recurringSeries());
+        register(registry, store.billingRecords());
+        registry.gauge("store.changeLog.watermark", () -> store.changeLog().watermark());
+        registry.gauge("store.snapshots.open", store::openSnapshots);
+        ColdArchive archive = store.archive();
+        if (archive != null) {
+            registry.gauge("store.archive.segments", archive::segmentCount);
+            registry.gauge("store.archive.records", archive::archivedRecords);
+            registry.gauge("store.archive.bytesOnDisk", archive::bytesOnDisk);
+        }
+        Runtime runtime = Runtime.getRuntime();
+        registry.gauge("jvm.heap.usedBytes", () -> runtime.totalMemory() - runtime.freeMemory());
+        registry.gauge("jvm.heap.maxBytes", runtime::maxMemory);
+    }
+
+    private static <T> void register(MetricsRegistry registry, EntityStore<T> entities) {
+        String prefix = "store." + entities.getName();
+        registry.gauge(prefix + ".size", entities::size);
+        registry.gauge(prefix + ".retainedVersions", entities::retainedCount);
+        registry.gauge(prefix + ".estimatedHeapBytes", () -> estimateHeapBytes(entities));
+    }
+
+    static <T> long estimateHeapBytes(EntityStore<T> entities) {
+        int size = entities.size();
+        List<T> sample = entities.stream().limit(SAMPLE_SIZE).collect(Collectors.toList());
+        if (sample.isEmpty()) {
+            return 0;
+        }
+        long sampled = 0;
+        for (T entity : sample) {
+            sampled += estimate(entity) + STORE_RECORD_OVERHEAD;
+        }
+        return sampled * size / sample.size();
+    }
+
+    /** Estimated retained size of one entity in bytes. */
+    static long estimate(Object entity) {
+        if (entity instanceof Patient) {
+            Patient p = (Patient) entity;
+            return object(5) + PROPERTY * 5 + string(p.getPatientId()) + string(p.getName())
+                + DATE_OR_TIME + string(p.getContactInfo()) + string(p.getMedicalHistory());
+        }
+        if (entity instanceof Doctor) {
+            Doctor d = (Doctor) entity;
+            return object(3) + PROPERTY * 3 + string(d.getName()) + string(d.specializationProperty().get())
+                + string(d.contactInfoProperty().get());
+        }
+        if (entity instanceof Appointment) {
+            Appointment a = (Appointment) entity;
+            return object(5) + PROPERTY * 5 + string(a.patientIdProperty().get()) + string(a.getPatientName())
+                + string(a.getDoctorName()) + value(a.getDate()) + value(a.getTime());
+        }
+        if (entity instanceof RecurringAppointment) {
+            RecurringAppointment s = (RecurringAppointment) entity;
+            return object(6) + PROPERTY * 6 + string(s.getPatientId()) + string(s.getPatientName())
+                + string(s.getDoctorName()) + value(s.getStartDate()) + value(s.getTime()) + object(4)
+                + value(s.getRule() == null ? null : s.getRule().getUntil());
+        }
+        if (entity instanceof BillingRecord) {
+            BillingRecord r = (BillingRecord) entity;
+            return object(5) + PROPERTY * 5 + string(r.getPatientId()) + string(r.getPatient())
+                + string(r.serviceProperty().get()) + BOXED_NUMBER + value(r.getDate());
+        }
+        return OBJECT_HEADER;
+    }
+
+    private static long object(int referenceFields) {
+        return align(OBJECT_HEADER + 4L * referenceFields);
+    }
+
+    private static long string(String s) {
+        // String object plus its byte[] (Latin-1 compact strings)
+        return s == null ? 0 : 24 + align(16 + s.length());
+    }
+
+    private static long value(Object dateOrTime) {
+        return dateOrTime instanceof LocalDate || dateOrTime instanceof LocalTime ? DATE_OR_TIME : 0;
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+}
@@ -5,14 +5,15 @@ public class BillingRecord {
     private final StringProperty patientId;
     private final StringProperty patient;
     private final StringProperty service;
-    private final DoubleProperty amount;
+    private final long amountCents;
     private final ObjectProperty<LocalDate> date;
 
-    public BillingRecord(String patientId, String patient, String service, double amount, LocalDate date) {
+    /** @param amountCents the amount in cents, see {@link Money} */
+    public BillingRecord(String patientId, String patient, String service, long amountCents, LocalDate date) {
         this.patientId = new SimpleStringProperty(patientId);
         this.patient = new SimpleStringProperty(patient);
         this.service = new SimpleStringProperty(service);
-        this.amount = new SimpleDoubleProperty(amount);
+        this.amountCents = amountCents;
         this.date = new SimpleObjectProperty<>(date);
     }
 
@@ -24,8 +25,8 @@ public class BillingRecord {
         return patient.get();
     }
 
-    public double getAmount() {
-        return amount.get();
+    public long getAmountCents() {
+        return amountCents;
     }
 
     public LocalDate getDate() {
@@ -40,10 +41,6 @@ public class BillingRecord {
         return service;
     }
 
-    public DoubleProperty amountProperty() {
-        return amount;
-    }
-
     public ObjectProperty<LocalDate> dateProperty() {
         return date;
     }
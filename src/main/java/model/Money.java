@@ -0,0 +1,24 @@
+/**
+ * Conversions for amounts of money, which are kept as whole cents in a
+ * {@code long} so that totals are exact.
+ */
+public final class Money {
+    private Money() {
+    }
+
+    /** The dollar amount rounded to the nearest cent. */
+    public static long toCents(double dollars) {
+        return Math.round(dollars * 100);
+    }
+
+    public static double toDollars(long cents) {
+        return cents / 100.0;
+    }
+
+    /** Formats as {@code $1,234.56}, or {@code -$1,234.56} for a negative amount. */
+    public static String format(long cents) {
+        String sign = cents < 0 ? "-" : "";
+        long abs = Math.abs(cents);
+        return String.format("%s$%,d.%02d", sign, abs / 100, abs % 100);
+    }
+}
@@ -0,0 +1,272 @@
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+/**
+ * A subset of the iCalendar RRULE: {@code FREQ=WEEKLY|MONTHLY}, {@code INTERVAL},
+ * and either {@code COUNT}, {@code UNTIL} or neither (open-ended).
+ *
+ * Occurrence n of a series starting on {@code start} is start + n * INTERVAL
+ * weeks or months. Monthly rules on days past the end of a short month fall on
+ * that month's last day. Membership of a date and the first occurrence inside
+ * a window are computed arithmetically, so nothing is ever expanded beyond the
+ * window being looked at.
+ */
+public final class RecurrenceRule {
+    public enum Frequency { WEEKLY, MONTHLY }
+
+    private final Frequency frequency;
+    private final int interval;
+    private final int count;
+    private final LocalDate until;
+
+    /**
+     * @param count number of occurrences, or 0 for no limit
+     * @param until last possible occurrence date, or null for no limit
+     */
+    public RecurrenceRule(Frequency frequency, int interval, int count, LocalDate until) {
+        if (interval < 1) {
+            throw new IllegalArgumentException("INTERVAL must be at least 1");
+        }
+        if (count < 0) {
+            throw new IllegalArgumentException("COUNT must not be negative");
+        }
+        this.frequency = Objects.requireNonNull(frequency);
+        this.interval = interval;
+        this.count = count;
+        this.until = until;
+    }
+
+    public static RecurrenceRule weekly(int interval, int count) {
+        return new RecurrenceRule(Frequency.WEEKLY, interval, count, null);
+    }
+
+    public static RecurrenceRule monthly(int interval, int count) {
+        return new RecurrenceRule(Frequency.MONTHLY, interval, count, null);
+    }
+
+    /**
+     * Parses rules such as {@code FREQ=WEEKLY;INTERVAL=2;COUNT=10}.
+     */
+    public static RecurrenceRule parse(String rrule) {
+        Frequency frequency = null;
+        int interval = 1;
+        int count = 0;
+        LocalDate until = null;
+        for (String part : rrule.trim().toUpperCase(Locale.ROOT).split(";")) {
+            String[] kv = part.split("=", 2);
+            if (kv.length != 2) {
+                throw new IllegalArgumentException("Malformed RRULE part: " + part);
+            }
+            switch (kv[0]) {
+                case "FREQ" -> frequency = Frequency.valueOf(kv[1]);
+                case "INTERVAL" -> interval = Integer.parseInt(kv[1]);
+                case "COUNT" -> count = Integer.parseInt(kv[1]);
+                case "UNTIL" -> until = LocalDate.parse(kv[1].length() == 8
+                    ? kv[1].substring(0, 4) + "-" + kv[1].substring(4, 6) + "-" + kv[1].substring(6)
+                    : kv[1]);
+                default -> throw new IllegalArgumentException("Unsupported RRULE part: " + kv[0]);
+            }
+        }
+        if (frequency == null) {
+            throw new IllegalArgumentException("RRULE requires FREQ");
+        }
+        return new RecurrenceRule(frequency, interval, count, until);
+    }
+
+    public Frequency getFrequency() {
+        return frequency;
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public LocalDate getUntil() {
+        return until;
+    }
+
+    /**
+     * This rule with its occurrences ending on {@code last} at the latest.
+     */
+    public RecurrenceRule endingOn(LocalDate last) {
+        return until != null && !until.isAfter(last) ? this : new RecurrenceRule(frequency, interval, count, last);
+    }
+
+    public boolean isOpenEnded() {
+        return count == 0 && until == null;
+    }
+
+    /**
+     * Date of occurrence {@code n} (0-based), ignoring COUNT and UNTIL.
+     */
+    public LocalDate nth(LocalDate start, long n) {
+        return frequency == Frequency.WEEKLY
+            ? start.plusWeeks(n * interval)
+            : start.plusMonths(n * interval);
+    }
+
+    /**
+     * Last occurrence date allowed by COUNT/UNTIL, or null if open-ended.
+     */
+    public LocalDate lastOccurrence(LocalDate start) {
+        LocalDate byCount = count > 0 ? nth(start, count - 1) : null;
+        if (byCount == null) {
+            return until;
+        }
+        return until == null || byCount.isBefore(until) ? byCount : until;
+    }
+
+    public boolean occursOn(LocalDate start, LocalDate date) {
+        long n = indexOf(start, date);
+        return n >= 0 && withinBounds(n, date);
+    }
+
+    /**
+     * Occurrences within [from, to] (inclusive), generated lazily in date order.
+     */
+    public Stream<LocalDate> occurrences(LocalDate start, LocalDate from, LocalDate to) {
+        LocalDate last = lastOccurrence(start);
+        LocalDate end = last != null && last.isBefore(to) ? last : to;
+        long first = firstIndexOnOrAfter(start, from);
+        return Stream.iterate(first, n -> n + 1)
+            .map(n -> nth(start, n))
+            .takeWhile(date -> !date.isAfter(end));
+    }
+
+    /**
+     * First date on which both series occur, or null if they never meet.
+     * Two weekly rules are solved directly as a pair of congruences on the
+     * epoch day. Otherwise the occurrences of the sparser rule are walked, for
+     * at most one 400-year Gregorian cycle, after which the pattern repeats.
+     */
+    public LocalDate firstCommonOccurrence(LocalDate start, RecurrenceRule other, LocalDate otherStart) {
+        LocalDate from = start.isAfter(otherStart) ? start : otherStart;
+        if (frequency == Frequency.WEEKLY && other.frequency == Frequency.WEEKLY) {
+            long p1 = 7L * interval;
+            long p2 = 7L * other.interval;
+            long s1 = start.toEpochDay();
+            long s2 = otherStart.toEpochDay();
+            long g = gcd(p1, p2);
+            if (Math.floorMod(s2 - s1, g) != 0) {
+                return null;
+            }
+            long lcm = p1 / g * p2;
+            long base = s1;
+            while (Math.floorMod(base - s2, p2) != 0) {
+                base += p1;
+            }
+            long steps = Math.floorDiv(from.toEpochDay() - base + lcm - 1, lcm);
+            LocalDate first = LocalDate.ofEpochDay(base + steps * lcm);
+            return occursOn(start, first) && other.occursOn(otherStart, first) ? first : null;
+        }
+
+        boolean thisIsSparser = frequency == Frequency.MONTHLY
+            && (other.frequency == Frequency.WEEKLY || interval >= other.interval);
+        RecurrenceRule sparse = thisIsSparser ? this : other;
+        LocalDate sparseStart = thisIsSparser ? start : otherStart;
+        RecurrenceRule dense = thisIsSparser ? other : this;
+        LocalDate denseStart = thisIsSparser ? otherStart : start;
+
+        LocalDate horizon = from.plusYears(400);
+        LocalDate denseLast = dense.lastOccurrence(denseStart);
+        if (denseLast != null && denseLast.isBefore(horizon)) {
+            horizon = denseLast;
+        }
+        return sparse.occurrences(sparseStart, from, horizon)
+            .filter(date -> dense.occursOn(denseStart, date))
+            .findFirst()
+            .orElse(null);
+    }
+
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    private long indexOf(LocalDate start, LocalDate date) {
+        if (date.isBefore(start)) {
+            return -1;
+        }
+        if (frequency == Frequency.WEEKLY) {
+            long days = ChronoUnit.DAYS.between(start, date);
+            long period = 7L * interval;
+            return days % period == 0 ? days / period : -1;
+        }
+        long months = ChronoUnit.MONTHS.between(YearMonth.from(start), YearMonth.from(date));
+        if (months % interval != 0 || !start.plusMonths(months).equals(date)) {
+            return -1;
+        }
+        return months / interval;
+    }
+
+    private long firstIndexOnOrAfter(LocalDate start, LocalDate from) {
+        if (!from.isAfter(start)) {
+            return 0;
+        }
+        long n;
+        if (frequency == Frequency.WEEKLY) {
+            long period = 7L * interval;
+            n = (ChronoUnit.DAYS.between(start, from) + period - 1) / period;
+        } else {
+            long months = ChronoUnit.MONTHS.between(YearMonth.from(start), YearMonth.from(from));
+            n = Math.max(0, months / interval);
+            if (nth(start, n).isBefore(from)) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    private boolean withinBounds(long n, LocalDate date) {
+        return (count == 0 || n < count) && (until == null || !date.isAfter(until));
+    }
+
+    public String toRRule() {
+        StringBuilder sb = new StringBuilder("FREQ=").append(frequency);
+        if (interval != 1) {
+            sb.append(";INTERVAL=").append(interval);
+        }
+        if (count > 0) {
+            sb.append(";COUNT=").append(count);
+        }
+        if (until != null) {
+            sb.append(";UNTIL=").append(until.toString().replace("-", ""));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Human readable form, e.g. "Every 2 weeks, 10 times".
+     */
+    public String describe() {
+        String unit = frequency == Frequency.WEEKLY ? "week" : "month";
+        StringBuilder sb = new StringBuilder(interval == 1 ? "Every " + unit : "Every " + interval + " " + unit + "s");
+        if (count > 0) {
+            sb.append(", ").append(count).append(" times");
+        }
+        if (until != null) {
+            sb.append(", until ").append(until);
+        }
+        if (isOpenEnded()) {
+            sb.append(", no end date");
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return toRRule();
+    }
+}
@@ -0,0 +1,106 @@
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Optional;
+import java.util.stream.Stream;
+import javafx.beans.property.SimpleObjectProperty;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.beans.property.StringProperty;
+
+/**
+ * A recurring appointment series stored as a single rule. Individual
+ * occurrences are only turned into {@link Appointment} objects for the date
+ * window being displayed, reported on or conflict-checked.
+ */
+public class RecurringAppointment {
+    private final SimpleStringProperty patientId;
+    private final SimpleStringProperty patientName;
+    private final SimpleStringProperty doctorName;
+    private final SimpleObjectProperty<LocalDate> startDate;
+    private final SimpleObjectProperty<LocalTime> time;
+    private final SimpleObjectProperty<RecurrenceRule> rule;
+
+    public RecurringAppointment(String patientId, String patientName, String doctorName,
+                                LocalDate startDate, LocalTime time, RecurrenceRule rule) {
+        this.patientId = new SimpleStringProperty(patientId);
+        this.patientName = new SimpleStringProperty(patientName);
+        this.doctorName = new SimpleStringProperty(doctorName);
+        this.startDate = new SimpleObjectProperty<>(startDate);
+        this.time = new SimpleObjectProperty<>(time);
+        this.rule = new SimpleObjectProperty<>(rule);
+    }
+
+    public StringProperty patientIdProperty() {
+        return patientId;
+    }
+
+    public SimpleStringProperty patientProperty() {
+        return patientName;
+    }
+
+    public SimpleStringProperty doctorProperty() {
+        return doctorName;
+    }
+
+    public SimpleObjectProperty<LocalDate> startDateProperty() {
+        return startDate;
+    }
+
+    public SimpleObjectProperty<LocalTime> timeProperty() {
+        return time;
+    }
+
+    public SimpleObjectProperty<RecurrenceRule> ruleProperty() {
+        return rule;
+    }
+
+    public String getPatientId() {
+        return patientId.get();
+    }
+
+    public String getPatientName() {
+        return patientName.get();
+    }
+
+    public String getDoctorName() {
+        return doctorName.get();
+    }
+
+    public LocalDate getStartDate() {
+        return startDate.get();
+    }
+
+    public LocalTime getTime() {
+        return time.get();
+    }
+
+    public RecurrenceRule getRule() {
+        return rule.get();
+    }
+
+    public boolean occursOn(LocalDate date) {
+        return getRule().occursOn(getStartDate(), date);
+    }
+
+    public Stream<LocalDate> occurrenceDates(LocalDate from, LocalDate to) {
+        return getRule().occurrences(getStartDate(), from, to);
+    }
+
+    /**
+     * Occurrences within [from, to] as transient appointments.
+     */
+    public Stream<Appointment> occurrences(LocalDate from, LocalDate to) {
+        return occurrenceDates(from, to)
+            .map(date -> new Appointment(getPatientId(), getPatientName(), getDoctorName(), date, getTime()));
+    }
+
+    /**
+     * First occurrence on or after the given date.
+     */
+    public Optional<LocalDate> nextOccurrence(LocalDate onOrAfter) {
+        LocalDate last = getRule().lastOccurrence(getStartDate());
+        if (last != null && last.isBefore(onOrAfter)) {
+            return Optional.empty();
+        }
+        return occurrenceDates(onOrAfter, last != null ? last : LocalDate.MAX).findFirst();
+    }
+}
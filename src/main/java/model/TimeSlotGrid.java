@@ -0,0 +1,68 @@
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The fixed half-hour appointment grid (09:00 to 17:00 inclusive). Slot i of a
+ * day maps to bit i of a {@code long}, which lets occupancy be stored and
+ * scanned as one word per doctor per day.
+ */
+public final class TimeSlotGrid {
+    public static final LocalTime FIRST_SLOT = LocalTime.of(9, 0);
+    public static final LocalTime LAST_SLOT = LocalTime.of(17, 0);
+    public static final int SLOT_MINUTES = 30;
+
+    private static final List<LocalTime> SLOTS = buildSlots();
+
+    public static final int SLOT_COUNT = SLOTS.size();
+    public static final long FULL_MASK = (1L << SLOT_COUNT) - 1;
+
+    private TimeSlotGrid() {
+    }
+
+    private static List<LocalTime> buildSlots() {
+        List<LocalTime> slots = new ArrayList<>();
+        LocalTime time = FIRST_SLOT;
+        while (!time.isAfter(LAST_SLOT)) {
+            slots.add(time);
+            time = time.plusMinutes(SLOT_MINUTES);
+        }
+        return Collections.unmodifiableList(slots);
+    }
+
+    public static List<LocalTime> slots() {
+        return SLOTS;
+    }
+
+    public static LocalTime slotAt(int index) {
+        return SLOTS.get(index);
+    }
+
+    /**
+     * Returns the slot index of a time, or -1 if the time is not on the grid.
+     */
+    public static int indexOf(LocalTime time) {
+        if (time == null || time.isBefore(FIRST_SLOT) || time.isAfter(LAST_SLOT)) {
+            return -1;
+        }
+        int minutes = (time.toSecondOfDay() - FIRST_SLOT.toSecondOfDay()) / 60;
+        if (minutes % SLOT_MINUTES != 0 || time.getSecond() != 0 || time.getNano() != 0) {
+            return -1;
+        }
+        return minutes / SLOT_MINUTES;
+    }
+
+    /**
+     * Mask of the slots that start strictly after the given time of day.
+     */
+    public static long slotsAfter(LocalTime time) {
+        long mask = 0;
+        for (int i = 0; i < SLOT_COUNT; i++) {
+            if (SLOTS.get(i).isAfter(time)) {
+                mask |= 1L << i;
+            }
+        }
+        return mask;
+    }
+}
@@ -0,0 +1,129 @@
+import java.util.logging.Logger;
+
+/**
+ * Aggregation kernels over primitive columns, used by the revenue reports.
+ *
+ * The kernels work on a range {@code [from, to)} of a {@code long[]} column,
+ * optionally filtered or grouped by a parallel {@code int[]} column of codes.
+ * When the build includes {@code VectorKernels} ({@code mvn -Pvector}) and
+ * the JVM runs with {@code --add-modules jdk.incubator.vector} they use the
+ * Vector API; otherwise, or with {@code -Dshms.vector=false}, plain loops that
+ * give the same results.
+ */
+public final class Aggregates {
+    private static final Logger LOG = Logger.getLogger("SHMS.reports");
+    private static final Kernels KERNELS = select();
+
+    private Aggregates() {
+    }
+
+    /** The kernel implementations; all methods take a half-open range {@code [from, to)}. */
+    interface Kernels {
+        long sum(long[] values, int from, int to);
+
+        long sumWhere(long[] values, int[] codes, int code, int from, int to);
+
+        void sumByGroup(long[] values, int[] groups, int from, int to, long[] totals);
+
+        long min(long[] values, int from, int to);
+
+        long max(long[] values, int from, int to);
+    }
+
+    private static Kernels select() {
+        if (Boolean.parseBoolean(System.getProperty("shms.vector", "true"))
+                && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                Kernels kernels = (Kernels) Class.forName("VectorKernels").getDeclaredConstructor().newInstance();
+                LOG.config(() -> "Aggregating with " + kernels);
+                return kernels;
+            } catch (ClassNotFoundException e) {
+                LOG.config("Vector kernels not built (mvn -Pvector), aggregating with scalar loops");
+            } catch (ReflectiveOperationException | LinkageError e) {
+                LOG.warning("Vector API unavailable, aggregating with scalar loops: " + e);
+            }
+        }
+        return new Scalar();
+    }
+
+    /** The name of the kernels in use, for logs and benchmarks. */
+    public static String implementation() {
+        return KERNELS.toString();
+    }
+
+    public static long sum(long[] values, int from, int to) {
+        return KERNELS.sum(values, from, to);
+    }
+
+    /** Sum of the values whose code is {@code code}. */
+    public static long sumWhere(long[] values, int[] codes, int code, int from, int to) {
+        return KERNELS.sumWhere(values, codes, code, from, to);
+    }
+
+    /** Adds each value to {@code totals[groups[i]]}; the group codes must be below {@code totals.length}. */
+    public static void sumByGroup(long[] values, int[] groups, int from, int to, long[] totals) {
+        KERNELS.sumByGroup(values, groups, from, to, totals);
+    }
+
+    /** The smallest value, or {@link Long#MAX_VALUE} for an empty range. */
+    public static long min(long[] values, int from, int to) {
+        return KERNELS.min(values, from, to);
+    }
+
+    /** The largest value, or {@link Long#MIN_VALUE} for an empty range. */
+    public static long max(long[] values, int from, int to) {
+        return KERNELS.max(values, from, to);
+    }
+
+    static final class Scalar implements Kernels {
+        @Override
+        public long sum(long[] values, int from, int to) {
+            long sum = 0;
+            for (int i = from; i < to; i++) {
+                sum += values[i];
+            }
+            return sum;
+        }
+
+        @Override
+        public long sumWhere(long[] values, int[] codes, int code, int from, int to) {
+            long sum = 0;
+            for (int i = from; i < to; i++) {
+                if (codes[i] == code) {
+                    sum += values[i];
+                }
+            }
+            return sum;
+        }
+
+        @Override
+        public void sumByGroup(long[] values, int[] groups, int from, int to, long[] totals) {
+            for (int i = from; i < to; i++) {
+                totals[groups[i]] += values[i];
+            }
+        }
+
+        @Override
+        public long min(long[] values, int from, int to) {
+            long min = Long.MAX_VALUE;
+            for (int i = from; i < to; i++) {
+                min = Math.min(min, values[i]);
+            }
+            return min;
+        }
+
+        @Override
+        public long max(long[] values, int from, int to) {
+            long max = Long.MIN_VALUE;
+            for (int i = from; i < to; i++) {
+                max = Math.max(max, values[i]);
+            }
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return "scalar loops";
+        }
+    }
+}
@@ -0,0 +1,166 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Computes reports without a UI and writes each one as CSV, JSON and a PNG
+ * chart, for the nightly report mail.
+ *
+ * The clinic gets every clinic-wide report, each doctor a Monthly Patient
+ * Visits report over their own appointments, and each requested patient an
+ * Individual Patient History. Jobs run on a fixed pool with a bounded queue,
+ * so submitting thousands of them never holds more than a few computed
+ * reports in memory at once.
+ *
+ * <pre>
+ * out/clinic/monthly-revenue-trend.{csv,json,png}
+ * out/doctors/dr-smith/monthly-patient-visits.{csv,json,png}
+ * out/patients/p1001/individual-patient-history.{csv,json,png}
+ * </pre>
+ *
+ * Names that come out the same, such as "P-1" and "p_1", get a numbered
+ * suffix in the order the subjects are written ({@code p-1}, {@code p-1-2}),
+ * so no report overwrites another.
+ */
+public class BatchReportRunner {
+    private static final Logger LOG = Logger.getLogger("SHMS.reports");
+    static final List<String> CLINIC_REPORTS = List.of(Reports.MONTHLY_PATIENT_VISITS, Reports.DOCTOR_WORKLOAD,
+        Reports.MONTHLY_REVENUE, Reports.SERVICE_DISTRIBUTION, Reports.UNIQUE_PATIENTS, Reports.BILL_PERCENTILES);
+
+    private final FederatedReportData data;
+    private final Path outputDir;
+    private final LocalDate startDate;
+    private final LocalDate endDate;
+    private final int threads;
+
+    public BatchReportRunner(ReportData data, Path outputDir, LocalDate startDate, LocalDate endDate, int threads) {
+        this(FederatedReportData.of(data), outputDir, startDate, endDate, threads);
+    }
+
+    /**
+     * Writes the reports of several clinics taken together: the clinic-wide
+     * and patient reports over all of them, and each doctor's over every
+     * clinic they work at.
+     */
+    public BatchReportRunner(FederatedReportData data, Path outputDir, LocalDate startDate, LocalDate endDate,
+                             int threads) {
+        this.data = data;
+        this.outputDir = outputDir;
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.threads = Math.max(1, threads);
+    }
+
+    /** Writes the clinic's and every doctor's reports, plus the histories of the given patients. */
+    public Result run(List<String> patientIds) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        Result result = new Result();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(threads * 2), r -> {
+                Thread t = new Thread(r, "report-batch");
+                t.setDaemon(true);
+                return t;
+            }, new ThreadPoolExecutor.CallerRunsPolicy());
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            Path clinicDir = Files.createDirectories(outputDir.resolve("clinic"));
+            for (String type : CLINIC_REPORTS) {
+                futures.add(pool.submit(() -> write(type, data, null, clinicDir, result)));
+            }
+            Set<String> doctorDirs = new HashSet<>();
+            for (Map.Entry<String, FederatedReportData> doctor : data.byDoctor().entrySet()) {
+                Path dir = Files.createDirectories(outputDir.resolve("doctors")
+                    .resolve(slug(doctor.getKey(), doctorDirs)));
+                futures.add(pool.submit(() -> write(Reports.MONTHLY_PATIENT_VISITS, doctor.getValue(), null, dir,
+                    result)));
+            }
+            Set<String> patientDirs = new HashSet<>();
+            for (String patientId : new LinkedHashSet<>(patientIds)) {
+                Path dir = Files.createDirectories(outputDir.resolve("patients").resolve(slug(patientId, patientDirs)));
+                futures.add(pool.submit(() -> write(Reports.PATIENT_HISTORY, data, patientId, dir, result)));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    result.failed.incrementAndGet();
+                    LOG.log(Level.WARNING, "Report job failed", e.getCause());
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        result.elapsedNanos = System.nanoTime() - start;
+        LOG.info(result::toString);
+        return result;
+    }
+
+    private void write(String type, FederatedReportData reportData, String patientId, Path dir, Result result) {
+        Report report = MetricsRegistry.global().histogram("analytics.report." + type)
+            .time(() -> reportData.generate(type, patientId, startDate, endDate));
+        String name = slug(type);
+        try {
+            ReportExporter.writeCsv(report, dir.resolve(name + ".csv"));
+            ReportExporter.writeJson(report, dir.resolve(name + ".json"));
+            ChartImageRenderer.writePng(report, dir.resolve(name + ".png"));
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write " + dir.resolve(name), e);
+        }
+        result.reports.incrementAndGet();
+    }
+
+    /** A file-name-safe form of a report type, doctor name or patient ID. */
+    static String slug(String text) {
+        String slug = text.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9]+", "-").replaceAll("^-|-$", "");
+        return slug.isEmpty() ? "unnamed" : slug;
+    }
+
+    /**
+     * The {@link #slug} of {@code text}, numbered if it is already in
+     * {@code taken}, which it is then added to.
+     */
+    static String slug(String text, Set<String> taken) {
+        String base = slug(text);
+        String slug = base;
+        for (int n = 2; !taken.add(slug); n++) {
+            slug = base + "-" + n;
+        }
+        return slug;
+    }
+
+    public static class Result {
+        private final AtomicInteger reports = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private long elapsedNanos;
+
+        public int getReports() {
+            return reports.get();
+        }
+
+        public int getFailed() {
+            return failed.get();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Wrote %d reports (%d failed) in %.1f s", reports.get(), failed.get(),
+                elapsedNanos / 1e9);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Billing records laid out as parallel primitive columns sorted by date, so
+ * that a date range is a contiguous slice the {@link Aggregates} kernels can
+ * sum without boxing. Services and patients are coded as small ints in order
+ * of first appearance; the patient column is only built when a report asks
+ * for a patient.
+ */
+final class BillingColumns {
+    final long[] cents;
+    /** Epoch days, ascending. */
+    final int[] days;
+    final int[] services;
+    final List<String> serviceNames = new ArrayList<>();
+    private final List<BillingRecord> records;
+    /** The column row of each record, by position in {@link #records}. */
+    private final int[] rowOf;
+    private int[] patients;
+    private Map<String, Integer> patientCodes;
+
+    BillingColumns(List<BillingRecord> records) {
+        this.records = records;
+        int n = records.size();
+        cents = new long[n];
+        days = new int[n];
+        services = new int[n];
+        rowOf = new int[n];
+        // Counting sort by day: billing spans a few thousand days at most
+        int[] recordDays = new int[n];
+        int minDay = Integer.MAX_VALUE;
+        int maxDay = Integer.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            recordDays[i] = (int) records.get(i).getDate().toEpochDay();
+            minDay = Math.min(minDay, recordDays[i]);
+            maxDay = Math.max(maxDay, recordDays[i]);
+        }
+        int[] next = new int[n == 0 ? 1 : maxDay - minDay + 2];
+        for (int i = 0; i < n; i++) {
+            next[recordDays[i] - minDay + 1]++;
+        }
+        for (int d = 1; d < next.length; d++) {
+            next[d] += next[d - 1];
+        }
+        for (int i = 0; i < n; i++) {
+            int row = next[recordDays[i] - minDay]++;
+            rowOf[i] = row;
+            days[row] = recordDays[i];
+        }
+        // Records are read in list order and scattered into the columns, which is
+        // much faster than reading them in date order
+        Map<String, Integer> serviceCodes = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            BillingRecord record = records.get(i);
+            int row = rowOf[i];
+            cents[row] = record.getAmountCents();
+            services[row] = serviceCodes.computeIfAbsent(record.serviceProperty().get(), service -> {
+                serviceNames.add(service);
+                return serviceNames.size() - 1;
+            });
+        }
+    }
+
+    /** The patient code of each row, see {@link #patientCode}. */
+    synchronized int[] patients() {
+        if (patients == null) {
+            int[] codes = new int[size()];
+            patientCodes = new HashMap<>();
+            for (int i = 0; i < codes.length; i++) {
+                codes[rowOf[i]] = patientCodes.computeIfAbsent(records.get(i).getPatientId(),
+                    id -> patientCodes.size());
+            }
+            patients = codes;
+        }
+        return patients;
+    }
+
+    int size() {
+        return cents.length;
+    }
+
+    /** The first row dated on or after {@code date}. */
+    int from(LocalDate date) {
+        return lowerBound(date.toEpochDay());
+    }
+
+    /** The first row dated after {@code date}. */
+    int to(LocalDate date) {
+        return lowerBound(date.toEpochDay() + 1);
+    }
+
+    /** The code of the patient, or -1 if the patient has no records. */
+    synchronized int patientCode(String patientId) {
+        patients();
+        return patientCodes.getOrDefault(patientId, -1);
+    }
+
+    private int lowerBound(long day) {
+        int low = 0;
+        int high = days.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (days[mid] < day) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,290 @@
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Arc2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import javax.imageio.ImageIO;
+
+/**
+ * Draws a {@link Report} into an image with Java2D, so charts can be produced
+ * offscreen by a headless process: no FX toolkit, Stage or display is needed.
+ * The layout and colours follow the JavaFX charts of the Analytics tab
+ * closely enough for the two to be recognisably the same report.
+ */
+public final class ChartImageRenderer {
+    public static final int WIDTH = 900;
+    public static final int CHART_HEIGHT = 500;
+
+    /** The default JavaFX (Modena) chart palette. */
+    private static final Color[] PALETTE = {
+        new Color(0xf3622d), new Color(0xfba71b), new Color(0x57b757), new Color(0x41a9c9),
+        new Color(0x4258c9), new Color(0x9a42c8), new Color(0xc84164), new Color(0x888888)
+    };
+    private static final Color GRID = new Color(0xe0e0e0);
+    private static final Font TITLE_FONT = new Font(Font.SANS_SERIF, Font.BOLD, 16);
+    private static final Font LABEL_FONT = new Font(Font.SANS_SERIF, Font.PLAIN, 11);
+    private static final Font SUMMARY_FONT = new Font(Font.SANS_SERIF, Font.BOLD, 13);
+    private static final int SUMMARY_LINE = 18;
+
+    private ChartImageRenderer() {
+    }
+
+    public static void writePng(Report report, Path file) throws IOException {
+        ImageIO.write(render(report), "png", file.toFile());
+    }
+
+    /** The report's summary lines followed by its charts, one below the other. */
+    public static BufferedImage render(Report report) {
+        int summaryHeight = report.getSummary().isEmpty() ? 0 : report.getSummary().size() * SUMMARY_LINE + 20;
+        int height = summaryHeight + Math.max(1, report.getCharts().size()) * CHART_HEIGHT;
+        BufferedImage image = new BufferedImage(WIDTH, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, WIDTH, height);
+            g.setColor(Color.BLACK);
+            g.setFont(SUMMARY_FONT);
+            int y = 10;
+            for (String line : report.getSummary()) {
+                y += SUMMARY_LINE;
+                g.drawString(line, 20, y);
+            }
+            y = summaryHeight;
+            for (ReportChart chart : report.getCharts()) {
+                Graphics2D area = (Graphics2D) g.create(0, y, WIDTH, CHART_HEIGHT);
+                try {
+                    draw(area, chart, WIDTH, CHART_HEIGHT);
+                } finally {
+                    area.dispose();
+                }
+                y += CHART_HEIGHT;
+            }
+        } finally {
+            g.dispose();
+        }
+        return image;
+    }
+
+    static void draw(Graphics2D g, ReportChart chart, int width, int height) {
+        g.setColor(Color.BLACK);
+        g.setFont(TITLE_FONT);
+        FontMetrics fm = g.getFontMetrics();
+        g.drawString(chart.getTitle(), (width - fm.stringWidth(chart.getTitle())) / 2, 28);
+        if (chart.getKind() == ReportChart.Kind.PIE) {
+            drawPie(g, chart, width, height);
+        } else if (chart.getKind() == ReportChart.Kind.HEATMAP) {
+            drawHeatmap(g, chart, width, height);
+        } else {
+            drawXy(g, chart, width, height);
+        }
+    }
+
+    private static void drawPie(Graphics2D g, ReportChart chart, int width, int height) {
+        Map<String, Double> values = chart.getSeries().get(0).getValues();
+        double total = values.values().stream().mapToDouble(Double::doubleValue).sum();
+        int diameter = Math.min(width / 2, height - 120);
+        int x = 60;
+        int y = 50 + (height - 90 - diameter) / 2;
+        double angle = 90;
+        int i = 0;
+        g.setFont(LABEL_FONT);
+        int legendY = 60;
+        int legendRows = (height - legendY) / 18;
+        for (Map.Entry<String, Double> slice : values.entrySet()) {
+            Color color = PALETTE[i++ % PALETTE.length];
+            double extent = total > 0 ? slice.getValue() / total * 360 : 0;
+            g.setColor(color);
+            g.fill(new Arc2D.Double(x, y, diameter, diameter, angle, -extent, Arc2D.PIE));
+            g.setColor(Color.WHITE);
+            g.setStroke(new BasicStroke(1.5f));
+            g.draw(new Arc2D.Double(x, y, diameter, diameter, angle, -extent, Arc2D.PIE));
+            angle -= extent;
+            if (i < legendRows || (i == legendRows && values.size() == legendRows)) {
+                g.setColor(color);
+                g.fillRect(x + diameter + 40, legendY - 9, 10, 10);
+                g.setColor(Color.BLACK);
+                g.drawString(chart.sliceLabel(slice.getKey(), slice.getValue()), x + diameter + 56, legendY);
+                legendY += 18;
+            } else if (i == legendRows) {
+                g.setColor(Color.BLACK);
+                g.drawString("and " + (values.size() - legendRows + 1) + " more", x + diameter + 56, legendY);
+            }
+        }
+    }
+
+    /** Rows are the series, columns the categories; cells shade from white to the palette's blue. */
+    private static void drawHeatmap(Graphics2D g, ReportChart chart, int width, int height) {
+        List<String> columns = chart.categories();
+        List<ReportChart.Series> rows = chart.getSeries();
+        int left = 60;
+        int top = 50;
+        double cellWidth = (width - left - 30) / (double) Math.max(1, columns.size());
+        double cellHeight = Math.min(48, (height - top - 60) / (double) Math.max(1, rows.size()));
+        Color hot = PALETTE[4];
+        g.setFont(LABEL_FONT);
+        FontMetrics fm = g.getFontMetrics();
+        for (int r = 0; r < rows.size(); r++) {
+            int y = top + (int) (r * cellHeight);
+            int h = (int) ((r + 1) * cellHeight) - (int) (r * cellHeight);
+            g.setColor(Color.DARK_GRAY);
+            g.drawString(rows.get(r).getName(), left - 8 - fm.stringWidth(rows.get(r).getName()), y + h / 2 + 4);
+            for (int c = 0; c < columns.size(); c++) {
+                double value = Math.max(0, Math.min(1, rows.get(r).getValues().getOrDefault(columns.get(c), 0.0)));
+                int x = left + (int) (c * cellWidth);
+                int w = (int) ((c + 1) * cellWidth) - (int) (c * cellWidth);
+                g.setColor(new Color(blend(255, hot.getRed(), value), blend(255, hot.getGreen(), value),
+                    blend(255, hot.getBlue(), value)));
+                g.fillRect(x, y, w, h);
+                g.setColor(Color.WHITE);
+                g.drawRect(x, y, w, h);
+                String label = String.format("%.0f%%", value * 100);
+                g.setColor(value > 0.5 ? Color.WHITE : Color.DARK_GRAY);
+                g.drawString(label, x + (w - fm.stringWidth(label)) / 2, y + h / 2 + 4);
+            }
+        }
+        int labelY = top + (int) (rows.size() * cellHeight) + 16;
+        g.setColor(Color.DARK_GRAY);
+        for (int c = 0; c < columns.size(); c++) {
+            int center = left + (int) (c * cellWidth + cellWidth / 2);
+            g.drawString(columns.get(c), center - fm.stringWidth(columns.get(c)) / 2, labelY);
+        }
+        if (chart.getCategoryLabel() != null) {
+            g.drawString(chart.getCategoryLabel(), (width - fm.stringWidth(chart.getCategoryLabel())) / 2, labelY + 24);
+        }
+    }
+
+    private static int blend(int from, int to, double fraction) {
+        return (int) Math.round(from + (to - from) * fraction);
+    }
+
+    private static void drawXy(Graphics2D g, ReportChart chart, int width, int height) {
+        List<String> categories = chart.categories();
+        List<ReportChart.Series> seriesList = chart.getSeries();
+        boolean stacked = chart.getKind() == ReportChart.Kind.STACKED_BAR;
+        double max = 0;
+        for (String category : categories) {
+            double sum = 0;
+            for (ReportChart.Series s : seriesList) {
+                double v = s.getValues().getOrDefault(category, 0.0);
+                sum = stacked ? sum + v : Math.max(sum, v);
+            }
+            max = Math.max(max, sum);
+        }
+        double step = niceStep(max / 5);
+        double top = Math.max(step, Math.ceil(max / step) * step);
+
+        int left = 80;
+        int right = width - 30;
+        int plotTop = 50;
+        int bottom = height - 90;
+        g.setFont(LABEL_FONT);
+        FontMetrics fm = g.getFontMetrics();
+        for (double tick = 0; tick <= top + step / 2; tick += step) {
+            int y = bottom - (int) Math.round(tick / top * (bottom - plotTop));
+            g.setColor(GRID);
+            g.drawLine(left, y, right, y);
+            g.setColor(Color.DARK_GRAY);
+            String label = tick == Math.rint(tick) ? String.format("%,.0f", tick) : String.format("%,.1f", tick);
+            g.drawString(label, left - 6 - fm.stringWidth(label), y + 4);
+        }
+        g.setColor(Color.DARK_GRAY);
+        g.drawLine(left, bottom, right, bottom);
+        g.drawLine(left, plotTop, left, bottom);
+        if (chart.getValueLabel() != null) {
+            AffineTransform saved = g.getTransform();
+            g.rotate(-Math.PI / 2);
+            g.drawString(chart.getValueLabel(), -(plotTop + bottom + fm.stringWidth(chart.getValueLabel())) / 2, 16);
+            g.setTransform(saved);
+        }
+        if (chart.getCategoryLabel() != null) {
+            g.drawString(chart.getCategoryLabel(), (left + right - fm.stringWidth(chart.getCategoryLabel())) / 2,
+                height - 40);
+        }
+        if (categories.isEmpty()) {
+            return;
+        }
+
+        double slot = (right - left) / (double) categories.size();
+        // Thin out the category labels so that they stay about 70 px apart
+        int labelEvery = Math.max(1, (int) Math.ceil(70 / slot));
+        for (int c = 0; c < categories.size(); c++) {
+            if (c % labelEvery == 0) {
+                String label = categories.get(c);
+                int center = left + (int) (slot * c + slot / 2);
+                g.setColor(Color.DARK_GRAY);
+                g.drawString(label, center - fm.stringWidth(label) / 2, bottom + 16);
+            }
+        }
+
+        double[] stackBase = new double[categories.size()];
+        int barGroups = stacked || chart.getKind() == ReportChart.Kind.LINE ? 1 : seriesList.size();
+        for (int s = 0; s < seriesList.size(); s++) {
+            Color color = PALETTE[s % PALETTE.length];
+            Map<String, Double> values = seriesList.get(s).getValues();
+            g.setColor(color);
+            int prevX = -1;
+            int prevY = -1;
+            for (int c = 0; c < categories.size(); c++) {
+                Double value = values.get(categories.get(c));
+                if (value == null) {
+                    prevX = -1;
+                    continue;
+                }
+                int center = left + (int) (slot * c + slot / 2);
+                if (chart.getKind() == ReportChart.Kind.LINE) {
+                    int y = bottom - (int) Math.round(value / top * (bottom - plotTop));
+                    g.setStroke(new BasicStroke(2f));
+                    if (prevX >= 0) {
+                        g.drawLine(prevX, prevY, center, y);
+                    }
+                    g.fillOval(center - 4, y - 4, 8, 8);
+                    prevX = center;
+                    prevY = y;
+                } else {
+                    double base = stacked ? stackBase[c] : 0;
+                    int y0 = bottom - (int) Math.round(base / top * (bottom - plotTop));
+                    int y1 = bottom - (int) Math.round((base + value) / top * (bottom - plotTop));
+                    double groupWidth = slot * 0.8;
+                    int barWidth = (int) Math.max(1, groupWidth / barGroups);
+                    int x = (int) (center - groupWidth / 2) + (stacked ? 0 : s * barWidth);
+                    g.fillRect(x, y1, stacked ? (int) groupWidth : barWidth, Math.max(0, y0 - y1));
+                    if (stacked) {
+                        stackBase[c] += value;
+                    }
+                }
+            }
+        }
+        g.setStroke(new BasicStroke(1f));
+
+        int legendX = left;
+        int legendY = height - 16;
+        for (int s = 0; s < seriesList.size(); s++) {
+            String name = seriesList.get(s).getName();
+            g.setColor(PALETTE[s % PALETTE.length]);
+            g.fillRect(legendX, legendY - 9, 10, 10);
+            g.setColor(Color.BLACK);
+            g.drawString(name, legendX + 14, legendY);
+            legendX += 14 + fm.stringWidth(name) + 20;
+        }
+    }
+
+    /** 1, 2 or 5 times a power of ten, at least {@code rough}. */
+    static double niceStep(double rough) {
+        if (rough <= 0) {
+            return 1;
+        }
+        double magnitude = Math.pow(10, Math.floor(Math.log10(rough)));
+        double fraction = rough / magnitude;
+        return (fraction <= 1 ? 1 : fraction <= 2 ? 2 : fraction <= 5 ? 5 : 10) * magnitude;
+    }
+}
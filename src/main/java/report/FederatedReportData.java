@@ -0,0 +1,94 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * The {@link ReportData} of several clinics, reported on as one: each report
+ * is aggregated per clinic in parallel and the {@link PartialReport}s are
+ * merged before drawing. Built by {@link ClinicFederation#reportData}, or
+ * around a single clinic's data with {@link #of}.
+ *
+ * Patient IDs are only unique within a clinic, so across a federation
+ * patients are told apart as {@code clinic:ID}: distinct-patient counts
+ * count the same ID at two clinics as two patients, and an individual
+ * patient's history takes a clinic-qualified ID.
+ */
+public final class FederatedReportData {
+    private final Map<String, ReportData> clinics;
+    private final ExecutorService pool;
+
+    FederatedReportData(Map<String, ReportData> clinics, ExecutorService pool) {
+        this.clinics = clinics;
+        this.pool = pool;
+    }
+
+    /** One clinic's data, reported on the calling thread. */
+    public static FederatedReportData of(ReportData data) {
+        return new FederatedReportData(Map.of("", data), null);
+    }
+
+    /** Each clinic's data by clinic name. */
+    public Map<String, ReportData> clinics() {
+        return Collections.unmodifiableMap(clinics);
+    }
+
+    public long rows() {
+        return clinics.values().stream().mapToLong(ReportData::rows).sum();
+    }
+
+    /**
+     * The report over all clinics, as {@link Reports#generate} computes it
+     * over one. In a federation {@code patientId} is {@code clinic:ID}.
+     *
+     * @throws IllegalArgumentException for an unknown report type, or a
+     *     patient ID that does not name one of the clinics
+     */
+    public Report generate(String type, String patientId, LocalDate startDate, LocalDate endDate) {
+        if (clinics.isEmpty()) {
+            return Reports.generate(type, new ReportData(List.of(), List.of(), List.of()), patientId, startDate,
+                endDate);
+        }
+        if (type.equals(Reports.PATIENT_HISTORY) && !clinics.containsKey("")) {
+            int colon = patientId == null ? -1 : patientId.indexOf(':');
+            ReportData data = colon < 0 ? null : clinics.get(patientId.substring(0, colon));
+            if (data == null) {
+                throw new IllegalArgumentException("Expected a patient ID of the form clinic:ID, one of "
+                    + clinics.keySet() + ", got " + patientId);
+            }
+            return Reports.generate(type, data, patientId.substring(colon + 1), startDate, endDate);
+        }
+        List<PartialReport> partials = new ArrayList<>();
+        if (pool == null || clinics.size() == 1) {
+            clinics.values().forEach(data -> partials.add(Reports.aggregate(type, data, patientId, startDate, endDate)));
+        } else {
+            List<Callable<PartialReport>> tasks = new ArrayList<>();
+            clinics.values().forEach(data ->
+                tasks.add(() -> Reports.aggregate(type, data, patientId, startDate, endDate)));
+            partials.addAll(ClinicFederation.fanOut(pool, tasks));
+        }
+        PartialReport merged = partials.get(0);
+        for (int i = 1; i < partials.size(); i++) {
+            merged.merge(partials.get(i));
+        }
+        return Reports.render(merged);
+    }
+
+    /**
+     * The appointments and series of each doctor, across every clinic they
+     * work at; see {@link ReportData#byDoctor}.
+     */
+    public Map<String, FederatedReportData> byDoctor() {
+        Map<String, Map<String, ReportData>> doctors = new TreeMap<>();
+        clinics.forEach((clinic, data) -> data.byDoctor().forEach((doctor, part) ->
+            doctors.computeIfAbsent(doctor, k -> new LinkedHashMap<>()).put(clinic, part)));
+        Map<String, FederatedReportData> result = new TreeMap<>();
+        doctors.forEach((doctor, parts) -> result.put(doctor, new FederatedReportData(parts, pool)));
+        return result;
+    }
+}
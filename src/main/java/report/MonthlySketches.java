@@ -0,0 +1,300 @@
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.UnaryOperator;
+
+/**
+ * Distinct-patient and bill-amount sketches, one set per calendar month,
+ * merged for a range of months on request.
+ *
+ * Single appointments and billing records are sketched in one pass when the
+ * sketches are built; recurring series are expanded into a month the first
+ * time that month is read, so an open-ended series costs only the months
+ * that are reported on. Each month holds one {@link HyperLogLog} for the
+ * clinic and one per doctor, and one {@link QuantileSketch} per service, so
+ * memory grows with months, doctors and services but not with the number of
+ * records.
+ *
+ * The sketches of a {@link ReportData} are built from its lists. Those of a
+ * {@link ReportIndex} follow a store: they are built from a snapshot on first
+ * read, after which the store's listeners queue its changes and the next
+ * read, or a writer that finds the sketches idle, applies them. A sketch
+ * cannot forget a record, so a removal marks its month stale and the next
+ * read rebuilds that month from a snapshot. Moves to the cold archive are not
+ * removals here, since the archive is sketched too.
+ */
+final class MonthlySketches {
+    private static final class Month {
+        final HyperLogLog patients = new HyperLogLog();
+        final Map<String, HyperLogLog> patientsByDoctor = new TreeMap<>();
+        final Map<String, QuantileSketch> amountsByService = new TreeMap<>();
+        /** The sequence the month was built at; changes at or below it are already in. */
+        private final long builtAt;
+        private boolean seriesAdded;
+
+        private Month(long builtAt) {
+            this.builtAt = builtAt;
+        }
+
+        private void addVisit(String doctor, String patientKey) {
+            long hash = HyperLogLog.hash(patientKey);
+            patients.addHash(hash);
+            patientsByDoctor.computeIfAbsent(doctor, k -> new HyperLogLog()).addHash(hash);
+        }
+
+        private void addAmount(String service, long cents) {
+            amountsByService.computeIfAbsent(service, k -> new QuantileSketch()).add(cents);
+        }
+    }
+
+    private final UnaryOperator<String> patientKey;
+    /** The store followed, or null for the sketches of a fixed {@link ReportData}. */
+    private final ClinicStore store;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Queue<StoreChange<?>> changes = new ConcurrentLinkedQueue<>();
+    // Guarded by lock
+    private final Map<YearMonth, Month> months = new HashMap<>();
+    /** Recurring series by id. */
+    private final Map<Long, RecurringAppointment> series = new HashMap<>();
+    private final Set<YearMonth> stale = new HashSet<>();
+    /** The sequence of the first build, or -1 before it. */
+    private long builtAt = -1;
+
+    MonthlySketches(ReportData data) {
+        this.patientKey = data::patientKey;
+        this.store = null;
+        builtAt = 0;
+        data.appointments.forEach(this::addAppointment);
+        data.billingRecords.forEach(this::addBillingRecord);
+        List<RecurringAppointment> all = data.recurringSeries;
+        for (int i = 0; i < all.size(); i++) {
+            series.put((long) i, all.get(i));
+        }
+    }
+
+    /** Sketches that follow {@code store}, built on first read. */
+    MonthlySketches(ClinicStore store) {
+        this.patientKey = UnaryOperator.identity();
+        this.store = store;
+    }
+
+    /** Distinct patients seen from {@code first} through {@code last}. */
+    HyperLogLog patients(YearMonth first, YearMonth last) {
+        lock.lock();
+        try {
+            refresh();
+            HyperLogLog merged = new HyperLogLog();
+            for (YearMonth m = first; !m.isAfter(last); m = m.plusMonths(1)) {
+                merged.merge(month(m).patients);
+            }
+            return merged;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Distinct patients of each doctor from {@code first} through {@code last}, by doctor name. */
+    Map<String, HyperLogLog> patientsByDoctor(YearMonth first, YearMonth last) {
+        lock.lock();
+        try {
+            refresh();
+            Map<String, HyperLogLog> merged = new TreeMap<>();
+            for (YearMonth m = first; !m.isAfter(last); m = m.plusMonths(1)) {
+                month(m).patientsByDoctor.forEach((doctor, sketch) ->
+                    merged.computeIfAbsent(doctor, k -> new HyperLogLog()).merge(sketch));
+            }
+            return merged;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Bill amounts in cents per service from {@code first} through {@code last}. */
+    Map<String, QuantileSketch> amountsByService(YearMonth first, YearMonth last) {
+        lock.lock();
+        try {
+            refresh();
+            Map<String, QuantileSketch> merged = new TreeMap<>();
+            for (YearMonth m = first; !m.isAfter(last); m = m.plusMonths(1)) {
+                month(m).amountsByService.forEach((service, sketch) ->
+                    merged.computeIfAbsent(service, k -> new QuantileSketch()).merge(sketch));
+            }
+            return merged;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Lock held: the sketches of one month, including its occurrences of recurring series. */
+    private Month month(YearMonth month) {
+        Month m = months.computeIfAbsent(month, k -> new Month(builtAt));
+        if (!m.seriesAdded) {
+            series.values().forEach(s -> addOccurrence(m, month, s));
+            m.seriesAdded = true;
+        }
+        return m;
+    }
+
+    private Month monthOf(LocalDate date) {
+        return months.computeIfAbsent(YearMonth.from(date), k -> new Month(builtAt));
+    }
+
+    private void addAppointment(Appointment apt) {
+        monthOf(apt.getDate()).addVisit(apt.getDoctorName(), patientKey.apply(apt.patientIdProperty().get()));
+    }
+
+    private void addBillingRecord(BillingRecord record) {
+        monthOf(record.getDate()).addAmount(record.serviceProperty().get(), record.getAmountCents());
+    }
+
+    private void addOccurrence(Month m, YearMonth month, RecurringAppointment s) {
+        if (s.occurrenceDates(month.atDay(1), month.atEndOfMonth()).findAny().isPresent()) {
+            m.addVisit(s.getDoctorName(), patientKey.apply(s.getPatientId()));
+        }
+    }
+
+    // Following a store
+
+    /** Lock held: builds the sketches on first use, then applies queued changes and rebuilds stale months. */
+    private void refresh() {
+        if (store == null) {
+            return;
+        }
+        if (builtAt < 0) {
+            build();
+        }
+        drain();
+        if (!stale.isEmpty()) {
+            rebuildStale();
+        }
+    }
+
+    /**
+     * Starts listening, then sketches a snapshot opened after that: a change
+     * fired before the listeners were added was made before the snapshot and
+     * is in it, and a queued change at or below its sequence is skipped.
+     */
+    private void build() {
+        store.appointments().addListener(this::queue);
+        store.recurringSeries().addListener(this::queue);
+        store.billingRecords().addListener(this::queue);
+        try (ClinicSnapshot snapshot = store.openSnapshot()) {
+            builtAt = snapshot.sequence();
+            snapshot.appointments().stream().forEach(this::addAppointment);
+            snapshot.billingRecords().stream().forEach(this::addBillingRecord);
+            snapshot.recurringSeries().forEachEntry(series::put);
+            ColdArchive archive = store.archive();
+            SortedSet<YearMonth> archived = archive == null ? null : archive.months();
+            if (archived != null && !archived.isEmpty()) {
+                snapshot.archivedAppointments(archived.first().atDay(1), archived.last().atEndOfMonth())
+                    .forEach(this::addAppointment);
+                snapshot.archivedBillingRecords(archived.first().atDay(1), archived.last().atEndOfMonth())
+                    .forEach(this::addBillingRecord);
+            }
+        }
+    }
+
+    private <T> void queue(StoreChange<T> change) {
+        changes.add(change);
+        // Apply now unless a read is under way; it drains the queue before it reads
+        if (lock.tryLock()) {
+            try {
+                drain();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void drain() {
+        StoreChange<?> change;
+        while ((change = changes.poll()) != null) {
+            apply(change);
+        }
+    }
+
+    private void apply(StoreChange<?> change) {
+        long sequence = change.getSequence();
+        if (sequence <= builtAt || (change.getType() == StoreChange.Type.REMOVED && change.isArchived())) {
+            return;
+        }
+        Object entity = change.getEntity();
+        if (change.getType() == StoreChange.Type.ADDED) {
+            if (entity instanceof Appointment) {
+                Appointment apt = (Appointment) entity;
+                if (sequence > monthOf(apt.getDate()).builtAt) {
+                    addAppointment(apt);
+                }
+            } else if (entity instanceof BillingRecord) {
+                BillingRecord record = (BillingRecord) entity;
+                if (sequence > monthOf(record.getDate()).builtAt) {
+                    addBillingRecord(record);
+                }
+            } else if (entity instanceof RecurringAppointment) {
+                RecurringAppointment s = (RecurringAppointment) entity;
+                series.put(change.getId(), s);
+                months.forEach((month, m) -> {
+                    if (m.seriesAdded && sequence > m.builtAt) {
+                        addOccurrence(m, month, s);
+                    }
+                });
+            }
+        } else if (change.getType() == StoreChange.Type.REMOVED) {
+            if (entity instanceof Appointment) {
+                stale.add(YearMonth.from(((Appointment) entity).getDate()));
+            } else if (entity instanceof BillingRecord) {
+                stale.add(YearMonth.from(((BillingRecord) entity).getDate()));
+            } else if (entity instanceof RecurringAppointment) {
+                RecurringAppointment s = (RecurringAppointment) entity;
+                series.remove(change.getId());
+                months.forEach((month, m) -> {
+                    if (m.seriesAdded
+                            && s.occurrenceDates(month.atDay(1), month.atEndOfMonth()).findAny().isPresent()) {
+                        stale.add(month);
+                    }
+                });
+            }
+        }
+    }
+
+    /** Re-sketches the stale months from one snapshot, series included. */
+    private void rebuildStale() {
+        try (ClinicSnapshot snapshot = store.openSnapshot()) {
+            long at = snapshot.sequence();
+            Map<YearMonth, Month> rebuilt = new HashMap<>();
+            stale.forEach(month -> rebuilt.put(month, new Month(at)));
+            snapshot.appointments().stream().forEach(apt -> {
+                Month m = rebuilt.get(YearMonth.from(apt.getDate()));
+                if (m != null) {
+                    m.addVisit(apt.getDoctorName(), patientKey.apply(apt.patientIdProperty().get()));
+                }
+            });
+            snapshot.billingRecords().stream().forEach(record -> {
+                Month m = rebuilt.get(YearMonth.from(record.getDate()));
+                if (m != null) {
+                    m.addAmount(record.serviceProperty().get(), record.getAmountCents());
+                }
+            });
+            List<RecurringAppointment> current = snapshot.recurringSeries().list();
+            rebuilt.forEach((month, m) -> {
+                snapshot.archivedAppointments(month.atDay(1), month.atEndOfMonth())
+                    .forEach(apt -> m.addVisit(apt.getDoctorName(), patientKey.apply(apt.patientIdProperty().get())));
+                snapshot.archivedBillingRecords(month.atDay(1), month.atEndOfMonth())
+                    .forEach(record -> m.addAmount(record.serviceProperty().get(), record.getAmountCents()));
+                current.forEach(s -> addOccurrence(m, month, s));
+                m.seriesAdded = true;
+            });
+            months.putAll(rebuilt);
+        }
+        stale.clear();
+    }
+}
@@ -0,0 +1,79 @@
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The aggregates behind one report, before they are drawn: counts and cents
+ * by month, doctor and service, and the sketches of the distinct-patient and
+ * percentile reports. Partials of the same report over disjoint data merge
+ * into the partial of their union, so a report over several clinics is the
+ * merge of one partial per clinic, computed side by side.
+ *
+ * Only the fields of its report type are filled in. Built by
+ * {@link Reports#aggregate} and drawn by {@link Reports#render}.
+ */
+public final class PartialReport {
+    final String type;
+    final String patientId;
+    final LocalDate startDate;
+    final LocalDate endDate;
+
+    /** Visits per month: every month of the range for the clinic, months with visits for a patient. */
+    final Map<YearMonth, Long> visitsByMonth = new TreeMap<>();
+    final Map<String, Long> visitsByDoctor = new HashMap<>();
+    /** Service -> month -> revenue in cents, months in calendar order within each service. */
+    final Map<String, Map<YearMonth, Long>> revenue = new TreeMap<>();
+    /** Revenue in cents by service, in order of first appearance. */
+    final Map<String, Long> revenueByService = new LinkedHashMap<>();
+    long lineItems;
+    long minCents = Long.MAX_VALUE;
+    long maxCents = Long.MIN_VALUE;
+    final Map<YearMonth, Long> expensesByMonth = new TreeMap<>();
+    final Map<YearMonth, HyperLogLog> patientsByMonth = new TreeMap<>();
+    final Map<String, HyperLogLog> patientsByDoctor = new TreeMap<>();
+    final Map<String, QuantileSketch> amountsByService = new TreeMap<>();
+
+    PartialReport(String type, String patientId, LocalDate startDate, LocalDate endDate) {
+        this.type = type;
+        this.patientId = patientId;
+        this.startDate = startDate;
+        this.endDate = endDate;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Adds the aggregates of {@code other} to this partial.
+     *
+     * @throws IllegalArgumentException if {@code other} is of another report, patient or date range
+     */
+    public PartialReport merge(PartialReport other) {
+        if (!type.equals(other.type) || !startDate.equals(other.startDate) || !endDate.equals(other.endDate)
+                || (patientId == null ? other.patientId != null : !patientId.equals(other.patientId))) {
+            throw new IllegalArgumentException("Cannot merge " + other.type + " into " + type);
+        }
+        other.visitsByMonth.forEach((month, n) -> visitsByMonth.merge(month, n, Long::sum));
+        other.visitsByDoctor.forEach((doctor, n) -> visitsByDoctor.merge(doctor, n, Long::sum));
+        other.revenue.forEach((service, byMonth) -> {
+            Map<YearMonth, Long> into = revenue.computeIfAbsent(service, k -> new TreeMap<>());
+            byMonth.forEach((month, cents) -> into.merge(month, cents, Long::sum));
+        });
+        other.revenueByService.forEach((service, cents) -> revenueByService.merge(service, cents, Long::sum));
+        lineItems += other.lineItems;
+        minCents = Math.min(minCents, other.minCents);
+        maxCents = Math.max(maxCents, other.maxCents);
+        other.expensesByMonth.forEach((month, cents) -> expensesByMonth.merge(month, cents, Long::sum));
+        other.patientsByMonth.forEach((month, sketch) ->
+            patientsByMonth.computeIfAbsent(month, k -> new HyperLogLog()).merge(sketch));
+        other.patientsByDoctor.forEach((doctor, sketch) ->
+            patientsByDoctor.computeIfAbsent(doctor, k -> new HyperLogLog()).merge(sketch));
+        other.amountsByService.forEach((service, sketch) ->
+            amountsByService.computeIfAbsent(service, k -> new QuantileSketch()).merge(sketch));
+        return this;
+    }
+}
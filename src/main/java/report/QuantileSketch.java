@@ -0,0 +1,57 @@
+/**
+ * Quantile sketch over non-negative values such as amounts in cents.
+ *
+ * Counts values in the log-linear buckets of {@link LatencyHistogram}: exact
+ * below 64, and 32 buckets per power of two above, so a quantile is reported
+ * as the middle of its bucket, within 1.6% of a value at that rank. Memory is
+ * a fixed 15 KB array, and sketches merge exactly by adding their counts.
+ */
+public final class QuantileSketch {
+    /** Largest relative error of {@link #quantile}. */
+    public static final double RELATIVE_ERROR = 1.0 / 64;
+    private static final int BUCKETS = LatencyHistogram.bucketOf(Long.MAX_VALUE) + 1;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long min = Long.MAX_VALUE;
+    private long max = Long.MIN_VALUE;
+
+    public void add(long value) {
+        counts[LatencyHistogram.bucketOf(value)]++;
+        count++;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    public QuantileSketch merge(QuantileSketch other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        return this;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    /** The value at the given fraction of the ranks, such as 0.5 for the median; 0 if empty. */
+    public long quantile(double fraction) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                long low = i == 0 ? 0 : LatencyHistogram.upperBoundOf(i - 1) + 1;
+                long middle = low + (LatencyHistogram.upperBoundOf(i) - low) / 2;
+                return Math.max(min, Math.min(max, middle));
+            }
+        }
+        return max;
+    }
+}
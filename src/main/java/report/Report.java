@@ -0,0 +1,49 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/** A computed report: its charts and any summary lines, ready to draw or export. */
+public final class Report {
+    private final String type;
+    private final LocalDate startDate;
+    private final LocalDate endDate;
+    private final List<String> summary = new ArrayList<>();
+    private final List<ReportChart> charts = new ArrayList<>();
+
+    public Report(String type, LocalDate startDate, LocalDate endDate) {
+        this.type = type;
+        this.startDate = startDate;
+        this.endDate = endDate;
+    }
+
+    public Report addChart(ReportChart chart) {
+        charts.add(chart);
+        return this;
+    }
+
+    public Report addSummary(String line) {
+        summary.add(line);
+        return this;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public LocalDate getStartDate() {
+        return startDate;
+    }
+
+    public LocalDate getEndDate() {
+        return endDate;
+    }
+
+    public List<String> getSummary() {
+        return Collections.unmodifiableList(summary);
+    }
+
+    public List<ReportChart> getCharts() {
+        return Collections.unmodifiableList(charts);
+    }
+}
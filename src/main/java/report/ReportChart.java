@@ -0,0 +1,106 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The data behind one chart of a report, independent of how it is drawn:
+ * named series of values by category, in display order. Pie charts have a
+ * single series whose categories are the slices; heat maps have one series
+ * per row, with values from 0 to 1 shaded by intensity.
+ */
+public final class ReportChart {
+    public enum Kind { LINE, BAR, STACKED_BAR, PIE, HEATMAP }
+
+    private final String title;
+    private final Kind kind;
+    private final String categoryLabel;
+    private final String valueLabel;
+    private final String sliceFormat;
+    private final List<Series> series = new ArrayList<>();
+    private List<String> categories;
+
+    /**
+     * @param sliceFormat format of a pie slice label from its category and
+     *                    value, such as {@code "%s (%.0f appointments)"}; unused by other kinds
+     */
+    public ReportChart(String title, Kind kind, String categoryLabel, String valueLabel, String sliceFormat) {
+        this.title = title;
+        this.kind = kind;
+        this.categoryLabel = categoryLabel;
+        this.valueLabel = valueLabel;
+        this.sliceFormat = sliceFormat;
+    }
+
+    public Series addSeries(String name) {
+        Series s = new Series(name);
+        series.add(s);
+        return s;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getCategoryLabel() {
+        return categoryLabel;
+    }
+
+    public String getValueLabel() {
+        return valueLabel;
+    }
+
+    public String sliceLabel(String category, double value) {
+        return String.format(sliceFormat, category, value);
+    }
+
+    public List<Series> getSeries() {
+        return Collections.unmodifiableList(series);
+    }
+
+    /** Fixes the order of the categories, for series that each cover only some of them. */
+    public ReportChart withCategories(List<String> categories) {
+        this.categories = new ArrayList<>(categories);
+        return this;
+    }
+
+    /** The categories set with {@link #withCategories}, or else those of every series in order of appearance. */
+    public List<String> categories() {
+        if (categories != null) {
+            return Collections.unmodifiableList(categories);
+        }
+        LinkedHashMap<String, Boolean> categories = new LinkedHashMap<>();
+        for (Series s : series) {
+            s.values.keySet().forEach(c -> categories.putIfAbsent(c, Boolean.TRUE));
+        }
+        return new ArrayList<>(categories.keySet());
+    }
+
+    public static final class Series {
+        private final String name;
+        private final Map<String, Double> values = new LinkedHashMap<>();
+
+        private Series(String name) {
+            this.name = name;
+        }
+
+        public Series put(String category, double value) {
+            values.put(category, value);
+            return this;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /** Values by category, in display order. */
+        public Map<String, Double> getValues() {
+            return Collections.unmodifiableMap(values);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The lists a report reads, copied once so that reports can be computed on
+ * any thread while the originals keep changing.
+ */
+public final class ReportData {
+    final List<Appointment> appointments;
+    final List<RecurringAppointment> recurringSeries;
+    final List<BillingRecord> billingRecords;
+    /** The clinic of a federation the data belongs to, or null for a lone clinic; see {@link #patientKey}. */
+    final String clinic;
+    /** Where the columns and sketches come from, or null to build them from the lists. */
+    private ReportIndex index;
+    private BillingColumns billingColumns;
+    private MonthlySketches sketches;
+
+    public ReportData(List<Appointment> appointments, List<RecurringAppointment> recurringSeries,
+                      List<BillingRecord> billingRecords) {
+        this(null, appointments, recurringSeries, billingRecords);
+    }
+
+    ReportData(String clinic, List<Appointment> appointments, List<RecurringAppointment> recurringSeries,
+               List<BillingRecord> billingRecords) {
+        this.clinic = clinic;
+        this.appointments = new ArrayList<>(appointments);
+        this.recurringSeries = new ArrayList<>(recurringSeries);
+        this.billingRecords = new ArrayList<>(billingRecords);
+    }
+
+    /**
+     * The store's data as of one moment, read from a {@link ClinicSnapshot}
+     * while writes continue, plus whatever of {@code from} through {@code to}
+     * has been moved to the cold archive.
+     */
+    public static ReportData of(ClinicStore store, LocalDate from, LocalDate to) {
+        return of(store, from, to, null);
+    }
+
+    /** The data of one clinic of a federation, whose patient IDs are qualified by {@code clinic}. */
+    static ReportData of(ClinicStore store, LocalDate from, LocalDate to, String clinic) {
+        try (ClinicSnapshot snapshot = store.openSnapshot()) {
+            return of(snapshot, from, to, clinic);
+        }
+    }
+
+    public static ReportData of(ClinicSnapshot snapshot, LocalDate from, LocalDate to) {
+        return of(snapshot, from, to, (String) null);
+    }
+
+    /**
+     * Like {@link #of(ClinicSnapshot, LocalDate, LocalDate)}, but reports read
+     * the billing columns and per-month sketches of {@code index}. Those follow
+     * the store rather than the snapshot, so they may include changes made
+     * after it was opened.
+     */
+    public static ReportData of(ClinicSnapshot snapshot, LocalDate from, LocalDate to, ReportIndex index) {
+        ReportData data = of(snapshot, from, to, (String) null);
+        data.index = index;
+        return data;
+    }
+
+    private static ReportData of(ClinicSnapshot snapshot, LocalDate from, LocalDate to, String clinic) {
+        List<Appointment> appointments = snapshot.appointments().list();
+        appointments.addAll(snapshot.archivedAppointments(from, to));
+        List<BillingRecord> billingRecords = snapshot.billingRecords().list();
+        billingRecords.addAll(snapshot.archivedBillingRecords(from, to));
+        return new ReportData(clinic, appointments, snapshot.recurringSeries().list(), billingRecords);
+    }
+
+    /**
+     * The appointments and series of each doctor, split in one pass. Billing
+     * records are not attributed to doctors, so the parts have none.
+     */
+    public Map<String, ReportData> byDoctor() {
+        Map<String, List<Appointment>> single = appointments.stream()
+            .collect(Collectors.groupingBy(Appointment::getDoctorName));
+        Map<String, List<RecurringAppointment>> series = recurringSeries.stream()
+            .collect(Collectors.groupingBy(RecurringAppointment::getDoctorName));
+        Map<String, ReportData> result = new HashMap<>();
+        for (String doctor : single.keySet()) {
+            result.put(doctor, new ReportData(clinic, single.get(doctor), series.getOrDefault(doctor, List.of()),
+                List.of()));
+        }
+        series.forEach((doctor, s) -> result.putIfAbsent(doctor, new ReportData(clinic, List.of(), s, List.of())));
+        return result;
+    }
+
+    /**
+     * A patient ID as counted across clinics: IDs are only unique within a
+     * clinic, so in a federation they are qualified as {@code clinic:ID}.
+     */
+    String patientKey(String patientId) {
+        return clinic == null ? patientId : clinic + ":" + patientId;
+    }
+
+    public long rows() {
+        return appointments.size() + recurringSeries.size() + billingRecords.size();
+    }
+
+    /**
+     * Single appointments in the date range plus the occurrences of recurring
+     * series that fall inside it, expanded only for that range.
+     */
+    Stream<Appointment> appointmentsBetween(LocalDate startDate, LocalDate endDate) {
+        Stream<Appointment> single = appointments.stream()
+            .filter(apt -> !apt.dateProperty().get().isBefore(startDate) &&
+                          !apt.dateProperty().get().isAfter(endDate));
+        Stream<Appointment> recurring = recurringSeries.stream()
+            .flatMap(series -> series.occurrences(startDate, endDate));
+        return Stream.concat(single, recurring);
+    }
+
+    /**
+     * The billing records as columns, those of a {@link ReportIndex} or else
+     * built on first use, and shared by all reports on this data.
+     */
+    synchronized BillingColumns billingColumns() {
+        if (billingColumns == null) {
+            billingColumns = index != null ? index.billingColumns() : new BillingColumns(billingRecords);
+        }
+        return billingColumns;
+    }
+
+    /** The per-month sketches, found like {@link #billingColumns()}. */
+    synchronized MonthlySketches sketches() {
+        if (sketches == null) {
+            sketches = index != null ? index.sketches() : new MonthlySketches(this);
+        }
+        return sketches;
+    }
+}
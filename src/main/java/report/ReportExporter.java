@@ -0,0 +1,81 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Writes a {@link Report} as CSV (one row per chart, series and category) or
+ * as JSON mirroring the report's structure.
+ */
+public final class ReportExporter {
+    private ReportExporter() {
+    }
+
+    public static void writeCsv(Report report, Path file) throws IOException {
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("chart,series,category,value\n");
+            for (ReportChart chart : report.getCharts()) {
+                for (ReportChart.Series series : chart.getSeries()) {
+                    for (Map.Entry<String, Double> point : series.getValues().entrySet()) {
+                        out.write(csv(chart.getTitle()) + ',' + csv(series.getName()) + ',' + csv(point.getKey())
+                            + ',' + number(point.getValue()) + '\n');
+                    }
+                }
+            }
+        }
+    }
+
+    public static void writeJson(Report report, Path file) throws IOException {
+        Files.writeString(file, Json.write(toMap(report)), StandardCharsets.UTF_8);
+    }
+
+    static Map<String, Object> toMap(Report report) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("type", report.getType());
+        map.put("startDate", report.getStartDate().toString());
+        map.put("endDate", report.getEndDate().toString());
+        map.put("summary", report.getSummary());
+        List<Object> charts = new ArrayList<>();
+        for (ReportChart chart : report.getCharts()) {
+            Map<String, Object> c = new LinkedHashMap<>();
+            c.put("title", chart.getTitle());
+            c.put("kind", chart.getKind().name());
+            c.put("categoryLabel", chart.getCategoryLabel());
+            c.put("valueLabel", chart.getValueLabel());
+            List<Object> series = new ArrayList<>();
+            for (ReportChart.Series s : chart.getSeries()) {
+                Map<String, Object> values = new LinkedHashMap<>();
+                s.getValues().forEach((category, value) -> values.put(category, value));
+                Map<String, Object> entry = new LinkedHashMap<>();
+                entry.put("name", s.getName());
+                entry.put("values", values);
+                series.add(entry);
+            }
+            c.put("series", series);
+            charts.add(c);
+        }
+        map.put("charts", charts);
+        return map;
+    }
+
+    private static String number(double value) {
+        return value == Math.rint(value) && Math.abs(value) < 1e15 ? Long.toString((long) value)
+            : String.format(Locale.ROOT, "%.2f", value);
+    }
+
+    private static String csv(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,53 @@
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Report structures that follow a store's changes, so that the reports of a
+ * long-lived view read them instead of rebuilding them from every
+ * {@link ReportData}. Create one per store and pass it to
+ * {@link ReportData#of(ClinicSnapshot, LocalDate, LocalDate, ReportIndex)};
+ * nothing is built until a report first needs it.
+ *
+ * The billing columns are sorted arrays, which an insert would have to
+ * shift, so they are cached rather than maintained: they cover the store and
+ * its archive as of one snapshot and are rebuilt only once billing records
+ * have changed since, not for every appointment booked.
+ */
+public final class ReportIndex {
+    private final ClinicStore store;
+    private final MonthlySketches sketches;
+    /** Set by the billing listener; moves to the archive leave the columns as they are. */
+    private volatile boolean billingChanged = true;
+    private BillingColumns billingColumns;
+
+    public ReportIndex(ClinicStore store) {
+        this.store = store;
+        this.sketches = new MonthlySketches(store);
+        store.billingRecords().addListener(change -> {
+            if (!change.isArchived()) {
+                billingChanged = true;
+            }
+        });
+    }
+
+    MonthlySketches sketches() {
+        return sketches;
+    }
+
+    /**
+     * The billing columns, rebuilt if billing records changed since the last
+     * build. The flag is cleared before the snapshot is opened, so a change
+     * the snapshot misses sets it again.
+     */
+    synchronized BillingColumns billingColumns() {
+        if (billingChanged || billingColumns == null) {
+            billingChanged = false;
+            try (ClinicSnapshot snapshot = store.openSnapshot()) {
+                List<BillingRecord> records = snapshot.billingRecords().list();
+                records.addAll(snapshot.archivedBillingRecords(LocalDate.MIN, LocalDate.MAX));
+                billingColumns = new BillingColumns(records);
+            }
+        }
+        return billingColumns;
+    }
+}
@@ -0,0 +1,350 @@
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.format.TextStyle;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Computes the analytics reports from a {@link ReportData} snapshot, without
+ * any UI: the Analytics tab draws the result as JavaFX charts and the batch
+ * exporter writes it to files.
+ *
+ * Each report is computed in two steps, {@link #aggregate} into a
+ * {@link PartialReport} and {@link #render} into charts, so that a report over
+ * several clinics can aggregate each clinic on its own and draw the merge.
+ */
+public final class Reports {
+    public static final String MONTHLY_PATIENT_VISITS = "Monthly Patient Visits";
+    public static final String DOCTOR_WORKLOAD = "Doctor Workload Distribution";
+    public static final String MONTHLY_REVENUE = "Monthly Revenue Trend";
+    public static final String SERVICE_DISTRIBUTION = "Service Type Distribution";
+    public static final String PATIENT_HISTORY = "Individual Patient History";
+    public static final String UNIQUE_PATIENTS = "Unique Patients";
+    public static final String BILL_PERCENTILES = "Bill Amount Percentiles";
+    /**
+     * Read from the live {@link SlotOccupancyIndex} and the archived appointments with
+     * {@link #utilizationHeatmap}, not from a {@link ReportData}.
+     */
+    public static final String UTILIZATION_HEATMAP = "Doctor Utilization Heatmap";
+
+    public static final List<String> TYPES = List.of(MONTHLY_PATIENT_VISITS, DOCTOR_WORKLOAD, MONTHLY_REVENUE,
+        SERVICE_DISTRIBUTION, PATIENT_HISTORY, UNIQUE_PATIENTS, BILL_PERCENTILES, UTILIZATION_HEATMAP);
+
+    private static final DateTimeFormatter MONTH_FORMAT = DateTimeFormatter.ofPattern("MMM yyyy");
+
+    private Reports() {
+    }
+
+    /**
+     * @param patientId the patient of an {@link #PATIENT_HISTORY} report, unused by the others
+     * @throws IllegalArgumentException for an unknown report type
+     */
+    public static Report generate(String type, ReportData data, String patientId, LocalDate startDate,
+                                  LocalDate endDate) {
+        return render(aggregate(type, data, patientId, startDate, endDate));
+    }
+
+    /**
+     * The aggregates of one report over {@code data}, to be merged with those
+     * of other data sets and then drawn with {@link #render}.
+     *
+     * @throws IllegalArgumentException for an unknown report type
+     */
+    public static PartialReport aggregate(String type, ReportData data, String patientId, LocalDate startDate,
+                                          LocalDate endDate) {
+        PartialReport partial = new PartialReport(type, patientId, startDate, endDate);
+        switch (type) {
+            case MONTHLY_PATIENT_VISITS:
+                monthlyPatientVisits(data, partial);
+                break;
+            case DOCTOR_WORKLOAD:
+                doctorWorkload(data, partial);
+                break;
+            case MONTHLY_REVENUE:
+                monthlyRevenue(data, partial);
+                break;
+            case SERVICE_DISTRIBUTION:
+                serviceDistribution(data, partial);
+                break;
+            case PATIENT_HISTORY:
+                patientHistory(data, partial);
+                break;
+            case UNIQUE_PATIENTS:
+                uniquePatients(data, partial);
+                break;
+            case BILL_PERCENTILES:
+                billPercentiles(data, partial);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown report type: " + type);
+        }
+        return partial;
+    }
+
+    /** Draws the charts and summary of a report from its (merged) aggregates. */
+    public static Report render(PartialReport partial) {
+        switch (partial.type) {
+            case MONTHLY_PATIENT_VISITS:
+                return renderMonthlyPatientVisits(partial);
+            case DOCTOR_WORKLOAD:
+                return renderDoctorWorkload(partial);
+            case MONTHLY_REVENUE:
+                return renderMonthlyRevenue(partial);
+            case SERVICE_DISTRIBUTION:
+                return renderServiceDistribution(partial);
+            case PATIENT_HISTORY:
+                return renderPatientHistory(partial);
+            case UNIQUE_PATIENTS:
+                return renderUniquePatients(partial);
+            case BILL_PERCENTILES:
+                return renderBillPercentiles(partial);
+            default:
+                throw new IllegalArgumentException("Unknown report type: " + partial.type);
+        }
+    }
+
+    static String month(YearMonth month) {
+        return month.format(MONTH_FORMAT);
+    }
+
+    private static void monthlyPatientVisits(ReportData data, PartialReport partial) {
+        YearMonth current = YearMonth.from(partial.startDate);
+        YearMonth end = YearMonth.from(partial.endDate);
+        while (!current.isAfter(end)) {
+            partial.visitsByMonth.put(current, 0L);
+            current = current.plusMonths(1);
+        }
+        data.appointmentsBetween(partial.startDate, partial.endDate)
+            .forEach(apt -> partial.visitsByMonth.merge(YearMonth.from(apt.dateProperty().get()), 1L, Long::sum));
+    }
+
+    private static Report renderMonthlyPatientVisits(PartialReport partial) {
+        ReportChart chart = new ReportChart("Monthly Patient Visits", ReportChart.Kind.LINE, "Month",
+            "Number of Visits", null);
+        ReportChart.Series series = chart.addSeries("Patient Visits");
+        partial.visitsByMonth.forEach((month, count) -> series.put(month(month), count));
+        return new Report(MONTHLY_PATIENT_VISITS, partial.startDate, partial.endDate).addChart(chart);
+    }
+
+    private static void doctorWorkload(ReportData data, PartialReport partial) {
+        data.appointmentsBetween(partial.startDate, partial.endDate)
+            .forEach(apt -> partial.visitsByDoctor.merge(apt.doctorProperty().get(), 1L, Long::sum));
+    }
+
+    private static Report renderDoctorWorkload(PartialReport partial) {
+        ReportChart chart = new ReportChart("Doctor Workload Distribution", ReportChart.Kind.PIE, "Doctor",
+            "Appointments", "%s (%.0f appointments)");
+        ReportChart.Series series = chart.addSeries("Appointments");
+        partial.visitsByDoctor.forEach(series::put);
+        return new Report(DOCTOR_WORKLOAD, partial.startDate, partial.endDate).addChart(chart);
+    }
+
+    private static void monthlyRevenue(ReportData data, PartialReport partial) {
+        BillingColumns billing = data.billingColumns();
+        int first = billing.from(partial.startDate);
+        int last = billing.to(partial.endDate);
+        // Rows are sorted by date, so each month is a contiguous slice summed by service
+        for (YearMonth month = YearMonth.from(partial.startDate); !month.isAfter(YearMonth.from(partial.endDate));
+             month = month.plusMonths(1)) {
+            int from = Math.max(first, billing.from(month.atDay(1)));
+            int to = Math.min(last, billing.to(month.atEndOfMonth()));
+            if (from >= to) {
+                continue;
+            }
+            long[] totals = new long[billing.serviceNames.size()];
+            Aggregates.sumByGroup(billing.cents, billing.services, from, to, totals);
+            for (int s = 0; s < totals.length; s++) {
+                if (totals[s] != 0) {
+                    partial.revenue.computeIfAbsent(billing.serviceNames.get(s), k -> new TreeMap<>())
+                        .put(month, totals[s]);
+                }
+            }
+        }
+    }
+
+    private static Report renderMonthlyRevenue(PartialReport partial) {
+        TreeSet<YearMonth> months = new TreeSet<>();
+        partial.revenue.values().forEach(byMonth -> months.addAll(byMonth.keySet()));
+        ReportChart chart = new ReportChart("Monthly Revenue by Service Type", ReportChart.Kind.STACKED_BAR, "Month",
+            "Revenue ($)", null).withCategories(months.stream().map(Reports::month).collect(Collectors.toList()));
+        partial.revenue.forEach((service, byMonth) -> {
+            ReportChart.Series series = chart.addSeries(service);
+            byMonth.forEach((month, cents) -> series.put(month(month), Money.toDollars(cents)));
+        });
+        return new Report(MONTHLY_REVENUE, partial.startDate, partial.endDate).addChart(chart);
+    }
+
+    private static void serviceDistribution(ReportData data, PartialReport partial) {
+        BillingColumns billing = data.billingColumns();
+        int from = billing.from(partial.startDate);
+        int to = billing.to(partial.endDate);
+        long[] serviceRevenue = new long[billing.serviceNames.size()];
+        Aggregates.sumByGroup(billing.cents, billing.services, from, to, serviceRevenue);
+        for (int s = 0; s < serviceRevenue.length; s++) {
+            if (serviceRevenue[s] != 0) {
+                partial.revenueByService.put(billing.serviceNames.get(s), serviceRevenue[s]);
+            }
+        }
+        if (from < to) {
+            partial.lineItems = to - from;
+            partial.minCents = Aggregates.min(billing.cents, from, to);
+            partial.maxCents = Aggregates.max(billing.cents, from, to);
+        }
+    }
+
+    private static Report renderServiceDistribution(PartialReport partial) {
+        ReportChart chart = new ReportChart("Service Type Distribution", ReportChart.Kind.PIE, "Service",
+            "Revenue ($)", "%s ($%.2f)");
+        ReportChart.Series series = chart.addSeries("Revenue");
+        partial.revenueByService.forEach((service, cents) -> series.put(service, Money.toDollars(cents)));
+        Report report = new Report(SERVICE_DISTRIBUTION, partial.startDate, partial.endDate);
+        if (partial.lineItems > 0) {
+            long total = partial.revenueByService.values().stream().mapToLong(Long::longValue).sum();
+            report.addSummary(String.format("Total Revenue: %s from %d line items", Money.format(total),
+                    partial.lineItems))
+                .addSummary(String.format("Charges: %s to %s", Money.format(partial.minCents),
+                    Money.format(partial.maxCents)));
+        }
+        return report.addChart(chart);
+    }
+
+    private static void patientHistory(ReportData data, PartialReport partial) {
+        String patientId = partial.patientId;
+        data.appointmentsBetween(partial.startDate, partial.endDate)
+            .filter(apt -> apt.patientIdProperty().get().equals(patientId))
+            .forEach(apt -> partial.visitsByMonth.merge(YearMonth.from(apt.dateProperty().get()), 1L, Long::sum));
+        BillingColumns billing = data.billingColumns();
+        int patient = billing.patientCode(patientId);
+        int first = billing.from(partial.startDate);
+        int last = billing.to(partial.endDate);
+        for (YearMonth month = YearMonth.from(partial.startDate);
+             patient >= 0 && !month.isAfter(YearMonth.from(partial.endDate)); month = month.plusMonths(1)) {
+            int from = Math.max(first, billing.from(month.atDay(1)));
+            int to = Math.min(last, billing.to(month.atEndOfMonth()));
+            long cents = Aggregates.sumWhere(billing.cents, billing.patients(), patient, from, to);
+            if (cents != 0) {
+                partial.expensesByMonth.put(month, cents);
+            }
+        }
+    }
+
+    private static Report renderPatientHistory(PartialReport partial) {
+        Map<YearMonth, Long> monthlyVisits = partial.visitsByMonth;
+        Map<YearMonth, Long> monthlyExpenses = partial.expensesByMonth;
+        ReportChart visitChart = new ReportChart("Visit History", ReportChart.Kind.LINE, null, null, null);
+        ReportChart.Series visits = visitChart.addSeries("Visits");
+        monthlyVisits.forEach((month, count) -> visits.put(month(month), count));
+        ReportChart expenseChart = new ReportChart("Monthly Expenses", ReportChart.Kind.BAR, null, null, null);
+        ReportChart.Series expenses = expenseChart.addSeries("Expenses");
+        monthlyExpenses.forEach((month, cents) -> expenses.put(month(month), Money.toDollars(cents)));
+
+        long totalExpenses = monthlyExpenses.values().stream().mapToLong(Long::longValue).sum();
+        return new Report(PATIENT_HISTORY, partial.startDate, partial.endDate)
+            .addSummary("Summary Statistics:")
+            .addSummary(String.format("Total Visits: %d",
+                monthlyVisits.values().stream().mapToLong(Long::longValue).sum()))
+            .addSummary("Total Expenses: " + Money.format(totalExpenses))
+            .addSummary(String.format("Average Monthly Visits: %.1f",
+                monthlyVisits.values().stream().mapToLong(Long::longValue).average().orElse(0)))
+            .addSummary("Average Monthly Expense: "
+                + Money.format(monthlyExpenses.isEmpty() ? 0 : Math.round((double) totalExpenses / monthlyExpenses.size())))
+            .addChart(visitChart)
+            .addChart(expenseChart);
+    }
+
+    /** Distinct patients per month and per doctor, estimated from whole-month sketches. */
+    private static void uniquePatients(ReportData data, PartialReport partial) {
+        MonthlySketches sketches = data.sketches();
+        YearMonth first = YearMonth.from(partial.startDate);
+        YearMonth last = YearMonth.from(partial.endDate);
+        for (YearMonth month = first; !month.isAfter(last); month = month.plusMonths(1)) {
+            partial.patientsByMonth.put(month, sketches.patients(month, month));
+        }
+        partial.patientsByDoctor.putAll(sketches.patientsByDoctor(first, last));
+    }
+
+    private static Report renderUniquePatients(PartialReport partial) {
+        YearMonth first = YearMonth.from(partial.startDate);
+        YearMonth last = YearMonth.from(partial.endDate);
+        ReportChart monthChart = new ReportChart("Unique Patients per Month", ReportChart.Kind.LINE, "Month",
+            "Patients", null);
+        ReportChart.Series perMonth = monthChart.addSeries("Unique Patients");
+        HyperLogLog patients = new HyperLogLog();
+        partial.patientsByMonth.forEach((month, sketch) -> {
+            perMonth.put(month(month), sketch.estimate());
+            patients.merge(sketch);
+        });
+        ReportChart doctorChart = new ReportChart("Unique Patients by Doctor", ReportChart.Kind.BAR, "Doctor",
+            "Patients", null);
+        ReportChart.Series perDoctor = doctorChart.addSeries("Unique Patients");
+        partial.patientsByDoctor.forEach((doctor, sketch) -> perDoctor.put(doctor, sketch.estimate()));
+
+        return new Report(UNIQUE_PATIENTS, partial.startDate, partial.endDate)
+            .addSummary(String.format("Unique patients %s to %s: about %,d", month(first), month(last),
+                patients.estimate()))
+            .addSummary(String.format("Estimates over whole months, standard error %.1f%%",
+                HyperLogLog.RELATIVE_ERROR * 100))
+            .addChart(monthChart)
+            .addChart(doctorChart);
+    }
+
+    /** Median and 95th percentile bill per service, from whole-month sketches. */
+    private static void billPercentiles(ReportData data, PartialReport partial) {
+        partial.amountsByService.putAll(data.sketches().amountsByService(YearMonth.from(partial.startDate),
+            YearMonth.from(partial.endDate)));
+    }
+
+    private static Report renderBillPercentiles(PartialReport partial) {
+        YearMonth first = YearMonth.from(partial.startDate);
+        YearMonth last = YearMonth.from(partial.endDate);
+        ReportChart chart = new ReportChart("Bill Amount by Service", ReportChart.Kind.BAR, "Service",
+            "Amount ($)", null);
+        ReportChart.Series median = chart.addSeries("Median");
+        ReportChart.Series p95 = chart.addSeries("95th Percentile");
+        long bills = 0;
+        for (Map.Entry<String, QuantileSketch> entry : partial.amountsByService.entrySet()) {
+            median.put(entry.getKey(), Money.toDollars(entry.getValue().quantile(0.5)));
+            p95.put(entry.getKey(), Money.toDollars(entry.getValue().quantile(0.95)));
+            bills += entry.getValue().count();
+        }
+        return new Report(BILL_PERCENTILES, partial.startDate, partial.endDate)
+            .addSummary(String.format("%,d bills %s to %s", bills, month(first), month(last)))
+            .addSummary(String.format("Percentiles over whole months, within %.1f%%",
+                QuantileSketch.RELATIVE_ERROR * 100))
+            .addChart(chart);
+    }
+
+    /**
+     * Share of doctor-days on which each weekday and half-hour slot was
+     * booked, for the doctors of {@code subject}. {@code archived} are the
+     * archived appointments of the range, which the index no longer holds.
+     */
+    public static Report utilizationHeatmap(SlotOccupancyIndex occupancy, String subject, Collection<String> doctors,
+                                            LocalDate startDate, LocalDate endDate,
+                                            Collection<Appointment> archived) {
+        SlotHeatmap heatmap = occupancy.heatmap(doctors, startDate, endDate, archived);
+        List<String> slots = TimeSlotGrid.slots().stream().map(LocalTime::toString).collect(Collectors.toList());
+        ReportChart chart = new ReportChart("Utilization: " + subject, ReportChart.Kind.HEATMAP, "Time Slot",
+            "Booked", null).withCategories(slots);
+        for (DayOfWeek weekday : DayOfWeek.values()) {
+            ReportChart.Series row = chart.addSeries(weekday.getDisplayName(TextStyle.SHORT, Locale.getDefault()));
+            for (int slot = 0; slot < slots.size(); slot++) {
+                row.put(slots.get(slot), heatmap.utilization(weekday, slot));
+            }
+        }
+        return new Report(UTILIZATION_HEATMAP, startDate, endDate)
+            .addSummary(String.format("%s: %,d of %,d slots booked (%.1f%%) over %d doctor(s)", subject,
+                heatmap.totalBooked(), heatmap.totalCapacity(),
+                heatmap.totalCapacity() == 0 ? 0 : 100.0 * heatmap.totalBooked() / heatmap.totalCapacity(),
+                doctors.size()))
+            .addChart(chart);
+    }
+}
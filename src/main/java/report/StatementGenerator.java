@@ -0,0 +1,191 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Writes a monthly statement for every patient billed in a given month:
+ * one text file per patient with the month's line items in date order, a
+ * running balance and the total.
+ *
+ * The billing records are read in a single pass that keeps only the month's
+ * records and deals them into partitions by patient ID. The partitions are
+ * then grouped, sorted and written in parallel, each into its own
+ * subdirectory so that no directory holds more than a few thousand files.
+ * Amounts are in whole cents, so totals match the line items exactly.
+ * Statements end lines with {@code \n} whatever the platform.
+ *
+ * Files are named after the patient ID, made file-name-safe like the batch
+ * reports. IDs that differ only in case or punctuation get a numbered suffix
+ * in ID order, so no statement overwrites another.
+ */
+public class StatementGenerator {
+    private static final Logger LOG = Logger.getLogger("SHMS.statements");
+    private static final int WIDTH = 72;
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd MMM yyyy");
+    private static final DateTimeFormatter MONTH_FORMAT = DateTimeFormatter.ofPattern("MMMM yyyy");
+
+    private final Path outputDir;
+    private final int threads;
+    private final int partitions;
+
+    public StatementGenerator(Path outputDir, int threads) {
+        this.outputDir = outputDir;
+        this.threads = Math.max(1, threads);
+        // Enough partitions for a balanced load; each also becomes one directory
+        this.partitions = this.threads * 16;
+    }
+
+    /** Writes the statements of {@code month} to {@code <outputDir>/<yyyy-MM>/<partition>/<patient ID>.txt}. */
+    public Result generate(Stream<BillingRecord> billingRecords, YearMonth month)
+            throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        LocalDate first = month.atDay(1);
+        LocalDate last = month.atEndOfMonth();
+        List<List<BillingRecord>> parts = new ArrayList<>(partitions);
+        for (int p = 0; p < partitions; p++) {
+            parts.add(new ArrayList<>());
+        }
+        billingRecords.forEach(record -> {
+            LocalDate date = record.getDate();
+            if (!date.isBefore(first) && !date.isAfter(last)) {
+                parts.get(Math.floorMod(record.getPatientId().hashCode(), partitions)).add(record);
+            }
+        });
+
+        Path monthDir = Files.createDirectories(outputDir.resolve(month.toString()));
+        Result result = new Result();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "statements");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int p = 0; p < partitions; p++) {
+                List<BillingRecord> part = parts.get(p);
+                parts.set(p, null);
+                Path dir = monthDir.resolve(String.format("%03d", p));
+                futures.add(pool.submit(() -> writePartition(part, month, dir, result)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw new IllegalStateException("Statement generation failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        result.elapsedNanos = System.nanoTime() - start;
+        LOG.info(result::toString);
+        return result;
+    }
+
+    private void writePartition(List<BillingRecord> records, YearMonth month, Path dir, Result result) {
+        if (records.isEmpty()) {
+            return;
+        }
+        Map<String, List<BillingRecord>> byPatient = new TreeMap<>();
+        for (BillingRecord record : records) {
+            byPatient.computeIfAbsent(record.getPatientId(), k -> new ArrayList<>()).add(record);
+        }
+        try {
+            Files.createDirectories(dir);
+            Set<String> names = new HashSet<>();
+            for (Map.Entry<String, List<BillingRecord>> entry : byPatient.entrySet()) {
+                List<BillingRecord> lines = entry.getValue();
+                lines.sort(Comparator.comparing(BillingRecord::getDate));
+                Path file = dir.resolve(BatchReportRunner.slug(entry.getKey(), names) + ".txt");
+                try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                    result.totalCents.addAndGet(writeStatement(out, entry.getKey(), lines, month));
+                }
+                result.statements.incrementAndGet();
+                result.lineItems.addAndGet(lines.size());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Writes one statement and returns its total in cents. */
+    static long writeStatement(Writer out, String patientId, List<BillingRecord> lines, YearMonth month)
+            throws IOException {
+        String rule = "-".repeat(WIDTH) + "\n";
+        out.write(center("SMART HEALTHCARE MANAGEMENT SYSTEM") + "\n");
+        out.write(center("Patient Statement") + "\n\n");
+        out.write(String.format("%-14s%s\n", "Patient:", lines.get(lines.size() - 1).getPatient()));
+        out.write(String.format("%-14s%s\n", "Patient ID:", patientId));
+        out.write(String.format("%-14s%s\n", "Period:", month.format(MONTH_FORMAT)));
+        out.write(String.format("%-14s%s\n\n", "Issued:", LocalDate.now().format(DATE_FORMAT)));
+        out.write(rule);
+        out.write(String.format("%-12s  %-32s  %11s  %11s\n", "Date", "Service", "Amount", "Balance"));
+        out.write(rule);
+        long balance = 0;
+        for (BillingRecord line : lines) {
+            long cents = line.getAmountCents();
+            balance += cents;
+            out.write(String.format("%-12s  %-32s  %11s  %11s\n", line.getDate().format(DATE_FORMAT),
+                truncate(line.serviceProperty().get(), 32), Money.format(cents), Money.format(balance)));
+        }
+        out.write(rule);
+        out.write(String.format("%-46s  %24s\n", lines.size() + (lines.size() == 1 ? " item" : " items"),
+            "Total due: " + Money.format(balance)));
+        return balance;
+    }
+
+    private static String center(String text) {
+        return " ".repeat(Math.max(0, (WIDTH - text.length()) / 2)) + text;
+    }
+
+    private static String truncate(String text, int width) {
+        return text.length() <= width ? text : text.substring(0, width - 1) + "~";
+    }
+
+    public static class Result {
+        private final AtomicInteger statements = new AtomicInteger();
+        private final AtomicLong lineItems = new AtomicLong();
+        private final AtomicLong totalCents = new AtomicLong();
+        private long elapsedNanos;
+
+        public int getStatements() {
+            return statements.get();
+        }
+
+        public long getLineItems() {
+            return lineItems.get();
+        }
+
+        public long getTotalCents() {
+            return totalCents.get();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Wrote %d statements with %d line items totalling %s in %.1f s",
+                statements.get(), lineItems.get(), Money.format(totalCents.get()), elapsedNanos / 1e9);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link Aggregates} kernels on the incubating Vector API, processing as many
+ * values per instruction as the CPU's preferred vector width holds. Loaded by
+ * name only when the {@code jdk.incubator.vector} module is present, so the
+ * rest of the application never links against it. Compiled only by the
+ * {@code vector} build profile.
+ */
+final class VectorKernels implements Aggregates.Kernels {
+    private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+    /** Int codes with the same number of lanes as {@link #LONGS}, widened to longs for comparison. */
+    private static final VectorSpecies<Integer> CODES =
+        VectorSpecies.of(int.class, VectorShape.forBitSize(LONGS.length() * Integer.SIZE));
+
+    @Override
+    public long sum(long[] values, int from, int to) {
+        LongVector acc = LongVector.zero(LONGS);
+        int i = from;
+        for (int bound = from + LONGS.loopBound(to - from); i < bound; i += LONGS.length()) {
+            acc = acc.add(LongVector.fromArray(LONGS, values, i));
+        }
+        long sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < to; i++) {
+            sum += values[i];
+        }
+        return sum;
+    }
+
+    @Override
+    public long sumWhere(long[] values, int[] codes, int code, int from, int to) {
+        LongVector acc = LongVector.zero(LONGS);
+        int i = from;
+        for (int bound = from + LONGS.loopBound(to - from); i < bound; i += LONGS.length()) {
+            LongVector widened = (LongVector) IntVector.fromArray(CODES, codes, i)
+                .convertShape(VectorOperators.I2L, LONGS, 0);
+            VectorMask<Long> match = widened.eq(code);
+            acc = acc.add(LongVector.fromArray(LONGS, values, i), match);
+        }
+        long sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < to; i++) {
+            if (codes[i] == code) {
+                sum += values[i];
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Scattered adds do not vectorize; even for a handful of groups, one masked
+     * {@link #sumWhere} pass per group measured several times slower than this
+     * loop.
+     */
+    @Override
+    public void sumByGroup(long[] values, int[] groups, int from, int to, long[] totals) {
+        for (int i = from; i < to; i++) {
+            totals[groups[i]] += values[i];
+        }
+    }
+
+    @Override
+    public long min(long[] values, int from, int to) {
+        LongVector acc = LongVector.broadcast(LONGS, Long.MAX_VALUE);
+        int i = from;
+        for (int bound = from + LONGS.loopBound(to - from); i < bound; i += LONGS.length()) {
+            acc = acc.min(LongVector.fromArray(LONGS, values, i));
+        }
+        long min = acc.reduceLanes(VectorOperators.MIN);
+        for (; i < to; i++) {
+            min = Math.min(min, values[i]);
+        }
+        return min;
+    }
+
+    @Override
+    public long max(long[] values, int from, int to) {
+        LongVector acc = LongVector.broadcast(LONGS, Long.MIN_VALUE);
+        int i = from;
+        for (int bound = from + LONGS.loopBound(to - from); i < bound; i += LONGS.length()) {
+            acc = acc.max(LongVector.fromArray(LONGS, values, i));
+        }
+        long max = acc.reduceLanes(VectorOperators.MAX);
+        for (; i < to; i++) {
+            max = Math.max(max, values[i]);
+        }
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return "Vector API, " + LONGS.length() + " x long";
+    }
+}
@@ -0,0 +1,357 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+/**
+ * Loads newline-delimited JSON feeds of patients, appointments or bills, such
+ * as the export of a previous system, by the same rules as the forms: the
+ * required fields of the patient form, no appointments in the past or in a
+ * taken slot, and bills of positive amounts on or before today.
+ *
+ * The feed is read line by line and cut into chunks of
+ * {@value #CHUNK_LINES} lines, which are parsed and checked on a pool of
+ * threads; only a few chunks are in memory at a time, however long the feed.
+ * Chunks are committed in feed order on the reading thread with one store
+ * batch each (per doctor for appointments), so listeners and the FX lists see
+ * one batch instead of one change per record, and an earlier line wins a
+ * contested slot or patient ID just as if the records had been entered one
+ * after another. Every rejected line is written to the error file with its
+ * reason:
+ *
+ * <pre>
+ * patients      {"patientId":"P1001","name":"Ann Lee","dateOfBirth":"1980-02-01","contactInfo":"555-0101"}
+ * appointments  {"patientId":"P1001","doctorName":"Dr. Smith","date":"2025-03-04","time":"09:30"}
+ * billing       {"patientId":"P1001","service":"Consultation","amount":120.00,"date":"2024-11-02"}
+ * errors        {"line":7,"error":"Amount must be greater than zero.","record":"..."}
+ * </pre>
+ *
+ * Patients without a {@code patientId} get a generated one, as in the form.
+ * Appointments and bills refer to patients and doctors that exist, so the
+ * patient feed is imported first.
+ */
+public class BulkImporter {
+    private static final Logger LOG = Logger.getLogger("SHMS.import");
+    static final int CHUNK_LINES = 10_000;
+
+    public enum Feed { PATIENTS, APPOINTMENTS, BILLING }
+
+    private final ClinicService service;
+    private final ClinicStore store;
+    private final int threads;
+    /** Counts upwards from the number the form would generate now, see {@link Patient}. */
+    private long nextGeneratedId = System.currentTimeMillis() % 10000;
+
+    public BulkImporter(ClinicService service, int threads) {
+        this.service = service;
+        this.store = service.store();
+        this.threads = Math.max(1, threads);
+    }
+
+    /** Imports a feed file, writing rejected lines to {@code errorFile}. */
+    public Result importFile(Feed feed, Path input, Path errorFile) throws IOException {
+        try (BufferedReader in = Files.newBufferedReader(input, StandardCharsets.UTF_8);
+             Writer errors = Files.newBufferedWriter(errorFile, StandardCharsets.UTF_8)) {
+            return importFeed(feed, in, errors);
+        }
+    }
+
+    public Result importFeed(Feed feed, BufferedReader in, Writer errors) throws IOException {
+        long start = System.nanoTime();
+        Result result = new Result(feed);
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "bulk-import");
+            t.setDaemon(true);
+            return t;
+        });
+        Deque<Future<List<Row>>> inFlight = new ArrayDeque<>();
+        try {
+            List<Row> chunk = new ArrayList<>(CHUNK_LINES);
+            long lineNumber = 0;
+            String line;
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                chunk.add(new Row(lineNumber, line));
+                if (chunk.size() == CHUNK_LINES) {
+                    List<Row> rows = chunk;
+                    inFlight.add(pool.submit(() -> parse(feed, rows)));
+                    chunk = new ArrayList<>(CHUNK_LINES);
+                    // Enough parsed ahead to keep every thread busy, and no more
+                    if (inFlight.size() > threads * 2) {
+                        commit(feed, inFlight.poll().get(), errors, result);
+                    }
+                }
+            }
+            if (!chunk.isEmpty()) {
+                List<Row> rows = chunk;
+                inFlight.add(pool.submit(() -> parse(feed, rows)));
+            }
+            while (!inFlight.isEmpty()) {
+                commit(feed, inFlight.poll().get(), errors, result);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while importing " + feed, e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Import of " + feed + " failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        result.elapsedNanos = System.nanoTime() - start;
+        LOG.info(result::toString);
+        return result;
+    }
+
+    /** Parses and checks the rows of a chunk; runs on the pool. */
+    private List<Row> parse(Feed feed, List<Row> rows) {
+        for (Row row : rows) {
+            try {
+                Map<String, Object> json = Json.readObject(row.text);
+                switch (feed) {
+                    case PATIENTS:
+                        row.entity = patient(json);
+                        break;
+                    case APPOINTMENTS:
+                        row.entity = appointment(json);
+                        break;
+                    default:
+                        row.entity = billingRecord(json);
+                        break;
+                }
+            } catch (IllegalArgumentException | ValidationException e) {
+                row.error = e.getMessage();
+            }
+        }
+        return rows;
+    }
+
+    private static Patient patient(Map<String, Object> json) {
+        String name = trimmed(json, "name");
+        LocalDate dob = EntityCodec.date(json, "dateOfBirth");
+        String contactInfo = trimmed(json, "contactInfo");
+        ClinicService.requirePatientFields(name, dob, contactInfo);
+        String medicalHistory = trimmed(json, "medicalHistory");
+        return new Patient(trimmed(json, "patientId"), name, dob, contactInfo,
+            medicalHistory == null ? "" : medicalHistory);
+    }
+
+    private Appointment appointment(Map<String, Object> json) {
+        Patient patient = existingPatient(json);
+        String doctorName = trimmed(json, "doctorName");
+        Doctor doctor = doctorName == null ? null : store.doctors().findByKey(doctorName);
+        if (doctorName != null && !doctorName.isEmpty() && doctor == null) {
+            throw new ValidationException("Unknown doctor: " + doctorName);
+        }
+        LocalDate date = EntityCodec.date(json, "date");
+        LocalTime time = EntityCodec.time(json, "time");
+        ClinicService.requireBookingFields(patient, doctor, date, time);
+        return new Appointment(patient.getPatientId(), patient.getName(), doctor.getName(), date, time);
+    }
+
+    private BillingRecord billingRecord(Map<String, Object> json) {
+        Patient patient = existingPatient(json);
+        String service = trimmed(json, "service");
+        LocalDate date = EntityCodec.date(json, "date");
+        long cents = ClinicService.requireBillingFields(patient, service, EntityCodec.number(json, "amount"), date);
+        return new BillingRecord(patient.getPatientId(), patient.getName(), service, cents, date);
+    }
+
+    /** The patient named by {@code patientId}, or null if none is given. */
+    private Patient existingPatient(Map<String, Object> json) {
+        String patientId = trimmed(json, "patientId");
+        if (patientId == null || patientId.isEmpty()) {
+            return null;
+        }
+        Patient patient = store.patients().findByKey(patientId);
+        if (patient == null) {
+            throw new ValidationException("Unknown patient ID: " + patientId);
+        }
+        return patient;
+    }
+
+    private static String trimmed(Map<String, Object> json, String field) {
+        String value = EntityCodec.string(json, field);
+        return value == null ? null : value.trim();
+    }
+
+    /** Commits the checked rows of a chunk in one batch and writes its rejects, in line order. */
+    private void commit(Feed feed, List<Row> rows, Writer errors, Result result) throws IOException {
+        List<Row> valid = new ArrayList<>(rows.size());
+        for (Row row : rows) {
+            if (row.entity != null) {
+                valid.add(row);
+            }
+        }
+        switch (feed) {
+            case PATIENTS: {
+                for (Row row : valid) {
+                    Patient patient = (Patient) row.entity;
+                    if (patient.getPatientId() == null || patient.getPatientId().isEmpty()) {
+                        patient.patientIdProperty().set(generatedId());
+                        row.generatedId = true;
+                    }
+                }
+                List<Row> batch = valid;
+                while (!batch.isEmpty()) {
+                    batch = registerPatients(batch);
+                }
+                break;
+            }
+            case APPOINTMENTS: {
+                Map<String, List<Row>> byDoctor = new LinkedHashMap<>();
+                for (Row row : valid) {
+                    String doctor = ((Appointment) row.entity).getDoctorName();
+                    byDoctor.computeIfAbsent(doctor, k -> new ArrayList<>()).add(row);
+                }
+                byDoctor.forEach((doctor, doctorRows) -> {
+                    List<Appointment> appointments = new ArrayList<>(doctorRows.size());
+                    doctorRows.forEach(row -> appointments.add((Appointment) row.entity));
+                    reject(doctorRows, service.bookAppointments(doctor, appointments));
+                });
+                break;
+            }
+            default: {
+                List<BillingRecord> records = new ArrayList<>(valid.size());
+                valid.forEach(row -> records.add((BillingRecord) row.entity));
+                service.addBillingRecords(records);
+                break;
+            }
+        }
+        for (Row row : rows) {
+            result.read++;
+            if (row.error == null) {
+                result.imported++;
+                continue;
+            }
+            result.rejected++;
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("line", row.line);
+            json.put("error", row.error);
+            json.put("record", row.text);
+            errors.write(Json.write(json));
+            errors.write('\n');
+        }
+    }
+
+    /**
+     * Registers the patients of these rows and rejects the ones refused,
+     * except that a generated ID someone else has taken meanwhile is replaced
+     * by the next free one, as the form does. Returns the rows to try again.
+     */
+    private List<Row> registerPatients(List<Row> rows) {
+        List<Patient> patients = new ArrayList<>(rows.size());
+        rows.forEach(row -> patients.add((Patient) row.entity));
+        List<String> reasons = service.registerPatients(patients);
+        List<Row> retry = new ArrayList<>();
+        List<Row> refused = new ArrayList<>(rows.size());
+        List<String> refusals = new ArrayList<>(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            Row row = rows.get(i);
+            Patient patient = patients.get(i);
+            if (reasons.get(i) == null) {
+                continue;
+            }
+            if (row.generatedId && store.patients().containsKey(patient.getPatientId())) {
+                patient.patientIdProperty().set(generatedId());
+                retry.add(row);
+            } else {
+                refused.add(row);
+                refusals.add(reasons.get(i));
+            }
+        }
+        reject(refused, refusals);
+        return retry;
+    }
+
+    private static void reject(List<Row> rows, List<String> reasons) {
+        for (int i = 0; i < rows.size(); i++) {
+            if (reasons.get(i) != null) {
+                rows.get(i).error = reasons.get(i);
+                rows.get(i).entity = null;
+            }
+        }
+    }
+
+    /**
+     * A patient ID not yet in the store, in the style the form generates:
+     * "P" and a number that starts from the clock's last four millisecond
+     * digits and counts upwards, as {@link ClinicService#registerPatient}
+     * probes.
+     */
+    private String generatedId() {
+        String id;
+        do {
+            id = "P" + nextGeneratedId++;
+        } while (store.patients().containsKey(id));
+        return id;
+    }
+
+    /** One line of the feed and, once parsed, its entity or the reason it was rejected. */
+    private static final class Row {
+        final long line;
+        final String text;
+        Object entity;
+        String error;
+        boolean generatedId;
+
+        Row(long line, String text) {
+            this.line = line;
+            this.text = text;
+        }
+    }
+
+    public static class Result {
+        private final Feed feed;
+        private long read;
+        private long imported;
+        private long rejected;
+        private long elapsedNanos;
+
+        Result(Feed feed) {
+            this.feed = feed;
+        }
+
+        public long getRead() {
+            return read;
+        }
+
+        public long getImported() {
+            return imported;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            double seconds = elapsedNanos / 1e9;
+            return String.format("Imported %,d of %,d %s records (%,d rejected) in %.1f s (%,.0f records/s)",
+                imported, read, feed.name().toLowerCase(Locale.ROOT), rejected, seconds,
+                seconds == 0 ? 0 : read / seconds);
+        }
+    }
+}
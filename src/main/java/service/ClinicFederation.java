@@ -0,0 +1,129 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The clinics (sites) of one practice, each an independent shard: its own
+ * {@link ClinicService} over its own {@link ClinicStore}, with its own
+ * indexes, locks and change feed, local or a {@link RemoteClinicService} of
+ * the site's server. Writes go to one clinic; nothing is shared between them.
+ *
+ * Reports over all clinics fan out instead of pooling the data: each
+ * clinic's data is read from its own snapshot and aggregated on its own
+ * thread, and only the {@link PartialReport}s are merged, so an all-clinics
+ * report takes about as long as the largest clinic's when there are cores
+ * for every clinic. Each clinic is read at its own snapshot; there is no
+ * sequence common to all of them.
+ *
+ * <pre>
+ * ClinicFederation clinics = new ClinicFederation();
+ * clinics.addClinic("North");
+ * clinics.addClinic("South", new RemoteClinicService(URI.create("http://south:8080")));
+ * Report visits = clinics.reportData(from, to).generate(Reports.MONTHLY_PATIENT_VISITS, null, from, to);
+ * </pre>
+ */
+public final class ClinicFederation implements AutoCloseable {
+    private final Map<String, ClinicService> clinics = new LinkedHashMap<>();
+    private final ExecutorService pool;
+
+    /** Fans out on one thread per core. */
+    public ClinicFederation() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public ClinicFederation(int threads) {
+        pool = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread t = new Thread(r, "clinic-federation");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Adds a clinic with a new empty in-memory store. */
+    public ClinicService addClinic(String name) {
+        return addClinic(name, new ClinicService(new ClinicStore()));
+    }
+
+    /**
+     * @throws IllegalArgumentException if a clinic of that name was already
+     *     added, or the name is empty or has a colon, which separates it from
+     *     the patient ID in {@code clinic:ID}
+     */
+    public synchronized ClinicService addClinic(String name, ClinicService service) {
+        if (name.isEmpty() || name.indexOf(':') >= 0) {
+            throw new IllegalArgumentException("Clinic names must be non-empty and without ':': " + name);
+        }
+        if (clinics.putIfAbsent(name, service) != null) {
+            throw new IllegalArgumentException("Clinic already added: " + name);
+        }
+        return service;
+    }
+
+    /** The clinic of that name, or null. */
+    public synchronized ClinicService clinic(String name) {
+        return clinics.get(name);
+    }
+
+    /** The clinics' names, in the order they were added. */
+    public synchronized List<String> clinics() {
+        return new ArrayList<>(clinics.keySet());
+    }
+
+    /**
+     * The data of every clinic for reports from {@code from} through
+     * {@code to}, copied from each clinic's snapshot and cold archive in
+     * parallel.
+     */
+    public FederatedReportData reportData(LocalDate from, LocalDate to) {
+        Map<String, ClinicService> shards;
+        synchronized (this) {
+            shards = new LinkedHashMap<>(clinics);
+        }
+        List<Callable<ReportData>> tasks = new ArrayList<>();
+        shards.forEach((name, service) -> tasks.add(() -> ReportData.of(service.store(), from, to, name)));
+        List<ReportData> data = fanOut(pool, tasks);
+        Map<String, ReportData> byClinic = new LinkedHashMap<>();
+        int i = 0;
+        for (String name : shards.keySet()) {
+            byClinic.put(name, data.get(i++));
+        }
+        return new FederatedReportData(byClinic, pool);
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    /** Runs the tasks on the pool and returns their results in order. */
+    static <T> List<T> fanOut(ExecutorService pool, List<Callable<T>> tasks) {
+        List<Future<T>> futures = new ArrayList<>();
+        for (Callable<T> task : tasks) {
+            futures.add(pool.submit(task));
+        }
+        List<T> results = new ArrayList<>();
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while reading the clinics", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Clinic shard failed", e.getCause());
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+        }
+        return results;
+    }
+}
@@ -0,0 +1,517 @@
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The clinic's write operations and the business rules that guard them,
+ * shared by the JavaFX views and any other thread that mutates a
+ * {@link ClinicStore}. Rule violations are reported as
+ * {@link ValidationException}s carrying the user-facing message.
+ *
+ * Bookings are checked and committed while holding the store lock of the
+ * doctor concerned, and the occupancy index is updated synchronously by the
+ * store, so concurrent bookings of the same slot cannot both succeed.
+ */
+public class ClinicService {
+    private static final int AUTO_ASSIGN_ATTEMPTS = 8;
+    private static final String OFF_GRID = "Appointments start every " + TimeSlotGrid.SLOT_MINUTES + " minutes from "
+        + TimeSlotGrid.FIRST_SLOT + " to " + TimeSlotGrid.LAST_SLOT + ".";
+
+    private static final LatencyHistogram SCHEDULE_LATENCY = MetricsRegistry.global().histogram("scheduleAppointment");
+    private static final LatencyHistogram SLOT_CHECK_LATENCY = MetricsRegistry.global().histogram("isTimeSlotTaken");
+    private static final LatencyHistogram BILLING_LATENCY = MetricsRegistry.global().histogram("addBillingRecord");
+    private static final Counter BOOKING_CONFLICTS = MetricsRegistry.global().counter("scheduleAppointment.conflicts");
+
+    private final ClinicStore store;
+    private final SlotOccupancyIndex occupancy = new SlotOccupancyIndex();
+    private final DoctorWorkloadIndex doctorIndex = new DoctorWorkloadIndex();
+    private final DuplicatePatientDetector duplicateDetector = new DuplicatePatientDetector();
+    private final PatientSearchIndex patientSearchIndex = new PatientSearchIndex();
+    private final RollingWindowCounters trends = new RollingWindowCounters();
+    private final SlotFinder slotFinder = new SlotFinder(occupancy);
+
+    public ClinicService(ClinicStore store) {
+        this.store = store;
+        occupancy.attach(store.appointments());
+        occupancy.attachSeries(store.recurringSeries());
+        doctorIndex.attachDoctors(store.doctors());
+        doctorIndex.attachAppointments(store.appointments());
+        doctorIndex.attachSeries(store.recurringSeries());
+        duplicateDetector.attach(store.patients());
+        patientSearchIndex.attach(store.patients());
+        trends.attach(store);
+    }
+
+    public ClinicStore store() {
+        return store;
+    }
+
+    public SlotOccupancyIndex occupancy() {
+        return occupancy;
+    }
+
+    public SlotFinder slotFinder() {
+        return slotFinder;
+    }
+
+    public DoctorWorkloadIndex doctorIndex() {
+        return doctorIndex;
+    }
+
+    public DuplicatePatientDetector duplicateDetector() {
+        return duplicateDetector;
+    }
+
+    public PatientSearchIndex patientSearchIndex() {
+        return patientSearchIndex;
+    }
+
+    public RollingWindowCounters trends() {
+        return trends;
+    }
+
+    // Patients
+
+    /**
+     * Registers a patient. An empty {@code customId} means an auto-generated ID.
+     */
+    public Patient registerPatient(String customId, String name, LocalDate dob, String contactInfo,
+                                   String medicalHistory) {
+        requirePatientFields(name, dob, contactInfo);
+        if (customId != null && !customId.isEmpty()) {
+            Patient patient = new Patient(customId, name, dob, contactInfo, medicalHistory);
+            try {
+                store.patients().insert(patient);
+            } catch (IllegalArgumentException e) {
+                throw new ConflictException("This Patient ID is already in use.");
+            }
+            return patient;
+        }
+        // Generated IDs repeat when several patients register in the same
+        // millisecond, so probe upwards from the generated number until one is free.
+        Patient patient = new Patient(name, dob, contactInfo, medicalHistory);
+        long number = Long.parseLong(patient.getPatientId().substring(1));
+        while (true) {
+            try {
+                store.patients().insert(patient);
+                return patient;
+            } catch (IllegalArgumentException e) {
+                patient = new Patient("P" + (++number), name, dob, contactInfo, medicalHistory);
+            }
+        }
+    }
+
+    /**
+     * Edits a patient and returns the stored record, which is a new object:
+     * the one passed in, possibly shown by FX controls, is left unchanged
+     * (see {@link EntityStore#replace}), so this may run on any thread.
+     */
+    public Patient updatePatient(Patient patient, String name, LocalDate dob, String contactInfo,
+                                 String medicalHistory) {
+        requirePatientFields(name, dob, contactInfo);
+        Patient edited = new Patient(patient.getPatientId(), name, dob, contactInfo, medicalHistory);
+        Patient current = patient;
+        // The caller may hold an object that an earlier edit replaced
+        while (!store.patients().replace(current, edited)) {
+            current = store.patients().findByKey(patient.getPatientId());
+            if (current == null) {
+                throw new ValidationException("This patient is no longer registered.");
+            }
+        }
+        return edited;
+    }
+
+    /**
+     * Registers patients with one store batch, by the rules of
+     * {@link #registerPatient} but with a patient ID required, and returns the
+     * reason each patient was rejected, null for those registered. Used by
+     * {@link BulkImporter}.
+     */
+    public List<String> registerPatients(List<Patient> patients) {
+        List<String> reasons = new ArrayList<>(Collections.nCopies(patients.size(), null));
+        List<Patient> accepted = new ArrayList<>(patients.size());
+        Set<String> batchIds = new HashSet<>();
+        for (int i = 0; i < patients.size(); i++) {
+            Patient p = patients.get(i);
+            try {
+                requirePatientFields(p.getName(), p.getDateOfBirth(), p.getContactInfo());
+                if (isBlank(p.getPatientId())) {
+                    throw new ValidationException("Please fill in all required fields.");
+                }
+                if (store.patients().containsKey(p.getPatientId()) || !batchIds.add(p.getPatientId())) {
+                    throw new ConflictException("This Patient ID is already in use.");
+                }
+                accepted.add(p);
+            } catch (ValidationException e) {
+                reasons.set(i, e.getMessage());
+            }
+        }
+        try {
+            store.patients().insertAll(accepted);
+        } catch (IllegalArgumentException e) {
+            // Someone registered one of the IDs meanwhile; fall back to one insert each
+            for (Patient p : accepted) {
+                try {
+                    store.patients().insert(p);
+                } catch (IllegalArgumentException duplicate) {
+                    reasons.set(indexOf(patients, p), "This Patient ID is already in use.");
+                }
+            }
+        }
+        return reasons;
+    }
+
+    private static int indexOf(List<?> list, Object item) {
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i) == item) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static void requirePatientFields(String name, LocalDate dob, String contactInfo) {
+        if (isBlank(name) || dob == null || isBlank(contactInfo)) {
+            throw new ValidationException("Please fill in all required fields.");
+        }
+    }
+
+    // Doctors
+
+    public Doctor addDoctor(String name, String specialization, String contactInfo) {
+        if (isBlank(name) || isBlank(specialization) || isBlank(contactInfo)) {
+            throw new ValidationException("Please fill in all required fields.");
+        }
+        Doctor doctor = new Doctor(name, specialization, contactInfo);
+        try {
+            store.doctors().insert(doctor);
+        } catch (IllegalArgumentException e) {
+            throw new ConflictException("A doctor with this name already exists.");
+        }
+        return doctor;
+    }
+
+    public boolean removeDoctor(Doctor doctor) {
+        return store.doctors().remove(doctor);
+    }
+
+    // Appointments
+
+    public Appointment bookAppointment(Patient patient, Doctor doctor, LocalDate date, LocalTime time) {
+        long start = System.nanoTime();
+        try {
+            requireBookingFields(patient, doctor, date, time);
+            Appointment booked = tryBook(patient, doctor, date, time);
+            if (booked == null) {
+                BOOKING_CONFLICTS.increment();
+                throw new ConflictException("This time slot is already taken for the selected doctor.");
+            }
+            return booked;
+        } finally {
+            SCHEDULE_LATENCY.recordSince(start);
+        }
+    }
+
+    static void requireBookingFields(Patient patient, Doctor doctor, LocalDate date, LocalTime time) {
+        if (patient == null || doctor == null || date == null || time == null) {
+            throw new ValidationException("Please fill in all required fields.");
+        }
+        requireNotPast(date);
+        requireOnGrid(time);
+    }
+
+    /**
+     * Books appointments of one doctor with one store batch, by the rules of
+     * {@link #bookAppointment}, and returns the reason each was rejected, null
+     * for those booked. A slot taken in the store or earlier in the batch is
+     * rejected. The doctor's booking lock is held throughout. Used by
+     * {@link BulkImporter}.
+     */
+    public List<String> bookAppointments(String doctorName, List<Appointment> appointments) {
+        List<String> reasons = new ArrayList<>(Collections.nCopies(appointments.size(), null));
+        store.appointments().withLock(doctorName, () -> {
+            List<Appointment> accepted = new ArrayList<>(appointments.size());
+            Set<LocalDateTime> batchSlots = new HashSet<>();
+            for (int i = 0; i < appointments.size(); i++) {
+                Appointment a = appointments.get(i);
+                if (!doctorName.equals(a.getDoctorName())) {
+                    throw new IllegalArgumentException("Appointment of " + a.getDoctorName() + " in batch of "
+                        + doctorName);
+                }
+                if (a.getDate().isBefore(LocalDate.now())) {
+                    reasons.set(i, "Cannot schedule appointments in the past.");
+                } else if (TimeSlotGrid.indexOf(a.getTime()) < 0) {
+                    reasons.set(i, OFF_GRID);
+                } else if (occupancy.isTaken(doctorName, a.getDate(), a.getTime())
+                           || !batchSlots.add(LocalDateTime.of(a.getDate(), a.getTime()))) {
+                    BOOKING_CONFLICTS.increment();
+                    reasons.set(i, "This time slot is already taken for the selected doctor.");
+                } else {
+                    accepted.add(a);
+                }
+            }
+            store.appointments().insertAll(accepted);
+            return null;
+        });
+        return reasons;
+    }
+
+    /**
+     * Books the least-loaded doctor of a specialization who is free at the
+     * requested slot. If another thread takes that doctor's slot in between,
+     * the next candidate is tried.
+     */
+    public Appointment autoAssignAppointment(Patient patient, String specialization, LocalDate date, LocalTime time) {
+        long start = System.nanoTime();
+        try {
+            if (patient == null || isBlank(specialization) || date == null || time == null) {
+                throw new ValidationException("Please fill in all required fields.");
+            }
+            requireNotPast(date);
+            requireOnGrid(time);
+            for (int attempt = 0; attempt < AUTO_ASSIGN_ATTEMPTS; attempt++) {
+                Doctor doctor = doctorIndex.leastLoaded(specialization, d -> !isTimeSlotTaken(d, date, time));
+                if (doctor == null) {
+                    break;
+                }
+                Appointment booked = tryBook(patient, doctor, date, time);
+                if (booked != null) {
+                    return booked;
+                }
+            }
+            BOOKING_CONFLICTS.increment();
+            throw new ConflictException("No " + specialization + " doctor is free at this time.");
+        } finally {
+            SCHEDULE_LATENCY.recordSince(start);
+        }
+    }
+
+    private Appointment tryBook(Patient patient, Doctor doctor, LocalDate date, LocalTime time) {
+        return store.appointments().withLock(doctor.getName(), () -> {
+            if (isTimeSlotTaken(doctor, date, time)) {
+                return null;
+            }
+            Appointment appointment = new Appointment(patient.getPatientId(), patient.getName(), doctor.getName(), date, time);
+            store.appointments().insert(appointment);
+            return appointment;
+        });
+    }
+
+    /**
+     * Whether the doctor already has a single booking or a series occurrence
+     * at this slot.
+     */
+    public boolean isTimeSlotTaken(Doctor doctor, LocalDate date, LocalTime time) {
+        ConflictCheckEvent event = new ConflictCheckEvent();
+        event.begin();
+        long start = System.nanoTime();
+        boolean taken = occupancy.isTaken(doctor.getName(), date, time);
+        SLOT_CHECK_LATENCY.recordSince(start);
+        event.end();
+        if (event.shouldCommit()) {
+            event.doctor = doctor.getName();
+            event.date = String.valueOf(date);
+            event.time = String.valueOf(time);
+            event.conflict = taken;
+            event.commit();
+        }
+        return taken;
+    }
+
+    public boolean cancelAppointment(Appointment appointment) {
+        return store.appointments().remove(appointment);
+    }
+
+    /**
+     * Cancels every single appointment of a doctor from {@code from} through
+     * {@code to} and returns how many were cancelled. The store is scanned
+     * once under the doctor's booking lock, so no booking can slip in between
+     * the scan and the removals, and the matches are then removed by id.
+     * Recurring series are left alone.
+     */
+    public int cancelAppointments(String doctorName, LocalDate from, LocalDate to) {
+        if (isBlank(doctorName) || from == null || to == null) {
+            throw new ValidationException("Please fill in all required fields.");
+        }
+        if (to.isBefore(from)) {
+            throw new ValidationException("The end date must not be before the start date.");
+        }
+        EntityStore<Appointment> appointments = store.appointments();
+        return appointments.withLock(doctorName, () -> {
+            List<Long> ids = new ArrayList<>();
+            appointments.forEachEntry((id, a) -> {
+                if (doctorName.equals(a.getDoctorName()) && !a.getDate().isBefore(from) && !a.getDate().isAfter(to)) {
+                    ids.add(id);
+                }
+            });
+            return appointments.removeAll(ids);
+        });
+    }
+
+    /**
+     * Books a recurring series after checking every occurrence against single
+     * bookings and the doctor's other series.
+     */
+    public RecurringAppointment bookSeries(Patient patient, Doctor doctor, LocalDate startDate, LocalTime time,
+                                           RecurrenceRule rule) {
+        if (patient == null || doctor == null || startDate == null || time == null || rule == null) {
+            throw new ValidationException("Please fill in all required fields.");
+        }
+        requireNotPast(startDate);
+        requireOnGrid(time);
+        RecurringAppointment series = newSeries(patient, doctor, startDate, time, rule);
+        LocalDate conflict = tryBookSeries(series);
+        if (conflict != null) {
+            throw new ConflictException(
+                "This series collides with an existing booking for " + doctor.getName() + " on " + conflict + ".");
+        }
+        return series;
+    }
+
+    public RecurringAppointment autoAssignSeries(Patient patient, String specialization, LocalDate startDate,
+                                                 LocalTime time, RecurrenceRule rule) {
+        if (patient == null || isBlank(specialization) || startDate == null || time == null || rule == null) {
+            throw new ValidationException("Please fill in all required fields.");
+        }
+        requireNotPast(startDate);
+        requireOnGrid(time);
+        for (int attempt = 0; attempt < AUTO_ASSIGN_ATTEMPTS; attempt++) {
+            Doctor doctor = doctorIndex.leastLoaded(specialization,
+                d -> occupancy.firstConflict(newSeries(patient, d, startDate, time, rule)) == null);
+            if (doctor == null) {
+                break;
+            }
+            RecurringAppointment series = newSeries(patient, doctor, startDate, time, rule);
+            if (tryBookSeries(series) == null) {
+                return series;
+            }
+        }
+        throw new ConflictException(
+            "No " + specialization + " doctor is free for every occurrence of this series.");
+    }
+
+    /** Returns the first conflicting date, or null once the series is stored. */
+    private LocalDate tryBookSeries(RecurringAppointment series) {
+        return store.appointments().withLock(series.getDoctorName(), () -> {
+            ConflictCheckEvent event = new ConflictCheckEvent();
+            event.begin();
+            LocalDate conflict = occupancy.firstConflict(series);
+            event.end();
+            if (event.shouldCommit()) {
+                event.doctor = series.getDoctorName();
+                event.date = String.valueOf(conflict != null ? conflict : series.getStartDate());
+                event.time = String.valueOf(series.getTime());
+                event.series = true;
+                event.conflict = conflict != null;
+                event.commit();
+            }
+            if (conflict == null) {
+                store.recurringSeries().insert(series);
+            }
+            return conflict;
+        });
+    }
+
+    private static RecurringAppointment newSeries(Patient patient, Doctor doctor, LocalDate startDate, LocalTime time,
+                                                  RecurrenceRule rule) {
+        return new RecurringAppointment(patient.getPatientId(), patient.getName(), doctor.getName(), startDate, time, rule);
+    }
+
+    /**
+     * Cancels the occurrences of a series from today on. A series that has
+     * already had occurrences is ended yesterday instead of deleted, so those
+     * visits stay in reports, trends and the heatmap: it is replaced by a copy
+     * whose rule has UNTIL set to yesterday. Returns false if the series is
+     * not stored or has no occurrences left to cancel.
+     */
+    public boolean cancelSeries(RecurringAppointment series) {
+        return store.appointments().withLock(series.getDoctorName(), () -> {
+            LocalDate today = LocalDate.now();
+            if (store.recurringSeries().idOf(series) < 0 || series.nextOccurrence(today).isEmpty()) {
+                return false;
+            }
+            if (!series.getStartDate().isBefore(today)) {
+                return store.recurringSeries().remove(series);
+            }
+            RecurringAppointment ended = new RecurringAppointment(series.getPatientId(), series.getPatientName(),
+                series.getDoctorName(), series.getStartDate(), series.getTime(),
+                series.getRule().endingOn(today.minusDays(1)));
+            if (!store.recurringSeries().remove(series)) {
+                return false;
+            }
+            store.recurringSeries().insert(ended);
+            return true;
+        });
+    }
+
+    static void requireNotPast(LocalDate date) {
+        if (date.isBefore(LocalDate.now())) {
+            throw new ValidationException("Cannot schedule appointments in the past.");
+        }
+    }
+
+    /**
+     * Conflicts are found through the slot bitmaps of {@link SlotOccupancyIndex},
+     * which only have room for {@link TimeSlotGrid} times, so no other time
+     * may be booked.
+     */
+    static void requireOnGrid(LocalTime time) {
+        if (TimeSlotGrid.indexOf(time) < 0) {
+            throw new ValidationException(OFF_GRID);
+        }
+    }
+
+    // Billing
+
+    public BillingRecord addBillingRecord(Patient patient, String service, double amount, LocalDate date) {
+        long start = System.nanoTime();
+        try {
+            return insertBillingRecord(patient, service, amount, date);
+        } finally {
+            BILLING_LATENCY.recordSince(start);
+        }
+    }
+
+    private BillingRecord insertBillingRecord(Patient patient, String service, double amount, LocalDate date) {
+        long cents = requireBillingFields(patient, service, amount, date);
+        BillingRecord record = new BillingRecord(patient.getPatientId(), patient.getName(), service, cents, date);
+        store.billingRecords().insert(record);
+        return record;
+    }
+
+    /** Checks a bill by the rules of {@link #addBillingRecord} and returns its amount in cents. */
+    static long requireBillingFields(Patient patient, String service, double amount, LocalDate date) {
+        if (patient == null || isBlank(service) || date == null) {
+            throw new ValidationException("Please fill in all required fields.");
+        }
+        if (date.isAfter(LocalDate.now())) {
+            throw new ValidationException("Cannot create billing records for future dates.");
+        }
+        long cents = Money.toCents(amount);
+        if (!(amount > 0) || cents < 1) {
+            throw new ValidationException("Amount must be greater than zero.");
+        }
+        return cents;
+    }
+
+    /**
+     * Adds bills already checked with the rules of {@link #addBillingRecord}
+     * with one store batch. Used by {@link BulkImporter}.
+     */
+    public void addBillingRecords(List<BillingRecord> records) {
+        store.billingRecords().insertAll(records);
+    }
+
+    public boolean deleteBillingRecord(BillingRecord record) {
+        return store.billingRecords().remove(record);
+    }
+
+    private static boolean isBlank(String s) {
+        return s == null || s.trim().isEmpty();
+    }
+}
@@ -0,0 +1,11 @@
+/**
+ * A request was rejected because it clashes with data that already exists,
+ * such as a taken time slot or a duplicate ID.
+ */
+public class ConflictException extends ValidationException {
+    private static final long serialVersionUID = 1L;
+
+    public ConflictException(String message) {
+        super(message);
+    }
+}
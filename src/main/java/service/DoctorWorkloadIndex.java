@@ -0,0 +1,293 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+/**
+ * Specialization index over doctors with a per-doctor rolling workload: the
+ * appointments, including occurrences of recurring series, on the
+ * {@value #WINDOW_DAYS} days from today. It is kept up to date as
+ * appointments and series are added and cancelled, and moves on by itself
+ * when the day changes.
+ *
+ * Within each specialization doctors sit in buckets keyed by workload, and
+ * only occupied buckets are kept, in a sorted map, so moving a doctor between
+ * buckets and picking the least-loaded doctor cost a lookup among the
+ * distinct workloads, and a scan never passes an empty bucket. When
+ * the window moves, once a day, every workload is recounted from per-day
+ * booking counts and the series of each doctor.
+ */
+public class DoctorWorkloadIndex {
+    public static final int WINDOW_DAYS = 28;
+
+    private final Map<String, Doctor> doctorsByName = new HashMap<>();
+    private final Map<String, Integer> workloadByName = new HashMap<>();
+    private final Map<String, LoadBuckets> bySpecialization = new HashMap<>();
+    private final Map<String, String> specializationLabels = new TreeMap<>();
+    /** Single appointments per doctor and day, on and after the window's first day. */
+    private final Map<String, TreeMap<LocalDate, Integer>> bookedByDay = new HashMap<>();
+    private final Map<String, Set<RecurringAppointment>> seriesByDoctor = new HashMap<>();
+    private LocalDate windowStart = LocalDate.now();
+
+    /**
+     * Indexes the doctors of the store and follows later changes. Like
+     * {@link #attachAppointments}, this is meant to be called at startup,
+     * before other threads write to the store.
+     */
+    public void attachDoctors(EntityStore<Doctor> doctors) {
+        doctors.stream().forEach(this::addDoctor);
+        doctors.addListener(change -> {
+            if (change.getType() == StoreChange.Type.ADDED) {
+                addDoctor(change.getEntity());
+            } else if (change.getType() == StoreChange.Type.REMOVED) {
+                removeDoctor(change.getEntity());
+            }
+        });
+    }
+
+    public void attachAppointments(EntityStore<Appointment> appointments) {
+        appointments.stream().forEach(apt -> adjustBooking(apt, 1));
+        appointments.addListener(change -> {
+            if (change.getType() == StoreChange.Type.ADDED) {
+                adjustBooking(change.getEntity(), 1);
+            } else if (change.getType() == StoreChange.Type.REMOVED) {
+                adjustBooking(change.getEntity(), -1);
+            }
+        });
+    }
+
+    public void attachSeries(EntityStore<RecurringAppointment> series) {
+        series.stream().forEach(s -> adjustSeries(s, 1));
+        series.addListener(change -> {
+            if (change.getType() == StoreChange.Type.ADDED) {
+                adjustSeries(change.getEntity(), 1);
+            } else if (change.getType() == StoreChange.Type.REMOVED) {
+                adjustSeries(change.getEntity(), -1);
+            }
+        });
+    }
+
+    private synchronized void adjustBooking(Appointment appointment, int delta) {
+        roll();
+        LocalDate date = appointment.getDate();
+        if (date.isBefore(windowStart)) {
+            return;
+        }
+        String doctorName = appointment.getDoctorName();
+        TreeMap<LocalDate, Integer> days = bookedByDay.computeIfAbsent(doctorName, k -> new TreeMap<>());
+        int count = days.getOrDefault(date, 0) + delta;
+        if (count > 0) {
+            days.put(date, count);
+        } else {
+            days.remove(date);
+        }
+        if (date.isBefore(windowEnd())) {
+            adjustWorkload(doctorName, delta);
+        }
+    }
+
+    private synchronized void adjustSeries(RecurringAppointment series, int delta) {
+        roll();
+        Set<RecurringAppointment> ofDoctor = seriesByDoctor.computeIfAbsent(series.getDoctorName(),
+            k -> new HashSet<>());
+        if (delta > 0 ? ofDoctor.add(series) : ofDoctor.remove(series)) {
+            adjustWorkload(series.getDoctorName(), delta * (int) occurrencesInWindow(series));
+        }
+    }
+
+    /** First day after the window. */
+    private LocalDate windowEnd() {
+        return windowStart.plusDays(WINDOW_DAYS);
+    }
+
+    private long occurrencesInWindow(RecurringAppointment series) {
+        return series.occurrenceDates(windowStart, windowEnd().minusDays(1)).count();
+    }
+
+    /** Moves the window to start today and recounts every workload, if the day has changed. */
+    private void roll() {
+        LocalDate today = LocalDate.now();
+        if (!today.isAfter(windowStart)) {
+            return;
+        }
+        windowStart = today;
+        Set<String> names = new HashSet<>(workloadByName.keySet());
+        names.addAll(bookedByDay.keySet());
+        names.addAll(seriesByDoctor.keySet());
+        workloadByName.clear();
+        for (String name : names) {
+            TreeMap<LocalDate, Integer> days = bookedByDay.get(name);
+            int load = 0;
+            if (days != null) {
+                days.headMap(windowStart).clear();
+                for (int count : days.headMap(windowEnd()).values()) {
+                    load += count;
+                }
+            }
+            for (RecurringAppointment series : seriesByDoctor.getOrDefault(name, Set.of())) {
+                load += (int) occurrencesInWindow(series);
+            }
+            if (load > 0) {
+                workloadByName.put(name, load);
+            }
+        }
+        bySpecialization.clear();
+        for (Doctor doctor : doctorsByName.values()) {
+            bySpecialization.computeIfAbsent(key(doctor.specializationProperty().get()), k -> new LoadBuckets())
+                .add(doctor, workloadOf(doctor.getName()));
+        }
+    }
+
+    public synchronized void addDoctor(Doctor doctor) {
+        roll();
+        String key = key(doctor.specializationProperty().get());
+        doctorsByName.put(doctor.getName(), doctor);
+        specializationLabels.putIfAbsent(key, doctor.specializationProperty().get().trim());
+        bySpecialization.computeIfAbsent(key, k -> new LoadBuckets())
+            .add(doctor, workloadOf(doctor.getName()));
+    }
+
+    public synchronized void removeDoctor(Doctor doctor) {
+        roll();
+        String key = key(doctor.specializationProperty().get());
+        doctorsByName.remove(doctor.getName());
+        LoadBuckets buckets = bySpecialization.get(key);
+        if (buckets != null) {
+            buckets.remove(doctor, workloadOf(doctor.getName()));
+            if (buckets.isEmpty()) {
+                bySpecialization.remove(key);
+                specializationLabels.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Applies bookings (positive) or cancellations (negative) within the
+     * window to a doctor's workload.
+     */
+    private void adjustWorkload(String doctorName, int delta) {
+        if (delta == 0) {
+            return;
+        }
+        int oldLoad = workloadOf(doctorName);
+        int newLoad = Math.max(0, oldLoad + delta);
+        workloadByName.put(doctorName, newLoad);
+
+        Doctor doctor = doctorsByName.get(doctorName);
+        if (doctor != null) {
+            LoadBuckets buckets = bySpecialization.get(key(doctor.specializationProperty().get()));
+            if (buckets != null) {
+                buckets.move(doctor, oldLoad, newLoad);
+            }
+        }
+    }
+
+    /** The doctor's appointments and series occurrences over the {@value #WINDOW_DAYS} days from today. */
+    public synchronized int workloadOf(String doctorName) {
+        roll();
+        return workloadByName.getOrDefault(doctorName, 0);
+    }
+
+    /**
+     * Distinct specializations as first entered, sorted case-insensitively.
+     */
+    public synchronized List<String> specializations() {
+        return new ArrayList<>(specializationLabels.values());
+    }
+
+    public synchronized List<Doctor> doctorsFor(String specialization) {
+        roll();
+        LoadBuckets buckets = bySpecialization.get(key(specialization));
+        return buckets == null ? Collections.emptyList() : buckets.doctors();
+    }
+
+    /**
+     * The doctor of the specialization with the fewest bookings in the
+     * window, or null.
+     */
+    public synchronized Doctor leastLoaded(String specialization) {
+        return leastLoaded(specialization, d -> true);
+    }
+
+    /**
+     * The least-loaded doctor of the specialization that satisfies
+     * {@code available} (for example, is free at the requested slot). Buckets
+     * are visited from the minimum load upwards, so the common case inspects
+     * only the first candidate.
+     */
+    public synchronized Doctor leastLoaded(String specialization, Predicate<Doctor> available) {
+        roll();
+        LoadBuckets buckets = bySpecialization.get(key(specialization));
+        return buckets == null ? null : buckets.first(available);
+    }
+
+    private static String key(String specialization) {
+        return specialization == null ? "" : specialization.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static final class LoadBuckets {
+        /** Occupied buckets only, by workload. */
+        private final TreeMap<Integer, LinkedHashSet<Doctor>> buckets = new TreeMap<>();
+        private int size;
+
+        void add(Doctor doctor, int load) {
+            buckets.computeIfAbsent(load, k -> new LinkedHashSet<>()).add(doctor);
+            size++;
+        }
+
+        void remove(Doctor doctor, int load) {
+            LinkedHashSet<Doctor> bucket = buckets.get(load);
+            if (bucket == null || !bucket.remove(doctor)) {
+                return;
+            }
+            size--;
+            if (bucket.isEmpty()) {
+                buckets.remove(load);
+            }
+        }
+
+        void move(Doctor doctor, int oldLoad, int newLoad) {
+            if (oldLoad == newLoad) {
+                return;
+            }
+            LinkedHashSet<Doctor> from = buckets.get(oldLoad);
+            if (from == null || !from.remove(doctor)) {
+                return;
+            }
+            if (from.isEmpty()) {
+                buckets.remove(oldLoad);
+            }
+            buckets.computeIfAbsent(newLoad, k -> new LinkedHashSet<>()).add(doctor);
+        }
+
+        Doctor first(Predicate<Doctor> available) {
+            for (LinkedHashSet<Doctor> bucket : buckets.values()) {
+                for (Doctor doctor : bucket) {
+                    if (available.test(doctor)) {
+                        return doctor;
+                    }
+                }
+            }
+            return null;
+        }
+
+        /** All doctors, least loaded first. */
+        List<Doctor> doctors() {
+            List<Doctor> all = new ArrayList<>(size);
+            buckets.values().forEach(all::addAll);
+            return all;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+    }
+}
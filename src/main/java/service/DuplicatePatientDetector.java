@@ -0,0 +1,284 @@
+import java.time.LocalDate;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Fuzzy near-duplicate detection for patient registrations.
+ *
+ * Patients are placed into blocks keyed by exact date of birth and by the
+ * phonetic code of their first and last name plus birth year. Edit-distance
+ * scoring only runs between patients that share a block, so a single check
+ * touches a handful of records and the full dedup scan stays far below O(n^2).
+ */
+public class DuplicatePatientDetector {
+    public static final double DEFAULT_THRESHOLD = 0.85;
+
+    private final Map<String, Set<Patient>> blocks = new ConcurrentHashMap<>();
+    private final Map<Patient, List<String>> keysByPatient = new ConcurrentHashMap<>();
+    /** The indexed object of each stored patient, which an edit replaces with a new one. */
+    private final Map<Long, Patient> indexedById = new ConcurrentHashMap<>();
+    private final double threshold;
+
+    public DuplicatePatientDetector() {
+        this(DEFAULT_THRESHOLD);
+    }
+
+    public DuplicatePatientDetector(double threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * Indexes the current contents of the store and keeps the index in sync
+     * with later additions, edits and removals.
+     */
+    public void attach(EntityStore<Patient> patients) {
+        patients.addListener(change -> {
+            switch (change.getType()) {
+                case ADDED, UPDATED -> replace(indexedById.put(change.getId(), change.getEntity()),
+                    change.getEntity());
+                case REMOVED -> {
+                    Patient indexed = indexedById.remove(change.getId());
+                    remove(indexed != null ? indexed : change.getEntity());
+                }
+            }
+        });
+        patients.forEachEntry((id, patient) -> replace(indexedById.put(id, patient), patient));
+    }
+
+    private void replace(Patient previous, Patient patient) {
+        if (previous != null) {
+            remove(previous);
+        }
+        reindex(patient);
+    }
+
+    public void index(Patient patient) {
+        List<String> keys = blockingKeys(patient.getName(), patient.getDateOfBirth());
+        keysByPatient.put(patient, keys);
+        for (String key : keys) {
+            blocks.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(patient);
+        }
+    }
+
+    public void remove(Patient patient) {
+        List<String> keys = keysByPatient.remove(patient);
+        if (keys == null) {
+            return;
+        }
+        for (String key : keys) {
+            blocks.computeIfPresent(key, (k, members) -> {
+                members.remove(patient);
+                return members.isEmpty() ? null : members;
+            });
+        }
+    }
+
+    /**
+     * Re-computes the blocking keys of a patient whose name or date of birth
+     * was edited in place.
+     */
+    public void reindex(Patient patient) {
+        remove(patient);
+        index(patient);
+    }
+
+    /**
+     * Returns the patient whose name matches case-insensitively and whose date
+     * of birth is equal, looking only at the date-of-birth block.
+     */
+    public Patient findExact(String name, LocalDate dob) {
+        Set<Patient> block = blocks.get(dobKey(dob));
+        if (block == null) {
+            return null;
+        }
+        for (Patient p : block) {
+            if (p.getName().equalsIgnoreCase(name) && dob.equals(p.getDateOfBirth())) {
+                return p;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Shortlists registered patients that look like the given registration,
+     * best match first.
+     */
+    public List<DuplicateMatch> findCandidates(String name, LocalDate dob) {
+        Set<Patient> shortlist = new LinkedHashSet<>();
+        for (String key : blockingKeys(name, dob)) {
+            Set<Patient> block = blocks.get(key);
+            if (block != null) {
+                shortlist.addAll(block);
+            }
+        }
+
+        List<DuplicateMatch> matches = new ArrayList<>();
+        for (Patient candidate : shortlist) {
+            double score = score(name, dob, candidate.getName(), candidate.getDateOfBirth());
+            if (score >= threshold) {
+                matches.add(new DuplicateMatch(candidate, null, score));
+            }
+        }
+        matches.sort(Comparator.comparingDouble(DuplicateMatch::getScore).reversed());
+        return matches;
+    }
+
+    /**
+     * Scans the whole index for likely duplicate pairs. Blocks are scored in
+     * parallel on the common fork-join pool; a pair found through several
+     * blocks is reported once.
+     */
+    public List<DuplicateMatch> findAllDuplicates() {
+        Map<Map.Entry<String, String>, DuplicateMatch> pairs = new ConcurrentHashMap<>();
+        blocks.values().parallelStream()
+            .map(ArrayList::new)
+            .forEach(block -> {
+                for (int i = 0; i < block.size(); i++) {
+                    Patient a = block.get(i);
+                    for (int j = i + 1; j < block.size(); j++) {
+                        Patient b = block.get(j);
+                        double score = score(a.getName(), a.getDateOfBirth(), b.getName(), b.getDateOfBirth());
+                        if (score >= threshold) {
+                            pairs.putIfAbsent(pairKey(a, b), new DuplicateMatch(a, b, score));
+                        }
+                    }
+                }
+            });
+        return pairs.values().stream()
+            .sorted(Comparator.comparingDouble(DuplicateMatch::getScore).reversed())
+            .collect(Collectors.toList());
+    }
+
+    public int size() {
+        return keysByPatient.size();
+    }
+
+    /**
+     * Similarity in [0, 1]: three quarters name similarity (edit distance,
+     * lifted when the names sound alike), one quarter date-of-birth agreement.
+     */
+    static double score(String nameA, LocalDate dobA, String nameB, LocalDate dobB) {
+        String a = normalizeName(nameA);
+        String b = normalizeName(nameB);
+        int maxLength = Math.max(a.length(), b.length());
+        double nameScore = maxLength == 0 ? 1.0 : 1.0 - (double) levenshtein(a, b) / maxLength;
+        if (phoneticName(nameA).equals(phoneticName(nameB))) {
+            nameScore = (nameScore + 1.0) / 2;
+        }
+        return 0.75 * nameScore + 0.25 * dobScore(dobA, dobB);
+    }
+
+    private static double dobScore(LocalDate a, LocalDate b) {
+        if (a == null || b == null) {
+            return 0.0;
+        }
+        if (a.equals(b)) {
+            return 1.0;
+        }
+        if (a.getYear() != b.getYear()) {
+            return 0.0;
+        }
+        boolean transposed = a.getMonthValue() == b.getDayOfMonth() && a.getDayOfMonth() == b.getMonthValue();
+        boolean oneFieldOff = a.getMonthValue() == b.getMonthValue() || a.getDayOfMonth() == b.getDayOfMonth();
+        return transposed || oneFieldOff ? 0.8 : 0.0;
+    }
+
+    private static List<String> blockingKeys(String name, LocalDate dob) {
+        List<String> keys = new ArrayList<>(5);
+        if (dob != null) {
+            keys.add(dobKey(dob));
+        }
+        String[] tokens = normalizeName(name).split(" ");
+        String[] first = PhoneticEncoder.encode(tokens[0]);
+        String[] last = PhoneticEncoder.encode(tokens[tokens.length - 1]);
+        String year = dob == null ? "?" : String.valueOf(dob.getYear());
+        Set<String> phoneticKeys = new LinkedHashSet<>();
+        for (String f : first) {
+            for (String l : last) {
+                phoneticKeys.add("P:" + f + ":" + l + ":" + year);
+            }
+        }
+        keys.addAll(phoneticKeys);
+        return keys;
+    }
+
+    private static String dobKey(LocalDate dob) {
+        return "D:" + dob;
+    }
+
+    private static String phoneticName(String name) {
+        StringBuilder sb = new StringBuilder();
+        for (String token : normalizeName(name).split(" ")) {
+            sb.append(PhoneticEncoder.encode(token)[0]).append(' ');
+        }
+        return sb.toString();
+    }
+
+    private static String normalizeName(String name) {
+        if (name == null) {
+            return "";
+        }
+        return name.toLowerCase(Locale.ROOT).replaceAll("[^\\p{L} ]", "").trim().replaceAll("\\s+", " ");
+    }
+
+    private static int levenshtein(String a, String b) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+
+    /** The pair's patient IDs, which are unique, in order, so either order of the pair gives the same key. */
+    private static Map.Entry<String, String> pairKey(Patient a, Patient b) {
+        String first = a.getPatientId();
+        String second = b.getPatientId();
+        return first.compareTo(second) <= 0
+            ? new AbstractMap.SimpleImmutableEntry<>(first, second)
+            : new AbstractMap.SimpleImmutableEntry<>(second, first);
+    }
+
+    public static class DuplicateMatch {
+        private final Patient patient;
+        private final Patient other;
+        private final double score;
+
+        DuplicateMatch(Patient patient, Patient other, double score) {
+            this.patient = patient;
+            this.other = other;
+            this.score = score;
+        }
+
+        public Patient getPatient() {
+            return patient;
+        }
+
+        /** The second patient of a pair found by a full scan; null for single-registration checks. */
+        public Patient getOther() {
+            return other;
+        }
+
+        public double getScore() {
+            return score;
+        }
+    }
+}
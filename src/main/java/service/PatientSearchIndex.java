@@ -0,0 +1,151 @@
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Prefix index over patient names and IDs for type-ahead search.
+ *
+ * Every word of a patient's name and the patient ID are stored lower-cased in
+ * one sorted set as {@code term + '\0' + storeId}, so a prefix query is a
+ * range scan that stops as soon as enough patients are found, independent of
+ * how many patients are registered. The index follows the patient store
+ * incrementally, including renames.
+ */
+public class PatientSearchIndex {
+    private static final char SEPARATOR = '\0';
+    /** Upper bound on index entries examined per query when extra words filter the matches. */
+    private static final int MAX_SCAN = 5000;
+
+    private final NavigableSet<String> terms = new ConcurrentSkipListSet<>();
+    private final Map<Long, List<String>> termsById = new ConcurrentHashMap<>();
+    private EntityStore<Patient> store;
+
+    /**
+     * Follows the store and indexes the patients it already holds. The
+     * listener is registered first so no concurrent registration is missed,
+     * and under this index's lock with the scan, so a change heard meanwhile
+     * is applied after the scan. Entries are keyed by id, so a patient both
+     * scanned and heard of is indexed once, and a removal or edit the scan
+     * raced with still has the last word.
+     */
+    public synchronized void attach(EntityStore<Patient> patients) {
+        this.store = patients;
+        patients.addListener(change -> {
+            synchronized (this) {
+                switch (change.getType()) {
+                    case ADDED:
+                    case UPDATED:
+                        index(change.getId(), change.getEntity());
+                        break;
+                    case REMOVED:
+                        remove(change.getId());
+                        break;
+                }
+            }
+        });
+        patients.forEachEntry(this::index);
+    }
+
+    /** Lock held; replaces whatever the id was indexed under. */
+    private void index(long id, Patient patient) {
+        List<String> keys = new ArrayList<>();
+        for (String word : words(patient.getName())) {
+            keys.add(word + SEPARATOR + id);
+        }
+        if (patient.getPatientId() != null) {
+            keys.add(patient.getPatientId().toLowerCase(Locale.ROOT) + SEPARATOR + id);
+        }
+        List<String> old = termsById.put(id, keys);
+        if (old != null) {
+            old.stream().filter(k -> !keys.contains(k)).forEach(terms::remove);
+        }
+        terms.addAll(keys);
+    }
+
+    private void remove(long id) {
+        List<String> old = termsById.remove(id);
+        if (old != null) {
+            old.forEach(terms::remove);
+        }
+    }
+
+    /**
+     * Up to {@code limit} patients whose name words or ID start with the words
+     * of the query, ordered by the matching term. An empty query returns the
+     * first patients in alphabetical order.
+     */
+    public List<Patient> search(String query, int limit) {
+        SearchQueryEvent event = new SearchQueryEvent();
+        event.begin();
+        List<String> words = words(query);
+        String lead = words.isEmpty() ? "" : longest(words);
+        Set<Patient> results = new LinkedHashSet<>();
+        int scanned = 0;
+        for (String key : terms.subSet(lead, true, lead + Character.MAX_VALUE, false)) {
+            if (results.size() >= limit || ++scanned > MAX_SCAN) {
+                break;
+            }
+            Patient patient = store.get(Long.parseLong(key.substring(key.lastIndexOf(SEPARATOR) + 1)));
+            if (patient != null && (words.size() < 2 || matchesAll(patient, words))) {
+                results.add(patient);
+            }
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.source = "PatientSearchIndex";
+            event.criteria = "Name or ID prefix";
+            event.queryLength = query == null ? 0 : query.length();
+            event.results = results.size();
+            event.commit();
+        }
+        return new ArrayList<>(results);
+    }
+
+    /** The patient with exactly this ID, or null. */
+    public Patient findById(String patientId) {
+        return patientId == null ? null : store.findByKey(patientId.trim());
+    }
+
+    public int size() {
+        return termsById.size();
+    }
+
+    private static boolean matchesAll(Patient patient, List<String> queryWords) {
+        String name = " " + (patient.getName() == null ? "" : patient.getName().toLowerCase(Locale.ROOT));
+        String id = patient.getPatientId() == null ? "" : patient.getPatientId().toLowerCase(Locale.ROOT);
+        for (String q : queryWords) {
+            if (!id.startsWith(q) && !name.contains(" " + q)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String longest(List<String> words) {
+        String best = words.get(0);
+        for (String w : words) {
+            if (w.length() > best.length()) {
+                best = w;
+            }
+        }
+        return best;
+    }
+
+    private static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        if (text != null) {
+            for (String w : text.toLowerCase(Locale.ROOT).split("[\\s,():]+")) {
+                if (!w.isEmpty()) {
+                    words.add(w);
+                }
+            }
+        }
+        return words;
+    }
+}
@@ -0,0 +1,202 @@
+import java.util.Locale;
+
+/**
+ * Metaphone-style phonetic encoder producing a primary and an alternate key
+ * per word, in the spirit of Double Metaphone. Names that sound alike
+ * ("Jon Smyth" / "John Smith") encode to the same key, which is what the
+ * duplicate detector blocks on.
+ */
+public final class PhoneticEncoder {
+    private static final int MAX_LENGTH = 6;
+
+    private PhoneticEncoder() {
+    }
+
+    /**
+     * Encodes a single word. Returns {primary, alternate}; both are equal when
+     * the word has no ambiguous spelling. Empty input yields empty keys.
+     */
+    public static String[] encode(String word) {
+        String w = normalize(word);
+        StringBuilder primary = new StringBuilder();
+        StringBuilder alternate = new StringBuilder();
+        if (w.isEmpty()) {
+            return new String[] {"", ""};
+        }
+
+        int i = 0;
+        if (w.startsWith("GN") || w.startsWith("KN") || w.startsWith("PN")
+                || w.startsWith("WR") || w.startsWith("PS")) {
+            i = 1;
+        } else if (w.charAt(0) == 'X') {
+            add(primary, alternate, "S");
+            i = 1;
+        } else if (w.startsWith("WH")) {
+            add(primary, alternate, "W");
+            i = 2;
+        }
+
+        for (; i < w.length() && (primary.length() < MAX_LENGTH || alternate.length() < MAX_LENGTH); i++) {
+            char c = w.charAt(i);
+            if (c != 'C' && i > 0 && w.charAt(i - 1) == c) {
+                continue;
+            }
+            switch (c) {
+                case 'A': case 'E': case 'I': case 'O': case 'U': case 'Y':
+                    if (i == 0) {
+                        add(primary, alternate, "A");
+                    }
+                    break;
+                case 'B':
+                    if (!(i == w.length() - 1 && i > 0 && w.charAt(i - 1) == 'M')) {
+                        add(primary, alternate, "P");
+                    }
+                    break;
+                case 'C':
+                    if (at(w, i, "CIA")) {
+                        add(primary, alternate, "X");
+                    } else if (at(w, i, "CH")) {
+                        add(primary, alternate, "X", "K");
+                        i++;
+                    } else if (at(w, i, "CI") || at(w, i, "CE") || at(w, i, "CY")) {
+                        add(primary, alternate, "S");
+                    } else if (at(w, i, "CK")) {
+                        add(primary, alternate, "K");
+                        i++;
+                    } else {
+                        add(primary, alternate, "K");
+                    }
+                    break;
+                case 'D':
+                    if (at(w, i, "DGE") || at(w, i, "DGI") || at(w, i, "DGY")) {
+                        add(primary, alternate, "J");
+                        i += 2;
+                    } else {
+                        add(primary, alternate, "T");
+                    }
+                    break;
+                case 'G':
+                    if (at(w, i, "GH")) {
+                        if (i == 0) {
+                            add(primary, alternate, "K");
+                        } else if (i + 2 < w.length() && isVowel(w.charAt(i + 2))) {
+                            add(primary, alternate, "K");
+                        } else {
+                            add(primary, alternate, "", "F");
+                        }
+                        i++;
+                    } else if (at(w, i, "GN") && i + 2 == w.length()) {
+                        // silent, as in "Campagn"
+                    } else if (i + 1 < w.length() && "EIY".indexOf(w.charAt(i + 1)) >= 0) {
+                        add(primary, alternate, "J", "K");
+                    } else {
+                        add(primary, alternate, "K");
+                    }
+                    break;
+                case 'H':
+                    if ((i == 0 || isVowel(w.charAt(i - 1)))
+                            && i + 1 < w.length() && isVowel(w.charAt(i + 1))) {
+                        add(primary, alternate, "H");
+                    }
+                    break;
+                case 'J':
+                    add(primary, alternate, "J", "H");
+                    break;
+                case 'K':
+                    if (i == 0 || w.charAt(i - 1) != 'C') {
+                        add(primary, alternate, "K");
+                    }
+                    break;
+                case 'P':
+                    if (at(w, i, "PH")) {
+                        add(primary, alternate, "F");
+                        i++;
+                    } else {
+                        add(primary, alternate, "P");
+                    }
+                    break;
+                case 'Q':
+                    add(primary, alternate, "K");
+                    break;
+                case 'S':
+                    if (at(w, i, "SCH")) {
+                        add(primary, alternate, "SK", "X");
+                        i += 2;
+                    } else if (at(w, i, "SH")) {
+                        add(primary, alternate, "X");
+                        i++;
+                    } else if (at(w, i, "SIO") || at(w, i, "SIA")) {
+                        add(primary, alternate, "X", "S");
+                    } else {
+                        add(primary, alternate, "S");
+                    }
+                    break;
+                case 'T':
+                    if (at(w, i, "TIA") || at(w, i, "TIO")) {
+                        add(primary, alternate, "X");
+                    } else if (at(w, i, "TH")) {
+                        add(primary, alternate, "0", "T");
+                        i++;
+                    } else if (!at(w, i, "TCH")) {
+                        add(primary, alternate, "T");
+                    }
+                    break;
+                case 'V':
+                    add(primary, alternate, "F");
+                    break;
+                case 'W':
+                    if (i + 1 < w.length() && isVowel(w.charAt(i + 1))) {
+                        add(primary, alternate, "W");
+                    }
+                    break;
+                case 'X':
+                    add(primary, alternate, "KS");
+                    break;
+                case 'Z':
+                    add(primary, alternate, "S");
+                    break;
+                default:
+                    // F, L, M, N, R map to themselves
+                    add(primary, alternate, String.valueOf(c));
+                    break;
+            }
+        }
+
+        return new String[] {truncate(primary), truncate(alternate)};
+    }
+
+    private static String normalize(String word) {
+        if (word == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(word.length());
+        for (char c : word.toUpperCase(Locale.ROOT).toCharArray()) {
+            if (c >= 'A' && c <= 'Z') {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean at(String w, int i, String s) {
+        return w.startsWith(s, i);
+    }
+
+    private static boolean isVowel(char c) {
+        return "AEIOUY".indexOf(c) >= 0;
+    }
+
+    private static void add(StringBuilder primary, StringBuilder alternate, String both) {
+        primary.append(both);
+        alternate.append(both);
+    }
+
+    private static void add(StringBuilder primary, StringBuilder alternate, String p, String a) {
+        primary.append(p);
+        alternate.append(a);
+    }
+
+    private static String truncate(StringBuilder sb) {
+        return sb.length() > MAX_LENGTH ? sb.substring(0, MAX_LENGTH) : sb.toString();
+    }
+}
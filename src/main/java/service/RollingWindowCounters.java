@@ -0,0 +1,261 @@
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Per-day appointment, bill and revenue counters for rolling-window trends,
+ * kept up to date as appointments, series and billing records change.
+ *
+ * Counters live in ring buffers of {@link #DAYS} slots indexed by epoch day;
+ * each slot remembers which day it holds, so a day that has slid out of the
+ * window is recycled the next time its slot is written and reads of it come
+ * back as zero. A change is a constant-time update of one slot, and a sliding
+ * sum over a range of days adds the day entering the window and subtracts
+ * the one leaving it, never rescanning the records.
+ *
+ * The counters cover {@link #FUTURE_DAYS} days ahead of today, for booked
+ * appointments, and the rest of the ring behind it, about a year of history.
+ * Appointments and occurrences of recurring series beyond that horizon are
+ * not counted until it reaches them: as the days go by it is extended and
+ * the newly covered days are counted from a snapshot.
+ *
+ * Each count from a snapshot, at attach and at every extension, remembers
+ * the snapshot's sequence for the days it covered, and the listeners skip
+ * changes to those days at or below it: they are in the snapshot already.
+ * So a write made while the stores are being counted is counted once,
+ * whichever thread makes it.
+ */
+public class RollingWindowCounters {
+    /** Days held, a power of two. */
+    public static final int DAYS = 512;
+    public static final int FUTURE_DAYS = 120;
+    public static final int HISTORY_DAYS = DAYS - FUTURE_DAYS - 1;
+
+    private final long[] tags = new long[DAYS];
+    private final int[] appointments = new int[DAYS];
+    private final int[] bills = new int[DAYS];
+    private final long[] revenueCents = new long[DAYS];
+    private ClinicStore store;
+    /**
+     * The sequence of the snapshot each range of days was counted from, by
+     * the range's first epoch day; a range runs up to the next one.
+     */
+    private final TreeMap<Long, Long> countedAt = new TreeMap<>();
+    /** Last day up to which appointments and series occurrences have been counted. */
+    private LocalDate horizon = LocalDate.now().plusDays(FUTURE_DAYS);
+    private long version;
+
+    public RollingWindowCounters() {
+        Arrays.fill(tags, Long.MIN_VALUE);
+    }
+
+    /**
+     * Counts the appointments, series and billing records of {@code store}
+     * and follows their changes. The listeners are added under this object's
+     * lock, so any change they hear of waits until the snapshot counted here
+     * has been read, and is skipped if the snapshot includes it.
+     */
+    public synchronized void attach(ClinicStore store) {
+        this.store = store;
+        store.appointments().addListener(change -> {
+            if (change.getType() == StoreChange.Type.ADDED) {
+                adjust(change.getEntity().getDate(), 1, 0, 0, change.getSequence());
+            } else if (change.getType() == StoreChange.Type.REMOVED) {
+                adjust(change.getEntity().getDate(), -1, 0, 0, change.getSequence());
+            }
+        });
+        store.billingRecords().addListener(change -> {
+            BillingRecord record = change.getEntity();
+            if (change.getType() == StoreChange.Type.ADDED) {
+                adjust(record.getDate(), 0, 1, record.getAmountCents(), change.getSequence());
+            } else if (change.getType() == StoreChange.Type.REMOVED) {
+                adjust(record.getDate(), 0, -1, -record.getAmountCents(), change.getSequence());
+            }
+        });
+        store.recurringSeries().addListener(change -> {
+            if (change.getType() == StoreChange.Type.ADDED) {
+                adjustSeries(change.getEntity(), 1, change.getSequence());
+            } else if (change.getType() == StoreChange.Type.REMOVED) {
+                adjustSeries(change.getEntity(), -1, change.getSequence());
+            }
+        });
+        try (ClinicSnapshot snapshot = store.openSnapshot()) {
+            countedAt.put(Long.MIN_VALUE, snapshot.sequence());
+            snapshot.appointments().stream().forEach(apt -> adjust(apt.getDate(), 1, 0, 0));
+            snapshot.billingRecords().stream().forEach(record ->
+                adjust(record.getDate(), 0, 1, record.getAmountCents()));
+            snapshot.recurringSeries().stream().forEach(s ->
+                s.occurrenceDates(LocalDate.now().minusDays(HISTORY_DAYS), horizon)
+                    .forEach(date -> adjust(date, 1, 0, 0)));
+        }
+    }
+
+    private synchronized void adjustSeries(RecurringAppointment s, int delta, long sequence) {
+        s.occurrenceDates(LocalDate.now().minusDays(HISTORY_DAYS), horizon)
+            .forEach(date -> adjust(date, delta, 0, 0, sequence));
+    }
+
+    /** Applies a change heard from a store, unless the day was counted from a snapshot that includes it. */
+    private synchronized void adjust(LocalDate date, int appointmentDelta, int billDelta, long centsDelta,
+                                     long sequence) {
+        Map.Entry<Long, Long> counted = countedAt.floorEntry(date.toEpochDay());
+        if (counted == null || sequence > counted.getValue()) {
+            adjust(date, appointmentDelta, billDelta, centsDelta);
+        }
+    }
+
+    /**
+     * Lock held: moves the horizon up to {@link #FUTURE_DAYS} from today,
+     * counting the appointments and series occurrences on the days it now
+     * covers from a snapshot. Until then changes on those days are ignored,
+     * and after it those the snapshot includes are, so nothing is counted
+     * twice.
+     */
+    private void extendHorizon() {
+        LocalDate extended = LocalDate.now().plusDays(FUTURE_DAYS);
+        if (!extended.isAfter(horizon)) {
+            return;
+        }
+        LocalDate from = horizon.plusDays(1);
+        horizon = extended;
+        if (store == null) {
+            return;
+        }
+        try (ClinicSnapshot snapshot = store.openSnapshot()) {
+            countedAt.put(from.toEpochDay(), snapshot.sequence());
+            snapshot.appointments().stream().forEach(apt -> {
+                if (!apt.getDate().isBefore(from) && !apt.getDate().isAfter(extended)) {
+                    adjust(apt.getDate(), 1, 0, 0);
+                }
+            });
+            snapshot.recurringSeries().stream().forEach(s ->
+                s.occurrenceDates(from, extended).forEach(date -> adjust(date, 1, 0, 0)));
+        }
+        // Ranges wholly behind the history are never looked up again
+        Long oldest = countedAt.floorKey(LocalDate.now().toEpochDay() - HISTORY_DAYS);
+        if (oldest != null) {
+            countedAt.headMap(oldest).clear();
+        }
+    }
+
+    /** Applies a change to one day; days outside the covered range are ignored. */
+    public synchronized void adjust(LocalDate date, int appointmentDelta, int billDelta, long centsDelta) {
+        long day = date.toEpochDay();
+        if (day < LocalDate.now().toEpochDay() - HISTORY_DAYS || day > horizon.toEpochDay()) {
+            return;
+        }
+        int slot = (int) (day & (DAYS - 1));
+        if (tags[slot] != day) {
+            if (tags[slot] > day) {
+                return;
+            }
+            tags[slot] = day;
+            appointments[slot] = 0;
+            bills[slot] = 0;
+            revenueCents[slot] = 0;
+        }
+        appointments[slot] += appointmentDelta;
+        bills[slot] += billDelta;
+        revenueCents[slot] += centsDelta;
+        version++;
+    }
+
+    /** Incremented on every change, so a view can tell whether anything needs redrawing. */
+    public synchronized long version() {
+        return version;
+    }
+
+    /**
+     * Sums over the {@code windowDays} days ending on each day from
+     * {@code first} through {@code last}; days the counters do not cover
+     * count as zero.
+     */
+    public synchronized Window window(LocalDate first, LocalDate last, int windowDays) {
+        extendHorizon();
+        int points = (int) (last.toEpochDay() - first.toEpochDay() + 1);
+        Window window = new Window(first, windowDays, Math.max(0, points));
+        long start = first.toEpochDay() - windowDays + 1;
+        long appointmentSum = 0;
+        long billSum = 0;
+        long revenueSum = 0;
+        for (long day = start; day <= last.toEpochDay(); day++) {
+            appointmentSum += count(appointments, day);
+            billSum += count(bills, day);
+            revenueSum += cents(day);
+            long leaving = day - windowDays;
+            if (leaving >= start) {
+                appointmentSum -= count(appointments, leaving);
+                billSum -= count(bills, leaving);
+                revenueSum -= cents(leaving);
+            }
+            int point = (int) (day - first.toEpochDay());
+            if (point >= 0) {
+                window.appointments[point] = appointmentSum;
+                window.bills[point] = billSum;
+                window.revenueCents[point] = revenueSum;
+            }
+        }
+        return window;
+    }
+
+    private int count(int[] counters, long day) {
+        int slot = (int) (day & (DAYS - 1));
+        return tags[slot] == day ? counters[slot] : 0;
+    }
+
+    private long cents(long day) {
+        int slot = (int) (day & (DAYS - 1));
+        return tags[slot] == day ? revenueCents[slot] : 0;
+    }
+
+    /** Sliding sums for a range of days, one point per day. */
+    public static final class Window {
+        private final LocalDate first;
+        private final int windowDays;
+        private final long[] appointments;
+        private final long[] bills;
+        private final long[] revenueCents;
+
+        private Window(LocalDate first, int windowDays, int points) {
+            this.first = first;
+            this.windowDays = windowDays;
+            this.appointments = new long[points];
+            this.bills = new long[points];
+            this.revenueCents = new long[points];
+        }
+
+        public int size() {
+            return appointments.length;
+        }
+
+        public LocalDate date(int point) {
+            return first.plusDays(point);
+        }
+
+        public int getWindowDays() {
+            return windowDays;
+        }
+
+        /** Appointments in the window ending on the point's day. */
+        public long appointments(int point) {
+            return appointments[point];
+        }
+
+        public long bills(int point) {
+            return bills[point];
+        }
+
+        public long revenueCents(int point) {
+            return revenueCents[point];
+        }
+
+        public double averageAppointments(int point) {
+            return appointments[point] / (double) windowDays;
+        }
+
+        public double averageRevenueCents(int point) {
+            return revenueCents[point] / (double) windowDays;
+        }
+    }
+}
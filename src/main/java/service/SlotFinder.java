@@ -0,0 +1,112 @@
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Answers "first N free slots" queries from the packed occupancy words of
+ * {@link SlotOccupancyIndex}. For each day the free masks of all candidate
+ * doctors are OR-ed together, and set bits are visited in time order with
+ * {@link Long#numberOfTrailingZeros}, so fully booked days and slots cost a
+ * single word operation.
+ */
+public class SlotFinder {
+    private final SlotOccupancyIndex occupancy;
+
+    public SlotFinder(SlotOccupancyIndex occupancy) {
+        this.occupancy = occupancy;
+    }
+
+    public List<FreeSlot> findForDoctor(Doctor doctor, LocalDate from, LocalDate to, int limit) {
+        return find(Collections.singletonList(doctor), from, to, limit, LocalDateTime.now());
+    }
+
+    public List<FreeSlot> findForSpecialization(DoctorWorkloadIndex doctorIndex, String specialization,
+                                                LocalDate from, LocalDate to, int limit) {
+        return find(doctorIndex.doctorsFor(specialization), from, to, limit, LocalDateTime.now());
+    }
+
+    /**
+     * Returns up to {@code limit} free slots between {@code from} and {@code to}
+     * (inclusive), ordered by date, time and then the order of {@code doctors}.
+     * Slots that start at or before {@code notBefore} are skipped.
+     */
+    public List<FreeSlot> find(List<Doctor> doctors, LocalDate from, LocalDate to, int limit,
+                               LocalDateTime notBefore) {
+        List<FreeSlot> result = new ArrayList<>(Math.max(limit, 0));
+        if (doctors.isEmpty() || limit <= 0 || from == null || to == null) {
+            return result;
+        }
+
+        String[] names = new String[doctors.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = doctors.get(i).getName();
+        }
+        long[] free = new long[names.length];
+
+        LocalDate start = from.isBefore(notBefore.toLocalDate()) ? notBefore.toLocalDate() : from;
+        for (LocalDate date = start; !date.isAfter(to); date = date.plusDays(1)) {
+            long window = date.equals(notBefore.toLocalDate())
+                ? TimeSlotGrid.slotsAfter(notBefore.toLocalTime())
+                : TimeSlotGrid.FULL_MASK;
+            if (window == 0) {
+                continue;
+            }
+
+            occupancy.bookedMasks(names, date, free);
+            long anyFree = 0;
+            for (int i = 0; i < free.length; i++) {
+                free[i] = ~free[i] & window;
+                anyFree |= free[i];
+            }
+
+            while (anyFree != 0) {
+                int slot = Long.numberOfTrailingZeros(anyFree);
+                long bit = 1L << slot;
+                LocalTime time = TimeSlotGrid.slotAt(slot);
+                for (int i = 0; i < free.length; i++) {
+                    if ((free[i] & bit) != 0) {
+                        result.add(new FreeSlot(doctors.get(i), date, time));
+                        if (result.size() == limit) {
+                            return result;
+                        }
+                    }
+                }
+                anyFree &= anyFree - 1;
+            }
+        }
+        return result;
+    }
+
+    public static class FreeSlot {
+        private final Doctor doctor;
+        private final LocalDate date;
+        private final LocalTime time;
+
+        public FreeSlot(Doctor doctor, LocalDate date, LocalTime time) {
+            this.doctor = doctor;
+            this.date = date;
+            this.time = time;
+        }
+
+        public Doctor getDoctor() {
+            return doctor;
+        }
+
+        public LocalDate getDate() {
+            return date;
+        }
+
+        public LocalTime getTime() {
+            return time;
+        }
+
+        @Override
+        public String toString() {
+            return date + " " + time + " - " + doctor.getName()
+                + " (" + doctor.specializationProperty().get() + ")";
+        }
+    }
+}
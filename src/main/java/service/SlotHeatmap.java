@@ -0,0 +1,65 @@
+import java.time.DayOfWeek;
+
+/**
+ * Booked counts per weekday and {@link TimeSlotGrid} slot, accumulated from
+ * day words of {@link SlotOccupancyIndex}.
+ *
+ * Each weekday keeps bit-sliced counters: plane j holds bit j of the count
+ * of every slot, so adding a day word is a ripple-carry addition of one long
+ * into the planes, counting all slots of the day at once with a handful of
+ * bitwise operations. Counts are read back per slot only when the grid is
+ * drawn.
+ */
+public final class SlotHeatmap {
+    private static final int PLANES = 32;
+
+    private final long[][] planes = new long[7][PLANES];
+    private final int[] days = new int[7];
+    private long booked;
+
+    /** Adds one doctor-day; {@code weekday} is 0 for Monday. */
+    void add(int weekday, long word) {
+        days[weekday]++;
+        booked += Long.bitCount(word);
+        long[] p = planes[weekday];
+        long carry = word;
+        for (int j = 0; carry != 0; j++) {
+            long next = p[j] & carry;
+            p[j] ^= carry;
+            carry = next;
+        }
+    }
+
+    /** Times the slot was booked on the weekday. */
+    public int booked(DayOfWeek weekday, int slot) {
+        long[] p = planes[weekday.ordinal()];
+        int count = 0;
+        for (int j = 0; j < PLANES; j++) {
+            count |= (int) ((p[j] >>> slot) & 1) << j;
+        }
+        return count;
+    }
+
+    /** Doctor-days on the weekday, the most a slot could have been booked. */
+    public int capacity(DayOfWeek weekday) {
+        return days[weekday.ordinal()];
+    }
+
+    /** Fraction of the weekday's doctor-days on which the slot was booked, 0 without any. */
+    public double utilization(DayOfWeek weekday, int slot) {
+        int capacity = capacity(weekday);
+        return capacity == 0 ? 0 : booked(weekday, slot) / (double) capacity;
+    }
+
+    public long totalBooked() {
+        return booked;
+    }
+
+    public long totalCapacity() {
+        long total = 0;
+        for (int d : days) {
+            total += d;
+        }
+        return total * TimeSlotGrid.SLOT_COUNT;
+    }
+}
@@ -0,0 +1,258 @@
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-doctor, per-day slot occupancy packed into one {@code long} per day
+ * (bit i = {@link TimeSlotGrid} slot i booked). Each doctor owns a dense array
+ * of day words covering the span of dates it has bookings for.
+ *
+ * Recurring series are not expanded into the arrays; their bits are OR-ed into
+ * a day's word on lookup by testing each of the doctor's series for that date.
+ */
+public class SlotOccupancyIndex {
+    private final Map<String, DayMasks> byDoctor = new HashMap<>();
+    private final Map<String, List<RecurringAppointment>> seriesByDoctor = new HashMap<>();
+
+    /**
+     * Loads the current appointments and tracks later additions and removals.
+     * Updates arrive synchronously with each store write, so a booking made
+     * under the doctor's store lock is visible to the next check at once.
+     */
+    public void attach(EntityStore<Appointment> appointments) {
+        appointments.addListener(change -> {
+            if (change.getType() == StoreChange.Type.ADDED) {
+                add(change.getEntity());
+            } else if (change.getType() == StoreChange.Type.REMOVED) {
+                remove(change.getEntity());
+            }
+        });
+        appointments.stream().forEach(this::add);
+    }
+
+    public void attachSeries(EntityStore<RecurringAppointment> series) {
+        series.addListener(change -> {
+            if (change.getType() == StoreChange.Type.ADDED) {
+                addSeries(change.getEntity());
+            } else if (change.getType() == StoreChange.Type.REMOVED) {
+                removeSeries(change.getEntity());
+            }
+        });
+        series.stream().forEach(this::addSeries);
+    }
+
+    public synchronized void addSeries(RecurringAppointment series) {
+        List<RecurringAppointment> list = seriesByDoctor.computeIfAbsent(series.getDoctorName(), k -> new ArrayList<>());
+        if (!list.contains(series)) {
+            list.add(series);
+        }
+    }
+
+    public synchronized void removeSeries(RecurringAppointment series) {
+        List<RecurringAppointment> list = seriesByDoctor.get(series.getDoctorName());
+        if (list != null) {
+            list.remove(series);
+            if (list.isEmpty()) {
+                seriesByDoctor.remove(series.getDoctorName());
+            }
+        }
+    }
+
+    /**
+     * First date on which a prospective series would collide with a booked
+     * appointment or another series of the same doctor at the same time, or
+     * null if it never does. Against single bookings only the span of dates
+     * the doctor has bookings for is walked; against other series the overlap
+     * is computed from the two rules, so open-ended series stay cheap.
+     */
+    public synchronized LocalDate firstConflict(RecurringAppointment candidate) {
+        int slot = TimeSlotGrid.indexOf(candidate.getTime());
+        if (slot < 0) {
+            return null;
+        }
+        long bit = 1L << slot;
+        LocalDate first = null;
+
+        DayMasks masks = byDoctor.get(candidate.getDoctorName());
+        if (masks != null && masks.words.length > 0) {
+            LocalDate lastBooked = LocalDate.ofEpochDay(masks.firstDay + masks.words.length - 1);
+            first = candidate.occurrenceDates(candidate.getStartDate(), lastBooked)
+                .filter(date -> (masks.get(date.toEpochDay()) & bit) != 0)
+                .findFirst()
+                .orElse(null);
+        }
+
+        for (RecurringAppointment existing : seriesByDoctor.getOrDefault(candidate.getDoctorName(), List.of())) {
+            if (existing == candidate || !existing.getTime().equals(candidate.getTime())) {
+                continue;
+            }
+            LocalDate common = candidate.getRule().firstCommonOccurrence(
+                candidate.getStartDate(), existing.getRule(), existing.getStartDate());
+            if (common != null && (first == null || common.isBefore(first))) {
+                first = common;
+            }
+        }
+        return first;
+    }
+
+    public void add(Appointment appointment) {
+        mark(appointment.getDoctorName(), appointment.getDate(), appointment.getTime(), true);
+    }
+
+    public void remove(Appointment appointment) {
+        mark(appointment.getDoctorName(), appointment.getDate(), appointment.getTime(), false);
+    }
+
+    public synchronized void mark(String doctorName, LocalDate date, LocalTime time, boolean booked) {
+        int slot = TimeSlotGrid.indexOf(time);
+        if (doctorName == null || date == null || slot < 0) {
+            return;
+        }
+        DayMasks masks = byDoctor.computeIfAbsent(doctorName, k -> new DayMasks());
+        long day = date.toEpochDay();
+        long word = masks.get(day);
+        masks.set(day, booked ? word | (1L << slot) : word & ~(1L << slot));
+    }
+
+    public synchronized boolean isTaken(String doctorName, LocalDate date, LocalTime time) {
+        int slot = TimeSlotGrid.indexOf(time);
+        return slot >= 0 && (bookedMask(doctorName, date) & (1L << slot)) != 0;
+    }
+
+    /**
+     * Booked slots of a doctor on a day as a bitmask over {@link TimeSlotGrid}.
+     */
+    public synchronized long bookedMask(String doctorName, LocalDate date) {
+        DayMasks masks = byDoctor.get(doctorName);
+        return (masks == null ? 0L : masks.get(date.toEpochDay())) | seriesMask(doctorName, date);
+    }
+
+    /**
+     * Copies the booked masks of several doctors for one day into {@code out},
+     * under a single lock acquisition.
+     */
+    public synchronized void bookedMasks(String[] doctorNames, LocalDate date, long[] out) {
+        long day = date.toEpochDay();
+        for (int i = 0; i < doctorNames.length; i++) {
+            DayMasks masks = byDoctor.get(doctorNames[i]);
+            out[i] = (masks == null ? 0L : masks.get(day)) | seriesMask(doctorNames[i], date);
+        }
+    }
+
+    /**
+     * Booked slots per weekday over {@code [from, to]} for the given doctors,
+     * aggregated from the day words. Every doctor-day in the range counts
+     * towards capacity, whether or not it has bookings.
+     *
+     * Archived appointments have left the index, so the ones in the range
+     * are passed in as {@code archived} and their slots added back. The day
+     * words and series are copied under the lock and aggregated outside it,
+     * so a long range does not hold up booking checks.
+     */
+    public SlotHeatmap heatmap(Collection<String> doctorNames, LocalDate from, LocalDate to,
+                               Collection<Appointment> archived) {
+        long first = from.toEpochDay();
+        int days = (int) Math.max(0, to.toEpochDay() - first + 1);
+        List<String> doctors = new ArrayList<>(doctorNames);
+        long[][] words = new long[doctors.size()][];
+        List<List<RecurringAppointment>> series = new ArrayList<>(doctors.size());
+        synchronized (this) {
+            for (String doctor : doctors) {
+                DayMasks masks = byDoctor.get(doctor);
+                words[series.size()] = masks == null ? new long[days] : masks.copy(first, days);
+                series.add(List.copyOf(seriesByDoctor.getOrDefault(doctor, List.of())));
+            }
+        }
+
+        Map<String, Integer> rows = new HashMap<>();
+        for (int i = 0; i < doctors.size(); i++) {
+            rows.putIfAbsent(doctors.get(i), i);
+        }
+        for (Appointment appointment : archived) {
+            Integer row = rows.get(appointment.getDoctorName());
+            int slot = TimeSlotGrid.indexOf(appointment.getTime());
+            long offset = appointment.getDate().toEpochDay() - first;
+            if (row != null && slot >= 0 && offset >= 0 && offset < days) {
+                words[row][(int) offset] |= 1L << slot;
+            }
+        }
+
+        SlotHeatmap heatmap = new SlotHeatmap();
+        for (int i = 0; i < doctors.size(); i++) {
+            List<RecurringAppointment> doctorSeries = series.get(i);
+            // Epoch day 0 was a Thursday
+            int weekday = (int) Math.floorMod(first + 3, 7L);
+            for (int d = 0; d < days; d++) {
+                long word = words[i][d];
+                if (!doctorSeries.isEmpty()) {
+                    word |= seriesMask(doctorSeries, LocalDate.ofEpochDay(first + d));
+                }
+                heatmap.add(weekday, word);
+                weekday = weekday == 6 ? 0 : weekday + 1;
+            }
+        }
+        return heatmap;
+    }
+
+    private long seriesMask(String doctorName, LocalDate date) {
+        List<RecurringAppointment> series = seriesByDoctor.get(doctorName);
+        return series == null ? 0L : seriesMask(series, date);
+    }
+
+    private static long seriesMask(List<RecurringAppointment> series, LocalDate date) {
+        long mask = 0L;
+        for (RecurringAppointment s : series) {
+            int slot = TimeSlotGrid.indexOf(s.getTime());
+            if (slot >= 0 && s.occursOn(date)) {
+                mask |= 1L << slot;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Growable array of day words starting at {@code firstDay}.
+     */
+    private static final class DayMasks {
+        private long firstDay;
+        private long[] words = new long[0];
+
+        long get(long day) {
+            long offset = day - firstDay;
+            return offset < 0 || offset >= words.length ? 0L : words[(int) offset];
+        }
+
+        /** The words of {@code length} days from {@code day}, zero where none are held. */
+        long[] copy(long day, int length) {
+            long[] copy = new long[length];
+            long start = Math.max(day, firstDay);
+            long end = Math.min(day + length, firstDay + words.length);
+            if (start < end) {
+                System.arraycopy(words, (int) (start - firstDay), copy, (int) (start - day), (int) (end - start));
+            }
+            return copy;
+        }
+
+        void set(long day, long word) {
+            if (words.length == 0) {
+                firstDay = day;
+                words = new long[32];
+            } else if (day < firstDay) {
+                int shift = (int) Math.max(firstDay - day, words.length / 2);
+                long[] grown = new long[words.length + shift];
+                System.arraycopy(words, 0, grown, shift, words.length);
+                words = grown;
+                firstDay -= shift;
+            } else if (day - firstDay >= words.length) {
+                int needed = (int) (day - firstDay + 1);
+                words = Arrays.copyOf(words, Math.max(needed, words.length * 2));
+            }
+            words[(int) (day - firstDay)] = word;
+        }
+    }
+}
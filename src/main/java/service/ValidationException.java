@@ -0,0 +1,11 @@
+/**
+ * A request was rejected by one of the clinic's business rules. The message is
+ * meant to be shown to the user as is.
+ */
+public class ValidationException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public ValidationException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,396 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * One immutable file of archived appointments or billing records from a
+ * single month.
+ *
+ * The file starts with a small uncompressed header (kind, month, record
+ * count, first and last date) that is all {@link ColdArchive} reads at
+ * startup, so a date-range query can skip a segment without opening the rest
+ * of it. The body is deflated and column-wise: records are sorted by date and
+ * every column is written in turn, dates and times as small deltas and the
+ * strings through a dictionary, which makes the repeated names and services
+ * compress to a few bytes a record.
+ */
+final class ArchiveSegment {
+    enum Kind { APPOINTMENTS, BILLING }
+
+    private static final int MAGIC = 0x53484d53; // "SHMS"
+    private static final int FORMAT = 1;
+    static final String SUFFIX = ".seg";
+
+    final Path file;
+    final Kind kind;
+    final YearMonth month;
+    final int count;
+    final LocalDate minDate;
+    final LocalDate maxDate;
+    /**
+     * How far the move of a segment written by this process has got, so that
+     * a snapshot opened while it is being archived sees every record exactly
+     * once. Null for segments loaded from disk and once no snapshot can be
+     * older than the archiving.
+     */
+    volatile Moves moves;
+
+    private ArchiveSegment(Path file, Kind kind, YearMonth month, int count, LocalDate minDate, LocalDate maxDate) {
+        this.file = file;
+        this.kind = kind;
+        this.month = month;
+        this.count = count;
+        this.minDate = minDate;
+        this.maxDate = maxDate;
+    }
+
+    boolean overlaps(LocalDate from, LocalDate to) {
+        return !maxDate.isBefore(from) && !minDate.isAfter(to);
+    }
+
+    /** Starts tracking the move of the records with these hot-store ids. */
+    void track(long[] ids) {
+        moves = new Moves(ids);
+    }
+
+    /** Per record, in file order: its hot-store id and the change sequence at which it left the hot store. */
+    static final class Moves {
+        final long[] hotIds;
+        /** A sequence, or {@link ColdArchive#PENDING} or {@link ColdArchive#DROPPED}. */
+        final AtomicLongArray movedAt;
+        /** Queries blocked in {@link #awaitMove}; guarded by this object. */
+        private volatile int waiting;
+
+        private Moves(long[] hotIds) {
+            this.hotIds = hotIds;
+            this.movedAt = new AtomicLongArray(hotIds.length);
+            for (int i = 0; i < hotIds.length; i++) {
+                movedAt.set(i, ColdArchive.PENDING);
+            }
+        }
+
+        /** Records how a record's move ended and wakes the queries waiting for it. */
+        void moved(int index, long at) {
+            movedAt.set(index, at);
+            if (waiting > 0) {
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        }
+
+        /**
+         * How a record's move ended, waiting up to {@code timeoutMillis} for
+         * one still in progress.
+         *
+         * @throws IllegalStateException if it has not ended by then
+         */
+        long awaitMove(int index, long timeoutMillis) {
+            long at = movedAt.get(index);
+            if (at != ColdArchive.PENDING) {
+                return at;
+            }
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            synchronized (this) {
+                waiting++;
+                try {
+                    while ((at = movedAt.get(index)) == ColdArchive.PENDING) {
+                        long remaining = deadline - System.nanoTime();
+                        if (remaining <= 0) {
+                            throw new IllegalStateException("The archiving of record " + hotIds[index]
+                                + " did not finish within " + timeoutMillis + " ms");
+                        }
+                        TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for an archived record", e);
+                } finally {
+                    waiting--;
+                }
+            }
+            return at;
+        }
+    }
+
+    long sizeOnDisk() {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /** Reads just the header. */
+    static ArchiveSegment open(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 64))) {
+            return readHeader(file, in);
+        }
+    }
+
+    private static ArchiveSegment readHeader(Path file, DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC || in.readUnsignedByte() != FORMAT) {
+            throw new IOException("Not an archive segment: " + file);
+        }
+        Kind kind = Kind.values()[in.readUnsignedByte()];
+        YearMonth month = YearMonth.of(in.readUnsignedShort(), in.readUnsignedByte());
+        int count = in.readInt();
+        LocalDate minDate = LocalDate.ofEpochDay(in.readInt());
+        LocalDate maxDate = LocalDate.ofEpochDay(in.readInt());
+        return new ArchiveSegment(file, kind, month, count, minDate, maxDate);
+    }
+
+    // Writing
+
+    /** Orders records for writing: the date column is stored as deltas. */
+    static final Comparator<Appointment> APPOINTMENT_ORDER =
+        Comparator.comparing(Appointment::getDate).thenComparing(Appointment::getTime);
+    static final Comparator<BillingRecord> BILLING_ORDER = Comparator.comparing(BillingRecord::getDate);
+
+    /**
+     * Writes one month of appointments, sorted by {@link #APPOINTMENT_ORDER},
+     * to {@code file} durably; the records keep their order in the file.
+     */
+    static ArchiveSegment writeAppointments(Path file, YearMonth month, List<Appointment> appointments)
+            throws IOException {
+        return write(file, Kind.APPOINTMENTS, month, appointments.size(),
+            appointments.get(0).getDate(), appointments.get(appointments.size() - 1).getDate(), out -> {
+                Dictionary strings = new Dictionary();
+                int n = appointments.size();
+                int[] patientIds = new int[n];
+                int[] patientNames = new int[n];
+                int[] doctors = new int[n];
+                for (int i = 0; i < n; i++) {
+                    Appointment a = appointments.get(i);
+                    patientIds[i] = strings.code(a.patientIdProperty().get());
+                    patientNames[i] = strings.code(a.getPatientName());
+                    doctors[i] = strings.code(a.getDoctorName());
+                }
+                strings.write(out);
+                writeDates(out, appointments.get(0).getDate(), n, i -> appointments.get(i).getDate());
+                for (Appointment a : appointments) {
+                    writeVarLong(out, a.getTime().toSecondOfDay() / 60);
+                }
+                writeCodes(out, patientIds);
+                writeCodes(out, patientNames);
+                writeCodes(out, doctors);
+            });
+    }
+
+    /** Like {@link #writeAppointments}, sorted by {@link #BILLING_ORDER}. */
+    static ArchiveSegment writeBilling(Path file, YearMonth month, List<BillingRecord> records) throws IOException {
+        return write(file, Kind.BILLING, month, records.size(),
+            records.get(0).getDate(), records.get(records.size() - 1).getDate(), out -> {
+                Dictionary strings = new Dictionary();
+                int n = records.size();
+                int[] patientIds = new int[n];
+                int[] patients = new int[n];
+                int[] services = new int[n];
+                for (int i = 0; i < n; i++) {
+                    BillingRecord r = records.get(i);
+                    patientIds[i] = strings.code(r.getPatientId());
+                    patients[i] = strings.code(r.getPatient());
+                    services[i] = strings.code(r.serviceProperty().get());
+                }
+                strings.write(out);
+                writeDates(out, records.get(0).getDate(), n, i -> records.get(i).getDate());
+                for (BillingRecord r : records) {
+                    long cents = r.getAmountCents();
+                    writeVarLong(out, (cents << 1) ^ (cents >> 63));
+                }
+                writeCodes(out, patientIds);
+                writeCodes(out, patients);
+                writeCodes(out, services);
+            });
+    }
+
+    private interface Body {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private interface DateColumn {
+        LocalDate get(int index);
+    }
+
+    private static ArchiveSegment write(Path file, Kind kind, YearMonth month, int count, LocalDate minDate,
+                                        LocalDate maxDate, Body body) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            OutputStream raw = Channels.newOutputStream(channel);
+            DataOutputStream header = new DataOutputStream(raw);
+            header.writeInt(MAGIC);
+            header.writeByte(FORMAT);
+            header.writeByte(kind.ordinal());
+            header.writeShort(month.getYear());
+            header.writeByte(month.getMonthValue());
+            header.writeInt(count);
+            header.writeInt((int) minDate.toEpochDay());
+            header.writeInt((int) maxDate.toEpochDay());
+            DeflaterOutputStream deflated = new DeflaterOutputStream(raw, new Deflater(Deflater.BEST_COMPRESSION));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(deflated, 1 << 16));
+            body.write(out);
+            out.flush();
+            deflated.finish();
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+        return new ArchiveSegment(file, kind, month, count, minDate, maxDate);
+    }
+
+    private static void writeDates(DataOutputStream out, LocalDate first, int n, DateColumn dates)
+            throws IOException {
+        long previous = first.toEpochDay();
+        for (int i = 0; i < n; i++) {
+            long day = dates.get(i).toEpochDay();
+            writeVarLong(out, day - previous);
+            previous = day;
+        }
+    }
+
+    private static void writeCodes(DataOutputStream out, int[] codes) throws IOException {
+        for (int code : codes) {
+            writeVarLong(out, code);
+        }
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    /** Strings numbered in order of first use. */
+    private static final class Dictionary {
+        private final Map<String, Integer> codes = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+
+        int code(String s) {
+            return codes.computeIfAbsent(s == null ? "" : s, k -> {
+                strings.add(k);
+                return strings.size() - 1;
+            });
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            writeVarLong(out, strings.size());
+            for (String s : strings) {
+                out.writeUTF(s);
+            }
+        }
+    }
+
+    // Reading
+
+    List<Appointment> readAppointments() throws IOException {
+        try (DataInputStream in = body()) {
+            String[] strings = readDictionary(in);
+            LocalDate[] dates = readDates(in);
+            int[] minutes = new int[count];
+            for (int i = 0; i < count; i++) {
+                minutes[i] = (int) readVarLong(in);
+            }
+            int[] patientIds = readCodes(in);
+            int[] patientNames = readCodes(in);
+            int[] doctors = readCodes(in);
+            List<Appointment> list = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                list.add(new Appointment(strings[patientIds[i]], strings[patientNames[i]], strings[doctors[i]],
+                    dates[i], LocalTime.ofSecondOfDay(minutes[i] * 60L)));
+            }
+            return list;
+        }
+    }
+
+    List<BillingRecord> readBilling() throws IOException {
+        try (DataInputStream in = body()) {
+            String[] strings = readDictionary(in);
+            LocalDate[] dates = readDates(in);
+            long[] cents = new long[count];
+            for (int i = 0; i < count; i++) {
+                long zigzag = readVarLong(in);
+                cents[i] = (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+            int[] patientIds = readCodes(in);
+            int[] patients = readCodes(in);
+            int[] services = readCodes(in);
+            List<BillingRecord> list = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                list.add(new BillingRecord(strings[patientIds[i]], strings[patients[i]], strings[services[i]],
+                    cents[i], dates[i]));
+            }
+            return list;
+        }
+    }
+
+    private DataInputStream body() throws IOException {
+        InputStream raw = new BufferedInputStream(Files.newInputStream(file), 1 << 16);
+        DataInputStream header = new DataInputStream(raw);
+        readHeader(file, header);
+        return new DataInputStream(new BufferedInputStream(new InflaterInputStream(raw), 1 << 16));
+    }
+
+    private static String[] readDictionary(DataInputStream in) throws IOException {
+        String[] strings = new String[(int) readVarLong(in)];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = in.readUTF();
+        }
+        return strings;
+    }
+
+    private LocalDate[] readDates(DataInputStream in) throws IOException {
+        LocalDate[] dates = new LocalDate[count];
+        long day = minDate.toEpochDay();
+        for (int i = 0; i < count; i++) {
+            day += readVarLong(in);
+            dates[i] = LocalDate.ofEpochDay(day);
+        }
+        return dates;
+    }
+
+    private int[] readCodes(DataInputStream in) throws IOException {
+        int[] codes = new int[count];
+        for (int i = 0; i < count; i++) {
+            codes[i] = (int) readVarLong(in);
+        }
+        return codes;
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new EOFException("Malformed varint");
+    }
+}
@@ -0,0 +1,180 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory journal of the changes made to every store of a
+ * {@link ClinicStore}, readable by sequence number.
+ *
+ * Writers on different stripes can publish their changes slightly out of
+ * sequence order, so readers only ever see changes up to the watermark: the
+ * highest sequence below which no change is still missing. A reader that
+ * resumes from the watermark it last saw therefore never skips a change.
+ * The oldest changes are dropped once more than {@code capacity} are held.
+ *
+ * Appending takes no lock: the watermark is advanced by compare-and-set, and
+ * the monitor is only entered to wake readers blocked in {@link #awaitAfter}.
+ */
+public class ChangeLog {
+    private final ConcurrentSkipListMap<Long, StoreChange<?>> changes = new ConcurrentSkipListMap<>();
+    private final int capacity;
+    private final List<Runnable> advanceListeners = new CopyOnWriteArrayList<>();
+    private final AtomicLong watermark;
+    private final AtomicInteger retained = new AtomicInteger();
+    private final AtomicBoolean trimming = new AtomicBoolean();
+    private volatile long oldestRetained;
+    /** Readers blocked in {@link #awaitAfter}; guarded by this log. */
+    private volatile int waiting;
+
+    public ChangeLog(ClinicStore store, int capacity) {
+        this.capacity = capacity;
+        this.watermark = new AtomicLong(store.currentSequence());
+        this.oldestRetained = watermark.get() + 1;
+        StoreListener<Object> listener = new StoreListener<>() {
+            @Override
+            public void onChange(StoreChange<Object> change) {
+                append(List.of(change));
+            }
+
+            @Override
+            public void onChanges(List<StoreChange<Object>> batch) {
+                append(batch);
+            }
+        };
+        store.patients().addListener(cast(listener));
+        store.doctors().addListener(cast(listener));
+        store.appointments().addListener(cast(listener));
+        store.recurringSeries().addListener(cast(listener));
+        store.billingRecords().addListener(cast(listener));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> StoreListener<T> cast(StoreListener<Object> listener) {
+        return (StoreListener<T>) (StoreListener<?>) listener;
+    }
+
+    /** Adds changes and advances the watermark once for all of them. */
+    private void append(List<? extends StoreChange<?>> batch) {
+        for (StoreChange<?> change : batch) {
+            changes.put(change.getSequence(), change);
+        }
+        retained.addAndGet(batch.size());
+        // Every writer advances past its own changes after adding them, so the
+        // last one to fill a gap always carries the watermark over it
+        boolean advanced = false;
+        long current;
+        while (changes.containsKey((current = watermark.get()) + 1)) {
+            advanced |= watermark.compareAndSet(current, current + 1);
+        }
+        trim();
+        if (advanced) {
+            if (waiting > 0) {
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+            for (Runnable listener : advanceListeners) {
+                listener.run();
+            }
+        }
+    }
+
+    /** Drops the oldest changes below the watermark beyond the capacity, on one writer at a time. */
+    private void trim() {
+        while (retained.get() > capacity && trimming.compareAndSet(false, true)) {
+            try {
+                while (retained.get() > capacity) {
+                    Map.Entry<Long, StoreChange<?>> first = changes.firstEntry();
+                    if (first == null || first.getKey() > watermark.get()) {
+                        return;
+                    }
+                    // Announced before the change goes, so a reader that misses it also sees it is gone
+                    oldestRetained = first.getKey() + 1;
+                    changes.remove(first.getKey());
+                    retained.decrementAndGet();
+                }
+            } finally {
+                trimming.set(false);
+            }
+        }
+    }
+
+    /**
+     * Registers a callback run on the writing thread whenever the watermark
+     * moves. It must return quickly.
+     */
+    public void addAdvanceListener(Runnable listener) {
+        advanceListeners.add(listener);
+    }
+
+    public void removeAdvanceListener(Runnable listener) {
+        advanceListeners.remove(listener);
+    }
+
+    /** Sequence of the last change that every reader can see. */
+    public long watermark() {
+        return watermark.get();
+    }
+
+    /**
+     * Whether changes after {@code sequence} are still all held. If not, the
+     * reader has to start over from a full snapshot.
+     */
+    public boolean covers(long sequence) {
+        return sequence + 1 >= oldestRetained;
+    }
+
+    /**
+     * Up to {@code limit} changes with a sequence greater than
+     * {@code afterSequence}, in sequence order and never past the watermark.
+     *
+     * @throws IllegalArgumentException if {@code limit} is not positive
+     * @throws IllegalStateException if some of those changes were already dropped
+     */
+    public List<StoreChange<?>> changesAfter(long afterSequence, int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be at least 1: " + limit);
+        }
+        if (!covers(afterSequence)) {
+            throw new IllegalStateException("Changes after " + afterSequence + " are no longer retained");
+        }
+        long upTo = watermark.get();
+        List<StoreChange<?>> result = new ArrayList<>();
+        for (StoreChange<?> change : changes.subMap(afterSequence, false, upTo, true).values()) {
+            if (result.size() == limit) {
+                break;
+            }
+            result.add(change);
+        }
+        if (!covers(afterSequence)) {
+            throw new IllegalStateException("Changes after " + afterSequence + " are no longer retained");
+        }
+        return result;
+    }
+
+    /**
+     * Blocks until the watermark passes {@code afterSequence} or the timeout
+     * elapses, and returns the watermark.
+     */
+    public synchronized long awaitAfter(long afterSequence, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        waiting++;
+        try {
+            while (watermark.get() <= afterSequence) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    break;
+                }
+                wait(remaining);
+            }
+        } finally {
+            waiting--;
+        }
+        return watermark.get();
+    }
+}
@@ -0,0 +1,263 @@
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Change-data-capture feed of a {@link ClinicStore} as a {@link Flow.Publisher}
+ * of {@link StoreChange}s, for consumers such as reminders, exports and
+ * dashboards that should not hook into the FX lists.
+ *
+ * Each subscriber has its own cursor into the shared {@link ChangeLog} and is
+ * only sent as many changes as it has requested, at most
+ * {@code bufferSize} per fetch. Writers just append to the log and wake
+ * waiting subscribers, so a slow consumer never holds up a write; it only
+ * falls behind. A subscriber that falls further behind than the log retains
+ * receives a {@link LaggedBehindException} and can start over from a snapshot.
+ *
+ * Every change carries its sequence number as its offset. Subscribing with
+ * the offset of the last change processed resumes right after it.
+ */
+public class ChangeStream implements Flow.Publisher<StoreChange<?>> {
+    /** Offset meaning "only changes made from now on". */
+    public static final long LATEST = -1;
+    public static final int DEFAULT_BUFFER_SIZE = 256;
+
+    private final ChangeLog log;
+    private final Executor executor;
+    private final Set<ChangeSubscription> subscriptions = ConcurrentHashMap.newKeySet();
+    private final Runnable wakeUp = this::wakeUp;
+
+    public ChangeStream(ChangeLog log) {
+        this(log, newDeliveryExecutor());
+    }
+
+    public ChangeStream(ChangeLog log, Executor executor) {
+        this.log = log;
+        this.executor = executor;
+        log.addAdvanceListener(wakeUp);
+    }
+
+    private static ExecutorService newDeliveryExecutor() {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "change-stream-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super StoreChange<?>> subscriber) {
+        subscribe(subscriber, LATEST);
+    }
+
+    /**
+     * Subscribes to the changes after {@code afterOffset}, or to new changes
+     * only if it is {@link #LATEST}.
+     */
+    public void subscribe(Flow.Subscriber<? super StoreChange<?>> subscriber, long afterOffset) {
+        subscribe(subscriber, afterOffset, DEFAULT_BUFFER_SIZE, change -> true);
+    }
+
+    /**
+     * A publisher of the changes to one entity type, such as
+     * {@code ofType(Appointment.class)}.
+     */
+    public <T> TypedPublisher<T> ofType(Class<T> type) {
+        return new TypedPublisher<>(type);
+    }
+
+    public final class TypedPublisher<T> implements Flow.Publisher<StoreChange<T>> {
+        private final Class<T> type;
+
+        private TypedPublisher(Class<T> type) {
+            this.type = type;
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super StoreChange<T>> subscriber) {
+            subscribe(subscriber, LATEST);
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        public void subscribe(Flow.Subscriber<? super StoreChange<T>> subscriber, long afterOffset) {
+            ChangeStream.this.subscribe((Flow.Subscriber) subscriber, afterOffset, DEFAULT_BUFFER_SIZE,
+                change -> type.isInstance(change.getEntity()));
+        }
+    }
+
+    private void subscribe(Flow.Subscriber<? super StoreChange<?>> subscriber, long afterOffset, int bufferSize,
+                           Predicate<StoreChange<?>> filter) {
+        long cursor = afterOffset == LATEST ? log.watermark() : afterOffset;
+        ChangeSubscription subscription = new ChangeSubscription(subscriber, cursor, bufferSize, filter);
+        subscriptions.add(subscription);
+        subscriber.onSubscribe(subscription);
+        if (!log.covers(cursor)) {
+            subscription.fail(new LaggedBehindException(cursor));
+        }
+    }
+
+    /** Ends every subscription with {@code onComplete}. */
+    public void close() {
+        log.removeAdvanceListener(wakeUp);
+        for (ChangeSubscription subscription : subscriptions) {
+            subscription.complete();
+        }
+    }
+
+    public int subscriberCount() {
+        return subscriptions.size();
+    }
+
+    private void wakeUp() {
+        for (ChangeSubscription subscription : subscriptions) {
+            if (subscription.demand.get() > 0) {
+                subscription.schedule();
+            }
+        }
+    }
+
+    /**
+     * Signals that a subscriber's offset is older than anything the log still
+     * holds.
+     */
+    public static class LaggedBehindException extends IllegalStateException {
+        private static final long serialVersionUID = 1L;
+
+        private final long offset;
+
+        public LaggedBehindException(long offset) {
+            super("Changes after offset " + offset + " are no longer retained");
+            this.offset = offset;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+    }
+
+    private final class ChangeSubscription implements Flow.Subscription, Runnable {
+        private final Flow.Subscriber<? super StoreChange<?>> subscriber;
+        private final int bufferSize;
+        private final Predicate<StoreChange<?>> filter;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean done;
+        private volatile boolean completeRequested;
+        private volatile Throwable errorRequested;
+        private long cursor;
+
+        ChangeSubscription(Flow.Subscriber<? super StoreChange<?>> subscriber, long cursor, int bufferSize,
+                           Predicate<StoreChange<?>> filter) {
+            this.subscriber = subscriber;
+            this.cursor = cursor;
+            this.bufferSize = bufferSize;
+            this.filter = filter;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                fail(new IllegalArgumentException("Requested " + n + " changes"));
+                return;
+            }
+            demand.getAndUpdate(d -> d + n < 0 ? Long.MAX_VALUE : d + n);
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            done = true;
+            subscriptions.remove(this);
+        }
+
+        void complete() {
+            completeRequested = true;
+            schedule();
+        }
+
+        /**
+         * Ends the subscription with {@code onError}, delivered by the drain
+         * like every other signal so it never overlaps an {@code onNext}.
+         */
+        void fail(Throwable error) {
+            if (!done && errorRequested == null) {
+                errorRequested = error;
+                schedule();
+            }
+        }
+
+        void schedule() {
+            if (wip.getAndIncrement() == 0) {
+                executor.execute(this);
+            }
+        }
+
+        /** Drains on one thread at a time; schedule() calls during a drain loop again. */
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                drain();
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void drain() {
+            if (deliverError()) {
+                return;
+            }
+            while (!done && demand.get() > 0) {
+                List<StoreChange<?>> batch;
+                try {
+                    batch = log.changesAfter(cursor, (int) Math.min(demand.get(), bufferSize));
+                } catch (IllegalStateException e) {
+                    errorRequested = new LaggedBehindException(cursor);
+                    deliverError();
+                    return;
+                }
+                if (batch.isEmpty()) {
+                    break;
+                }
+                for (StoreChange<?> change : batch) {
+                    if (done || deliverError()) {
+                        return;
+                    }
+                    cursor = change.getSequence();
+                    if (!filter.test(change)) {
+                        continue;
+                    }
+                    demand.decrementAndGet();
+                    try {
+                        subscriber.onNext(change);
+                    } catch (RuntimeException e) {
+                        cancel();
+                        return;
+                    }
+                }
+            }
+            if (completeRequested && !done) {
+                cancel();
+                subscriber.onComplete();
+            }
+        }
+
+        /** Sends a pending error, if any; true if the subscription has ended with it. */
+        private boolean deliverError() {
+            Throwable error = errorRequested;
+            if (error == null || done) {
+                return false;
+            }
+            cancel();
+            subscriber.onError(error);
+            return true;
+        }
+    }
+}
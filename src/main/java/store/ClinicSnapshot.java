@@ -0,0 +1,110 @@
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A read-only view of all the stores of a {@link ClinicStore} as of one
+ * change sequence, for reports, exports and backups that must not see half of
+ * a burst of writes.
+ *
+ * Nothing is copied when the snapshot is opened: the stores keep every record
+ * tagged with the sequences of its insert and removal, and the snapshot reads
+ * the live skip lists filtered by its own sequence while writers carry on.
+ * Records removed later stay readable as tombstones, and patients updated
+ * later are returned in their earlier state, until the snapshot is closed.
+ * Records moved to the store's {@link ColdArchive} are read separately, by
+ * date range, and agree with the tables on which side each record is.
+ *
+ * <pre>
+ * try (ClinicSnapshot snapshot = store.openSnapshot()) {
+ *     List&lt;BillingRecord&gt; bills = snapshot.billingRecords().list();
+ * }
+ * </pre>
+ */
+public final class ClinicSnapshot implements AutoCloseable {
+    private final ClinicStore store;
+    private final long sequence;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    ClinicSnapshot(ClinicStore store, long sequence) {
+        this.store = store;
+        this.sequence = sequence;
+    }
+
+    /** The change sequence the snapshot reads at; the change feed continues after it. */
+    public long sequence() {
+        return sequence;
+    }
+
+    public Table<Patient> patients() {
+        return new Table<>(store.patients());
+    }
+
+    public Table<Doctor> doctors() {
+        return new Table<>(store.doctors());
+    }
+
+    public Table<Appointment> appointments() {
+        return new Table<>(store.appointments());
+    }
+
+    public Table<RecurringAppointment> recurringSeries() {
+        return new Table<>(store.recurringSeries());
+    }
+
+    public Table<BillingRecord> billingRecords() {
+        return new Table<>(store.billingRecords());
+    }
+
+    /** Archived appointments dated {@code from} through {@code to}; none if the store has no archive. */
+    public List<Appointment> archivedAppointments(LocalDate from, LocalDate to) {
+        requireOpen();
+        ColdArchive archive = store.archive();
+        return archive == null ? List.of() : archive.appointments(from, to, sequence);
+    }
+
+    public List<BillingRecord> archivedBillingRecords(LocalDate from, LocalDate to) {
+        requireOpen();
+        ColdArchive archive = store.archive();
+        return archive == null ? List.of() : archive.billingRecords(from, to, sequence);
+    }
+
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            store.release(sequence);
+        }
+    }
+
+    private void requireOpen() {
+        if (closed.get()) {
+            throw new IllegalStateException("Snapshot at " + sequence + " is closed");
+        }
+    }
+
+    /** One entity type as of the snapshot, in id order. Read it before the snapshot is closed. */
+    public final class Table<T> {
+        private final EntityStore<T> entities;
+
+        private Table(EntityStore<T> entities) {
+            this.entities = entities;
+        }
+
+        public Stream<T> stream() {
+            requireOpen();
+            return entities.streamAt(sequence);
+        }
+
+        public List<T> list() {
+            return stream().collect(Collectors.toList());
+        }
+
+        public void forEachEntry(BiConsumer<Long, T> action) {
+            requireOpen();
+            entities.forEachEntryAt(sequence, action);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * The data set of one clinic: one {@link EntityStore} per entity type, sharing
+ * a change sequence so that mutations across types are totally ordered. The
+ * most recent changes are kept in a {@link ChangeLog} for the API's change
+ * feed and the {@link ChangeStream}. {@link #openSnapshot()} gives a
+ * point-in-time view of all the stores at once.
+ */
+public class ClinicStore {
+    private static final int CHANGE_LOG_CAPACITY = 100_000;
+
+    private final VersionClock clock = new VersionClock();
+    private final EntityStore<Patient> patients =
+        new EntityStore<>("patients", Patient::getPatientId, ClinicStore::copy, clock);
+    private final EntityStore<Doctor> doctors =
+        new EntityStore<>("doctors", Doctor::getName, null, clock);
+    private final EntityStore<Appointment> appointments =
+        new EntityStore<>("appointments", null, null, clock);
+    private final EntityStore<RecurringAppointment> recurringSeries =
+        new EntityStore<>("recurringSeries", null, null, clock);
+    private final EntityStore<BillingRecord> billingRecords =
+        new EntityStore<>("billingRecords", null, null, clock);
+    private final ChangeLog changeLog = new ChangeLog(this, CHANGE_LOG_CAPACITY);
+    private ChangeStream changeStream;
+    private volatile ColdArchive archive;
+
+    public EntityStore<Patient> patients() {
+        return patients;
+    }
+
+    public EntityStore<Doctor> doctors() {
+        return doctors;
+    }
+
+    public EntityStore<Appointment> appointments() {
+        return appointments;
+    }
+
+    public EntityStore<RecurringAppointment> recurringSeries() {
+        return recurringSeries;
+    }
+
+    public EntityStore<BillingRecord> billingRecords() {
+        return billingRecords;
+    }
+
+    public ChangeLog changeLog() {
+        return changeLog;
+    }
+
+    /** The change-data-capture publisher, created on first use. */
+    public synchronized ChangeStream changeStream() {
+        if (changeStream == null) {
+            changeStream = new ChangeStream(changeLog);
+        }
+        return changeStream;
+    }
+
+    /** Sequence number of the most recent change to any store. */
+    public long currentSequence() {
+        return clock.current();
+    }
+
+    /**
+     * Sequence number of the last change the calling thread made, or 0 if it
+     * has made none; unlike {@link #currentSequence}, never another thread's.
+     */
+    public long lastSequenceOfCurrentThread() {
+        return clock.lastOfCurrentThread();
+    }
+
+    /**
+     * Opens a consistent view of every store as of the latest change. Opening
+     * costs next to nothing and writers are never held up by it, but removed
+     * records and earlier patient states are kept until the snapshot is
+     * closed, so close it as soon as the read is done.
+     */
+    public ClinicSnapshot openSnapshot() {
+        return new ClinicSnapshot(this, clock.open());
+    }
+
+    /** Snapshots currently open, for monitoring. */
+    public int openSnapshots() {
+        return clock.openCount();
+    }
+
+    /** The cold archive of old appointments and billing records, or null if there is none. */
+    public ColdArchive archive() {
+        return archive;
+    }
+
+    void attachArchive(ColdArchive archive) {
+        this.archive = archive;
+    }
+
+    long oldestSnapshot() {
+        return clock.oldest();
+    }
+
+    void release(long sequence) {
+        clock.close(sequence);
+        patients.reclaim();
+        doctors.reclaim();
+        appointments.reclaim();
+        recurringSeries.reclaim();
+        billingRecords.reclaim();
+        ColdArchive cold = archive;
+        if (cold != null) {
+            cold.releaseMoves();
+        }
+    }
+
+    /** Patients are the one type that is updated; an update edits a copy made by this. */
+    private static Patient copy(Patient p) {
+        return new Patient(p.getPatientId(), p.getName(), p.getDateOfBirth(), p.getContactInfo(),
+            p.getMedicalHistory());
+    }
+}
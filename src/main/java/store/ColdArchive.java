@@ -0,0 +1,455 @@
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Cold storage for old appointments and billing records: they are moved out
+ * of the hot {@link EntityStore}s into immutable, compressed
+ * {@link ArchiveSegment} files, one or more per type and month, so that the
+ * records held in memory stay proportional to recent activity.
+ *
+ * Date-range queries read the headers kept in memory to skip every segment
+ * outside the range, and decode the rest on demand, keeping the most recently
+ * used {@value #CACHED_SEGMENTS} decoded. They run against a
+ * {@link ClinicSnapshot}'s sequence, and a record being archived counts as
+ * cold for exactly the snapshots that no longer see it as hot, so a report
+ * combining both never loses or doubles a record.
+ *
+ * Archived records leave the hot stores as removals marked archived, which the
+ * change feed and the indexes follow like any other; a standby repeats them
+ * into its own archive with {@link #archive(Set, Set)}. Segments outlive the
+ * process; on startup the segments already in the directory are simply
+ * queryable.
+ */
+public class ColdArchive {
+    private static final Logger LOG = Logger.getLogger("SHMS.archive");
+    /**
+     * Records younger than this are never archived, so the Trends tab's year of
+     * history in {@link RollingWindowCounters} is left alone.
+     */
+    public static final int MIN_AGE_DAYS = 400;
+    private static final int CACHED_SEGMENTS = 24;
+    /** The move sequence of a record the archiver has not removed yet. */
+    static final long PENDING = -1;
+    /** The move sequence of a record that was deleted before it could be archived. */
+    static final long DROPPED = -2;
+    private static final long MOVE_WAIT_MILLIS = 10_000;
+
+    private final Path dir;
+    private final ClinicStore store;
+    private final List<ArchiveSegment> segments = new CopyOnWriteArrayList<>();
+    private final Map<ArchiveSegment, List<?>> decoded = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ArchiveSegment, List<?>> eldest) {
+            return size() > CACHED_SEGMENTS;
+        }
+    };
+    private ScheduledExecutorService scheduler;
+
+    private ColdArchive(Path dir, ClinicStore store) {
+        this.dir = dir;
+        this.store = store;
+    }
+
+    /**
+     * Opens the archive in {@code dir}, creating it if needed, and attaches it
+     * to the store so that its snapshots can read the archived records.
+     */
+    public static ColdArchive open(Path dir, ClinicStore store) throws IOException {
+        Files.createDirectories(dir);
+        ColdArchive archive = new ColdArchive(dir, store);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(ArchiveSegment.SUFFIX + ".tmp")) {
+                    Files.delete(file); // an archive run that did not finish writing
+                } else if (name.endsWith(ArchiveSegment.SUFFIX)) {
+                    archive.segments.add(ArchiveSegment.open(file));
+                }
+            }
+        }
+        store.attachArchive(archive);
+        LOG.info(() -> String.format("Opened %s: %d segments, %d records", dir, archive.segmentCount(),
+            archive.archivedRecords()));
+        return archive;
+    }
+
+    /** Archives records older than {@code ageDays} now and then once a day, on a background thread. */
+    public synchronized void start(int ageDays) {
+        if (ageDays < MIN_AGE_DAYS) {
+            throw new IllegalArgumentException("Records must be at least " + MIN_AGE_DAYS + " days old to archive");
+        }
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "cold-archive");
+                t.setDaemon(true);
+                return t;
+            });
+            scheduler.scheduleWithFixedDelay(() -> {
+                try {
+                    archive(LocalDate.now().minusDays(ageDays));
+                } catch (IOException | RuntimeException e) {
+                    LOG.log(Level.WARNING, "Archiving failed", e);
+                }
+            }, 0, 1, TimeUnit.DAYS);
+        }
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Moves every appointment and billing record dated before {@code cutoff}
+     * into new segments, one per type and month. Each segment is on disk
+     * before its records are removed from the hot store.
+     */
+    public synchronized Result archive(LocalDate cutoff) throws IOException {
+        return archive(new Result(cutoff), (id, appointment) -> appointment.getDate().isBefore(cutoff),
+            (id, record) -> record.getDate().isBefore(cutoff));
+    }
+
+    /**
+     * Moves the hot appointments and billing records with these ids into new
+     * segments, as {@link #archive(LocalDate)} does by date; a standby uses
+     * it to repeat the moves of its primary.
+     */
+    public synchronized Result archive(Set<Long> appointmentIds, Set<Long> billingIds) throws IOException {
+        return archive(new Result(null), (id, appointment) -> appointmentIds.contains(id),
+            (id, record) -> billingIds.contains(id));
+    }
+
+    private Result archive(Result result, BiPredicate<Long, Appointment> appointments,
+                           BiPredicate<Long, BillingRecord> billingRecords) throws IOException {
+        long start = System.nanoTime();
+        result.appointments = archive(store.appointments(), ArchiveSegment.Kind.APPOINTMENTS, Appointment::getDate,
+            ArchiveSegment.APPOINTMENT_ORDER, ArchiveSegment::writeAppointments, appointments, result);
+        result.billingRecords = archive(store.billingRecords(), ArchiveSegment.Kind.BILLING, BillingRecord::getDate,
+            ArchiveSegment.BILLING_ORDER, ArchiveSegment::writeBilling, billingRecords, result);
+        releaseMoves();
+        result.elapsedNanos = System.nanoTime() - start;
+        if (result.segments > 0) {
+            LOG.info(result::toString);
+        }
+        return result;
+    }
+
+    private interface SegmentWriter<T> {
+        ArchiveSegment write(Path file, YearMonth month, List<T> records) throws IOException;
+    }
+
+    private <T> int archive(EntityStore<T> hot, ArchiveSegment.Kind kind, Function<T, LocalDate> date,
+                            Comparator<T> order, SegmentWriter<T> writer, BiPredicate<Long, T> selected,
+                            Result result) throws IOException {
+        Map<YearMonth, List<Map.Entry<Long, T>>> byMonth = new TreeMap<>();
+        hot.forEachEntry((id, entity) -> {
+            if (selected.test(id, entity)) {
+                YearMonth month = YearMonth.from(date.apply(entity));
+                byMonth.computeIfAbsent(month, m -> new ArrayList<>()).add(Map.entry(id, entity));
+            }
+        });
+        int archived = 0;
+        for (Map.Entry<YearMonth, List<Map.Entry<Long, T>>> month : byMonth.entrySet()) {
+            List<Map.Entry<Long, T>> rows = month.getValue();
+            rows.sort(Map.Entry.comparingByValue(order));
+            List<T> records = new ArrayList<>(rows.size());
+            long[] ids = new long[rows.size()];
+            for (int i = 0; i < ids.length; i++) {
+                records.add(rows.get(i).getValue());
+                ids[i] = rows.get(i).getKey();
+            }
+            ArchiveSegment segment = writer.write(nextFile(kind, month.getKey()), month.getKey(), records);
+            segment.track(ids);
+            segments.add(segment);
+
+            ArchiveSegment.Moves moves = segment.moves;
+            List<T> kept = new ArrayList<>(records.size());
+            List<Long> keptMoves = new ArrayList<>(records.size());
+            int i = 0;
+            try {
+                for (; i < ids.length; i++) {
+                    long sequence = hot.moveToArchive(ids[i]);
+                    moves.moved(i, sequence < 0 ? DROPPED : sequence);
+                    if (sequence >= 0) {
+                        kept.add(records.get(i));
+                        keptMoves.add(sequence);
+                    }
+                }
+            } catch (RuntimeException e) {
+                // A failed removal leaves its record hot, and the ones after it were not tried:
+                // take them all out of the segment, and out of the way of queries
+                for (int j = i; j < ids.length; j++) {
+                    moves.moved(j, DROPPED);
+                }
+                try {
+                    rewrite(segment, kept, keptMoves, ids, writer);
+                } catch (IOException | RuntimeException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+                throw e;
+            }
+            if (kept.size() < records.size()) {
+                segment = rewrite(segment, kept, keptMoves, ids, writer);
+            }
+            if (segment != null) {
+                archived += kept.size();
+                result.segments++;
+                result.bytes += segment.sizeOnDisk();
+            }
+        }
+        return archived;
+    }
+
+    /**
+     * Replaces a segment by one without the records deleted from the hot
+     * store while it was being archived, which could otherwise reappear from
+     * disk after a restart. Returns null if none is left.
+     */
+    private <T> ArchiveSegment rewrite(ArchiveSegment segment, List<T> kept, List<Long> keptMoves, long[] ids,
+                                       SegmentWriter<T> writer) throws IOException {
+        if (kept.isEmpty()) {
+            segments.remove(segment);
+            Files.deleteIfExists(segment.file);
+            return null;
+        }
+        ArchiveSegment fresh = writer.write(nextFile(segment.kind, segment.month), segment.month, kept);
+        long[] keptIds = new long[kept.size()];
+        AtomicLongArray moved = segment.moves.movedAt;
+        for (int i = 0, k = 0; i < ids.length; i++) {
+            if (moved.get(i) != DROPPED) {
+                keptIds[k++] = ids[i];
+            }
+        }
+        fresh.track(keptIds);
+        for (int k = 0; k < keptMoves.size(); k++) {
+            fresh.moves.movedAt.set(k, keptMoves.get(k));
+        }
+        segments.set(segments.indexOf(segment), fresh);
+        synchronized (decoded) {
+            decoded.remove(segment);
+        }
+        Files.deleteIfExists(segment.file);
+        return fresh;
+    }
+
+    /**
+     * Writes records that are not in the hot store straight into new
+     * segments, one per type and month; a standby copies its primary's
+     * archive this way.
+     */
+    public synchronized void add(List<Appointment> appointments, List<BillingRecord> billingRecords)
+            throws IOException {
+        add(ArchiveSegment.Kind.APPOINTMENTS, appointments, Appointment::getDate, ArchiveSegment.APPOINTMENT_ORDER,
+            ArchiveSegment::writeAppointments);
+        add(ArchiveSegment.Kind.BILLING, billingRecords, BillingRecord::getDate, ArchiveSegment.BILLING_ORDER,
+            ArchiveSegment::writeBilling);
+    }
+
+    private <T> void add(ArchiveSegment.Kind kind, List<T> records, Function<T, LocalDate> date, Comparator<T> order,
+                         SegmentWriter<T> writer) throws IOException {
+        Map<YearMonth, List<T>> byMonth = new TreeMap<>();
+        for (T record : records) {
+            byMonth.computeIfAbsent(YearMonth.from(date.apply(record)), m -> new ArrayList<>()).add(record);
+        }
+        for (Map.Entry<YearMonth, List<T>> month : byMonth.entrySet()) {
+            List<T> rows = month.getValue();
+            rows.sort(order);
+            segments.add(writer.write(nextFile(kind, month.getKey()), month.getKey(), rows));
+        }
+    }
+
+    /** The segment files, for {@link #drop} once their records have been written again. */
+    public synchronized List<Path> segmentFiles() {
+        List<Path> files = new ArrayList<>(segments.size());
+        segments.forEach(segment -> files.add(segment.file));
+        return files;
+    }
+
+    /** Deletes the segments of these files, which no snapshot may be reading any more. */
+    public synchronized void drop(Collection<Path> files) throws IOException {
+        for (ArchiveSegment segment : segments) {
+            if (files.contains(segment.file)) {
+                segments.remove(segment);
+                synchronized (decoded) {
+                    decoded.remove(segment);
+                }
+                Files.deleteIfExists(segment.file);
+            }
+        }
+    }
+
+    private Path nextFile(ArchiveSegment.Kind kind, YearMonth month) {
+        String prefix = kind.name().toLowerCase() + "-" + month + "-";
+        for (int n = 1; ; n++) {
+            Path file = dir.resolve(prefix + String.format("%03d", n) + ArchiveSegment.SUFFIX);
+            if (!Files.exists(file)) {
+                return file;
+            }
+        }
+    }
+
+    /** Drops the per-record move sequences once no open snapshot is older than the move. */
+    void releaseMoves() {
+        long oldest = store.oldestSnapshot();
+        for (ArchiveSegment segment : segments) {
+            ArchiveSegment.Moves moves = segment.moves;
+            if (moves == null) {
+                continue;
+            }
+            long last = 0;
+            for (int i = 0; i < moves.movedAt.length() && last != PENDING; i++) {
+                long at = moves.movedAt.get(i);
+                last = at == PENDING ? PENDING : Math.max(last, at);
+            }
+            if (last != PENDING && last <= oldest) {
+                segment.moves = null;
+            }
+        }
+    }
+
+    // Queries
+
+    /** Archived appointments dated {@code from} through {@code to}, as seen by a snapshot at {@code sequence}. */
+    public List<Appointment> appointments(LocalDate from, LocalDate to, long sequence) {
+        return query(ArchiveSegment.Kind.APPOINTMENTS, store.appointments(), Appointment::getDate, from, to, sequence);
+    }
+
+    public List<BillingRecord> billingRecords(LocalDate from, LocalDate to, long sequence) {
+        return query(ArchiveSegment.Kind.BILLING, store.billingRecords(), BillingRecord::getDate, from, to, sequence);
+    }
+
+    private <T> List<T> query(ArchiveSegment.Kind kind, EntityStore<T> hot, Function<T, LocalDate> date,
+                              LocalDate from, LocalDate to, long sequence) {
+        List<T> result = new ArrayList<>();
+        for (ArchiveSegment segment : segments) {
+            if (segment.kind != kind || !segment.overlaps(from, to)) {
+                continue;
+            }
+            List<T> records = decode(segment);
+            ArchiveSegment.Moves moves = segment.moves;
+            for (int i = 0; i < records.size(); i++) {
+                T record = records.get(i);
+                LocalDate day = date.apply(record);
+                if (!day.isBefore(from) && !day.isAfter(to) && (moves == null || movedBy(hot, moves, i, sequence))) {
+                    result.add(record);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Whether a record of a segment still being archived had left the hot
+     * store by {@code sequence}. A record not yet removed will be removed
+     * after any open snapshot's sequence; one whose removal has begun is
+     * waited for, up to {@value #MOVE_WAIT_MILLIS} ms, which is far longer
+     * than the removal and its listeners take.
+     */
+    private static boolean movedBy(EntityStore<?> hot, ArchiveSegment.Moves moves, int index, long sequence) {
+        long at = moves.movedAt.get(index);
+        if (at == PENDING) {
+            if (hot.isLive(moves.hotIds[index])) {
+                return false;
+            }
+            at = moves.awaitMove(index, MOVE_WAIT_MILLIS);
+        }
+        return at != DROPPED && at <= sequence;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> List<T> decode(ArchiveSegment segment) {
+        synchronized (decoded) {
+            List<?> cached = decoded.get(segment);
+            if (cached != null) {
+                return (List<T>) cached;
+            }
+        }
+        try {
+            List<?> records = segment.kind == ArchiveSegment.Kind.APPOINTMENTS
+                ? segment.readAppointments()
+                : segment.readBilling();
+            synchronized (decoded) {
+                decoded.put(segment, records);
+            }
+            return (List<T>) records;
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read archive segment " + segment.file, e);
+        }
+    }
+
+    /** The months with archived records of either type. */
+    public SortedSet<YearMonth> months() {
+        SortedSet<YearMonth> months = new TreeSet<>();
+        segments.forEach(segment -> months.add(segment.month));
+        return months;
+    }
+
+    public int segmentCount() {
+        return segments.size();
+    }
+
+    public long archivedRecords() {
+        return segments.stream().mapToLong(s -> s.count).sum();
+    }
+
+    public long bytesOnDisk() {
+        return segments.stream().mapToLong(ArchiveSegment::sizeOnDisk).sum();
+    }
+
+    public static class Result {
+        private final LocalDate cutoff;
+        private int appointments;
+        private int billingRecords;
+        private int segments;
+        private long bytes;
+        private long elapsedNanos;
+
+        Result(LocalDate cutoff) {
+            this.cutoff = cutoff;
+        }
+
+        public int getAppointments() {
+            return appointments;
+        }
+
+        public int getBillingRecords() {
+            return billingRecords;
+        }
+
+        public int getSegments() {
+            return segments;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Archived %d appointments and %d billing records%s into %d segments"
+                + " (%d KB) in %.1f s", appointments, billingRecords, cutoff == null ? "" : " dated before " + cutoff,
+                segments, bytes / 1024, elapsedNanos / 1e9);
+        }
+    }
+}
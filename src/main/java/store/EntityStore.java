@@ -0,0 +1,728 @@
+import javafx.collections.ObservableList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Thread-safe store for one entity type.
+ *
+ * Records live in a concurrent skip list keyed by a store-assigned id, so reads
+ * and iteration never lock and always see ids in insertion order. Writes to a
+ * record are serialized by one of a fixed set of striped locks chosen by id,
+ * which lets writers on different records proceed in parallel. Each record
+ * carries a version for optimistic updates. An optional natural key (patient
+ * ID, doctor name) is kept unique.
+ *
+ * Listeners are told of a change after its record lock is released, so a
+ * slow listener holds up only its own writer. JavaFX code reads through
+ * {@link #fxView()}, a mirror list that is updated on the FX Application
+ * Thread in batches.
+ *
+ * Every record also remembers the sequence numbers of its insert and removal,
+ * which is what {@link ClinicSnapshot}s read by: a snapshot at sequence S sees
+ * exactly the records inserted at or before S and not removed by then. While
+ * a snapshot older than a removal is open, the removed record stays in the
+ * skip list as a tombstone that live reads skip. Records of stores given a
+ * copier are never changed in place: an update edits a copy and installs it,
+ * and the object it replaces is kept as the record's earlier state, so
+ * snapshots read stored objects as they are, without locks or copies. Both
+ * are reclaimed as soon as no open snapshot can read them, so with no
+ * snapshot open a removal is a plain delete.
+ */
+public class EntityStore<T> {
+    private static final Logger LOG = Logger.getLogger("SHMS.store");
+    private static final int STRIPES = 64;
+    /** A sequence that is being assigned; readers wait the few instructions until it is. */
+    private static final long PENDING = -1;
+    /** The removal sequence of a record that is still present. */
+    private static final long LIVE = Long.MAX_VALUE;
+
+    private final String name;
+    private final Function<T, Object> naturalKey;
+    private final UnaryOperator<T> copier;
+    private final VersionClock clock;
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final AtomicInteger live = new AtomicInteger();
+    private final ConcurrentSkipListMap<Long, Entry<T>> records = new ConcurrentSkipListMap<>();
+    private final Map<T, Long> ids = new ConcurrentHashMap<>();
+    private final Map<Object, Long> idsByKey = new ConcurrentHashMap<>();
+    private final ReentrantLock[] recordLocks = newLocks();
+    private final ReentrantLock[] keyLocks = newLocks();
+    private final List<StoreListener<T>> listeners = new CopyOnWriteArrayList<>();
+    /** Ids of tombstones and of records with earlier states, to look at again when a snapshot closes. */
+    private final Queue<Long> retained = new ConcurrentLinkedQueue<>();
+    private FxListBridge<T> fxBridge;
+
+    /**
+     * @param naturalKey extracts a unique business key, or null if the entity has none
+     * @param copier copies an entity, for stores whose records are updated;
+     *               updates edit a copy. Null if they never are
+     * @param clock change sequence shared with the other stores of the same data set
+     */
+    EntityStore(String name, Function<T, Object> naturalKey, UnaryOperator<T> copier, VersionClock clock) {
+        this.name = name;
+        this.naturalKey = naturalKey;
+        this.copier = copier;
+        this.clock = clock;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Adds an entity and returns its id.
+     *
+     * @throws IllegalArgumentException if the entity's natural key is already taken
+     */
+    public long insert(T entity) {
+        long id = nextId.getAndIncrement();
+        Object key = naturalKey == null ? null : naturalKey.apply(entity);
+        if (key != null && idsByKey.putIfAbsent(key, id) != null) {
+            throw new IllegalArgumentException("Duplicate " + name + " key: " + key);
+        }
+        Entry<T> entry = new Entry<>(entity);
+        long sequence;
+        ReentrantLock lock = recordLock(id);
+        lock.lock();
+        try {
+            records.put(id, entry);
+            ids.put(entity, id);
+            live.incrementAndGet();
+            sequence = clock.next();
+            entry.addedAt = sequence;
+        } finally {
+            lock.unlock();
+        }
+        fire(entry, new StoreChange<>(StoreChange.Type.ADDED, name, id, entity, sequence));
+        return id;
+    }
+
+    /**
+     * Adds a batch of entities, for bulk loads. Each gets its own id and
+     * sequence as with {@link #insert}, but listeners are handed all the
+     * ADDED changes in one {@link StoreListener#onChanges} call once the batch
+     * is in. The batch holds the record locks of all its ids while it goes
+     * in, up to every lock of the store, but not while listeners run.
+     *
+     * @return the ids, in the order of {@code entities}
+     * @throws IllegalArgumentException if a natural key is already taken or
+     *         repeated in the batch; nothing is inserted then
+     */
+    public long[] insertAll(List<? extends T> entities) {
+        long[] result = new long[entities.size()];
+        if (entities.isEmpty()) {
+            return result;
+        }
+        long first = nextId.getAndAdd(entities.size());
+        if (naturalKey != null) {
+            for (int i = 0; i < entities.size(); i++) {
+                Object key = naturalKey.apply(entities.get(i));
+                if (key != null && idsByKey.putIfAbsent(key, first + i) != null) {
+                    for (int j = 0; j < i; j++) {
+                        Object reserved = naturalKey.apply(entities.get(j));
+                        if (reserved != null) {
+                            idsByKey.remove(reserved, first + j);
+                        }
+                    }
+                    throw new IllegalArgumentException("Duplicate " + name + " key: " + key);
+                }
+            }
+        }
+        // In ascending stripe order, so that concurrent batches cannot deadlock
+        int stripes = Math.min(entities.size(), STRIPES);
+        int[] locked = new int[stripes];
+        for (int i = 0; i < stripes; i++) {
+            locked[i] = (int) Math.floorMod(first + i, (long) STRIPES);
+        }
+        Arrays.sort(locked);
+        List<Entry<T>> entries = new ArrayList<>(entities.size());
+        List<StoreChange<T>> changes = new ArrayList<>(entities.size());
+        for (int stripe : locked) {
+            recordLocks[stripe].lock();
+        }
+        try {
+            for (int i = 0; i < entities.size(); i++) {
+                T entity = entities.get(i);
+                long id = first + i;
+                Entry<T> entry = new Entry<>(entity);
+                entries.add(entry);
+                records.put(id, entry);
+                ids.put(entity, id);
+                live.incrementAndGet();
+                long sequence = clock.next();
+                entry.addedAt = sequence;
+                changes.add(new StoreChange<>(StoreChange.Type.ADDED, name, id, entity, sequence));
+                result[i] = id;
+            }
+        } finally {
+            for (int stripe : locked) {
+                recordLocks[stripe].unlock();
+            }
+        }
+        try {
+            fire(changes);
+        } finally {
+            entries.forEach(Entry::fired);
+        }
+        return result;
+    }
+
+    /**
+     * Applies a mutation to a record and publishes an UPDATED change. In a
+     * store with a copier the mutation edits a copy that then replaces the
+     * record, as with {@link #replace}; otherwise it edits the record in place.
+     */
+    public boolean update(long id, Consumer<? super T> mutator) {
+        return update(id, -1, mutator);
+    }
+
+    /**
+     * Optimistic variant of {@link #update(long, Consumer)}: the mutation is only
+     * applied if the record is still at {@code expectedVersion} (-1 skips the check).
+     */
+    public boolean update(long id, long expectedVersion, Consumer<? super T> mutator) {
+        Entry<T> entry;
+        T current;
+        T updated;
+        long sequence;
+        ReentrantLock lock = recordLock(id);
+        lock.lock();
+        try {
+            entry = records.get(id);
+            if (entry == null || entry.removedAt != LIVE
+                    || (expectedVersion >= 0 && entry.version != expectedVersion)) {
+                return false;
+            }
+            entry.beginChange();
+            current = entry.entity;
+            try {
+                updated = copier == null ? current : copier.apply(current);
+                mutator.accept(updated);
+                if (updated != current && naturalKey != null
+                        && !Objects.equals(naturalKey.apply(current), naturalKey.apply(updated))) {
+                    throw new IllegalArgumentException("The key of a " + name + " record cannot change");
+                }
+            } catch (RuntimeException e) {
+                entry.fired();
+                throw e;
+            }
+            if (updated == current) {
+                entry.version++;
+                sequence = clock.next();
+            } else {
+                sequence = install(id, entry, updated);
+            }
+        } finally {
+            lock.unlock();
+        }
+        fire(entry, new StoreChange<>(StoreChange.Type.UPDATED, name, id, updated, sequence));
+        return true;
+    }
+
+    public boolean update(T entity, Consumer<? super T> mutator) {
+        Long id = ids.get(entity);
+        return id != null && update(id, mutator);
+    }
+
+    /**
+     * Replaces a record with {@code replacement}, a new object holding its
+     * edited state, and publishes an UPDATED change carrying it. The object
+     * replaced is left as it was, so this is safe from any thread while the
+     * FX thread displays the record; the
+     * {@link #fxView()} swaps the objects on the FX thread. Snapshots keep
+     * reading the replaced object. The natural key must stay the same.
+     *
+     * @return false if {@code current} is not, or no longer, the stored record
+     */
+    public boolean replace(T current, T replacement) {
+        if (copier == null) {
+            throw new UnsupportedOperationException("Records of " + name + " are never updated");
+        }
+        if (naturalKey != null && !Objects.equals(naturalKey.apply(current), naturalKey.apply(replacement))) {
+            throw new IllegalArgumentException("The key of a " + name + " record cannot change");
+        }
+        Long id = ids.get(current);
+        if (id == null) {
+            return false;
+        }
+        Entry<T> entry;
+        long sequence;
+        ReentrantLock lock = recordLock(id);
+        lock.lock();
+        try {
+            entry = records.get(id);
+            if (entry == null || entry.removedAt != LIVE || entry.entity != current) {
+                return false;
+            }
+            entry.beginChange();
+            sequence = install(id, entry, replacement);
+        } finally {
+            lock.unlock();
+        }
+        fire(entry, new StoreChange<>(StoreChange.Type.UPDATED, name, id, replacement, sequence));
+        return true;
+    }
+
+    /**
+     * Record lock held: makes {@code replacement} the record's entity and
+     * returns the sequence of the change. Nothing mutates the replaced object
+     * any more, so it serves as its own earlier state.
+     */
+    private long install(long id, Entry<T> entry, T replacement) {
+        T current = entry.entity;
+        Version<T> before = new Version<>(current, entry.previous);
+        entry.previous = before;
+        ids.put(replacement, id);
+        entry.entity = replacement;
+        ids.remove(current);
+        entry.version++;
+        long sequence = clock.next();
+        before.validUntil = sequence;
+        retainIfRead(id, entry);
+        return sequence;
+    }
+
+    public boolean remove(long id) {
+        return removeAndGetSequence(id, false) >= 0;
+    }
+
+    /**
+     * Removes a record the {@link ColdArchive} has written to a segment, as an
+     * archived removal, and returns the sequence of the removal, or -1 if it
+     * was not present.
+     */
+    long moveToArchive(long id) {
+        return removeAndGetSequence(id, true);
+    }
+
+    private long removeAndGetSequence(long id, boolean archived) {
+        Entry<T> entry;
+        long sequence;
+        ReentrantLock lock = recordLock(id);
+        lock.lock();
+        try {
+            entry = records.get(id);
+            if (entry == null || entry.removedAt != LIVE) {
+                return -1;
+            }
+            entry.beginChange();
+            try {
+                sequence = removeLocked(id, entry);
+            } catch (RuntimeException e) {
+                entry.fired();
+                throw e;
+            }
+        } finally {
+            lock.unlock();
+        }
+        fire(entry, new StoreChange<>(StoreChange.Type.REMOVED, name, id, entry.entity, sequence, archived));
+        return sequence;
+    }
+
+    /**
+     * Removes a batch of records, for bulk cancellations. As with
+     * {@link #insertAll}, each removal gets its own sequence, the batch holds
+     * the record locks of all its ids while it runs, and listeners are handed
+     * all the REMOVED changes in one {@link StoreListener#onChanges} call once
+     * it is done. Ids not present are skipped. If a record cannot be removed,
+     * those before it stay removed and the exception is rethrown once
+     * listeners have heard of them.
+     *
+     * @return the number of records removed
+     */
+    public int removeAll(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        // In ascending stripe order, as in insertAll
+        int[] locked = ids.stream().mapToInt(id -> (int) Math.floorMod(id, (long) STRIPES)).distinct().sorted()
+            .toArray();
+        List<Entry<T>> entries = new ArrayList<>(ids.size());
+        List<StoreChange<T>> changes = new ArrayList<>(ids.size());
+        RuntimeException failure = null;
+        for (int stripe : locked) {
+            recordLocks[stripe].lock();
+        }
+        try {
+            for (long id : ids) {
+                Entry<T> entry = records.get(id);
+                if (entry == null || entry.removedAt != LIVE) {
+                    continue;
+                }
+                entry.beginChange();
+                entries.add(entry);
+                try {
+                    long sequence = removeLocked(id, entry);
+                    changes.add(new StoreChange<>(StoreChange.Type.REMOVED, name, id, entry.entity, sequence));
+                } catch (RuntimeException e) {
+                    failure = e;
+                    break;
+                }
+            }
+        } finally {
+            for (int stripe : locked) {
+                recordLocks[stripe].unlock();
+            }
+        }
+        try {
+            if (!changes.isEmpty()) {
+                fire(changes);
+            }
+        } finally {
+            entries.forEach(Entry::fired);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return changes.size();
+    }
+
+    /**
+     * Record lock held and change begun: removes a live record and returns
+     * the sequence of the removal. What can fail comes first, so a failed
+     * removal leaves the record as it was.
+     */
+    private long removeLocked(long id, Entry<T> entry) {
+        Object key = naturalKey == null ? null : naturalKey.apply(entry.entity);
+        ids.remove(entry.entity);
+        entry.removedAt = PENDING;
+        live.decrementAndGet();
+        if (key != null) {
+            idsByKey.remove(key, id);
+        }
+        long sequence = clock.next();
+        entry.removedAt = sequence;
+        retainIfRead(id, entry);
+        return sequence;
+    }
+
+    public boolean remove(T entity) {
+        Long id = ids.get(entity);
+        return id != null && remove(id);
+    }
+
+    /**
+     * Runs a check-then-act sequence while holding the stripe lock of an
+     * arbitrary key (for example a doctor's name), so concurrent callers using
+     * the same key are serialized. Key locks are always taken before record
+     * locks.
+     */
+    public <R> R withLock(Object key, Supplier<R> action) {
+        ReentrantLock lock = keyLocks[Math.floorMod(key.hashCode(), STRIPES)];
+        lock.lock();
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Whether a record is present and no removal of it has begun. */
+    boolean isLive(long id) {
+        Entry<T> entry = records.get(id);
+        return entry != null && entry.removedAt == LIVE;
+    }
+
+    public T get(long id) {
+        Entry<T> entry = records.get(id);
+        return entry == null || entry.removedAt != LIVE ? null : entry.entity;
+    }
+
+    /** Id of a stored entity, or -1. */
+    public long idOf(T entity) {
+        Long id = ids.get(entity);
+        return id == null ? -1 : id;
+    }
+
+    public long versionOf(long id) {
+        Entry<T> entry = records.get(id);
+        return entry == null || entry.removedAt != LIVE ? -1 : entry.version;
+    }
+
+    public T findByKey(Object key) {
+        Long id = idsByKey.get(key);
+        return id == null ? null : get(id);
+    }
+
+    public boolean containsKey(Object key) {
+        return idsByKey.containsKey(key);
+    }
+
+    public int size() {
+        return live.get();
+    }
+
+    /**
+     * Weakly consistent, lock-free stream of the entities in id order. For a
+     * consistent view across stores use a {@link ClinicSnapshot}.
+     */
+    public Stream<T> stream() {
+        return records.values().stream().filter(Entry::isLive).map(e -> e.entity);
+    }
+
+    public List<T> snapshot() {
+        List<T> copy = new ArrayList<>(live.get());
+        records.values().forEach(e -> {
+            if (e.isLive()) {
+                copy.add(e.entity);
+            }
+        });
+        return copy;
+    }
+
+    public void forEachEntry(BiConsumer<Long, T> action) {
+        records.forEach((id, entry) -> {
+            if (entry.isLive()) {
+                action.accept(id, entry.entity);
+            }
+        });
+    }
+
+    /** The entities as of {@code sequence}, which an open snapshot must be holding. */
+    Stream<T> streamAt(long sequence) {
+        return records.entrySet().stream()
+            .map(e -> stateAt(e.getValue(), sequence))
+            .filter(Objects::nonNull);
+    }
+
+    void forEachEntryAt(long sequence, BiConsumer<Long, T> action) {
+        records.forEach((id, entry) -> {
+            T state = stateAt(entry, sequence);
+            if (state != null) {
+                action.accept(id, state);
+            }
+        });
+    }
+
+    /**
+     * A record's state as of {@code sequence}, or null if it was not present
+     * then. Reads without the record lock: the entity is read before the
+     * earlier states, so a state installed by a later change always shows up
+     * among them, and reclaiming only cuts states older than the snapshot.
+     */
+    private T stateAt(Entry<T> entry, long sequence) {
+        if (settle(() -> entry.addedAt) > sequence) {
+            return null;
+        }
+        if (entry.removedAt != LIVE && settle(() -> entry.removedAt) <= sequence) {
+            return null;
+        }
+        T state = entry.entity;
+        for (Version<T> v = entry.previous; v != null; v = v.older) {
+            Version<T> version = v;
+            if (settle(() -> version.validUntil) <= sequence) {
+                break;
+            }
+            state = v.state;
+        }
+        return state;
+    }
+
+    /** Waits out the few instructions between a change taking effect and getting its sequence. */
+    private static long settle(LongSupplier field) {
+        long value;
+        while ((value = field.getAsLong()) == PENDING) {
+            Thread.yield();
+        }
+        return value;
+    }
+
+    /** Reclaims a just-changed record at once unless an open snapshot may still read its old state. */
+    private void retainIfRead(long id, Entry<T> entry) {
+        if (!reclaim(id, entry, clock.oldest())) {
+            retained.add(id);
+        }
+    }
+
+    /** Drops the tombstones and earlier states no open snapshot can read any more; run when one closes. */
+    void reclaim() {
+        long oldest = clock.oldest();
+        for (Iterator<Long> it = retained.iterator(); it.hasNext(); ) {
+            long id = it.next();
+            Entry<T> entry = records.get(id);
+            if (entry == null) {
+                it.remove();
+                continue;
+            }
+            ReentrantLock lock = recordLock(id);
+            lock.lock();
+            try {
+                if (reclaim(id, entry, oldest)) {
+                    it.remove();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /** Record lock held. Returns whether nothing is left to reclaim later. */
+    private boolean reclaim(long id, Entry<T> entry, long oldest) {
+        Version<T> keep = null;
+        for (Version<T> v = entry.previous; v != null && v.validUntil > oldest; v = v.older) {
+            keep = v;
+        }
+        if (keep == null) {
+            entry.previous = null;
+        } else {
+            keep.older = null;
+        }
+        if (entry.removedAt != LIVE && entry.removedAt <= oldest) {
+            records.remove(id, entry);
+            return true;
+        }
+        return entry.removedAt == LIVE && entry.previous == null;
+    }
+
+    /** Tombstones and records with earlier states still held for open snapshots. */
+    public int retainedCount() {
+        return (int) retained.stream().distinct().count();
+    }
+
+    public void addListener(StoreListener<T> listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(StoreListener<T> listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * The FX mirror of this store, created on first use. Must be called on the
+     * FX Application Thread.
+     */
+    public synchronized ObservableList<T> fxView() {
+        if (fxBridge == null) {
+            fxBridge = new FxListBridge<>(this);
+        }
+        return fxBridge.getList();
+    }
+
+    /**
+     * Hands a change of one record to the listeners after its record lock is
+     * released, and lets the record's next change proceed once they have it.
+     */
+    private void fire(Entry<T> entry, StoreChange<T> change) {
+        try {
+            fire(change);
+        } finally {
+            entry.fired();
+        }
+    }
+
+    /**
+     * Hands a change to every listener. The change is already committed, so
+     * a listener that throws must not keep it from the others, the change log
+     * among them; its failure is logged instead.
+     */
+    private void fire(StoreChange<T> change) {
+        for (StoreListener<T> listener : listeners) {
+            try {
+                listener.onChange(change);
+            } catch (RuntimeException e) {
+                LOG.log(Level.SEVERE, "A listener of " + name + " failed on change " + change, e);
+            }
+        }
+    }
+
+    private void fire(List<StoreChange<T>> changes) {
+        for (StoreListener<T> listener : listeners) {
+            try {
+                listener.onChanges(changes);
+            } catch (RuntimeException e) {
+                LOG.log(Level.SEVERE, "A listener of " + name + " failed on a batch of " + changes.size()
+                    + " changes", e);
+            }
+        }
+    }
+
+    private ReentrantLock recordLock(long id) {
+        return recordLocks[(int) Math.floorMod(id, (long) STRIPES)];
+    }
+
+    private static ReentrantLock[] newLocks() {
+        ReentrantLock[] locks = new ReentrantLock[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        return locks;
+    }
+
+    private static final class Entry<T> {
+        volatile T entity;
+        volatile long version;
+        volatile long addedAt = PENDING;
+        volatile long removedAt = LIVE;
+        /** Earlier states, newest first; changed under the record lock, read without it. */
+        volatile Version<T> previous;
+        /** Whether listeners have yet to hear of the latest change; guarded by this entry. */
+        private boolean unfired = true;
+
+        Entry(T entity) {
+            this.entity = entity;
+        }
+
+        /**
+         * Record lock held: waits until listeners have heard of the record's
+         * previous change, which keeps its changes in order for them although
+         * they are told after the lock is released.
+         */
+        synchronized void beginChange() {
+            boolean interrupted = false;
+            while (unfired) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            unfired = true;
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        synchronized void fired() {
+            unfired = false;
+            notifyAll();
+        }
+
+        boolean isLive() {
+            return removedAt == LIVE;
+        }
+    }
+
+    /** A copy of a record's state before an update, valid up to but excluding {@code validUntil}. */
+    private static final class Version<T> {
+        final T state;
+        volatile long validUntil = PENDING;
+        volatile Version<T> older;
+
+        Version(T state, Version<T> older) {
+            this.state = state;
+            this.older = older;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Mirrors an {@link EntityStore} into an {@link ObservableList} owned by the FX
+ * Application Thread.
+ *
+ * Every change is only queued, which is constant time, so a writer never
+ * waits for the list, even one writing on the FX thread itself. A drain runs
+ * once per burst from {@link Platform#runLater}, before the next pulse, and
+ * applies consecutive additions and removals with a single
+ * {@code addAll}/{@code removeAll}, so cancelling a doctor's week or a bulk
+ * load costs one pass over the list instead of one per record; removing rows
+ * from an array-backed list one at a time would be linear each.
+ * An UPDATED change, a record replaced by an edited copy, swaps the row's
+ * object in place, so the edited values reach the controls on the FX thread.
+ */
+class FxListBridge<T> implements StoreListener<T> {
+    private final ObservableList<T> list = FXCollections.observableArrayList();
+    private final Queue<StoreChange<T>> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    /** The object listed for each id. */
+    private final Map<Long, T> visible = new HashMap<>();
+    private final String storeName;
+
+    FxListBridge(EntityStore<T> store) {
+        this.storeName = store.getName();
+        store.addListener(this);
+        List<T> initial = new ArrayList<>();
+        store.forEachEntry((id, entity) -> {
+            if (visible.putIfAbsent(id, entity) == null) {
+                initial.add(entity);
+            }
+        });
+        list.addAll(initial);
+        drain();
+    }
+
+    ObservableList<T> getList() {
+        return list;
+    }
+
+    @Override
+    public void onChange(StoreChange<T> change) {
+        pending.add(change);
+        scheduleDrain();
+    }
+
+    /** Queues a whole batch before draining, so it reaches the list as one {@code addAll}. */
+    @Override
+    public void onChanges(List<StoreChange<T>> changes) {
+        pending.addAll(changes);
+        scheduleDrain();
+    }
+
+    private void scheduleDrain() {
+        if (drainScheduled.compareAndSet(false, true)) {
+            Platform.runLater(this::drain);
+        }
+    }
+
+    private void drain() {
+        drainScheduled.set(false);
+        ListChangeBatchEvent event = new ListChangeBatchEvent();
+        event.begin();
+        int addedCount = 0;
+        int removedCount = 0;
+        List<T> added = new ArrayList<>();
+        Set<T> removed = new HashSet<>();
+        StoreChange<T> change;
+        while ((change = pending.poll()) != null) {
+            if (change.getType() == StoreChange.Type.ADDED) {
+                if (!removed.isEmpty()) {
+                    list.removeAll(removed);
+                    removed.clear();
+                }
+                if (visible.putIfAbsent(change.getId(), change.getEntity()) == null) {
+                    added.add(change.getEntity());
+                    addedCount++;
+                }
+            } else if (change.getType() == StoreChange.Type.UPDATED) {
+                // Rare and one at a time, so the linear search is fine
+                flush(added, removed);
+                T listed = visible.replace(change.getId(), change.getEntity());
+                int index = listed == null ? -1 : list.indexOf(listed);
+                if (index >= 0) {
+                    list.set(index, change.getEntity());
+                }
+            } else {
+                if (!added.isEmpty()) {
+                    list.addAll(added);
+                    added.clear();
+                }
+                T listed = visible.remove(change.getId());
+                if (listed != null) {
+                    removed.add(listed);
+                    removedCount++;
+                }
+            }
+        }
+        flush(added, removed);
+        event.end();
+        if ((addedCount > 0 || removedCount > 0) && event.shouldCommit()) {
+            event.store = storeName;
+            event.added = addedCount;
+            event.removed = removedCount;
+            event.listSize = list.size();
+            event.commit();
+        }
+    }
+
+    /** Applies the additions and removals collected so far; at most one of the two is non-empty. */
+    private void flush(List<T> added, Set<T> removed) {
+        if (!added.isEmpty()) {
+            list.addAll(added);
+            added.clear();
+        }
+        if (!removed.isEmpty()) {
+            list.removeAll(removed);
+            removed.clear();
+        }
+    }
+}
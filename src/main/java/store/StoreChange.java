@@ -0,0 +1,61 @@
+/**
+ * A single committed mutation of an {@link EntityStore}. The sequence number
+ * is drawn from a counter shared by all stores of a {@link ClinicStore}, so
+ * changes across entity types have one total order.
+ *
+ * A removal that moved the record into the {@link ColdArchive} rather than
+ * deleting it is marked {@link #isArchived archived}.
+ */
+public final class StoreChange<T> {
+    public enum Type { ADDED, UPDATED, REMOVED }
+
+    private final Type type;
+    private final String storeName;
+    private final long id;
+    private final T entity;
+    private final long sequence;
+    private final boolean archived;
+
+    public StoreChange(Type type, String storeName, long id, T entity, long sequence) {
+        this(type, storeName, id, entity, sequence, false);
+    }
+
+    public StoreChange(Type type, String storeName, long id, T entity, long sequence, boolean archived) {
+        this.type = type;
+        this.storeName = storeName;
+        this.id = id;
+        this.entity = entity;
+        this.sequence = sequence;
+        this.archived = archived;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getStoreName() {
+        return storeName;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public T getEntity() {
+        return entity;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    /** Whether this is the removal of a record moved to the archive. */
+    public boolean isArchived() {
+        return archived;
+    }
+
+    @Override
+    public String toString() {
+        return sequence + " " + type + " " + storeName + "#" + id;
+    }
+}
@@ -0,0 +1,22 @@
+import java.util.List;
+
+/**
+ * Receives committed changes of an {@link EntityStore}. Listeners are called
+ * synchronously on the writing thread once the record's stripe lock is
+ * released. They still see the changes of one record in order, as its next
+ * change waits until they have heard of the last one, so they must not write
+ * to the store themselves; they must be thread-safe and should return quickly.
+ */
+@FunctionalInterface
+public interface StoreListener<T> {
+    void onChange(StoreChange<T> change);
+
+    /**
+     * Receives the changes of one {@link EntityStore#insertAll} batch in
+     * sequence order. Listeners that can apply a batch more cheaply than its
+     * changes one by one override this.
+     */
+    default void onChanges(List<StoreChange<T>> changes) {
+        changes.forEach(this::onChange);
+    }
+}
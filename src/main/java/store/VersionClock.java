@@ -0,0 +1,67 @@
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The change sequence shared by the stores of one {@link ClinicStore}, and
+ * the sequences at which snapshots are currently open.
+ *
+ * Stores keep removed records and the previous states of updated ones only
+ * for as long as an open snapshot is older than the change, so the oldest
+ * open sequence decides what may be reclaimed. Every write asks for it, so
+ * it is kept in a volatile field that {@link #oldest()} reads without a lock.
+ * Opening a snapshot lowers that field to the current sequence before it
+ * reads the sequence it will use: a writer that still saw the older value
+ * had taken its sequence before then, so the snapshot reads from at or past
+ * the writer's change and never needs what the writer reclaimed.
+ */
+final class VersionClock {
+    /** {@link #oldest()} when no snapshot is open. */
+    static final long NONE = Long.MAX_VALUE;
+
+    private final AtomicLong sequence = new AtomicLong();
+    /** The last sequence each thread assigned, so a request can report its own write. */
+    private final ThreadLocal<long[]> lastOfThread = ThreadLocal.withInitial(() -> new long[1]);
+    /** Open snapshot sequences and how many snapshots are open at each. */
+    private final TreeMap<Long, Integer> open = new TreeMap<>();
+    /** The first key of {@link #open}, or {@link #NONE}; written under this clock's lock. */
+    private volatile long oldest = NONE;
+
+    long next() {
+        long next = sequence.incrementAndGet();
+        lastOfThread.get()[0] = next;
+        return next;
+    }
+
+    long lastOfCurrentThread() {
+        return lastOfThread.get()[0];
+    }
+
+    long current() {
+        return sequence.get();
+    }
+
+    /** Registers a reader and returns the sequence it reads at. */
+    synchronized long open() {
+        oldest = Math.min(oldest, sequence.get());
+        long at = sequence.get();
+        open.merge(at, 1, Integer::sum);
+        oldest = open.firstKey();
+        return at;
+    }
+
+    synchronized void close(long at) {
+        open.computeIfPresent(at, (k, n) -> n == 1 ? null : n - 1);
+        Map.Entry<Long, Integer> first = open.firstEntry();
+        oldest = first == null ? NONE : first.getKey();
+    }
+
+    /** The sequence of the oldest open snapshot, or {@link #NONE}. */
+    long oldest() {
+        return oldest;
+    }
+
+    synchronized int openCount() {
+        return open.values().stream().mapToInt(Integer::intValue).sum();
+    }
+}
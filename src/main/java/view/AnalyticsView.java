@@ -1,52 +1,83 @@
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.collections.ListChangeListener;
+import javafx.concurrent.Task;
 import javafx.geometry.Insets;
+import javafx.scene.Node;
 import javafx.scene.control.*;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.VBox;
 import javafx.scene.chart.*;
 import java.time.LocalDate;
-import java.time.YearMonth;
-import java.time.format.DateTimeFormatter;
-import java.util.*;
-
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Collectors;
+import java.util.concurrent.Executors;
+
+/**
+ * Reports over the clinic's data. Charts are built on a background thread
+ * from a store snapshot opened there, so aggregating a large data set never
+ * freezes the UI. A refresh cancels the one it supersedes, so a burst of
+ * changes builds one chart rather than one per change.
+ */
 public class AnalyticsView extends VBox {
+    private static final ExecutorService REPORT_EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "analytics");
+        t.setDaemon(true);
+        return t;
+    });
+
     private final ComboBox<String> reportTypeComboBox;
     private final DatePicker startDatePicker;
     private final DatePicker endDatePicker;
-    private final ComboBox<String> patientSelector;
+    private final PatientPicker patientSelector;
+    private final ComboBox<String> doctorSelector;
     private final VBox chartContainer;
     private final ObservableList<Patient> patients;
     private final ObservableList<Doctor> doctors;
     private final ObservableList<Appointment> appointments;
+    private final ObservableList<RecurringAppointment> recurringSeries;
     private final ObservableList<BillingRecord> billingRecords;
+    private final SlotOccupancyIndex occupancy;
+    private final ClinicStore store;
+    /** Followed across refreshes, so a chart does not re-sketch every record. */
+    private final ReportIndex reportIndex;
+    private Task<Node> pendingChart;
+
+    private static final String ALL_DOCTORS = "All Doctors";
+    private static final String SPECIALIZATION_PREFIX = "Specialization: ";
 
     public AnalyticsView(ObservableList<Patient> patients, 
                         ObservableList<Doctor> doctors,
                         ObservableList<Appointment> appointments,
-                        ObservableList<BillingRecord> billingRecords) {
+                        ObservableList<RecurringAppointment> recurringSeries,
+                        ObservableList<BillingRecord> billingRecords,
+                        PatientSearchIndex patientIndex,
+                        SlotOccupancyIndex occupancy,
+                        ClinicStore store) {
         this.patients = patients;
         this.doctors = doctors;
         this.appointments = appointments;
+        this.recurringSeries = recurringSeries;
         this.billingRecords = billingRecords;
+        this.occupancy = occupancy;
+        this.store = store;
+        this.reportIndex = new ReportIndex(store);
 
         reportTypeComboBox = new ComboBox<>();
-        reportTypeComboBox.getItems().addAll(
-            "Monthly Patient Visits",
-            "Doctor Workload Distribution",
-            "Monthly Revenue Trend",
-            "Service Type Distribution",
-            "Individual Patient History"
-        );
-        reportTypeComboBox.setValue("Monthly Patient Visits");
+        reportTypeComboBox.getItems().addAll(Reports.TYPES);
+        reportTypeComboBox.setValue(Reports.MONTHLY_PATIENT_VISITS);
         
         startDatePicker = new DatePicker(LocalDate.now().minusMonths(6));
         endDatePicker = new DatePicker(LocalDate.now());
         
-        patientSelector = new ComboBox<>();
-        updatePatientSelector();
+        patientSelector = new PatientPicker(patientIndex);
         patientSelector.setVisible(false);
+
+        doctorSelector = new ComboBox<>();
+        updateDoctorChoices();
+        doctorSelector.setVisible(false);
         
         chartContainer = new VBox();
         chartContainer.setMinHeight(400);
@@ -69,10 +100,12 @@ public class AnalyticsView extends VBox {
         inputGrid.add(endDatePicker, 1, 2);
         inputGrid.add(new Label("Patient:"), 0, 3);
         inputGrid.add(patientSelector, 1, 3);
+        inputGrid.add(new Label("Doctors:"), 0, 4);
+        inputGrid.add(doctorSelector, 1, 4);
 
         Button generateButton = new Button("Generate Report");
         generateButton.setOnAction(e -> updateChart());
-        inputGrid.add(generateButton, 1, 4);
+        inputGrid.add(generateButton, 1, 5);
 
         this.getChildren().addAll(inputGrid, chartContainer);
         this.setSpacing(20);
@@ -97,28 +130,34 @@ public class AnalyticsView extends VBox {
         });
 
         reportTypeComboBox.valueProperty().addListener((obs, oldVal, newVal) -> {
-            patientSelector.setVisible(newVal.equals("Individual Patient History"));
+            patientSelector.setVisible(newVal.equals(Reports.PATIENT_HISTORY));
+            doctorSelector.setVisible(newVal.equals(Reports.UTILIZATION_HEATMAP));
+            if (patientSelector.isVisible() && patientSelector.getValue() == null) {
+                patientSelector.selectFirst();
+            }
             updateChart();
         });
 
-        patients.addListener((ListChangeListener<Patient>) c -> {
-            updatePatientSelector();
+        patientSelector.valueProperty().addListener((obs, oldVal, newVal) -> {
+            if (patientSelector.isVisible()) {
+                updateChart();
+            }
+        });
+        doctorSelector.valueProperty().addListener((obs, oldVal, newVal) -> {
+            if (doctorSelector.isVisible() && newVal != null) {
+                updateChart();
+            }
+        });
+        patients.addListener((ListChangeListener<Patient>) c -> updateChart());
+        doctors.addListener((ListChangeListener<Doctor>) c -> {
+            updateDoctorChoices();
             updateChart();
         });
-        doctors.addListener((ListChangeListener<Doctor>) c -> updateChart());
         appointments.addListener((ListChangeListener<Appointment>) c -> updateChart());
+        recurringSeries.addListener((ListChangeListener<RecurringAppointment>) c -> updateChart());
         billingRecords.addListener((ListChangeListener<BillingRecord>) c -> updateChart());
     }
 
-    private void updatePatientSelector() {
-        patientSelector.getItems().clear();
-        patients.forEach(patient -> 
-            patientSelector.getItems().add(patient.getName() + " (ID: " + patient.getPatientId() + ")"));
-        if (!patientSelector.getItems().isEmpty()) {
-            patientSelector.setValue(patientSelector.getItems().get(0));
-        }
-    }
-
     private void updateChart() {
         String reportType = reportTypeComboBox.getValue();
         LocalDate startDate = startDatePicker.getValue();
@@ -128,212 +167,158 @@ public class AnalyticsView extends VBox {
             showAlert(Alert.AlertType.ERROR, "Error", "Please select a valid date range.");
             return;
         }
+        if (reportType.equals(Reports.PATIENT_HISTORY) && patientSelector.getValue() == null) {
+            showAlert(Alert.AlertType.ERROR, "Error", "Please select a patient.");
+            chartContainer.getChildren().clear();
+            return;
+        }
+        String patientId = patientSelector.getValue() == null ? null : patientSelector.getValue().getPatientId();
+        String doctorSubject = doctorSelector.getValue();
+        List<String> doctorNames = selectedDoctors(doctorSubject);
 
-        chartContainer.getChildren().clear();
-
-        switch (reportType) {
-            case "Monthly Patient Visits":
-                generateMonthlyPatientVisitsChart(startDate, endDate);
-                break;
-            case "Doctor Workload Distribution":
-                generateDoctorWorkloadChart(startDate, endDate);
-                break;
-            case "Monthly Revenue Trend":
-                generateMonthlyRevenueChart(startDate, endDate);
-                break;
-            case "Service Type Distribution":
-                generateServiceDistributionChart(startDate, endDate);
-                break;
-            case "Individual Patient History":
-                generatePatientHistoryChart(startDate, endDate);
-                break;
+        if (pendingChart != null) {
+            pendingChart.cancel();
         }
+        // Nodes may be built off the FX thread as long as they are not yet in a showing scene.
+        // The data is read from a store snapshot there too, opened when the task starts.
+        Task<Node> task = new Task<>() {
+            @Override
+            protected Node call() {
+                if (isCancelled()) {
+                    return null;
+                }
+                ReportGenerationEvent event = new ReportGenerationEvent();
+                event.begin();
+                long snapshotStart = System.nanoTime();
+                ClinicSnapshot snapshot = store.openSnapshot();
+                long snapshotTime = System.nanoTime() - snapshotStart;
+                ReportData data;
+                List<Appointment> archived;
+                try (snapshot) {
+                    data = ReportData.of(snapshot, startDate, endDate, reportIndex);
+                    archived = reportType.equals(Reports.UTILIZATION_HEATMAP)
+                        ? snapshot.archivedAppointments(startDate, endDate) : List.of();
+                }
+                try {
+                    return MetricsRegistry.global().histogram("analytics.report." + reportType)
+                        .time(() -> reportType.equals(Reports.UTILIZATION_HEATMAP)
+                            ? toNode(Reports.utilizationHeatmap(occupancy, doctorSubject, doctorNames, startDate,
+                                endDate, archived))
+                            : generateReport(reportType, data, patientId, startDate, endDate));
+                } finally {
+                    event.end();
+                    if (event.shouldCommit()) {
+                        event.reportType = reportType;
+                        event.rows = data.rows();
+                        event.snapshotTime = snapshotTime;
+                        event.commit();
+                    }
+                }
+            }
+        };
+        task.setOnSucceeded(e -> {
+            if (task == pendingChart) {
+                chartContainer.getChildren().setAll(task.getValue());
+            }
+        });
+        task.setOnFailed(e -> {
+            if (task == pendingChart) {
+                showAlert(Alert.AlertType.ERROR, "Error", "Could not generate the report: " + task.getException());
+            }
+        });
+        pendingChart = task;
+        REPORT_EXECUTOR.execute(task);
     }
 
-    private void generateMonthlyPatientVisitsChart(LocalDate startDate, LocalDate endDate) {
-        CategoryAxis xAxis = new CategoryAxis();
-        NumberAxis yAxis = new NumberAxis();
-        LineChart<String, Number> lineChart = new LineChart<>(xAxis, yAxis);
-        
-        lineChart.setTitle("Monthly Patient Visits");
-        xAxis.setLabel("Month");
-        yAxis.setLabel("Number of Visits");
-
-        XYChart.Series<String, Number> series = new XYChart.Series<>();
-        series.setName("Patient Visits");
-
-        Map<YearMonth, Integer> monthlyVisits = new TreeMap<>();
-        YearMonth current = YearMonth.from(startDate);
-        YearMonth end = YearMonth.from(endDate);
-
-        while (!current.isAfter(end)) {
-            monthlyVisits.put(current, 0);
-            current = current.plusMonths(1);
+    /** "All Doctors", each specialization, then each doctor by name. */
+    private void updateDoctorChoices() {
+        String selected = doctorSelector.getValue();
+        TreeSet<String> specializations = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        TreeSet<String> names = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        for (Doctor doctor : doctors) {
+            specializations.add(doctor.specializationProperty().get().trim());
+            names.add(doctor.getName());
         }
-
-        appointments.stream()
-            .filter(apt -> !apt.dateProperty().get().isBefore(startDate) &&
-                          !apt.dateProperty().get().isAfter(endDate))
-            .forEach(apt -> {
-                YearMonth month = YearMonth.from(apt.dateProperty().get());
-                monthlyVisits.merge(month, 1, Integer::sum);
-            });
-
-        monthlyVisits.forEach((month, count) ->
-            series.getData().add(new XYChart.Data<>(month.format(DateTimeFormatter.ofPattern("MMM yyyy")), count)));
-
-        lineChart.getData().add(series);
-        chartContainer.getChildren().add(lineChart);
+        ObservableList<String> choices = FXCollections.observableArrayList(ALL_DOCTORS);
+        specializations.forEach(s -> choices.add(SPECIALIZATION_PREFIX + s));
+        choices.addAll(names);
+        doctorSelector.setItems(choices);
+        doctorSelector.setValue(choices.contains(selected) ? selected : ALL_DOCTORS);
     }
 
-    private void generateDoctorWorkloadChart(LocalDate startDate, LocalDate endDate) {
-        PieChart pieChart = new PieChart();
-        pieChart.setTitle("Doctor Workload Distribution");
-
-        Map<String, Integer> doctorWorkload = new HashMap<>();
-        
-        appointments.stream()
-            .filter(apt -> !apt.dateProperty().get().isBefore(startDate) &&
-                          !apt.dateProperty().get().isAfter(endDate))
-            .forEach(apt -> doctorWorkload.merge(apt.doctorProperty().get(), 1, Integer::sum));
-
-        doctorWorkload.forEach((doctor, count) ->
-            pieChart.getData().add(new PieChart.Data(doctor + " (" + count + " appointments)", count)));
-
-        pieChart.setLabelsVisible(true);
-        pieChart.setLegendVisible(true);
-        chartContainer.getChildren().add(pieChart);
+    private List<String> selectedDoctors(String subject) {
+        if (subject == null || subject.equals(ALL_DOCTORS)) {
+            return doctors.stream().map(Doctor::getName).collect(Collectors.toList());
+        }
+        if (subject.startsWith(SPECIALIZATION_PREFIX)) {
+            String specialization = subject.substring(SPECIALIZATION_PREFIX.length());
+            return doctors.stream()
+                .filter(d -> d.specializationProperty().get().trim().equalsIgnoreCase(specialization))
+                .map(Doctor::getName)
+                .collect(Collectors.toList());
+        }
+        return List.of(subject);
     }
 
-    private void generateMonthlyRevenueChart(LocalDate startDate, LocalDate endDate) {
-        CategoryAxis xAxis = new CategoryAxis();
-        NumberAxis yAxis = new NumberAxis();
-        StackedBarChart<String, Number> stackedChart = new StackedBarChart<>(xAxis, yAxis);
-        
-        stackedChart.setTitle("Monthly Revenue by Service Type");
-        xAxis.setLabel("Month");
-        yAxis.setLabel("Revenue ($)");
-
-        Map<String, XYChart.Series<String, Number>> seriesMap = new HashMap<>();
-        
-        billingRecords.stream()
-            .filter(record -> !record.dateProperty().get().isBefore(startDate) &&
-                            !record.dateProperty().get().isAfter(endDate))
-            .forEach(record -> {
-                String service = record.serviceProperty().get();
-                String month = YearMonth.from(record.dateProperty().get())
-                    .format(DateTimeFormatter.ofPattern("MMM yyyy"));
-                double amount = record.amountProperty().get();
-
-                seriesMap.computeIfAbsent(service, k -> {
-                    XYChart.Series<String, Number> series = new XYChart.Series<>();
-                    series.setName(k);
-                    return series;
-                }).getData().add(new XYChart.Data<>(month, amount));
-            });
-
-        stackedChart.getData().addAll(seriesMap.values());
-        chartContainer.getChildren().add(stackedChart);
+    private static Node generateReport(String reportType, ReportData data, String patientId, LocalDate startDate,
+                                       LocalDate endDate) {
+        return toNode(Reports.generate(reportType, data, patientId, startDate, endDate));
     }
 
-    private void generateServiceDistributionChart(LocalDate startDate, LocalDate endDate) {
-        PieChart pieChart = new PieChart();
-        pieChart.setTitle("Service Type Distribution");
-
-        Map<String, Double> serviceRevenue = new HashMap<>();
-        
-        billingRecords.stream()
-            .filter(record -> !record.dateProperty().get().isBefore(startDate) &&
-                            !record.dateProperty().get().isAfter(endDate))
-            .forEach(record -> 
-                serviceRevenue.merge(record.serviceProperty().get(), 
-                                   record.amountProperty().get(), 
-                                   Double::sum));
-
-        serviceRevenue.forEach((service, amount) ->
-            pieChart.getData().add(new PieChart.Data(
-                service + " ($" + String.format("%.2f", amount) + ")", 
-                amount)));
+    private static Node toNode(Report report) {
+        if (report.getSummary().isEmpty() && report.getCharts().size() == 1) {
+            return toView(report.getCharts().get(0));
+        }
+        VBox box = new VBox(10);
+        box.setPadding(new Insets(10));
+        if (!report.getSummary().isEmpty()) {
+            Label summaryLabel = new Label(String.join("\n", report.getSummary()));
+            summaryLabel.setStyle("-fx-font-weight: bold;");
+            box.getChildren().add(summaryLabel);
+        }
+        for (ReportChart chart : report.getCharts()) {
+            box.getChildren().add(toView(chart));
+        }
+        return box;
+    }
 
-        pieChart.setLabelsVisible(true);
-        pieChart.setLegendVisible(true);
-        chartContainer.getChildren().add(pieChart);
+    private static Node toView(ReportChart chart) {
+        return chart.getKind() == ReportChart.Kind.HEATMAP ? new HeatmapCanvas(chart, 900) : toChart(chart);
     }
 
-    private void generatePatientHistoryChart(LocalDate startDate, LocalDate endDate) {
-        if (patientSelector.getValue() == null) {
-            showAlert(Alert.AlertType.ERROR, "Error", "Please select a patient.");
-            return;
+    private static Chart toChart(ReportChart chart) {
+        if (chart.getKind() == ReportChart.Kind.PIE) {
+            PieChart pieChart = new PieChart();
+            pieChart.setTitle(chart.getTitle());
+            chart.getSeries().get(0).getValues().forEach((category, value) ->
+                pieChart.getData().add(new PieChart.Data(chart.sliceLabel(category, value), value)));
+            pieChart.setLabelsVisible(true);
+            pieChart.setLegendVisible(true);
+            return pieChart;
         }
-
-        String patientId = patientSelector.getValue().split("ID: ")[1].replace(")", "");
-
-        VBox patientStats = new VBox(10);
-        patientStats.setPadding(new Insets(10));
-
-        CategoryAxis xAxis = new CategoryAxis();
+        CategoryAxis xAxis = new CategoryAxis(FXCollections.observableArrayList(chart.categories()));
         NumberAxis yAxis = new NumberAxis();
-        LineChart<String, Number> visitChart = new LineChart<>(xAxis, yAxis);
-        
-        visitChart.setTitle("Visit History");
-        XYChart.Series<String, Number> visitSeries = new XYChart.Series<>();
-        visitSeries.setName("Visits");
-
-        CategoryAxis xAxis2 = new CategoryAxis();
-        NumberAxis yAxis2 = new NumberAxis();
-        BarChart<String, Number> expenseChart = new BarChart<>(xAxis2, yAxis2);
-        
-        expenseChart.setTitle("Monthly Expenses");
-        XYChart.Series<String, Number> expenseSeries = new XYChart.Series<>();
-        expenseSeries.setName("Expenses");
-
-        Map<YearMonth, Integer> monthlyVisits = new TreeMap<>();
-        Map<YearMonth, Double> monthlyExpenses = new TreeMap<>();
-
-        appointments.stream()
-            .filter(apt -> apt.patientIdProperty().get().equals(patientId) &&
-                          !apt.dateProperty().get().isBefore(startDate) &&
-                          !apt.dateProperty().get().isAfter(endDate))
-            .forEach(apt -> {
-                YearMonth month = YearMonth.from(apt.dateProperty().get());
-                monthlyVisits.merge(month, 1, Integer::sum);
-            });
-
-        billingRecords.stream()
-            .filter(record -> record.getPatientId().equals(patientId) &&
-                            !record.dateProperty().get().isBefore(startDate) &&
-                            !record.dateProperty().get().isAfter(endDate))
-            .forEach(record -> {
-                YearMonth month = YearMonth.from(record.dateProperty().get());
-                monthlyExpenses.merge(month, record.amountProperty().get(), Double::sum);
-            });
-
-        monthlyVisits.forEach((month, count) ->
-            visitSeries.getData().add(new XYChart.Data<>(
-                month.format(DateTimeFormatter.ofPattern("MMM yyyy")), count)));
-
-        monthlyExpenses.forEach((month, amount) ->
-            expenseSeries.getData().add(new XYChart.Data<>(
-                month.format(DateTimeFormatter.ofPattern("MMM yyyy")), amount)));
-
-        visitChart.getData().add(visitSeries);
-        expenseChart.getData().add(expenseSeries);
-
-        Label summaryLabel = new Label(String.format(
-            "Summary Statistics:\n" +
-            "Total Visits: %d\n" +
-            "Total Expenses: $%.2f\n" +
-            "Average Monthly Visits: %.1f\n" +
-            "Average Monthly Expense: $%.2f",
-            monthlyVisits.values().stream().mapToInt(Integer::intValue).sum(),
-            monthlyExpenses.values().stream().mapToDouble(Double::doubleValue).sum(),
-            monthlyVisits.values().stream().mapToInt(Integer::intValue).average().orElse(0),
-            monthlyExpenses.values().stream().mapToDouble(Double::doubleValue).average().orElse(0)
-        ));
-        summaryLabel.setStyle("-fx-font-weight: bold;");
-
-        patientStats.getChildren().addAll(summaryLabel, visitChart, expenseChart);
-        chartContainer.getChildren().add(patientStats);
+        xAxis.setLabel(chart.getCategoryLabel());
+        yAxis.setLabel(chart.getValueLabel());
+        XYChart<String, Number> xyChart;
+        switch (chart.getKind()) {
+            case BAR:
+                xyChart = new BarChart<>(xAxis, yAxis);
+                break;
+            case STACKED_BAR:
+                xyChart = new StackedBarChart<>(xAxis, yAxis);
+                break;
+            default:
+                xyChart = new LineChart<>(xAxis, yAxis);
+        }
+        xyChart.setTitle(chart.getTitle());
+        for (ReportChart.Series s : chart.getSeries()) {
+            XYChart.Series<String, Number> series = new XYChart.Series<>();
+            series.setName(s.getName());
+            s.getValues().forEach((category, value) -> series.getData().add(new XYChart.Data<>(category, value)));
+            xyChart.getData().add(series);
+        }
+        return xyChart;
     }
 
     private void showAlert(Alert.AlertType alertType, String title, String content) {
@@ -341,6 +326,6 @@ public class AnalyticsView extends VBox {
         alert.setTitle(title);
         alert.setHeaderText(null);
         alert.setContentText(content);
-        alert.showAndWait();
+        ModalDialogEvent.showAndWait(alert);
     }
 }
@@ -1,49 +1,111 @@
+import javafx.beans.property.SimpleObjectProperty;
+import javafx.beans.property.SimpleStringProperty;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.collections.ListChangeListener;
 import javafx.geometry.Insets;
 import javafx.scene.control.*;
 import javafx.scene.layout.GridPane;
+import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.util.Arrays;
+import java.util.List;
 
 public class AppointmentSchedulingView extends VBox {
-    private final ComboBox<Patient> patientComboBox;
+    private final PatientPicker patientComboBox;
     private final ComboBox<Doctor> doctorComboBox;
     private final DatePicker appointmentDatePicker;
     private final ComboBox<LocalTime> appointmentTimeComboBox;
     private final TableView<Appointment> appointmentTable;
     private final ObservableList<Appointment> appointments;
-    private final ObservableList<Patient> patients;
     private final ObservableList<Doctor> doctors;
+    private final ClinicService clinicService;
+    private final SlotOccupancyIndex occupancy;
+    private final SlotFinder slotFinder;
+    private final ComboBox<String> slotSearchScopeBox;
+    private final ListView<SlotFinder.FreeSlot> freeSlotList;
+    private final DoctorWorkloadIndex doctorIndex;
+    private final CheckBox autoAssignCheckBox;
+    private final ComboBox<String> autoAssignSpecializationBox;
+    private final ObservableList<RecurringAppointment> recurringSeries;
+    private final ComboBox<String> repeatComboBox;
+    private final TextField occurrencesField;
+    private final TableView<RecurringAppointment> seriesTable;
 
-    public AppointmentSchedulingView(ObservableList<Patient> patients, 
-                                   ObservableList<Doctor> doctors, 
-                                   ObservableList<Appointment> appointments) {
-        this.patients = patients;
-        this.doctors = doctors;
-        this.appointments = appointments;
+    private static final String REPEAT_NONE = "Does not repeat";
+    private static final String REPEAT_WEEKLY = "Weekly";
+    private static final String REPEAT_BIWEEKLY = "Every 2 weeks";
+    private static final String REPEAT_MONTHLY = "Monthly";
+    private static final String SCOPE_SELECTED_DOCTOR = "Selected Doctor";
+    private static final String SCOPE_ANY_DOCTOR = "Any Doctor";
+    private static final int FREE_SLOT_RESULTS = 10;
+    private static final int FREE_SLOT_SEARCH_DAYS = 30;
+
+    public AppointmentSchedulingView(ClinicService clinicService) {
+        this.clinicService = clinicService;
+        this.doctors = clinicService.store().doctors().fxView();
+        this.appointments = clinicService.store().appointments().fxView();
+        this.recurringSeries = clinicService.store().recurringSeries().fxView();
+        this.doctorIndex = clinicService.doctorIndex();
+        this.occupancy = clinicService.occupancy();
+        this.slotFinder = clinicService.slotFinder();
         
-        patientComboBox = new ComboBox<>(patients);
+        patientComboBox = new PatientPicker(clinicService.patientSearchIndex());
         doctorComboBox = new ComboBox<>(doctors);
         appointmentDatePicker = new DatePicker();
         appointmentTimeComboBox = new ComboBox<>(createTimeSlots());
+        autoAssignCheckBox = new CheckBox("Auto-assign least-loaded doctor");
+        autoAssignSpecializationBox = new ComboBox<>();
+        autoAssignSpecializationBox.setDisable(true);
+        autoAssignCheckBox.selectedProperty().addListener((obs, oldVal, auto) -> {
+            doctorComboBox.setDisable(auto);
+            autoAssignSpecializationBox.setDisable(!auto);
+        });
+        
+        repeatComboBox = new ComboBox<>(FXCollections.observableArrayList(
+            REPEAT_NONE, REPEAT_WEEKLY, REPEAT_BIWEEKLY, REPEAT_MONTHLY));
+        repeatComboBox.setValue(REPEAT_NONE);
+        occurrencesField = new TextField();
+        occurrencesField.setPromptText("Leave empty for no end date");
+        occurrencesField.disableProperty().bind(repeatComboBox.valueProperty().isEqualTo(REPEAT_NONE));
         
         appointmentTable = new TableView<>();
         setupAppointmentTable();
+        seriesTable = new TableView<>();
+        seriesTable.setPrefHeight(150);
+        setupSeriesTable();
+        
+        slotSearchScopeBox = new ComboBox<>();
+        updateSlotSearchScopes();
+        freeSlotList = new ListView<>();
+        freeSlotList.setPrefHeight(120);
+        freeSlotList.getSelectionModel().selectedItemProperty().addListener((obs, oldVal, slot) -> {
+            if (slot != null) {
+                doctorComboBox.setValue(slot.getDoctor());
+                appointmentDatePicker.setValue(slot.getDate());
+                appointmentTimeComboBox.setValue(slot.getTime());
+            }
+        });
         
         GridPane inputGrid = createInputGrid();
         Button scheduleButton = new Button("Schedule Appointment");
         scheduleButton.setOnAction(e -> scheduleAppointment());
+        Button bulkCancelButton = new Button("Cancel Doctor's Appointments...");
+        bulkCancelButton.setOnAction(e -> handleBulkCancellation());
         
-        getChildren().addAll(inputGrid, scheduleButton, appointmentTable);
+        getChildren().addAll(inputGrid, createSlotSearchBox(), freeSlotList,
+            new HBox(10, scheduleButton, bulkCancelButton),
+            appointmentTable, new Label("Recurring Series:"), seriesTable);
         setSpacing(10);
         setPadding(new Insets(10));
 
-        patients.addListener((ListChangeListener<Patient>) c -> patientComboBox.setItems(FXCollections.observableArrayList(patients)));
-        doctors.addListener((ListChangeListener<Doctor>) c -> doctorComboBox.setItems(FXCollections.observableArrayList(doctors)));
+        doctors.addListener((ListChangeListener<Doctor>) c -> {
+            doctorComboBox.setItems(FXCollections.observableArrayList(doctors));
+            updateSlotSearchScopes();
+        });
         
         appointmentDatePicker.setValue(LocalDate.now());
         
@@ -57,15 +119,54 @@ public class AppointmentSchedulingView extends VBox {
     }
 
     private ObservableList<LocalTime> createTimeSlots() {
-        ObservableList<LocalTime> timeSlots = FXCollections.observableArrayList();
-        LocalTime startTime = LocalTime.of(9, 0);
-        LocalTime endTime = LocalTime.of(17, 0);
-        
-        while (!startTime.isAfter(endTime)) {
-            timeSlots.add(startTime);
-            startTime = startTime.plusMinutes(30);
+        return FXCollections.observableArrayList(TimeSlotGrid.slots());
+    }
+
+    private HBox createSlotSearchBox() {
+        Button findSlotsButton = new Button("Find Next Free Slots");
+        findSlotsButton.setOnAction(e -> findFreeSlots());
+        HBox box = new HBox(10, new Label("Free slots for:"), slotSearchScopeBox, findSlotsButton);
+        box.setPadding(new Insets(0, 10, 0, 10));
+        return box;
+    }
+
+    private void updateSlotSearchScopes() {
+        String selected = slotSearchScopeBox.getValue();
+        List<String> specializations = doctorIndex.specializations();
+
+        ObservableList<String> scopes = FXCollections.observableArrayList(SCOPE_SELECTED_DOCTOR, SCOPE_ANY_DOCTOR);
+        scopes.addAll(specializations);
+        slotSearchScopeBox.setItems(scopes);
+        slotSearchScopeBox.setValue(selected != null && scopes.contains(selected) ? selected : SCOPE_SELECTED_DOCTOR);
+
+        String autoSelected = autoAssignSpecializationBox.getValue();
+        autoAssignSpecializationBox.setItems(FXCollections.observableArrayList(specializations));
+        autoAssignSpecializationBox.setValue(autoSelected != null && specializations.contains(autoSelected) ? autoSelected : null);
+    }
+
+    private void findFreeSlots() {
+        String scope = slotSearchScopeBox.getValue();
+        LocalDate from = appointmentDatePicker.getValue() != null ? appointmentDatePicker.getValue() : LocalDate.now();
+        LocalDate to = from.plusDays(FREE_SLOT_SEARCH_DAYS);
+
+        List<SlotFinder.FreeSlot> slots;
+        if (SCOPE_SELECTED_DOCTOR.equals(scope)) {
+            if (doctorComboBox.getValue() == null) {
+                showAlert(Alert.AlertType.ERROR, "Error", "Please select a doctor to search free slots for.");
+                return;
+            }
+            slots = slotFinder.findForDoctor(doctorComboBox.getValue(), from, to, FREE_SLOT_RESULTS);
+        } else if (SCOPE_ANY_DOCTOR.equals(scope)) {
+            slots = slotFinder.find(doctors, from, to, FREE_SLOT_RESULTS, LocalDateTime.now());
+        } else {
+            slots = slotFinder.findForSpecialization(doctorIndex, scope, from, to, FREE_SLOT_RESULTS);
+        }
+
+        freeSlotList.setItems(FXCollections.observableArrayList(slots));
+        if (slots.isEmpty()) {
+            showAlert(Alert.AlertType.INFORMATION, "No Free Slots",
+                "No free slots in the next " + FREE_SLOT_SEARCH_DAYS + " days.");
         }
-        return timeSlots;
     }
 
     private void setupAppointmentTable() {
@@ -102,6 +203,45 @@ public class AppointmentSchedulingView extends VBox {
         appointmentTable.setItems(appointments);
     }
 
+    private void setupSeriesTable() {
+        TableColumn<RecurringAppointment, String> patientCol = new TableColumn<>("Patient");
+        patientCol.setCellValueFactory(cellData -> cellData.getValue().patientProperty());
+        
+        TableColumn<RecurringAppointment, String> doctorCol = new TableColumn<>("Doctor");
+        doctorCol.setCellValueFactory(cellData -> cellData.getValue().doctorProperty());
+        
+        TableColumn<RecurringAppointment, LocalTime> timeCol = new TableColumn<>("Time");
+        timeCol.setCellValueFactory(cellData -> cellData.getValue().timeProperty());
+        
+        TableColumn<RecurringAppointment, String> ruleCol = new TableColumn<>("Repeats");
+        ruleCol.setCellValueFactory(cellData -> new SimpleStringProperty(
+            cellData.getValue().getRule().describe() + " from " + cellData.getValue().getStartDate()));
+        
+        TableColumn<RecurringAppointment, LocalDate> nextCol = new TableColumn<>("Next Occurrence");
+        nextCol.setCellValueFactory(cellData -> new SimpleObjectProperty<>(
+            cellData.getValue().nextOccurrence(LocalDate.now()).orElse(null)));
+        
+        TableColumn<RecurringAppointment, Void> actionCol = new TableColumn<>("Actions");
+        actionCol.setCellFactory(column -> new TableCell<>() {
+            private final Button deleteButton = new Button("Cancel Series");
+            {
+                deleteButton.setOnAction(event -> {
+                    RecurringAppointment series = getTableView().getItems().get(getIndex());
+                    handleSeriesCancellation(series);
+                });
+            }
+            
+            @Override
+            protected void updateItem(Void item, boolean empty) {
+                super.updateItem(item, empty);
+                setGraphic(empty ? null : deleteButton);
+            }
+        });
+
+        seriesTable.getColumns().addAll(Arrays.asList(patientCol, doctorCol, timeCol, ruleCol, nextCol, actionCol));
+        seriesTable.setItems(recurringSeries);
+    }
+
     private GridPane createInputGrid() {
         GridPane grid = new GridPane();
         grid.setHgap(10);
@@ -112,17 +252,26 @@ public class AppointmentSchedulingView extends VBox {
         grid.addRow(1, new Label("Doctor:"), doctorComboBox);
         grid.addRow(2, new Label("Date:"), appointmentDatePicker);
         grid.addRow(3, new Label("Time:"), appointmentTimeComboBox);
+        grid.addRow(4, new Label("Repeat:"), repeatComboBox);
+        grid.addRow(5, new Label("Occurrences:"), occurrencesField);
+        grid.addRow(6, autoAssignCheckBox, autoAssignSpecializationBox);
 
         return grid;
     }
 
     private void scheduleAppointment() {
         Patient patient = patientComboBox.getValue();
+        boolean autoAssign = autoAssignCheckBox.isSelected();
         Doctor doctor = doctorComboBox.getValue();
         LocalDate date = appointmentDatePicker.getValue();
         LocalTime time = appointmentTimeComboBox.getValue();
 
-        if (patient == null || doctor == null || date == null || time == null) {
+        if (autoAssign && autoAssignSpecializationBox.getValue() == null) {
+            showAlert(Alert.AlertType.ERROR, "Error", "Please select a specialization to auto-assign from.");
+            return;
+        }
+
+        if (patient == null || (!autoAssign && doctor == null) || date == null || time == null) {
             showAlert(Alert.AlertType.ERROR, "Error", "Please fill in all required fields.");
             return;
         }
@@ -132,24 +281,96 @@ public class AppointmentSchedulingView extends VBox {
             return;
         }
 
-        if (isTimeSlotTaken(doctor, date, time)) {
-            showAlert(Alert.AlertType.ERROR, "Error", "This time slot is already taken for the selected doctor.");
+        RecurrenceRule rule;
+        try {
+            rule = selectedRecurrenceRule();
+        } catch (NumberFormatException e) {
+            showAlert(Alert.AlertType.ERROR, "Error", "Occurrences must be a positive whole number.");
+            return;
+        }
+        if (rule != null) {
+            scheduleSeries(patient, autoAssign ? null : doctor, date, time, rule);
+            return;
+        }
+
+        Appointment newAppointment;
+        try {
+            newAppointment = autoAssign
+                ? clinicService.autoAssignAppointment(patient, autoAssignSpecializationBox.getValue(), date, time)
+                : clinicService.bookAppointment(patient, doctor, date, time);
+        } catch (ValidationException e) {
+            showAlert(Alert.AlertType.ERROR, "Error", e.getMessage());
             return;
         }
 
-        Appointment newAppointment = new Appointment(patient.getPatientId(), patient.getName(), doctor.getName(), date, time);
-        appointments.add(newAppointment);
-        showAlert(Alert.AlertType.INFORMATION, "Success", "Appointment scheduled successfully.");
+        freeSlotList.getItems().clear();
+        showAlert(Alert.AlertType.INFORMATION, "Success", autoAssign
+            ? "Appointment scheduled successfully with " + newAppointment.getDoctorName() + "."
+            : "Appointment scheduled successfully.");
         clearInputFields();
     }
 
-    private boolean isTimeSlotTaken(Doctor doctor, LocalDate date, LocalTime time) {
-        return appointments.stream()
-            .anyMatch(apt -> 
-                apt.doctorProperty().get().equals(doctor.getName()) &&
-                apt.dateProperty().get().equals(date) &&
-                apt.timeProperty().get().equals(time)
-            );
+    private RecurrenceRule selectedRecurrenceRule() {
+        String repeat = repeatComboBox.getValue();
+        if (repeat == null || REPEAT_NONE.equals(repeat)) {
+            return null;
+        }
+        String countText = occurrencesField.getText().trim();
+        int count = countText.isEmpty() ? 0 : Integer.parseInt(countText);
+        if (count < 0 || (!countText.isEmpty() && count == 0)) {
+            throw new NumberFormatException(countText);
+        }
+        switch (repeat) {
+            case REPEAT_WEEKLY:
+                return RecurrenceRule.weekly(1, count);
+            case REPEAT_BIWEEKLY:
+                return RecurrenceRule.weekly(2, count);
+            default:
+                return RecurrenceRule.monthly(1, count);
+        }
+    }
+
+    /**
+     * Books a recurring series after checking every occurrence against single
+     * bookings and other series. A null doctor means auto-assign.
+     */
+    private void scheduleSeries(Patient patient, Doctor doctor, LocalDate date, LocalTime time, RecurrenceRule rule) {
+        RecurringAppointment series;
+        try {
+            series = doctor == null
+                ? clinicService.autoAssignSeries(patient, autoAssignSpecializationBox.getValue(), date, time, rule)
+                : clinicService.bookSeries(patient, doctor, date, time, rule);
+        } catch (ValidationException e) {
+            showAlert(Alert.AlertType.ERROR, "Error", e.getMessage());
+            return;
+        }
+
+        freeSlotList.getItems().clear();
+        showAlert(Alert.AlertType.INFORMATION, "Success",
+            "Recurring appointments scheduled with " + series.getDoctorName() + ": " + rule.describe() + ".");
+        clearInputFields();
+    }
+
+    private void handleSeriesCancellation(RecurringAppointment series) {
+        if (series.nextOccurrence(LocalDate.now()).isEmpty()) {
+            showAlert(Alert.AlertType.INFORMATION, "Series Ended", "This series has no remaining occurrences.");
+            return;
+        }
+        Alert alert = new Alert(Alert.AlertType.CONFIRMATION);
+        alert.setTitle("Cancel Recurring Series");
+        alert.setHeaderText("Cancel recurring appointments for " + series.patientProperty().get());
+        alert.setContentText("Are you sure you want to cancel all occurrences from today on? "
+            + "Past occurrences are kept.");
+
+        ModalDialogEvent.showAndWait(alert).ifPresent(response -> {
+            if (response == ButtonType.OK) {
+                if (clinicService.cancelSeries(series)) {
+                    showAlert(Alert.AlertType.INFORMATION, "Success", "Recurring series cancelled from today on.");
+                } else {
+                    showAlert(Alert.AlertType.ERROR, "Error", "This series was already cancelled.");
+                }
+            }
+        });
     }
 
     private void handleAppointmentCancellation(Appointment appointment) {
@@ -158,19 +379,57 @@ public class AppointmentSchedulingView extends VBox {
         alert.setHeaderText("Cancel appointment for " + appointment.patientProperty().get());
         alert.setContentText("Are you sure you want to cancel this appointment?");
 
-        alert.showAndWait().ifPresent(response -> {
+        ModalDialogEvent.showAndWait(alert).ifPresent(response -> {
             if (response == ButtonType.OK) {
-                appointments.remove(appointment);
+                clinicService.cancelAppointment(appointment);
                 showAlert(Alert.AlertType.INFORMATION, "Success", "Appointment cancelled successfully.");
             }
         });
     }
 
+    private void handleBulkCancellation() {
+        ComboBox<Doctor> doctorBox = new ComboBox<>(FXCollections.observableArrayList(doctors));
+        doctorBox.setValue(doctorComboBox.getValue());
+        DatePicker fromPicker = new DatePicker(LocalDate.now());
+        DatePicker toPicker = new DatePicker(LocalDate.now());
+        GridPane grid = new GridPane();
+        grid.setHgap(10);
+        grid.setVgap(10);
+        grid.addRow(0, new Label("Doctor:"), doctorBox);
+        grid.addRow(1, new Label("From:"), fromPicker);
+        grid.addRow(2, new Label("To:"), toPicker);
+
+        Dialog<ButtonType> dialog = new Dialog<>();
+        dialog.setTitle("Cancel Doctor's Appointments");
+        dialog.setHeaderText("Cancel every appointment of a doctor in a date range.\n"
+            + "Recurring series are not affected.");
+        dialog.getDialogPane().setContent(grid);
+        dialog.getDialogPane().getButtonTypes().addAll(ButtonType.OK, ButtonType.CANCEL);
+
+        ModalDialogEvent.showAndWait(dialog).ifPresent(response -> {
+            if (response != ButtonType.OK) {
+                return;
+            }
+            Doctor doctor = doctorBox.getValue();
+            try {
+                int cancelled = clinicService.cancelAppointments(doctor == null ? null : doctor.getName(),
+                    fromPicker.getValue(), toPicker.getValue());
+                showAlert(Alert.AlertType.INFORMATION, "Success", cancelled == 1
+                    ? "1 appointment cancelled."
+                    : cancelled + " appointments cancelled.");
+            } catch (ValidationException e) {
+                showAlert(Alert.AlertType.ERROR, "Error", e.getMessage());
+            }
+        });
+    }
+
     private void clearInputFields() {
         patientComboBox.setValue(null);
         doctorComboBox.setValue(null);
         appointmentDatePicker.setValue(LocalDate.now());
         appointmentTimeComboBox.setValue(null);
+        repeatComboBox.setValue(REPEAT_NONE);
+        occurrencesField.clear();
     }
 
     private void showAlert(Alert.AlertType alertType, String title, String content) {
@@ -178,6 +437,6 @@ public class AppointmentSchedulingView extends VBox {
         alert.setTitle(title);
         alert.setHeaderText(null);
         alert.setContentText(content);
-        alert.showAndWait();
+        ModalDialogEvent.showAndWait(alert);
     }
 }
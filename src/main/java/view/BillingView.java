@@ -1,6 +1,5 @@
-import javafx.collections.FXCollections;
+import javafx.beans.property.ReadOnlyObjectWrapper;
 import javafx.collections.ObservableList;
-import javafx.collections.ListChangeListener;
 import javafx.geometry.Insets;
 import javafx.scene.control.*;
 import javafx.scene.layout.GridPane;
@@ -9,19 +8,19 @@ import java.time.LocalDate;
 import java.util.Arrays;
 
 public class BillingView extends VBox {
-    private final ComboBox<Patient> patientComboBox;
+    private final PatientPicker patientComboBox;
     private final TextField serviceField;
     private final TextField amountField;
     private final DatePicker billingDatePicker;
     private final TableView<BillingRecord> billingTable;
     private final ObservableList<BillingRecord> billingRecords;
-    private final ObservableList<Patient> patients;
+    private final ClinicService clinicService;
 
-    public BillingView(ObservableList<Patient> patients, ObservableList<BillingRecord> billingRecords) {
-        this.patients = patients;
-        this.billingRecords = billingRecords;
+    public BillingView(ClinicService clinicService) {
+        this.clinicService = clinicService;
+        this.billingRecords = clinicService.store().billingRecords().fxView();
         
-        patientComboBox = new ComboBox<>(patients);
+        patientComboBox = new PatientPicker(clinicService.patientSearchIndex());
         serviceField = new TextField();
         amountField = new TextField();
         billingDatePicker = new DatePicker(LocalDate.now());
@@ -36,9 +35,6 @@ public class BillingView extends VBox {
         getChildren().addAll(inputGrid, addUpdateButton, billingTable);
         setSpacing(10);
         setPadding(new Insets(10));
-
-        patients.addListener((ListChangeListener<Patient>) c -> 
-            patientComboBox.setItems(FXCollections.observableArrayList(patients)));
     }
 
     private void setupBillingTable() {
@@ -48,16 +44,16 @@ public class BillingView extends VBox {
         TableColumn<BillingRecord, String> serviceCol = new TableColumn<>("Service");
         serviceCol.setCellValueFactory(cellData -> cellData.getValue().serviceProperty());
         
-        TableColumn<BillingRecord, Double> amountCol = new TableColumn<>("Amount");
-        amountCol.setCellValueFactory(cellData -> cellData.getValue().amountProperty().asObject());
+        TableColumn<BillingRecord, Long> amountCol = new TableColumn<>("Amount");
+        amountCol.setCellValueFactory(cellData -> new ReadOnlyObjectWrapper<>(cellData.getValue().getAmountCents()));
         amountCol.setCellFactory(col -> new TableCell<>() {
             @Override
-            protected void updateItem(Double amount, boolean empty) {
+            protected void updateItem(Long amount, boolean empty) {
                 super.updateItem(amount, empty);
                 if (empty || amount == null) {
                     setText(null);
                 } else {
-                    setText(String.format("$%.2f", amount));
+                    setText(Money.format(amount));
                 }
             }
         });
@@ -123,12 +119,13 @@ public class BillingView extends VBox {
                 return;
             }
             
-            BillingRecord newRecord = new BillingRecord(patient.getPatientId(), patient.getName(), service, amount, date);
-            billingRecords.add(newRecord);
+            clinicService.addBillingRecord(patient, service, amount, date);
             showAlert(Alert.AlertType.INFORMATION, "Success", "Billing record added successfully.");
             clearInputFields();
         } catch (NumberFormatException e) {
             showAlert(Alert.AlertType.ERROR, "Error", "Invalid amount. Please enter a valid number.");
+        } catch (ValidationException e) {
+            showAlert(Alert.AlertType.ERROR, "Error", e.getMessage());
         }
     }
 
@@ -138,9 +135,9 @@ public class BillingView extends VBox {
         alert.setHeaderText("Delete billing record for " + record.patientProperty().get());
         alert.setContentText("Are you sure you want to delete this billing record?");
 
-        alert.showAndWait().ifPresent(response -> {
+        ModalDialogEvent.showAndWait(alert).ifPresent(response -> {
             if (response == ButtonType.OK) {
-                billingRecords.remove(record);
+                clinicService.deleteBillingRecord(record);
                 showAlert(Alert.AlertType.INFORMATION, "Success", "Billing record deleted successfully.");
             }
         });
@@ -158,6 +155,6 @@ public class BillingView extends VBox {
         alert.setTitle(title);
         alert.setHeaderText(null);
         alert.setContentText(content);
-        alert.showAndWait();
+        ModalDialogEvent.showAndWait(alert);
     }
 }
@@ -1,4 +1,6 @@
+import javafx.beans.property.ReadOnlyObjectWrapper;
 import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
 import javafx.geometry.Insets;
 import javafx.scene.control.*;
@@ -13,14 +15,24 @@ public class DoctorManagementView extends VBox {
     private final TextField contactInfoField;
     private final TableView<Doctor> doctorTable;
     private final ObservableList<Doctor> doctors;
+    private final ClinicService clinicService;
+    private final DoctorWorkloadIndex doctorIndex;
+    private final ComboBox<String> specializationFilterBox;
 
-    public DoctorManagementView(ObservableList<Doctor> doctors) {
-        this.doctors = doctors;
+    private static final String ALL_SPECIALIZATIONS = "All Specializations";
+
+    public DoctorManagementView(ClinicService clinicService) {
+        this.clinicService = clinicService;
+        this.doctors = clinicService.store().doctors().fxView();
+        this.doctorIndex = clinicService.doctorIndex();
         
         // Initialize components
         nameField = new TextField();
         specializationField = new TextField();
         contactInfoField = new TextField();
+        specializationFilterBox = new ComboBox<>();
+        updateSpecializationFilter();
+        specializationFilterBox.valueProperty().addListener((obs, oldVal, newVal) -> applySpecializationFilter());
         
         doctorTable = new TableView<>();
         setupDoctorTable();
@@ -30,9 +42,35 @@ public class DoctorManagementView extends VBox {
         Button addUpdateButton = new Button("Add Doctor");
         addUpdateButton.setOnAction(e -> addDoctor());
         
-        getChildren().addAll(inputGrid, addUpdateButton, doctorTable);
+        HBox filterBox = new HBox(10, new Label("Show:"), specializationFilterBox);
+        
+        getChildren().addAll(inputGrid, addUpdateButton, filterBox, doctorTable);
         setSpacing(10);
         setPadding(new Insets(10));
+
+        doctors.addListener((ListChangeListener<Doctor>) c -> {
+            updateSpecializationFilter();
+            applySpecializationFilter();
+        });
+        clinicService.store().appointments().fxView()
+            .addListener((ListChangeListener<Appointment>) c -> doctorTable.refresh());
+    }
+
+    private void updateSpecializationFilter() {
+        String selected = specializationFilterBox.getValue();
+        ObservableList<String> options = FXCollections.observableArrayList(ALL_SPECIALIZATIONS);
+        options.addAll(doctorIndex.specializations());
+        specializationFilterBox.setItems(options);
+        specializationFilterBox.setValue(selected != null && options.contains(selected) ? selected : ALL_SPECIALIZATIONS);
+    }
+
+    private void applySpecializationFilter() {
+        String specialization = specializationFilterBox.getValue();
+        if (specialization == null || ALL_SPECIALIZATIONS.equals(specialization)) {
+            doctorTable.setItems(doctors);
+        } else {
+            doctorTable.setItems(FXCollections.observableArrayList(doctorIndex.doctorsFor(specialization)));
+        }
     }
 
     private void setupDoctorTable() {
@@ -45,6 +83,10 @@ public class DoctorManagementView extends VBox {
         TableColumn<Doctor, String> contactCol = new TableColumn<>("Contact Info");
         contactCol.setCellValueFactory(cellData -> cellData.getValue().contactInfoProperty());
         
+        TableColumn<Doctor, Number> workloadCol = new TableColumn<>("Booked (next " + DoctorWorkloadIndex.WINDOW_DAYS + " days)");
+        workloadCol.setCellValueFactory(cellData ->
+            new ReadOnlyObjectWrapper<>(doctorIndex.workloadOf(cellData.getValue().getName())));
+        
         TableColumn<Doctor, Void> actionCol = new TableColumn<>("Actions");
         actionCol.setCellFactory(column -> new TableCell<>() {
             private final Button deleteButton = new Button("Remove");
@@ -62,7 +104,7 @@ public class DoctorManagementView extends VBox {
             }
         });
         
-        doctorTable.getColumns().addAll(Arrays.asList(nameCol, specializationCol, contactCol, actionCol));
+        doctorTable.getColumns().addAll(Arrays.asList(nameCol, specializationCol, contactCol, workloadCol, actionCol));
         doctorTable.setItems(doctors);
     }
 
@@ -84,13 +126,12 @@ public class DoctorManagementView extends VBox {
         String specialization = specializationField.getText().trim();
         String contactInfo = contactInfoField.getText().trim();
 
-        if (name.isEmpty() || specialization.isEmpty() || contactInfo.isEmpty()) {
-            showAlert(Alert.AlertType.ERROR, "Error", "Please fill in all required fields.");
+        try {
+            clinicService.addDoctor(name, specialization, contactInfo);
+        } catch (ValidationException e) {
+            showAlert(Alert.AlertType.ERROR, "Error", e.getMessage());
             return;
         }
-
-        Doctor newDoctor = new Doctor(name, specialization, contactInfo);
-        doctors.add(newDoctor);
         showAlert(Alert.AlertType.INFORMATION, "Success", "Doctor added successfully.");
         clearInputFields();
     }
@@ -101,9 +142,9 @@ public class DoctorManagementView extends VBox {
         alert.setHeaderText("Remove " + doctor.getName());
         alert.setContentText("Are you sure you want to remove this doctor?");
 
-        alert.showAndWait().ifPresent(response -> {
+        ModalDialogEvent.showAndWait(alert).ifPresent(response -> {
             if (response == ButtonType.OK) {
-                doctors.remove(doctor);
+                clinicService.removeDoctor(doctor);
                 showAlert(Alert.AlertType.INFORMATION, "Success", "Doctor removed successfully.");
             }
         });
@@ -120,6 +161,6 @@ public class DoctorManagementView extends VBox {
         alert.setTitle(title);
         alert.setHeaderText(null);
         alert.setContentText(content);
-        alert.showAndWait();
+        ModalDialogEvent.showAndWait(alert);
     }
 }
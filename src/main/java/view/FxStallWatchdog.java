@@ -0,0 +1,166 @@
+import javafx.application.Platform;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Detects when the FX Application Thread stops processing events and records
+ * what it was doing instead.
+ *
+ * A daemon thread keeps one heartbeat queued with {@link Platform#runLater};
+ * once a heartbeat has waited longer than the threshold, the FX thread's stack
+ * is sampled every {@value #SAMPLE_INTERVAL_MILLIS} ms until the heartbeat
+ * runs. The stall is then logged to {@code SHMS.stall} with the application
+ * frames that were on top in most samples, recorded in the {@code fx.stall}
+ * histogram and committed as a {@link FxStallEvent}. Modal dialogs run a
+ * nested event loop that keeps serving heartbeats, so they are not stalls.
+ */
+public class FxStallWatchdog {
+    private static final Logger LOG = Logger.getLogger("SHMS.stall");
+    private static final long SAMPLE_INTERVAL_MILLIS = 10;
+    /** Samples kept per stall; a longer stall is still timed, just not sampled further. */
+    private static final int MAX_SAMPLES = 1000;
+    private static final int TOP_FRAMES = 5;
+
+    private final long thresholdNanos;
+    private final Executor fxExecutor;
+    private final LatencyHistogram stallHistogram = MetricsRegistry.global().histogram("fx.stall");
+    private final Runnable heartbeat = this::heartbeat;
+    private volatile Thread fxThread;
+    private volatile boolean heartbeatPending;
+    private volatile long heartbeatRanAt;
+    private Thread thread;
+
+    public FxStallWatchdog(long threshold, TimeUnit unit) {
+        this(threshold, unit, Platform::runLater);
+    }
+
+    FxStallWatchdog(long threshold, TimeUnit unit, Executor fxExecutor) {
+        this.thresholdNanos = unit.toNanos(threshold);
+        this.fxExecutor = fxExecutor;
+    }
+
+    public synchronized void start() {
+        if (thread == null) {
+            thread = new Thread(this::watch, "fx-stall-watchdog");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    public synchronized void stop() {
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    private void heartbeat() {
+        fxThread = Thread.currentThread();
+        heartbeatRanAt = System.nanoTime();
+        heartbeatPending = false;
+    }
+
+    private void watch() {
+        long postedAt = 0;
+        Stall stall = null;
+        while (!Thread.currentThread().isInterrupted()) {
+            long now = System.nanoTime();
+            if (!heartbeatPending) {
+                if (stall != null) {
+                    report(stall, heartbeatRanAt - postedAt);
+                    stall = null;
+                }
+                postedAt = now;
+                heartbeatPending = true;
+                fxExecutor.execute(heartbeat);
+            } else if (now - postedAt >= thresholdNanos && fxThread != null) {
+                if (stall == null) {
+                    stall = new Stall();
+                }
+                stall.sample(fxThread.getStackTrace());
+            }
+            try {
+                Thread.sleep(SAMPLE_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void report(Stall stall, long durationNanos) {
+        stallHistogram.recordNanos(durationNanos);
+        List<Map.Entry<String, Integer>> top = stall.topFrames();
+        FxStallEvent event = new FxStallEvent();
+        if (event.shouldCommit()) {
+            event.stallDuration = durationNanos;
+            event.samples = stall.samples;
+            event.topFrame = top.isEmpty() ? null : top.get(0).getKey();
+            event.commit();
+        }
+        LOG.warning(() -> stall.describe(durationNanos, top));
+    }
+
+    /** Stack samples of one stall, reduced to frame counts as they arrive. */
+    private static final class Stall {
+        private final Map<String, Integer> applicationFrames = new HashMap<>();
+        private final Map<String, Integer> leafFrames = new HashMap<>();
+        private int samples;
+
+        void sample(StackTraceElement[] stack) {
+            if (stack.length == 0 || samples >= MAX_SAMPLES) {
+                return;
+            }
+            samples++;
+            leafFrames.merge(frame(stack[0]), 1, Integer::sum);
+            for (StackTraceElement element : stack) {
+                if (isApplicationFrame(element)) {
+                    applicationFrames.merge(frame(element), 1, Integer::sum);
+                    break;
+                }
+            }
+        }
+
+        List<Map.Entry<String, Integer>> topFrames() {
+            return top(applicationFrames.isEmpty() ? leafFrames : applicationFrames);
+        }
+
+        String describe(long durationNanos, List<Map.Entry<String, Integer>> top) {
+            StringBuilder sb = new StringBuilder(String.format("FX thread stalled for %.0f ms (%d samples)",
+                durationNanos / 1e6, samples));
+            append(sb, top);
+            if (!applicationFrames.isEmpty()) {
+                sb.append(System.lineSeparator()).append("  leaf frames:");
+                append(sb, top(leafFrames).subList(0, Math.min(3, leafFrames.size())));
+            }
+            return sb.toString();
+        }
+
+        private void append(StringBuilder sb, List<Map.Entry<String, Integer>> frames) {
+            for (Map.Entry<String, Integer> entry : frames) {
+                sb.append(System.lineSeparator()).append(String.format("    %3d%%  %s",
+                    entry.getValue() * 100 / samples, entry.getKey()));
+            }
+        }
+
+        private static List<Map.Entry<String, Integer>> top(Map<String, Integer> counts) {
+            List<Map.Entry<String, Integer>> entries = new ArrayList<>(counts.entrySet());
+            entries.sort(Map.Entry.<String, Integer>comparingByValue().reversed());
+            return entries.subList(0, Math.min(TOP_FRAMES, entries.size()));
+        }
+
+        private static String frame(StackTraceElement element) {
+            return element.getClassName() + "." + element.getMethodName();
+        }
+
+        private static boolean isApplicationFrame(StackTraceElement element) {
+            String c = element.getClassName();
+            return !(c.startsWith("java.") || c.startsWith("javax.") || c.startsWith("jdk.") || c.startsWith("sun.")
+                || c.startsWith("com.sun.") || c.startsWith("javafx."));
+        }
+    }
+}
@@ -0,0 +1,36 @@
+import javafx.scene.Node;
+import javafx.scene.control.Tab;
+import java.util.function.Supplier;
+
+/**
+ * A tab whose content is only built the first time it is selected (or
+ * explicitly with {@link #build()}), so startup cost does not grow with the
+ * number of tabs or the data each view loads.
+ */
+public class LazyTab extends Tab {
+    private Supplier<? extends Node> factory;
+
+    public LazyTab(String text, Supplier<? extends Node> factory) {
+        super(text);
+        this.factory = factory;
+        setClosable(false);
+        selectedProperty().addListener((obs, wasSelected, isSelected) -> {
+            if (isSelected) {
+                build();
+            }
+        });
+    }
+
+    /** Builds the content now if that has not happened yet. */
+    public void build() {
+        if (factory != null) {
+            Supplier<? extends Node> f = factory;
+            factory = null;
+            setContent(f.get());
+        }
+    }
+
+    public boolean isBuilt() {
+        return factory == null;
+    }
+}
@@ -9,11 +9,16 @@ import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
 import javafx.stage.Modality;
+import javafx.concurrent.Task;
 import java.time.LocalDate;
+import java.util.List;
 import java.util.Optional;
 import java.util.Arrays;
+import java.util.stream.Collectors;
 
 public class PatientManagementView extends VBox {
+    private static final LatencyHistogram SEARCH_LATENCY = MetricsRegistry.global().histogram("performSearch");
+
     private final TextField nameField;
     private final DatePicker dateOfBirthPicker;
     private final TextField contactInfoField;
@@ -27,9 +32,13 @@ public class PatientManagementView extends VBox {
     private final ComboBox<String> searchCriteriaBox;
     private Patient currentEditingPatient;
     private Button addUpdateButton;
+    private final ClinicService clinicService;
+    private final DuplicatePatientDetector duplicateDetector;
     
-    public PatientManagementView(ObservableList<Patient> patients) {
-        this.patients = patients;
+    public PatientManagementView(ClinicService clinicService) {
+        this.clinicService = clinicService;
+        this.patients = clinicService.store().patients().fxView();
+        this.duplicateDetector = clinicService.duplicateDetector();
         
         // Initialize search components
         searchField = new TextField();
@@ -123,10 +132,13 @@ public class PatientManagementView extends VBox {
     private HBox createSearchBox() {
         HBox searchBox = new HBox(10);
         searchBox.setAlignment(Pos.CENTER_LEFT);
+        Button scanDuplicatesButton = new Button("Scan for Duplicates");
+        scanDuplicatesButton.setOnAction(e -> scanForDuplicates(scanDuplicatesButton));
         searchBox.getChildren().addAll(
             new Label("Search by:"),
             searchCriteriaBox,
-            searchField
+            searchField,
+            scanDuplicatesButton
         );
         return searchBox;
     }
@@ -145,10 +157,7 @@ public class PatientManagementView extends VBox {
         
         if (currentEditingPatient != null) {
             // Update existing patient
-            currentEditingPatient.nameProperty().set(name);
-            currentEditingPatient.dateOfBirthProperty().set(dob);
-            currentEditingPatient.contactInfoProperty().set(contactInfo);
-            currentEditingPatient.medicalHistoryProperty().set(medicalHistory);
+            clinicService.updatePatient(currentEditingPatient, name, dob, contactInfo, medicalHistory);
             
             showAlert(Alert.AlertType.INFORMATION, "Success", "Patient information updated successfully.");
             cancelEditing();
@@ -161,7 +170,7 @@ public class PatientManagementView extends VBox {
                 alert.setHeaderText("A patient with this name and date of birth already exists.");
                 alert.setContentText("Would you like to update the existing patient record?");
                 
-                alert.showAndWait().ifPresent(response -> {
+                ModalDialogEvent.showAndWait(alert).ifPresent(response -> {
                     if (response == ButtonType.OK) {
                         startEditing(existingPatient.get());
                     }
@@ -169,17 +178,18 @@ public class PatientManagementView extends VBox {
                 return;
             }
 
-            // Check if custom ID is already in use
-            if (!customId.isEmpty() && patients.stream().anyMatch(p -> p.getPatientId().equals(customId))) {
-                showAlert(Alert.AlertType.ERROR, "Error", "This Patient ID is already in use.");
+            // Check for likely misspelled re-registrations
+            List<DuplicatePatientDetector.DuplicateMatch> candidates = duplicateDetector.findCandidates(name, dob);
+            if (!candidates.isEmpty() && !confirmDespiteDuplicates(candidates)) {
+                return;
+            }
+
+            try {
+                clinicService.registerPatient(customId, name, dob, contactInfo, medicalHistory);
+            } catch (ValidationException e) {
+                showAlert(Alert.AlertType.ERROR, "Error", e.getMessage());
                 return;
             }
-            
-            Patient newPatient = customId.isEmpty() ? 
-                new Patient(name, dob, contactInfo, medicalHistory) :
-                new Patient(customId, name, dob, contactInfo, medicalHistory);
-            
-            patients.add(newPatient);
             showAlert(Alert.AlertType.INFORMATION, "Success", "Patient added successfully.");
             clearInputFields();
         }
@@ -207,7 +217,7 @@ public class PatientManagementView extends VBox {
             return null;
         });
         
-        Optional<String> result = dialog.showAndWait();
+        Optional<String> result = ModalDialogEvent.showAndWait(dialog);
         result.ifPresent(password -> {
             if (password.equals(SYSTEM_PASSWORD)) {
                 viewPatientInformation(patient);
@@ -267,7 +277,7 @@ public class PatientManagementView extends VBox {
         );
         
         infoStage.setScene(new javafx.scene.Scene(content));
-        infoStage.showAndWait();
+        ModalDialogEvent.showAndWait(infoStage);
     }
     
     private void showPasswordDialogForEdit(TextField nameField, DatePicker dobPicker,
@@ -294,7 +304,7 @@ public class PatientManagementView extends VBox {
             return null;
         });
         
-        Optional<String> result = dialog.showAndWait();
+        Optional<String> result = ModalDialogEvent.showAndWait(dialog);
         result.ifPresent(password -> {
             if (password.equals(SYSTEM_PASSWORD)) {
                 enableEditing(nameField, dobPicker, contactField, historyArea, saveButton);
@@ -316,15 +326,23 @@ public class PatientManagementView extends VBox {
     
     private void updatePatient(Patient patient, String name, LocalDate dob,
                              String contactInfo, String medicalHistory) {
-        patient.nameProperty().set(name);
-        patient.dateOfBirthProperty().set(dob);
-        patient.contactInfoProperty().set(contactInfo);
-        patient.medicalHistoryProperty().set(medicalHistory);
+        try {
+            clinicService.updatePatient(patient, name, dob, contactInfo, medicalHistory);
+        } catch (ValidationException e) {
+            showAlert(Alert.AlertType.ERROR, "Error", e.getMessage());
+            return;
+        }
         
         showAlert(Alert.AlertType.INFORMATION, "Success", "Patient information updated successfully.");
     }
     
     private void performSearch() {
+        SEARCH_LATENCY.time(this::filterPatients);
+    }
+
+    private void filterPatients() {
+        SearchQueryEvent event = new SearchQueryEvent();
+        event.begin();
         String searchTerm = searchField.getText().toLowerCase();
         String criteria = searchCriteriaBox.getValue();
         
@@ -348,6 +366,14 @@ public class PatientManagementView extends VBox {
         }
         
         patientTable.setItems(filteredList);
+        event.end();
+        if (event.shouldCommit()) {
+            event.source = "PatientManagementView";
+            event.criteria = criteria;
+            event.queryLength = searchTerm.length();
+            event.results = filteredList.size();
+            event.commit();
+        }
     }
     
     private void startEditing(Patient patient) {
@@ -369,9 +395,71 @@ public class PatientManagementView extends VBox {
     }
     
     private Optional<Patient> findExistingPatient(String name, LocalDate dob) {
-        return patients.stream()
-            .filter(p -> p.getName().equalsIgnoreCase(name) && p.getDateOfBirth().equals(dob))
-            .findFirst();
+        return Optional.ofNullable(duplicateDetector.findExact(name, dob));
+    }
+    
+    private boolean confirmDespiteDuplicates(List<DuplicatePatientDetector.DuplicateMatch> candidates) {
+        DuplicatePatientDetector.DuplicateMatch best = candidates.get(0);
+        ButtonType editExisting = new ButtonType("Edit Existing", ButtonBar.ButtonData.OTHER);
+        ButtonType registerAnyway = new ButtonType("Register Anyway", ButtonBar.ButtonData.OK_DONE);
+        
+        Alert alert = new Alert(Alert.AlertType.WARNING, "", editExisting, registerAnyway, ButtonType.CANCEL);
+        alert.setTitle("Possible Duplicate Patient");
+        alert.setHeaderText("This registration looks similar to an existing patient.");
+        alert.setContentText(candidates.stream()
+            .limit(5)
+            .map(this::describeMatch)
+            .collect(Collectors.joining("\n")));
+        
+        Optional<ButtonType> response = ModalDialogEvent.showAndWait(alert);
+        if (response.isPresent() && response.get() == editExisting) {
+            startEditing(best.getPatient());
+            return false;
+        }
+        return response.isPresent() && response.get() == registerAnyway;
+    }
+    
+    private String describeMatch(DuplicatePatientDetector.DuplicateMatch match) {
+        Patient p = match.getPatient();
+        String line = String.format("%s (ID: %s, DOB: %s)", p.getName(), p.getPatientId(), p.getDateOfBirth());
+        if (match.getOther() != null) {
+            Patient o = match.getOther();
+            line += String.format("  ~  %s (ID: %s, DOB: %s)", o.getName(), o.getPatientId(), o.getDateOfBirth());
+        }
+        return line + String.format(" - %.0f%% similar", match.getScore() * 100);
+    }
+    
+    private void scanForDuplicates(Button scanButton) {
+        Task<List<DuplicatePatientDetector.DuplicateMatch>> scan = new Task<>() {
+            @Override
+            protected List<DuplicatePatientDetector.DuplicateMatch> call() {
+                return duplicateDetector.findAllDuplicates();
+            }
+        };
+        scan.setOnSucceeded(e -> {
+            scanButton.setDisable(false);
+            List<DuplicatePatientDetector.DuplicateMatch> pairs = scan.getValue();
+            if (pairs.isEmpty()) {
+                showAlert(Alert.AlertType.INFORMATION, "Duplicate Scan", "No likely duplicate patients found.");
+                return;
+            }
+            ListView<String> results = new ListView<>(FXCollections.observableArrayList(
+                pairs.stream().map(this::describeMatch).collect(Collectors.toList())));
+            results.setPrefSize(640, 320);
+            Alert alert = new Alert(Alert.AlertType.INFORMATION);
+            alert.setTitle("Duplicate Scan");
+            alert.setHeaderText(pairs.size() + " likely duplicate pair(s) found.");
+            alert.getDialogPane().setContent(results);
+            ModalDialogEvent.showAndWait(alert);
+        });
+        scan.setOnFailed(e -> {
+            scanButton.setDisable(false);
+            showAlert(Alert.AlertType.ERROR, "Error", "Duplicate scan failed: " + scan.getException().getMessage());
+        });
+        scanButton.setDisable(true);
+        Thread worker = new Thread(scan, "duplicate-scan");
+        worker.setDaemon(true);
+        worker.start();
     }
     
     private void clearInputFields() {
@@ -384,6 +472,6 @@ public class PatientManagementView extends VBox {
         alert.setTitle(title);
         alert.setHeaderText(null);
         alert.setContentText(content);
-        alert.showAndWait();
+        ModalDialogEvent.showAndWait(alert);
     }
 }
\ No newline at end of file
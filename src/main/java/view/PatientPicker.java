@@ -0,0 +1,91 @@
+import javafx.scene.control.ComboBox;
+import javafx.util.StringConverter;
+import java.util.List;
+
+/**
+ * Editable patient combo box backed by a {@link PatientSearchIndex}. Typing
+ * a name or ID shows at most {@link #MAX_RESULTS} matches, so the list never
+ * holds more than a handful of patients however many are registered, and no
+ * per-view copy of the patient list has to be kept in sync.
+ */
+public class PatientPicker extends ComboBox<Patient> {
+    public static final int MAX_RESULTS = 20;
+
+    private final PatientSearchIndex index;
+    private boolean refreshing;
+
+    public PatientPicker(PatientSearchIndex index) {
+        this.index = index;
+        setEditable(true);
+        setPromptText("Type a name or ID");
+        setConverter(new StringConverter<>() {
+            @Override
+            public String toString(Patient patient) {
+                return patient == null ? "" : label(patient);
+            }
+
+            @Override
+            public Patient fromString(String text) {
+                return resolve(text);
+            }
+        });
+        getEditor().textProperty().addListener((obs, oldText, text) -> {
+            if (refreshing || (getValue() != null && label(getValue()).equals(text))) {
+                return;
+            }
+            refresh(text);
+            if (getEditor().isFocused() && !getItems().isEmpty()) {
+                show();
+            }
+        });
+        // Patients registered since the last keystroke show up when the list is opened
+        setOnShowing(e -> refresh(getEditor().getText()));
+    }
+
+    public static String label(Patient patient) {
+        return patient.getName() + " (" + patient.getPatientId() + ")";
+    }
+
+    /** Selects the first patient in alphabetical order, if there is one. */
+    public void selectFirst() {
+        List<Patient> first = index.search("", 1);
+        setValue(first.isEmpty() ? null : first.get(0));
+    }
+
+    private void refresh(String text) {
+        String typed = getEditor().getText();
+        int caret = getEditor().getCaretPosition();
+        refreshing = true;
+        try {
+            getItems().setAll(index.search(text, MAX_RESULTS));
+        } finally {
+            // Replacing the items can reset the editor; keep what the user typed
+            if (!typed.equals(getEditor().getText())) {
+                getEditor().setText(typed);
+                getEditor().positionCaret(caret);
+            }
+            refreshing = false;
+        }
+    }
+
+    /**
+     * Turns the editor text into a patient: a listed label, an exact ID, or
+     * the only match of the text. Anything else is no selection.
+     */
+    private Patient resolve(String text) {
+        if (text == null || text.isBlank()) {
+            return null;
+        }
+        for (Patient patient : getItems()) {
+            if (label(patient).equals(text)) {
+                return patient;
+            }
+        }
+        Patient byId = index.findById(text);
+        if (byId != null) {
+            return byId;
+        }
+        List<Patient> matches = index.search(text, 2);
+        return matches.size() == 1 ? matches.get(0) : null;
+    }
+}
@@ -0,0 +1,139 @@
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.collections.FXCollections;
+import javafx.geometry.Insets;
+import javafx.scene.chart.LineChart;
+import javafx.scene.chart.NumberAxis;
+import javafx.scene.chart.XYChart;
+import javafx.scene.control.ComboBox;
+import javafx.scene.control.Label;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
+import javafx.util.Duration;
+import javafx.util.StringConverter;
+import java.time.LocalDate;
+import java.time.MonthDay;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToDoubleBiFunction;
+
+/**
+ * Rolling 7-day and 30-day appointment volume and revenue, read from the
+ * service's {@link RollingWindowCounters}. The charts follow changes live
+ * but redraw at most once a second, and only when a counter has changed.
+ */
+public class TrendsView extends VBox {
+    private static final int[] WINDOWS = {7, 30};
+    private static final int HISTORY_DAYS = 90;
+    private static final int AHEAD_DAYS = 30;
+    private static final String DAILY_AVERAGE = "Daily average";
+    private static final String WINDOW_TOTAL = "Window total";
+    private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.ofPattern("dd MMM");
+
+    private final RollingWindowCounters counters;
+    private final ComboBox<String> measureBox = new ComboBox<>(FXCollections.observableArrayList(DAILY_AVERAGE,
+        WINDOW_TOTAL));
+    private final LineChart<Number, Number> volumeChart;
+    private final LineChart<Number, Number> revenueChart;
+    private long drawnVersion = -1;
+    private LocalDate drawnDay;
+
+    public TrendsView(ClinicService clinicService) {
+        this.counters = clinicService.trends();
+        measureBox.setValue(DAILY_AVERAGE);
+        measureBox.valueProperty().addListener((obs, oldVal, newVal) -> redraw());
+
+        volumeChart = chart("Appointments (by appointment date)", "Appointments");
+        revenueChart = chart("Revenue (by billing date)", "Revenue ($)");
+
+        getChildren().addAll(new HBox(10, new Label("Show:"), measureBox), volumeChart, revenueChart);
+        setSpacing(10);
+        setPadding(new Insets(10));
+
+        redraw();
+        Timeline refresh = new Timeline(new KeyFrame(Duration.seconds(1), e -> refreshIfChanged()));
+        refresh.setCycleCount(Timeline.INDEFINITE);
+        refresh.play();
+    }
+
+    private static LineChart<Number, Number> chart(String title, String valueLabel) {
+        NumberAxis xAxis = new NumberAxis();
+        xAxis.setAutoRanging(false);
+        xAxis.setTickUnit(7);
+        xAxis.setMinorTickVisible(false);
+        xAxis.setTickLabelFormatter(new StringConverter<>() {
+            @Override
+            public String toString(Number epochDay) {
+                return LocalDate.ofEpochDay(epochDay.longValue()).format(DAY_FORMAT);
+            }
+
+            /** Labels carry no year, so a label is read back as the day nearest today. */
+            @Override
+            public Number fromString(String text) {
+                MonthDay day = MonthDay.parse(text, DAY_FORMAT);
+                long today = LocalDate.now().toEpochDay();
+                long nearest = Long.MAX_VALUE;
+                for (int year = LocalDate.now().getYear() - 1; year <= LocalDate.now().getYear() + 1; year++) {
+                    long candidate = day.atYear(year).toEpochDay();
+                    if (nearest == Long.MAX_VALUE || Math.abs(candidate - today) < Math.abs(nearest - today)) {
+                        nearest = candidate;
+                    }
+                }
+                return nearest;
+            }
+        });
+        NumberAxis yAxis = new NumberAxis();
+        yAxis.setLabel(valueLabel);
+        LineChart<Number, Number> chart = new LineChart<>(xAxis, yAxis);
+        chart.setTitle(title);
+        chart.setCreateSymbols(false);
+        chart.setAnimated(false);
+        return chart;
+    }
+
+    private void refreshIfChanged() {
+        if (counters.version() != drawnVersion || !LocalDate.now().equals(drawnDay)) {
+            redraw();
+        }
+    }
+
+    private void redraw() {
+        drawnVersion = counters.version();
+        drawnDay = LocalDate.now();
+        LocalDate first = drawnDay.minusDays(HISTORY_DAYS);
+        boolean average = DAILY_AVERAGE.equals(measureBox.getValue());
+        List<XYChart.Series<Number, Number>> volume = new ArrayList<>();
+        List<XYChart.Series<Number, Number>> revenue = new ArrayList<>();
+        for (int days : WINDOWS) {
+            RollingWindowCounters.Window window = counters.window(first, drawnDay.plusDays(AHEAD_DAYS), days);
+            volume.add(series(days + "-day", window, window.size(),
+                (w, i) -> average ? w.averageAppointments(i) : w.appointments(i)));
+            revenue.add(series(days + "-day", window, HISTORY_DAYS + 1,
+                (w, i) -> (average ? w.averageRevenueCents(i) : w.revenueCents(i)) / 100.0));
+        }
+        setRange(volumeChart, first, drawnDay.plusDays(AHEAD_DAYS));
+        setRange(revenueChart, first, drawnDay);
+        volumeChart.getData().setAll(volume);
+        revenueChart.getData().setAll(revenue);
+    }
+
+    private static XYChart.Series<Number, Number> series(String name, RollingWindowCounters.Window window,
+                                                         int points,
+                                                         ToDoubleBiFunction<RollingWindowCounters.Window, Integer> value) {
+        XYChart.Series<Number, Number> series = new XYChart.Series<>();
+        series.setName(name);
+        List<XYChart.Data<Number, Number>> data = new ArrayList<>(points);
+        for (int i = 0; i < points; i++) {
+            data.add(new XYChart.Data<>(window.date(i).toEpochDay(), value.applyAsDouble(window, i)));
+        }
+        series.getData().setAll(data);
+        return series;
+    }
+
+    private static void setRange(LineChart<Number, Number> chart, LocalDate first, LocalDate last) {
+        NumberAxis xAxis = (NumberAxis) chart.getXAxis();
+        xAxis.setLowerBound(first.toEpochDay());
+        xAxis.setUpperBound(last.toEpochDay());
+    }
+}
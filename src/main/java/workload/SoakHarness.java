@@ -0,0 +1,307 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.Collectors;
+
+/**
+ * Replays simulated clinic days against the headless service paths and
+ * reports latency percentiles and heap growth while it runs.
+ *
+ * The clinic is first populated with {@link WorkloadGenerator}. Operations
+ * then arrive as a Poisson process whose rates follow a front desk's day
+ * (opening hours 09:00 to 17:30, Monday to Saturday), sped up {@code speed}
+ * times: type-ahead searches, free-slot lookups, bookings (some of them
+ * colliding), cancellations, registrations, billing and revenue reports.
+ * Each operation runs on one of {@code desks} worker threads, and its latency
+ * is measured from the moment it was due, not from when a worker picked it
+ * up, so an overloaded service shows up as queueing delay in the percentiles
+ * instead of as a quietly lower arrival rate.
+ *
+ * <pre>
+ * java SoakHarness --patients=1000000 --doctors=200 --speed=60 --minutes=240 --report-minutes=10
+ * </pre>
+ */
+public class SoakHarness {
+    private static final int OPEN_MINUTE = 9 * 60;
+    private static final int CLOSE_MINUTE = 17 * 60 + 30;
+    private static final int RECENT_BOOKINGS = 4096;
+    private static final int TYPE_AHEAD_RESULTS = 20;
+
+    private enum Operation {
+        SEARCH, FIND_SLOTS, BOOK, AUTO_ASSIGN, CANCEL, REGISTER, BILL, REVENUE_REPORT
+    }
+
+    private final ClinicService service;
+    private final int patients;
+    private final int doctors;
+    private final double speed;
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private final Map<Operation, LatencyHistogram> latency = new EnumMap<>(Operation.class);
+    private final Counter conflicts = metrics.counter("soak.conflicts");
+    private final Counter failures = metrics.counter("soak.failures");
+    private final AtomicInteger registered = new AtomicInteger();
+    private final AtomicReferenceArray<Appointment> recentBookings = new AtomicReferenceArray<>(RECENT_BOOKINGS);
+    private final AtomicInteger bookingCursor = new AtomicInteger();
+    private final String[] specializations;
+
+    public SoakHarness(ClinicService service, int patients, int doctors, double speed) {
+        this.service = service;
+        this.patients = patients;
+        this.doctors = doctors;
+        this.speed = speed;
+        for (Operation op : Operation.values()) {
+            latency.put(op, metrics.histogram("soak." + op.name().toLowerCase()));
+        }
+        this.specializations = service.doctorIndex().specializations().toArray(new String[0]);
+    }
+
+    /**
+     * Arrivals per simulated hour of each operation while the clinic is open:
+     * a booking per doctor per half-hour slot at full occupancy, a handful of
+     * type-ahead keystrokes per booking, and so on.
+     */
+    private double ratePerHour(Operation op) {
+        double bookings = doctors * 2 * 0.7;
+        switch (op) {
+            case SEARCH:
+                return bookings * 4;
+            case FIND_SLOTS:
+                return bookings;
+            case BOOK:
+                return bookings * 0.7;
+            case AUTO_ASSIGN:
+                return bookings * 0.3;
+            case CANCEL:
+                return bookings * 0.1;
+            case REGISTER:
+                return bookings * 0.05;
+            case BILL:
+                return bookings;
+            case REVENUE_REPORT:
+                return 2;
+            default:
+                return 0;
+        }
+    }
+
+    /** Runs for the given real time, logging a report every {@code reportInterval}. */
+    public void run(long durationMillis, long reportIntervalMillis, int desks) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(desks, r -> {
+            Thread t = new Thread(r, "soak-desk");
+            t.setDaemon(true);
+            return t;
+        });
+        Operation[] ops = Operation.values();
+        double[] rates = new double[ops.length];
+        double totalRate = 0;
+        for (int i = 0; i < ops.length; i++) {
+            rates[i] = ratePerHour(ops[i]);
+            totalRate += rates[i];
+        }
+        // Mean real-time gap between arrivals while open, in nanoseconds
+        double meanGapNanos = 3600e9 / totalRate / speed;
+        SplittableRandom random = new SplittableRandom(7);
+        long start = System.nanoTime();
+        long end = start + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+        long nextReport = start + TimeUnit.MILLISECONDS.toNanos(reportIntervalMillis);
+        long baselineHeap = heapAfterGc();
+        long due = start;
+        // Simulated clock, in minutes since tomorrow's midnight
+        double simulatedMinutes = OPEN_MINUTE;
+        System.out.printf("Soak test: %d doctors, %d patients, %.0fx speed, %.0f operations per simulated hour%n",
+            doctors, patients, speed, totalRate);
+        while (due < end) {
+            double gap = -Math.log(1 - random.nextDouble()) * meanGapNanos;
+            due += (long) gap;
+            simulatedMinutes += gap * speed / 60e9;
+            simulatedMinutes = skipClosedHours(simulatedMinutes);
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            Operation op = pick(ops, rates, totalRate, random.nextDouble());
+            long scheduledAt = due;
+            LocalDate day = LocalDate.now().plusDays(1 + (long) (simulatedMinutes / (24 * 60)));
+            pool.execute(() -> execute(op, day, scheduledAt));
+            if (System.nanoTime() >= nextReport) {
+                report(start, baselineHeap, day);
+                nextReport += TimeUnit.MILLISECONDS.toNanos(reportIntervalMillis);
+            }
+        }
+        pool.shutdown();
+        pool.awaitTermination(1, TimeUnit.MINUTES);
+        report(start, baselineHeap, null);
+    }
+
+    private static double skipClosedHours(double minutes) {
+        double minuteOfDay = minutes % (24 * 60);
+        long day = (long) (minutes / (24 * 60));
+        if (minuteOfDay >= CLOSE_MINUTE) {
+            day++;
+            minuteOfDay = OPEN_MINUTE;
+        } else if (minuteOfDay < OPEN_MINUTE) {
+            minuteOfDay = OPEN_MINUTE;
+        }
+        if (LocalDate.now().plusDays(1 + day).getDayOfWeek() == DayOfWeek.SUNDAY) {
+            day++;
+            minuteOfDay = OPEN_MINUTE;
+        }
+        return day * 24 * 60 + minuteOfDay;
+    }
+
+    private static Operation pick(Operation[] ops, double[] rates, double totalRate, double r) {
+        double x = r * totalRate;
+        for (int i = 0; i < ops.length - 1; i++) {
+            x -= rates[i];
+            if (x < 0) {
+                return ops[i];
+            }
+        }
+        return ops[ops.length - 1];
+    }
+
+    private void execute(Operation op, LocalDate day, long scheduledAt) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        try {
+            switch (op) {
+                case SEARCH:
+                    Patient p = randomPatient(random);
+                    service.patientSearchIndex().search(p.getName().substring(0, 1 + random.nextInt(4)),
+                        TYPE_AHEAD_RESULTS);
+                    break;
+                case FIND_SLOTS:
+                    service.slotFinder().findForSpecialization(service.doctorIndex(), randomSpecialization(random),
+                        day, day.plusDays(14), 5);
+                    break;
+                case BOOK:
+                    remember(service.bookAppointment(randomPatient(random), randomDoctor(random),
+                        day.plusDays(random.nextInt(14)), TimeSlotGrid.slotAt(random.nextInt(TimeSlotGrid.SLOT_COUNT))));
+                    break;
+                case AUTO_ASSIGN:
+                    remember(service.autoAssignAppointment(randomPatient(random), randomSpecialization(random),
+                        day.plusDays(random.nextInt(14)), TimeSlotGrid.slotAt(random.nextInt(TimeSlotGrid.SLOT_COUNT))));
+                    break;
+                case CANCEL:
+                    Appointment appointment = recentBookings.getAndSet(random.nextInt(RECENT_BOOKINGS), null);
+                    if (appointment != null) {
+                        service.cancelAppointment(appointment);
+                    }
+                    break;
+                case REGISTER:
+                    service.registerPatient("S" + registered.incrementAndGet(),
+                        WorkloadGenerator.FIRST_NAMES[random.nextInt(WorkloadGenerator.FIRST_NAMES.length)] + " "
+                            + WorkloadGenerator.LAST_NAMES[random.nextInt(WorkloadGenerator.LAST_NAMES.length)],
+                        LocalDate.of(1950 + random.nextInt(70), 1 + random.nextInt(12), 1 + random.nextInt(28)),
+                        "555-0100", "None");
+                    break;
+                case BILL:
+                    int s = random.nextInt(WorkloadGenerator.SERVICES.length);
+                    service.addBillingRecord(randomPatient(random), WorkloadGenerator.SERVICES[s],
+                        WorkloadGenerator.amount(new SplittableRandom(random.nextLong()), s), LocalDate.now());
+                    break;
+                case REVENUE_REPORT:
+                    service.store().billingRecords().stream()
+                        .collect(Collectors.groupingBy(r -> YearMonth.from(r.getDate()),
+                            Collectors.summingLong(BillingRecord::getAmountCents)));
+                    break;
+            }
+        } catch (ConflictException e) {
+            conflicts.increment();
+        } catch (RuntimeException e) {
+            failures.increment();
+        } finally {
+            latency.get(op).recordSince(scheduledAt);
+        }
+    }
+
+    private void remember(Appointment appointment) {
+        recentBookings.set(Math.floorMod(bookingCursor.getAndIncrement(), RECENT_BOOKINGS), appointment);
+    }
+
+    private Patient randomPatient(ThreadLocalRandom random) {
+        return service.store().patients().findByKey(WorkloadGenerator.patientId(random.nextInt(patients)));
+    }
+
+    private Doctor randomDoctor(ThreadLocalRandom random) {
+        return service.store().doctors().findByKey(WorkloadGenerator.doctorName(random.nextInt(doctors)));
+    }
+
+    private String randomSpecialization(ThreadLocalRandom random) {
+        return specializations[random.nextInt(specializations.length)];
+    }
+
+    private void report(long start, long baselineHeap, LocalDate simulatedDay) {
+        long heap = heapAfterGc();
+        StringBuilder sb = new StringBuilder(String.format("%n--- %.1f min elapsed%s, heap after GC %d MB (%+d MB)%n",
+            (System.nanoTime() - start) / 60e9, simulatedDay == null ? ", finished" : ", simulating " + simulatedDay,
+            heap >> 20, (heap - baselineHeap) >> 20));
+        for (Metric metric : metrics.metrics()) {
+            sb.append(String.format("  %-22s %s%n", metric.getName(), metric.summary()));
+        }
+        ClinicStore store = service.store();
+        sb.append(String.format("  store: %d patients, %d appointments, %d billing records",
+            store.patients().size(), store.appointments().size(), store.billingRecords().size()));
+        System.out.println(sb);
+    }
+
+    /** Heap in use right after the most recent collection, summed over all heap pools. */
+    private static long heapAfterGc() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            MemoryUsage usage = pool.getType() == MemoryType.HEAP ? pool.getCollectionUsage() : null;
+            if (usage != null) {
+                used += usage.getUsed();
+            }
+        }
+        return used;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int patients = 100_000;
+        int doctors = 50;
+        double speed = 60;
+        double minutes = 60;
+        double reportMinutes = 5;
+        int desks = 8;
+        long seed = 42;
+        for (String arg : args) {
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("--patients=")) {
+                patients = Integer.parseInt(value);
+            } else if (arg.startsWith("--doctors=")) {
+                doctors = Integer.parseInt(value);
+            } else if (arg.startsWith("--speed=")) {
+                speed = Double.parseDouble(value);
+            } else if (arg.startsWith("--minutes=")) {
+                minutes = Double.parseDouble(value);
+            } else if (arg.startsWith("--report-minutes=")) {
+                reportMinutes = Double.parseDouble(value);
+            } else if (arg.startsWith("--desks=")) {
+                desks = Integer.parseInt(value);
+            } else if (arg.startsWith("--seed=")) {
+                seed = Long.parseLong(value);
+            } else {
+                System.err.println("Unknown option " + arg);
+                System.err.println("Options: --patients= --doctors= --speed= --minutes= --report-minutes= --desks= --seed=");
+                System.exit(2);
+            }
+        }
+        ClinicService service = new ClinicService(new ClinicStore());
+        System.out.println(new WorkloadGenerator(service, seed).patients(patients).doctors(doctors).generate());
+        new SoakHarness(service, patients, doctors, speed)
+            .run((long) (minutes * 60_000), (long) (reportMinutes * 60_000), desks);
+    }
+}
@@ -0,0 +1,297 @@
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ExecutionException;
+import java.util.function.IntConsumer;
+import java.util.logging.Logger;
+
+/**
+ * Populates a {@link ClinicService} with a synthetic clinic: patients,
+ * doctors, upcoming appointments on the {@link TimeSlotGrid} and past billing
+ * records, with name, age, specialization, service and amount distributions
+ * shaped like a general outpatient clinic.
+ *
+ * Everything is written through the service, so validation, indexes and the
+ * change log see the data exactly as if it had been entered in the forms.
+ * Appointments are drawn from each doctor's free slots, so no booking is
+ * rejected as a double-booking. Work is split into independent partitions
+ * (patient ranges, doctors) run on all cores, each with its own random stream
+ * derived from the seed.
+ */
+public class WorkloadGenerator {
+    private static final Logger LOG = Logger.getLogger("SHMS.workload");
+    private static final int PARTITION_SIZE = 10_000;
+
+    static final String[] FIRST_NAMES = {
+        "James", "Mary", "Robert", "Patricia", "John", "Jennifer", "Michael", "Linda", "David", "Elizabeth",
+        "William", "Barbara", "Richard", "Susan", "Joseph", "Jessica", "Thomas", "Sarah", "Charles", "Karen",
+        "Daniel", "Nancy", "Matthew", "Lisa", "Anthony", "Betty", "Mark", "Sandra", "Priya", "Arjun",
+        "Wei", "Mei", "Hiroshi", "Yuki", "Carlos", "Maria", "Ahmed", "Fatima", "Olga", "Ivan"
+    };
+    static final String[] LAST_NAMES = {
+        "Smith", "Johnson", "Williams", "Brown", "Jones", "Garcia", "Miller", "Davis", "Rodriguez", "Martinez",
+        "Hernandez", "Lopez", "Gonzalez", "Wilson", "Anderson", "Thomas", "Taylor", "Moore", "Jackson", "Martin",
+        "Lee", "Perez", "Thompson", "White", "Harris", "Sanchez", "Clark", "Ramirez", "Lewis", "Robinson",
+        "Sharma", "Patel", "Chen", "Wang", "Tanaka", "Sato", "Khan", "Ali", "Ivanova", "Petrov"
+    };
+    private static final String[] HISTORIES = {
+        "None", "None", "None", "Hypertension", "Type 2 diabetes", "Asthma", "Seasonal allergies",
+        "Penicillin allergy", "Hypothyroidism", "Migraine"
+    };
+    /** Specializations with their share of the doctors. */
+    static final String[] SPECIALIZATIONS = {
+        "General Practice", "General Practice", "General Practice", "General Practice", "Pediatrics",
+        "Pediatrics", "Cardiology", "Dermatology", "Orthopedics", "Neurology"
+    };
+    /** Billed services with their share of the records and typical amount (median, spread). */
+    static final String[] SERVICES = {"Consultation", "Lab Test", "X-Ray", "Vaccination", "Physiotherapy",
+        "Minor Surgery"};
+    private static final double[] SERVICE_SHARE = {0.55, 0.20, 0.08, 0.08, 0.06, 0.03};
+    private static final double[] SERVICE_MEDIAN = {80, 45, 150, 35, 90, 650};
+    private static final double[] SERVICE_SPREAD = {0.25, 0.40, 0.30, 0.15, 0.20, 0.45};
+
+    private final ClinicService service;
+    private final long seed;
+    private int patients = 10_000;
+    private int doctors = 50;
+    private int bookedDays = 30;
+    private double slotOccupancy = 0.6;
+    private int billingMonths = 12;
+    private double visitsPerPatientPerMonth = 0.3;
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    public WorkloadGenerator(ClinicService service, long seed) {
+        this.service = service;
+        this.seed = seed;
+    }
+
+    public WorkloadGenerator patients(int patients) {
+        this.patients = patients;
+        return this;
+    }
+
+    public WorkloadGenerator doctors(int doctors) {
+        this.doctors = doctors;
+        return this;
+    }
+
+    /** Working days (Monday to Saturday) from tomorrow on that get appointments. */
+    public WorkloadGenerator bookedDays(int bookedDays) {
+        this.bookedDays = bookedDays;
+        return this;
+    }
+
+    /** Fraction of each doctor's grid slots that are booked. */
+    public WorkloadGenerator slotOccupancy(double slotOccupancy) {
+        this.slotOccupancy = slotOccupancy;
+        return this;
+    }
+
+    /** Months back from today that get billing records. */
+    public WorkloadGenerator billingMonths(int billingMonths) {
+        this.billingMonths = billingMonths;
+        return this;
+    }
+
+    public WorkloadGenerator visitsPerPatientPerMonth(double visits) {
+        this.visitsPerPatientPerMonth = visits;
+        return this;
+    }
+
+    public WorkloadGenerator threads(int threads) {
+        this.threads = Math.max(1, threads);
+        return this;
+    }
+
+    /** Generates the configured data set and returns how much was written. */
+    public Summary generate() {
+        long start = System.nanoTime();
+        Summary summary = new Summary();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "workload-generator");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            runPartitions(pool, (patients + PARTITION_SIZE - 1) / PARTITION_SIZE, this::generatePatients);
+            for (int i = 0; i < doctors; i++) {
+                service.addDoctor(doctorName(i), SPECIALIZATIONS[i % SPECIALIZATIONS.length],
+                    phone(new SplittableRandom(seed + i)));
+            }
+            runPartitions(pool, doctors, this::generateAppointments);
+            runPartitions(pool, (patients + PARTITION_SIZE - 1) / PARTITION_SIZE, this::generateBilling);
+        } finally {
+            pool.shutdownNow();
+        }
+        ClinicStore store = service.store();
+        summary.patients = store.patients().size();
+        summary.doctors = store.doctors().size();
+        summary.appointments = store.appointments().size();
+        summary.billingRecords = store.billingRecords().size();
+        summary.elapsedNanos = System.nanoTime() - start;
+        LOG.info(summary::toString);
+        return summary;
+    }
+
+    private static void runPartitions(ExecutorService pool, int partitions, IntConsumer task) {
+        List<Future<?>> futures = new ArrayList<>();
+        for (int p = 0; p < partitions; p++) {
+            int partition = p;
+            futures.add(pool.submit(() -> task.accept(partition)));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while generating data", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Data generation failed", e.getCause());
+        }
+    }
+
+    private void generatePatients(int partition) {
+        SplittableRandom random = new SplittableRandom(seed * 31 + partition);
+        LocalDate today = LocalDate.now();
+        int end = Math.min(patients, (partition + 1) * PARTITION_SIZE);
+        for (int i = partition * PARTITION_SIZE; i < end; i++) {
+            String name = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " "
+                + LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+            service.registerPatient(patientId(i), name, today.minusDays(ageInDays(random)), phone(random),
+                HISTORIES[random.nextInt(HISTORIES.length)]);
+        }
+    }
+
+    /** Ages spread over 0 to 90 years, thinning out past 65. */
+    private static long ageInDays(SplittableRandom random) {
+        double years = random.nextDouble() < 0.8 ? random.nextDouble(0, 65) : 65 + Math.abs(random.nextGaussian()) * 12;
+        return (long) (Math.min(years, 100) * 365.25);
+    }
+
+    private void generateAppointments(int doctorIndex) {
+        SplittableRandom random = new SplittableRandom(seed * 37 + doctorIndex);
+        Doctor doctor = service.store().doctors().findByKey(doctorName(doctorIndex));
+        LocalDate date = LocalDate.now();
+        for (int day = 0; day < bookedDays; day++) {
+            date = date.plusDays(1);
+            if (date.getDayOfWeek() == DayOfWeek.SUNDAY) {
+                date = date.plusDays(1);
+            }
+            for (int slot = 0; slot < TimeSlotGrid.SLOT_COUNT; slot++) {
+                if (random.nextDouble() < slotOccupancy) {
+                    Patient patient = service.store().patients().findByKey(patientId(frequentPatient(random)));
+                    service.bookAppointment(patient, doctor, date, TimeSlotGrid.slotAt(slot));
+                }
+            }
+        }
+    }
+
+    private void generateBilling(int partition) {
+        SplittableRandom random = new SplittableRandom(seed * 41 + partition);
+        LocalDate today = LocalDate.now();
+        int days = Math.max(1, (int) (today.toEpochDay() - today.minusMonths(billingMonths).toEpochDay()));
+        double visitsPerPatient = visitsPerPatientPerMonth * billingMonths;
+        int end = Math.min(patients, (partition + 1) * PARTITION_SIZE);
+        for (int i = partition * PARTITION_SIZE; i < end; i++) {
+            int visits = poisson(random, visitsPerPatient);
+            if (visits == 0) {
+                continue;
+            }
+            Patient patient = service.store().patients().findByKey(patientId(i));
+            for (int v = 0; v < visits; v++) {
+                int s = pickService(random);
+                service.addBillingRecord(patient, SERVICES[s], amount(random, s), today.minusDays(random.nextInt(days)));
+            }
+        }
+    }
+
+    /** Index of a patient, biased so that a tenth of the patients get half the appointments. */
+    private int frequentPatient(SplittableRandom random) {
+        int frequent = Math.max(1, patients / 10);
+        return random.nextBoolean() ? random.nextInt(frequent) : random.nextInt(patients);
+    }
+
+    private static int pickService(SplittableRandom random) {
+        double r = random.nextDouble();
+        for (int s = 0; s < SERVICE_SHARE.length - 1; s++) {
+            r -= SERVICE_SHARE[s];
+            if (r < 0) {
+                return s;
+            }
+        }
+        return SERVICE_SHARE.length - 1;
+    }
+
+    /** Log-normal around the service's median, in whole cents. */
+    static double amount(SplittableRandom random, int service) {
+        double amount = SERVICE_MEDIAN[service] * Math.exp(random.nextGaussian() * SERVICE_SPREAD[service]);
+        return Math.max(1, Math.round(amount * 100)) / 100.0;
+    }
+
+    private static int poisson(SplittableRandom random, double mean) {
+        double limit = Math.exp(-mean);
+        double product = random.nextDouble();
+        int n = 0;
+        while (product > limit) {
+            product *= random.nextDouble();
+            n++;
+        }
+        return n;
+    }
+
+    static String patientId(int index) {
+        return String.format("G%07d", index + 1);
+    }
+
+    static String doctorName(int index) {
+        String name = "Dr. " + LAST_NAMES[index % LAST_NAMES.length];
+        return index < LAST_NAMES.length ? name : name + " " + (index / LAST_NAMES.length + 1);
+    }
+
+    private static String phone(SplittableRandom random) {
+        return String.format("555-%03d-%04d", random.nextInt(1000), random.nextInt(10000));
+    }
+
+    public static class Summary {
+        private int patients;
+        private int doctors;
+        private int appointments;
+        private int billingRecords;
+        private long elapsedNanos;
+
+        public int getPatients() {
+            return patients;
+        }
+
+        public int getDoctors() {
+            return doctors;
+        }
+
+        public int getAppointments() {
+            return appointments;
+        }
+
+        public int getBillingRecords() {
+            return billingRecords;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            int rows = patients + doctors + appointments + billingRecords;
+            double seconds = elapsedNanos / 1e9;
+            return String.format(
+                "Generated %d patients, %d doctors, %d appointments, %d billing records in %.1f s (%.0f rows/s)",
+                patients, doctors, appointments, billingRecords, seconds, rows / seconds);
+        }
+    }
+}
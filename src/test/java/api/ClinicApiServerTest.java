@@ -0,0 +1,56 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ClinicApiServerTest {
+    private final HttpClient http = HttpClient.newHttpClient();
+    private ClinicService service;
+    private ClinicApiServer server;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        service = new ClinicService(new ClinicStore());
+        server = new ClinicApiServer(service, 0);
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop();
+    }
+
+    private HttpResponse<String> get(String path) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.getPort() + path))
+            .header("Authorization", "Bearer " + server.getToken())
+            .build();
+        return http.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    @Test
+    void aLimitBelowOneIsRejected() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            service.registerPatient("P" + i, "Ann Lee", LocalDate.of(1980, 2, 1), "555-0101", "");
+        }
+        assertEquals(400, get("/api/changes?after=0&limit=-1").statusCode());
+        assertEquals(400, get("/api/changes?after=0&limit=0").statusCode());
+        HttpResponse<String> one = get("/api/changes?after=0&limit=1");
+        assertEquals(200, one.statusCode());
+        assertEquals(1, ((List<?>) Json.readObject(one.body()).get("changes")).size());
+    }
+
+    @Test
+    void requestsWithoutTheTokenAreRefused() throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(
+            URI.create("http://127.0.0.1:" + server.getPort() + "/api/changes?after=0")).build();
+        assertEquals(401, http.send(request, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+}
@@ -0,0 +1,72 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class LogShipperTest {
+    private ClinicStore store;
+    private LogShipper shipper;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        store = new ClinicStore();
+        shipper = new LogShipper(store, 0);
+        shipper.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        shipper.stop();
+    }
+
+    @Test
+    void aMalformedFrameClosesTheConnectionAndTheShipperCarriesOn() throws Exception {
+        for (String request : new String[] {"not json", "{\"after\":\"soon\"}", "{}"}) {
+            try (Socket socket = new Socket("127.0.0.1", shipper.getPort())) {
+                socket.setSoTimeout(5000);
+                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                    StandardCharsets.UTF_8));
+                Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+                out.write(Json.write(Map.of("secret", shipper.getSecret())) + "\n");
+                out.flush();
+                assertEquals("hello", Json.readObject(in.readLine()).get("kind"));
+                out.write(request + "\n");
+                out.flush();
+                assertNull(in.readLine());
+            }
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (shipper.standbyCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, shipper.standbyCount());
+
+        store.patients().insert(new Patient("P1", "Ann Lee", LocalDate.of(1980, 2, 1), "555-0101", ""));
+        try (Socket socket = new Socket("127.0.0.1", shipper.getPort())) {
+            socket.setSoTimeout(5000);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                StandardCharsets.UTF_8));
+            Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+            out.write(Json.write(Map.of("secret", shipper.getSecret())) + "\n");
+            out.flush();
+            in.readLine();
+            out.write("{\"after\":0}\n");
+            out.flush();
+            Map<String, Object> change = Json.readObject(in.readLine());
+            assertEquals("change", change.get("kind"));
+            assertTrue(change.get("entity") instanceof Map);
+        }
+    }
+}
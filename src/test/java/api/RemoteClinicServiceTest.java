@@ -0,0 +1,47 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.net.URI;
+import java.time.LocalDate;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class RemoteClinicServiceTest {
+    private ClinicService service;
+    private ClinicApiServer server;
+    private RemoteClinicService remote;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        service = new ClinicService(new ClinicStore());
+        server = new ClinicApiServer(service, 0);
+        server.start();
+        remote = new RemoteClinicService(URI.create("http://127.0.0.1:" + server.getPort() + "/"), server.getToken());
+        remote.connect();
+    }
+
+    @AfterEach
+    void tearDown() {
+        remote.disconnect();
+        server.stop();
+    }
+
+    @Test
+    void aWriteReturnsTheReplicasCopy() {
+        Patient patient = remote.registerPatient("P1", "Ann Lee", LocalDate.of(1980, 2, 1), "555-0101", "");
+        assertNotNull(patient);
+        assertEquals("P1", patient.getPatientId());
+        assertEquals(1, remote.store().patients().size());
+        assertEquals(1, service.store().patients().size());
+    }
+
+    @Test
+    void serverErrorsAreRethrownOnTheCaller() {
+        remote.registerPatient("P1", "Ann Lee", LocalDate.of(1980, 2, 1), "555-0101", "");
+        assertThrows(ValidationException.class,
+            () -> remote.registerPatient("P1", "Bob Ray", LocalDate.of(1975, 6, 3), "555-0102", ""));
+    }
+}
@@ -0,0 +1,35 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.YearMonth;
+
+import org.junit.jupiter.api.Test;
+
+class MonthlySketchesTest {
+    private static final LocalDate DAY = LocalDate.of(2026, 3, 10);
+    private static final YearMonth MONTH = YearMonth.from(DAY);
+
+    private static long bills(MonthlySketches sketches) {
+        return sketches.amountsByService(MONTH, MONTH).values().stream().mapToLong(QuantileSketch::count).sum();
+    }
+
+    @Test
+    void sketchesOfAStoreFollowItsChanges() {
+        ClinicStore store = new ClinicStore();
+        store.appointments().insert(new Appointment("P1", "Ann Lee", "Dr. Gray", DAY, LocalTime.of(9, 0)));
+        store.billingRecords().insert(new BillingRecord("P1", "Ann Lee", "Consultation", 5000, DAY));
+        MonthlySketches sketches = new ReportIndex(store).sketches();
+        assertEquals(1, sketches.patients(MONTH, MONTH).estimate());
+        assertEquals(1, bills(sketches));
+
+        store.appointments().insert(new Appointment("P2", "Bob Ray", "Dr. Gray", DAY, LocalTime.of(9, 30)));
+        long second = store.billingRecords().insert(new BillingRecord("P2", "Bob Ray", "X-Ray", 9000, DAY));
+        assertEquals(2, sketches.patients(MONTH, MONTH).estimate());
+        assertEquals(2, bills(sketches));
+
+        store.billingRecords().remove(second);
+        assertEquals(1, bills(sketches));
+        assertEquals(2, sketches.patientsByDoctor(MONTH, MONTH).get("Dr. Gray").estimate());
+    }
+}
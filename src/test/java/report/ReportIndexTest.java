@@ -0,0 +1,30 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+import org.junit.jupiter.api.Test;
+
+class ReportIndexTest {
+    private static final LocalDate DAY = LocalDate.of(2026, 3, 10);
+
+    @Test
+    void billingColumnsAreRebuiltOnlyAfterBillingChanges() {
+        ClinicStore store = new ClinicStore();
+        ReportIndex index = new ReportIndex(store);
+        store.billingRecords().insert(new BillingRecord("P1", "Ann Lee", "Consultation", 5000, DAY));
+        BillingColumns first = index.billingColumns();
+        assertEquals(1, first.size());
+
+        store.appointments().insert(new Appointment("P1", "Ann Lee", "Dr. Gray", DAY, LocalTime.of(9, 0)));
+        assertSame(first, index.billingColumns());
+
+        store.billingRecords().insert(new BillingRecord("P1", "Ann Lee", "X-Ray", 9000, DAY.plusDays(1)));
+        BillingColumns second = index.billingColumns();
+        assertNotSame(first, second);
+        assertEquals(2, second.size());
+        assertEquals(1, second.to(DAY) - second.from(DAY));
+    }
+}
@@ -0,0 +1,47 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class BulkImporterTest {
+    @Test
+    void aGeneratedIdTakenInTheSameChunkIsReplaced() throws Exception {
+        ClinicService service = new ClinicService(new ClinicStore());
+        // Every four-digit number is taken, so generated IDs start at P10000
+        List<Patient> existing = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            existing.add(new Patient("P" + i, "Existing " + i, LocalDate.of(1980, 2, 1), "555-0101", ""));
+        }
+        service.registerPatients(existing);
+
+        StringBuilder feed = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            feed.append("{\"patientId\":\"P").append(10000 + i)
+                .append("\",\"name\":\"Listed ").append(i)
+                .append("\",\"dateOfBirth\":\"1990-05-06\",\"contactInfo\":\"555-0102\"}\n");
+        }
+        for (int i = 0; i < 20; i++) {
+            feed.append("{\"name\":\"Unlisted ").append(i)
+                .append("\",\"dateOfBirth\":\"1990-05-06\",\"contactInfo\":\"555-0103\"}\n");
+        }
+        StringWriter errors = new StringWriter();
+        BulkImporter.Result result = new BulkImporter(service, 2)
+            .importFeed(BulkImporter.Feed.PATIENTS, new BufferedReader(new StringReader(feed.toString())), errors);
+
+        assertEquals(40, result.getImported());
+        assertEquals(0, result.getRejected());
+        assertEquals("", errors.toString());
+        assertEquals(10040, service.store().patients().size());
+        for (int i = 0; i < 20; i++) {
+            assertEquals("Listed " + i, service.store().patients().findByKey("P" + (10000 + i)).getName());
+        }
+        service.store().patients().forEachEntry((id, p) -> assertTrue(p.getPatientId().matches("P\\d+")));
+    }
+}
@@ -0,0 +1,63 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ClinicServiceTest {
+    private ClinicService service;
+    private Patient patient;
+    private Doctor doctor;
+    private final LocalDate tomorrow = LocalDate.now().plusDays(1);
+
+    @BeforeEach
+    void setUp() {
+        service = new ClinicService(new ClinicStore());
+        patient = service.registerPatient("P1", "Ann Lee", LocalDate.of(1980, 2, 1), "555-0101", "");
+        doctor = service.addDoctor("Dr. Smith", "Cardiology", "555-0202");
+    }
+
+    @Test
+    void bookingTheSameSlotTwiceIsAConflict() {
+        service.bookAppointment(patient, doctor, tomorrow, LocalTime.of(9, 30));
+        assertThrows(ConflictException.class,
+            () -> service.bookAppointment(patient, doctor, tomorrow, LocalTime.of(9, 30)));
+    }
+
+    @Test
+    void offGridTimesCannotBeDoubleBooked() {
+        LocalTime offGrid = LocalTime.of(9, 15);
+        assertThrows(ValidationException.class, () -> service.bookAppointment(patient, doctor, tomorrow, offGrid));
+        assertThrows(ValidationException.class, () -> service.bookAppointment(patient, doctor, tomorrow, offGrid));
+        assertThrows(ValidationException.class,
+            () -> service.bookAppointment(patient, doctor, tomorrow, LocalTime.of(18, 0)));
+        assertEquals(0, service.store().appointments().size());
+    }
+
+    @Test
+    void batchBookingRejectsOffGridTimes() {
+        List<String> reasons = service.bookAppointments(doctor.getName(), List.of(
+            new Appointment("P1", "Ann Lee", doctor.getName(), tomorrow, LocalTime.of(10, 10)),
+            new Appointment("P1", "Ann Lee", doctor.getName(), tomorrow, LocalTime.of(10, 10)),
+            new Appointment("P1", "Ann Lee", doctor.getName(), tomorrow, LocalTime.of(10, 0))));
+        assertEquals(2, reasons.stream().filter(r -> r != null).count());
+        assertNull(reasons.get(2));
+        assertEquals(1, service.store().appointments().size());
+    }
+
+    @Test
+    void cancellingARangeFreesItsSlots() {
+        service.bookAppointment(patient, doctor, tomorrow, LocalTime.of(9, 0));
+        service.bookAppointment(patient, doctor, tomorrow, LocalTime.of(9, 30));
+        service.bookAppointment(patient, doctor, tomorrow.plusDays(7), LocalTime.of(9, 0));
+
+        assertEquals(2, service.cancelAppointments(doctor.getName(), tomorrow, tomorrow.plusDays(1)));
+        assertEquals(1, service.store().appointments().size());
+        service.bookAppointment(patient, doctor, tomorrow, LocalTime.of(9, 0));
+    }
+}
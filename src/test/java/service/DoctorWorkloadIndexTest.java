@@ -0,0 +1,40 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class DoctorWorkloadIndexTest {
+    private static final LocalDate DAY = LocalDate.now().plusDays(2);
+
+    @Test
+    void doctorsAreOrderedByWorkloadAsBookingsComeAndGo() {
+        ClinicStore store = new ClinicStore();
+        DoctorWorkloadIndex index = new DoctorWorkloadIndex();
+        index.attachDoctors(store.doctors());
+        index.attachAppointments(store.appointments());
+        Doctor gray = new Doctor("Dr. Gray", "Cardiology", "555-0100");
+        Doctor hale = new Doctor("Dr. Hale", "Cardiology", "555-0101");
+        store.doctors().insert(gray);
+        store.doctors().insert(hale);
+
+        long[] ids = new long[5];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = store.appointments().insert(
+                new Appointment("P" + i, "Patient " + i, "Dr. Gray", DAY, LocalTime.of(9, 0).plusMinutes(30 * i)));
+        }
+        store.appointments().insert(new Appointment("P9", "Patient 9", "Dr. Hale", DAY, LocalTime.of(9, 0)));
+        assertEquals(List.of(hale, gray), index.doctorsFor("Cardiology"));
+        assertEquals(hale, index.leastLoaded("Cardiology"));
+        assertEquals(gray, index.leastLoaded("Cardiology", doctor -> doctor != hale));
+
+        for (long id : ids) {
+            store.appointments().remove(id);
+        }
+        assertEquals(0, index.workloadOf("Dr. Gray"));
+        assertEquals(gray, index.leastLoaded("Cardiology"));
+        assertEquals(List.of(gray, hale), index.doctorsFor("Cardiology"));
+    }
+}
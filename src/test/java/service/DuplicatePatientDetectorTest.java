@@ -0,0 +1,32 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class DuplicatePatientDetectorTest {
+    private static final LocalDate DOB = LocalDate.of(1980, 2, 1);
+
+    @Test
+    void eachLikelyDuplicatePairIsReportedOnce() {
+        DuplicatePatientDetector detector = new DuplicatePatientDetector();
+        detector.index(new Patient("P1", "Katherine Smith", DOB, "555-0101", ""));
+        detector.index(new Patient("P2", "Catherine Smith", DOB, "555-0102", ""));
+        detector.index(new Patient("P3", "Katherine Smyth", DOB, "555-0103", ""));
+        detector.index(new Patient("P4", "Robert Jones", DOB, "555-0104", ""));
+
+        List<DuplicatePatientDetector.DuplicateMatch> matches = detector.findAllDuplicates();
+        long distinct = matches.stream()
+            .map(m -> m.getPatient().getPatientId().compareTo(m.getOther().getPatientId()) < 0
+                ? m.getPatient().getPatientId() + "/" + m.getOther().getPatientId()
+                : m.getOther().getPatientId() + "/" + m.getPatient().getPatientId())
+            .distinct()
+            .count();
+        assertFalse(matches.isEmpty());
+        assertEquals(distinct, matches.size());
+        assertEquals(0, matches.stream().filter(m -> m.getPatient().getPatientId().equals("P4")
+            || m.getOther().getPatientId().equals("P4")).count());
+    }
+}
@@ -0,0 +1,36 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDate;
+
+import org.junit.jupiter.api.Test;
+
+class PatientSearchIndexTest {
+    private static Patient patient(int i) {
+        return new Patient("P" + i, "Patient Number" + i, LocalDate.of(1980, 2, 1), "555-0101", "");
+    }
+
+    @Test
+    void writesDuringAttachLeaveOneEntryPerLivePatient() throws Exception {
+        for (int round = 0; round < 20; round++) {
+            ClinicStore store = new ClinicStore();
+            long[] ids = new long[300];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = store.patients().insert(patient(i));
+            }
+            Thread writer = new Thread(() -> {
+                for (int i = 0; i < ids.length; i += 2) {
+                    store.patients().remove(ids[i]);
+                    store.patients().insert(patient(1000 + i));
+                }
+            });
+            PatientSearchIndex index = new PatientSearchIndex();
+            writer.start();
+            index.attach(store.patients());
+            writer.join();
+
+            assertEquals(store.patients().size(), index.size());
+            assertEquals(0, index.search("p0", 10).size());
+            assertEquals(1, index.search("p1000", 10).size());
+        }
+    }
+}
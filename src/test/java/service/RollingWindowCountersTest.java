@@ -0,0 +1,51 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+import org.junit.jupiter.api.Test;
+
+class RollingWindowCountersTest {
+    private static final LocalDate DAY = LocalDate.now().plusDays(3);
+
+    @Test
+    void writesDuringAttachAreCountedOnce() throws Exception {
+        for (int round = 0; round < 20; round++) {
+            ClinicStore store = new ClinicStore();
+            for (int i = 0; i < 200; i++) {
+                store.appointments().insert(appointment(i));
+            }
+            Thread writer = new Thread(() -> {
+                for (int i = 200; i < 400; i++) {
+                    store.appointments().insert(appointment(i));
+                }
+            });
+            RollingWindowCounters counters = new RollingWindowCounters();
+            writer.start();
+            counters.attach(store);
+            writer.join();
+
+            assertEquals(400, counters.window(DAY, DAY, 1).appointments(0));
+        }
+    }
+
+    @Test
+    void removalsAndBillsAreFollowed() {
+        ClinicStore store = new ClinicStore();
+        RollingWindowCounters counters = new RollingWindowCounters();
+        counters.attach(store);
+        long id = store.appointments().insert(appointment(1));
+        store.appointments().insert(appointment(2));
+        store.appointments().remove(id);
+        store.billingRecords().insert(new BillingRecord("P1", "Ann Lee", "Consultation", 5000, DAY));
+
+        RollingWindowCounters.Window window = counters.window(DAY, DAY, 1);
+        assertEquals(1, window.appointments(0));
+        assertEquals(1, window.bills(0));
+        assertEquals(5000, window.revenueCents(0));
+    }
+
+    private static Appointment appointment(int i) {
+        return new Appointment("P" + i, "Patient " + i, "Dr. Gray", DAY, LocalTime.of(9, 0));
+    }
+}
@@ -0,0 +1,91 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class ChangeLogTest {
+    private static final int THREADS = 4;
+    private static final int WRITES = 2000;
+
+    private static Appointment appointment(int n) {
+        return new Appointment("P" + n, "Ann Lee", "Dr. Smith", LocalDate.of(2030, 1, 1).plusDays(n),
+            LocalTime.of(9, 0));
+    }
+
+    @Test
+    void concurrentWritersLeaveNoGapBelowTheWatermark() throws Exception {
+        ClinicStore store = new ClinicStore();
+        List<String> outOfOrder = new ArrayList<>();
+        ConcurrentHashMap<Long, StoreChange.Type> lastSeen = new ConcurrentHashMap<>();
+        store.appointments().addListener(change -> lastSeen.compute(change.getId(), (id, last) -> {
+            boolean inOrder = change.getType() == StoreChange.Type.ADDED ? last == null
+                : last == StoreChange.Type.ADDED;
+            if (!inOrder) {
+                synchronized (outOfOrder) {
+                    outOfOrder.add(change.toString());
+                }
+            }
+            return change.getType();
+        }));
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> writers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int offset = t * WRITES;
+            writers.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < WRITES; i++) {
+                    long id = store.appointments().insert(appointment(offset + i));
+                    if (i % 2 == 0) {
+                        store.appointments().remove(id);
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> writer : writers) {
+            writer.get(30, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        ChangeLog log = store.changeLog();
+        assertEquals(store.currentSequence(), log.watermark());
+        List<StoreChange<?>> changes = log.changesAfter(0, Integer.MAX_VALUE);
+        assertEquals(store.currentSequence(), changes.size());
+        for (int i = 0; i < changes.size(); i++) {
+            assertEquals(i + 1, changes.get(i).getSequence());
+        }
+        assertTrue(outOfOrder.isEmpty(), () -> "Changes of a record out of order: " + outOfOrder);
+    }
+
+    @Test
+    void awaitAfterWakesWhenAWriteArrives() throws Exception {
+        ClinicStore store = new ClinicStore();
+        Thread writer = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                return;
+            }
+            store.appointments().insert(appointment(1));
+        });
+        writer.start();
+        long before = System.currentTimeMillis();
+        assertEquals(1, store.changeLog().awaitAfter(0, 10_000));
+        assertTrue(System.currentTimeMillis() - before < 5_000);
+        writer.join();
+    }
+}
@@ -0,0 +1,90 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.YearMonth;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ColdArchiveTest {
+    private static final LocalDate OLD = LocalDate.of(2019, 3, 1);
+
+    @TempDir
+    Path dir;
+
+    /** An appointment that cannot be removed from the store once it is armed, as if its removal failed. */
+    private static final class Unremovable extends Appointment {
+        volatile boolean armed;
+
+        Unremovable(LocalDate date) {
+            super("P1", "Ann Lee", "Dr. Smith", date, LocalTime.of(9, 0));
+        }
+
+        @Override
+        public int hashCode() {
+            if (armed) {
+                throw new IllegalStateException("removal failed");
+            }
+            return super.hashCode();
+        }
+    }
+
+    private static Appointment appointment(LocalDate date) {
+        return new Appointment("P1", "Ann Lee", "Dr. Smith", date, LocalTime.of(9, 0));
+    }
+
+    @Test
+    void aFailedMoveLeavesTheRecordHotAndQueriesAnswer() throws Exception {
+        ClinicStore store = new ClinicStore();
+        ColdArchive archive = ColdArchive.open(dir, store);
+        Unremovable failing = new Unremovable(OLD.plusDays(1));
+        store.appointments().insert(appointment(OLD));
+        store.appointments().insert(failing);
+        store.appointments().insert(appointment(OLD.plusDays(2)));
+        failing.armed = true;
+
+        assertThrows(IllegalStateException.class, () -> archive.archive(OLD.plusYears(1)));
+        failing.armed = false;
+
+        try (ClinicSnapshot snapshot = store.openSnapshot()) {
+            List<Appointment> cold = assertTimeoutPreemptively(Duration.ofSeconds(5),
+                () -> snapshot.archivedAppointments(OLD, OLD.plusYears(1)));
+            assertEquals(1, cold.size());
+            assertEquals(2, snapshot.appointments().stream().count());
+        }
+        assertEquals(1, archive.archivedRecords(), "the segment on disk holds only the record that moved");
+        assertTrue(store.appointments().idOf(failing) > 0);
+
+        assertEquals(2, archive.archive(OLD.plusYears(1)).getAppointments());
+        assertEquals(0, store.appointments().size());
+    }
+
+    @Test
+    void aMoveThatNeverEndsFailsTheQueryInsteadOfHangingIt() throws Exception {
+        ArchiveSegment segment = ArchiveSegment.writeAppointments(dir.resolve("a.seg"), YearMonth.from(OLD),
+            List.of(appointment(OLD)));
+        segment.track(new long[] {1});
+        ArchiveSegment.Moves moves = segment.moves;
+        assertThrows(IllegalStateException.class,
+            () -> assertTimeoutPreemptively(Duration.ofSeconds(5), () -> moves.awaitMove(0, 100)));
+
+        Thread mover = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                return;
+            }
+            moves.moved(0, 42);
+        });
+        mover.start();
+        assertEquals(42, assertTimeoutPreemptively(Duration.ofSeconds(5), () -> moves.awaitMove(0, 10_000)));
+        mover.join();
+    }
+}
@@ -0,0 +1,75 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class EntityStoreTest {
+    private static Patient patient(String id) {
+        return new Patient(id, "Ann Lee", LocalDate.of(1980, 2, 1), "555-0101", "");
+    }
+
+    @Test
+    void aFailingListenerDoesNotHideTheChangeFromTheOthers() {
+        ClinicStore store = new ClinicStore();
+        AtomicInteger seen = new AtomicInteger();
+        store.patients().addListener(change -> {
+            throw new IllegalStateException("broken listener");
+        });
+        store.patients().addListener(change -> seen.incrementAndGet());
+
+        store.patients().insert(patient("P1"));
+        store.patients().insertAll(List.of(patient("P2"), patient("P3")));
+
+        assertEquals(3, seen.get());
+        assertEquals(store.currentSequence(), store.changeLog().watermark());
+        assertEquals(3, store.changeLog().changesAfter(0, 10).size());
+    }
+
+    @Test
+    void removeAllHandsListenersOneBatch() {
+        ClinicStore store = new ClinicStore();
+        long[] ids = store.patients().insertAll(List.of(patient("P1"), patient("P2"), patient("P3")));
+        List<Integer> batches = new ArrayList<>();
+        store.patients().addListener(new StoreListener<>() {
+            @Override
+            public void onChange(StoreChange<Patient> change) {
+                batches.add(1);
+            }
+
+            @Override
+            public void onChanges(List<StoreChange<Patient>> changes) {
+                batches.add(changes.size());
+            }
+        });
+
+        assertEquals(2, store.patients().removeAll(List.of(ids[0], ids[2], ids[2], 99L)));
+        assertEquals(List.of(2), batches);
+        assertEquals(1, store.patients().size());
+        assertEquals(store.patients().get(ids[1]), store.patients().stream().findFirst().orElseThrow());
+        assertEquals(0, store.patients().removeAll(List.of(ids[0])));
+        assertEquals(List.of(2), batches);
+    }
+
+    @Test
+    void anUpdateLeavesTheObjectsSnapshotsReadAsTheyWere() {
+        ClinicStore store = new ClinicStore();
+        Patient original = patient("P1");
+        long id = store.patients().insert(original);
+        try (ClinicSnapshot before = store.openSnapshot()) {
+            store.patients().update(id, p -> p.contactInfoProperty().set("555-0199"));
+
+            assertSame(original, before.patients().list().get(0));
+            assertEquals("555-0101", original.getContactInfo());
+            assertEquals("555-0199", store.patients().get(id).getContactInfo());
+            try (ClinicSnapshot after = store.openSnapshot()) {
+                assertSame(store.patients().get(id), after.patients().list().get(0));
+            }
+        }
+        assertEquals(0, store.patients().retainedCount());
+    }
+}